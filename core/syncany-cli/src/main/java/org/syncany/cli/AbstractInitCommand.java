@@ -227,15 +227,15 @@ public abstract class AbstractInitCommand extends Command implements UserInterac
 		TransferPluginOptionCallback optionCallback = createOptionCallback(settings, option.getCallback());
 		TransferPluginOptionConverter optionConverter = createOptionConverter(settings, option.getConverter());
 
-		if (!isInteractive && !knownPluginSettings.containsKey(nestPrefix + option.getName())) {
-			throw new IllegalArgumentException("Missing plugin option (" + nestPrefix + option.getName() + ") in non-interactive mode.");
-		}
-		else if (knownPluginSettings.containsKey(nestPrefix + option.getName())) {
+		if (knownPluginSettings.containsKey(nestPrefix + option.getName())) {
 			settings.setField(option.getField().getName(), knownPluginSettings.get(nestPrefix + option.getName()));
 		}
 		else if (!option.isVisible()) {
 			// Do nothing. Invisible option!
 		}
+		else if (!isInteractive) {
+			throw new IllegalArgumentException("Missing plugin option (" + nestPrefix + option.getName() + ") in non-interactive mode.");
+		}
 		else {
 			callAndPrintPreQueryCallback(optionCallback);
 
@@ -64,6 +64,7 @@ public class CleanupCommand extends Command {
 		OptionSpec<Void> optionNoOlderVersionRemoval = parser.acceptsAll(asList("O", "no-delete-older-than"));
 		OptionSpec<Void> optionNoVersionRemovalByInterval = parser.acceptsAll(asList("I", "no-delete-interval"));
 		OptionSpec<Void> optionNoRemoveTempFiles = parser.acceptsAll(asList("T", "no-temp-removal"));
+		OptionSpec<Void> optionMigrateLayout = parser.acceptsAll(asList("M", "migrate-layout"));
 		OptionSpec<String> optionKeepMinTime = parser.acceptsAll(asList("o", "delete-older-than"))
 				.withRequiredArg().ofType(String.class);
 
@@ -81,6 +82,9 @@ public class CleanupCommand extends Command {
 		// -I, --no-delete-interval
 		operationOptions.setRemoveVersionsByInterval(!options.has(optionNoVersionRemovalByInterval));
 
+		// -M, --migrate-layout
+		operationOptions.setMigrateLayout(options.has(optionMigrateLayout));
+
 		// -o=<time>, --delete-older-than=<time>
 		if (options.has(optionKeepMinTime)) {
 			long keepDeletedFilesForSeconds = CommandLineUtil.parseTimePeriod(options.valueOf(optionKeepMinTime));
@@ -147,6 +151,10 @@ public class CleanupCommand extends Command {
 				// TODO [low] This counts only the file histories, not file versions; not very helpful!
 			}
 
+			if (concreteOperationResult.getMigratedRemoteFilesCount() > 0) {
+				out.println(concreteOperationResult.getMigratedRemoteFilesCount() + " file(s) moved to the new storage layout.");
+			}
+
 			out.println("Cleanup successful.");
 			break;
 
@@ -27,6 +27,7 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
+import org.syncany.cli.util.CliTimingsUtil;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
@@ -39,6 +40,8 @@ import org.syncany.operations.down.DownOperationResult.DownResultCode;
 import com.google.common.eventbus.Subscribe;
 
 public class DownCommand extends Command {
+	private boolean printTimings = false;
+
 	@Override
 	public CommandScope getRequiredCommandScope() {	
 		return CommandScope.INITIALIZED_LOCALDIR;
@@ -67,6 +70,7 @@ public class DownCommand extends Command {
 
 		OptionSpec<String> optionConflictStrategy = parser.acceptsAll(asList("C", "conflict-strategy")).withRequiredArg();
 		OptionSpec<Void> optionNoApply = parser.acceptsAll(asList("A", "no-apply"));
+		OptionSpec<Void> optionTiming = parser.acceptsAll(asList("timing"));
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -81,6 +85,9 @@ public class DownCommand extends Command {
 			operationOptions.setApplyChanges(false);
 		}
 
+		// --timing
+		printTimings = options.has(optionTiming);
+
 		return operationOptions;
 	}
 
@@ -121,6 +128,10 @@ public class DownCommand extends Command {
 		else {
 			out.println("Sync down skipped, no remote changes.");
 		}
+
+		if (printTimings) {
+			CliTimingsUtil.printTimings(out, concreteOperationResult.getTimings());
+		}
 	}
 	
 	@Subscribe
@@ -30,6 +30,7 @@ import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.restore.RestoreOperationOptions;
 import org.syncany.operations.restore.RestoreOperationResult;
+import org.syncany.util.FileUtil;
 
 public class RestoreCommand extends Command {
 	protected static final Logger logger = Logger.getLogger(RestoreCommand.class.getSimpleName());
@@ -96,6 +97,11 @@ public class RestoreCommand extends Command {
 		switch (concreteOperationResult.getResultCode()) {
 		case ACK:
 			out.println("File restored to " + concreteOperationResult.getTargetFile());
+			
+			if (concreteOperationResult.getSavedBytes() > 0) {
+				out.println("Downloaded only the needed parts of multichunks, saved " + FileUtil.formatFileSize(concreteOperationResult.getSavedBytes()) + ".");
+			}
+			
 			break;
 			
 		case NACK_INVALID_FILE:
@@ -22,6 +22,7 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 
+import org.syncany.cli.util.CliTimingsUtil;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.daemon.messages.LsRemoteStartSyncExternalEvent;
@@ -40,6 +41,7 @@ import com.google.common.eventbus.Subscribe;
 
 public class UpCommand extends Command {
 	private long uploadedFileSize = 0;
+	private boolean printTimings = false;
 
 	@Override
 	public CommandScope getRequiredCommandScope() {
@@ -70,6 +72,7 @@ public class UpCommand extends Command {
 
 		OptionSpec<Void> optionForceUpload = parser.acceptsAll(asList("F", "force-upload"));
 		OptionSpec<Void> optionNoResumeUpload = parser.acceptsAll(asList("R", "no-resume"));
+		OptionSpec<Void> optionTiming = parser.acceptsAll(asList("timing"));
 
 		OptionSet options = parser.parse(operationArgs);
 
@@ -82,6 +85,9 @@ public class UpCommand extends Command {
 		// -R, --no-resume
 		operationOptions.setResume(!options.has(optionNoResumeUpload));
 
+		// --timing
+		printTimings = options.has(optionTiming);
+
 		return operationOptions;
 	}
 
@@ -119,6 +125,10 @@ public class UpCommand extends Command {
 		else {
 			out.println("Sync up skipped, no local changes.");
 		}
+
+		if (printTimings) {
+			CliTimingsUtil.printTimings(out, concreteOperationResult.getTimings());
+		}
 	}
 
 	@Subscribe
@@ -0,0 +1,58 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.cli.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.syncany.operations.OperationTiming;
+import org.syncany.operations.OperationTimings;
+import org.syncany.util.FileUtil;
+
+public class CliTimingsUtil {
+	public static void printTimings(CarriageReturnPrinter out, OperationTimings timings) {
+		out.println();
+		out.println("Phases:");
+
+		List<String[]> phaseTableValues = new ArrayList<String[]>();
+		phaseTableValues.add(new String[] { "Phase", "Time" });
+
+		for (OperationTiming phase : timings.getPhases()) {
+			phaseTableValues.add(new String[] { phase.getName(), formatMillis(phase.getMillis()) });
+		}
+
+		CliTableUtil.printTable(out, phaseTableValues, "No phases recorded.");
+
+		out.println();
+		out.println("Transfers:");
+
+		List<String[]> transferTableValues = new ArrayList<String[]>();
+		transferTableValues.add(new String[] { "Method", "Calls", "Failed", "Size", "Time" });
+
+		for (OperationTiming transfer : timings.getTransfers()) {
+			transferTableValues.add(new String[] { transfer.getName(), Long.toString(transfer.getCount()), Long.toString(transfer.getFailures()),
+					FileUtil.formatFileSize(transfer.getBytes()), formatMillis(transfer.getMillis()) });
+		}
+
+		CliTableUtil.printTable(out, transferTableValues, "No transfers made.");
+	}
+
+	private static String formatMillis(long millis) {
+		return String.format("%.3fs", millis / 1000.0);
+	}
+}
@@ -21,17 +21,27 @@ package org.syncany.chunk;
  * A chunk represent a certain part of a file. It is created during the
  * deduplication process by a {@link Chunker}. 
  * 
+ * <p>The content of a chunk is the {@link #getSize() size} bytes of the {@link #getContent() content}
+ * array, starting at the {@link #getOffset() offset}. Chunkers may reuse this array for
+ * the next chunk, so the content is only valid until the next chunk is requested.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Chunk {
     private byte[] checksum;
     private byte[] contents;
+    private int offset;
     private int size;
     private byte[] fileChecksum;
 
     /*package*/ Chunk(byte[] checksum, byte[] contents, int size, byte[] fileChecksum) {
+        this(checksum, contents, 0, size, fileChecksum);
+    }
+
+    /*package*/ Chunk(byte[] checksum, byte[] contents, int offset, int size, byte[] fileChecksum) {
         this.checksum = checksum;
         this.contents = contents;
+        this.offset = offset;
         this.size = size;
         this.fileChecksum = fileChecksum;
     }
@@ -44,6 +54,13 @@ public class Chunk {
         return contents;
     }
 
+    /**
+     * Returns the position of the chunk's first byte in the {@link #getContent() content} array.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
     public byte[] getFileChecksum() {
         return fileChecksum;
     }
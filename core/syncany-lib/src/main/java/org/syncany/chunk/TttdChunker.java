@@ -22,6 +22,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,6 +51,16 @@ import java.util.logging.Logger;
  * breakpoints, TTTD simply cuts the chunk at the maximum chunk size. TTTD hence guarantees
  * to emit chunks with a minimum and maximum size.
  *
+ * <p>Note: Chunks without a <i>D</i> breakpoint are always cut at the maximum chunk size,
+ * i.e. the backup divisor <i>D'</i> is not used. This has always been the behavior of
+ * this implementation, and must not be changed, because it would change all chunk
+ * boundaries (and hence checksums) of existing repositories.
+ *
+ * <p>The enumeration reads the input in large blocks into a buffer (see {@link #BUFFER_SIZE}),
+ * and emits chunks as slices of this buffer. The buffer, the digests and the fingerprinter are
+ * reused for the next file once an enumeration is closed. A chunk's content is therefore only
+ * valid until the next chunk is requested.
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  * @see <a href="http://www.hpl.hp.com/techreports/2005/HPL-2005-30R1.html">Original TTTD paper: A framework for analyzing and improving content-based chunking algorithms</a>,
  *      2005, Kave Eshghi and Hsiu Khuern Tang
@@ -60,6 +71,7 @@ public class TttdChunker extends Chunker {
 	public static final int DEFAULT_WINDOW_SIZE = 48; // like LBFS
 	public static final String DEFAULT_DIGEST_ALG = "SHA1";
 	public static final String DEFAULT_FINGERPRINT_ALG = "Adler32";
+	public static final int BUFFER_SIZE = 1024 * 1024;
 
 	private int Tmin;
 	private int Tmax;
@@ -69,6 +81,7 @@ public class TttdChunker extends Chunker {
 	private String checksumAlgorithm;
 	private String fingerprintAlgorithm;
 	private String name;
+	private AtomicReference<TTTDState> unusedState;
 
 	public TttdChunker(int Tmin, int Tmax, int D, int Ddash, int windowSize) {
 		this(Tmin, Tmax, D, Ddash, windowSize, DEFAULT_DIGEST_ALG, DEFAULT_FINGERPRINT_ALG);
@@ -109,6 +122,7 @@ public class TttdChunker extends Chunker {
 		this.checksumAlgorithm = digestAlg;
 		this.fingerprintAlgorithm = fingerprintAlg;
 		this.name = name;
+		this.unusedState = new AtomicReference<TTTDState>();
 
 		if (windowSize > Tmin) {
 			throw new IllegalArgumentException("Window size must be smaller than Tmin.");
@@ -130,35 +144,65 @@ public class TttdChunker extends Chunker {
 		return name;
 	}
 
-	public class TTTDEnumeration implements ChunkEnumeration {
-		private InputStream in;
-		private boolean closed;
-		private byte[] c;
-		private int clen;
-		private int cpos;
+	/**
+	 * Returns the state of a previously closed enumeration, or creates a new one
+	 * if there is none (or if it is used by another enumeration).
+	 */
+	private TTTDState takeState() {
+		TTTDState state = unusedState.getAndSet(null);
+
+		if (state == null) {
+			state = new TTTDState();
+		}
 
+		state.fileDigest.reset();
+		return state;
+	}
+
+	/**
+	 * Holds the buffer, digests and fingerprinter of an enumeration, so they can be
+	 * reused by the next enumeration of this chunker.
+	 */
+	private class TTTDState {
+		private byte[] buffer;
 		private MessageDigest chunkDigest;
 		private MessageDigest fileDigest;
 		private Fingerprinter fingerprinter;
 
-		public TTTDEnumeration(InputStream in) throws IOException {
-			this.in = in;
-			this.closed = false;
-			this.c = new byte[8192];
-			this.clen = -1;
-			this.cpos = -1;
+		public TTTDState() {
+			this.buffer = new byte[Math.max(BUFFER_SIZE, 2 * Tmax)];
 
 			try {
 				fingerprinter = Fingerprinter.getInstance(fingerprintAlgorithm);
 				chunkDigest = MessageDigest.getInstance(checksumAlgorithm);
 				fileDigest = MessageDigest.getInstance(checksumAlgorithm);
-
-				fileDigest.reset();
 			}
 			catch (Exception e) {
 				throw new RuntimeException(e);
 			}
 		}
+	}
+
+	public class TTTDEnumeration implements ChunkEnumeration {
+		private InputStream in;
+		private boolean closed;
+		private boolean eof;
+
+		private TTTDState state;
+		private byte[] buffer;
+		private int position;
+		private int end;
+
+		public TTTDEnumeration(InputStream in) throws IOException {
+			this.in = in;
+			this.closed = false;
+			this.eof = false;
+
+			this.state = takeState();
+			this.buffer = state.buffer;
+			this.position = 0;
+			this.end = 0;
+		}
 
 		@Override
 		public boolean hasMoreElements() {
@@ -171,91 +215,31 @@ public class TttdChunker extends Chunker {
 				return null;
 			}
 
-			chunkDigest.reset();
-			fingerprinter.reset();
-
 			try {
-				int backupBreak = 0;
-				int breakpoint = -1;
-
-				byte[] buf = new byte[Tmax];
-				int bufpos = -1;
-
-				while (bufpos < buf.length - 1) {
-					if (cpos == -1 || cpos == clen - 1) {
-						cpos = -1;
-						clen = readFromInputStreamFixed(c, in);//in.read(c);
-
-						if (clen == -1) {
-							break;
-						}
-
-						fileDigest.update(c, 0, clen);
-					}
-
-					bufpos++;
-					cpos++;
-					buf[bufpos] = c[cpos];
-
-					if (bufpos < Tmin) {
-						continue;
-					}
-					else if (bufpos == Tmin) {
-						fingerprinter.check(buf, bufpos - windowSize, windowSize);
-					}
-					else {
-						fingerprinter.roll(buf[bufpos]);
-					}
-
-					int hash = fingerprinter.getValue();
-
-					// The value of r (right side) plays no role! #39  
-					if ((hash % Ddash) == Ddash - 1) {
-						backupBreak = bufpos;
-					}
-
-					if ((hash % D) == D - 1) {
-						breakpoint = bufpos;
-						break;
-					}
-
-					if (bufpos < Tmax) {
-						continue;
-					}
-
-					if (backupBreak != 0) {
-						breakpoint = backupBreak;
-						break;
-					}
-					else {
-						breakpoint = bufpos;
-						break;
-					}
-				}
+				ensureAvailable(Tmax);
+
+				int chunkStart = position;
+				int available = Math.min(Tmax, end - position);
+				int breakpoint = findBreakpoint(chunkStart, available);
 
-				// Close if this was the last bytes
-				if (clen == -1) {
+				int chunkSize = (breakpoint != -1) ? breakpoint - chunkStart + 1 : available;
+				byte[] fileChecksum = null;
+
+				// Close if this was the last bytes (no breakpoint, and less than Tmax bytes left)
+				if (breakpoint == -1 && available < Tmax) {
 					in.close();
 					closed = true;
-				}
 
-				// EOF as breakpoint
-				if (breakpoint == -1) {
-					breakpoint = bufpos;
+					fileChecksum = state.fileDigest.digest();
 				}
 
-				// Increase breakpoint
-				breakpoint++;
-
 				// Create chunk
-				chunkDigest.update(buf, 0, breakpoint);
+				state.chunkDigest.update(buffer, chunkStart, chunkSize);
+				byte[] chunkChecksum = state.chunkDigest.digest();
 
-				byte[] chunkChecksum = chunkDigest.digest();
-				byte[] chunkContents = buf;
-				int chunkSize = breakpoint;
-				byte[] fileChecksum = (clen == -1) ? fileDigest.digest() : null;
+				position += chunkSize;
 
-				return new Chunk(chunkChecksum, chunkContents, chunkSize, fileChecksum);
+				return new Chunk(chunkChecksum, buffer, chunkStart, chunkSize, fileChecksum);
 			}
 			catch (IOException ex) {
 				logger.log(Level.SEVERE, "Error while retrieving next chunk.", ex);
@@ -263,35 +247,83 @@ public class TttdChunker extends Chunker {
 			}
 		}
 
-		@Override
-		public void close() {
-			try {
-				in.close();
+		/**
+		 * Returns the index of the first byte in the given range for which the window fingerprint
+		 * is a breakpoint, or -1 if there is none. Only bytes after <tt>Tmin</tt> are checked. The
+		 * first fingerprint is computed over the window <i>before</i> the byte at <tt>Tmin</tt>.
+		 */
+		private int findBreakpoint(int chunkStart, int available) {
+			if (available <= Tmin) {
+				return -1;
 			}
-			catch (IOException e) {
-				logger.log(Level.INFO, "Error while closing", e);
+
+			Fingerprinter fingerprinter = state.fingerprinter;
+
+			fingerprinter.reset();
+			fingerprinter.check(buffer, chunkStart + Tmin - windowSize, windowSize);
+
+			int chunkEnd = chunkStart + available;
+
+			for (int i = chunkStart + Tmin; i < chunkEnd; i++) {
+				if (i > chunkStart + Tmin) {
+					fingerprinter.roll(buffer[i]);
+				}
+
+				// The value of r (right side) plays no role! #39
+				if ((fingerprinter.getValue() % D) == D - 1) {
+					return i;
+				}
 			}
+
+			return -1;
 		}
 
 		/**
-		 * Fixes the read errors occurring with Cipher streams in the standard
-		 * Java read implementation.
+		 * Reads from the input stream until at least the given number of bytes is available
+		 * in the buffer (or the end of the stream is reached). If the remaining space is too
+		 * small, the unprocessed bytes are moved to the beginning of the buffer first.
 		 */
-		private int readFromInputStreamFixed(byte[] readToBuffer, InputStream inputStream) throws IOException {
-			int bytesRead = 0;
+		private void ensureAvailable(int length) throws IOException {
+			if (eof || end - position >= length) {
+				return;
+			}
+
+			if (position + length > buffer.length) {
+				System.arraycopy(buffer, position, buffer, 0, end - position);
+
+				end -= position;
+				position = 0;
+			}
 
-			while (bytesRead < readToBuffer.length) {
-				int byteRead = inputStream.read();
+			while (end - position < length) {
+				int bytesRead = in.read(buffer, end, buffer.length - end);
 
-				if (byteRead == -1) {
-					return (bytesRead != 0) ? bytesRead : -1;
+				if (bytesRead == -1) {
+					eof = true;
+					break;
 				}
 
-				readToBuffer[bytesRead] = (byte) byteRead;
-				bytesRead++;
+				state.fileDigest.update(buffer, end, bytesRead);
+				end += bytesRead;
 			}
+		}
 
-			return (bytesRead != 0) ? bytesRead : -1;
+		@Override
+		public void close() {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				logger.log(Level.INFO, "Error while closing", e);
+			}
+
+			if (state != null) {
+				unusedState.set(state);
+
+				state = null;
+				buffer = null;
+				closed = true;
+			}
 		}
 	}
 }
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 
 /**
@@ -48,6 +49,7 @@ public class Cache {
     private static long DEFAULT_CACHE_KEEP_BYTES = 500*1024*1024;
 	private static String FILE_FORMAT_MULTICHUNK_ENCRYPTED = "multichunk-%s";
 	private static String FILE_FORMAT_MULTICHUNK_DECRYPTED = "multichunk-%s-decrypted";
+	private static String FILE_FORMAT_CHUNK_DECRYPTED = "chunk-%s-decrypted";
     private static String FILE_FORMAT_DATABASE_FILE_ENCRYPTED = "%s";
     
     private long keepBytes;
@@ -74,6 +76,14 @@ public class Cache {
     	return getFileInCache(FILE_FORMAT_MULTICHUNK_ENCRYPTED, multiChunkId.toString());
     }    
     
+    /**
+     * Returns a file path of a single decrypted chunk, given its checksum. Single
+     * chunks are stored if only some chunks of a multichunk were downloaded.
+     */
+    public File getDecryptedChunkFile(ChunkChecksum chunkChecksum) {
+    	return getFileInCache(FILE_FORMAT_CHUNK_DECRYPTED, chunkChecksum.toString());
+    }    
+
     /**
      * Returns a file path of a database remote file.
      */
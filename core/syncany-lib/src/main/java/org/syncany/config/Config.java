@@ -35,6 +35,7 @@ import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.database.VectorClock;
 import org.syncany.plugins.Plugins;
+import org.syncany.plugins.transfer.RetryPolicy;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
 import org.syncany.util.FileUtil;
@@ -88,6 +89,8 @@ public class Config {
 	private Cache cache;
 	private TransferPlugin plugin;
 	private TransferSettings transferSettings;
+	private long bandwidthLimit;
+	private RetryPolicy retryPolicy;
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
@@ -231,6 +234,12 @@ public class Config {
 				throw new ConfigException("Cannot initialize storage: " + e.getMessage(), e);
 			}
 		}
+
+		if (configTO.getBandwidthLimit() != null && configTO.getBandwidthLimit() > 0) {
+			bandwidthLimit = configTO.getBandwidthLimit();
+		}
+
+		retryPolicy = (configTO.getRetryPolicy() != null) ? configTO.getRetryPolicy() : new RetryPolicy();
 	}
 
 	public java.sql.Connection createDatabaseConnection() {
@@ -289,6 +298,26 @@ public class Config {
 		return cache;
 	}
 
+	/**
+	 * Returns the maximum number of bytes per second of bulk transfers
+	 * to the repository, or <tt>0</tt> if there is no limit.
+	 */
+	public long getBandwidthLimit() {
+		return bandwidthLimit;
+	}
+
+	public void setBandwidthLimit(long bandwidthLimit) {
+		this.bandwidthLimit = bandwidthLimit;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
 	public IgnoredFiles getIgnoredFiles() {
 		return ignoredFiles;
 	}
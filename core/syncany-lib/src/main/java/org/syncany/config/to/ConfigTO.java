@@ -30,6 +30,7 @@ import org.syncany.config.ConfigException;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.crypto.SaltedSecretKeyConverter;
 import org.syncany.plugins.transfer.EncryptedTransferSettingsConverter;
+import org.syncany.plugins.transfer.RetryPolicy;
 import org.syncany.plugins.transfer.TransferSettings;
 
 /**
@@ -63,6 +64,12 @@ public class ConfigTO {
 	@Element(name = "cacheKeepBytes", required = false)
 	private Long cacheKeepBytes;
 
+	@Element(name = "bandwidthLimit", required = false)
+	private Long bandwidthLimit;
+
+	@Element(name = "retryPolicy", required = false)
+	private RetryPolicy retryPolicy;
+
 	public static ConfigTO load(File file) throws ConfigException {
 		try {
 			Registry registry = new Registry();
@@ -144,4 +151,19 @@ public class ConfigTO {
 		this.cacheKeepBytes = cacheKeepBytes;
 	}
 
+	public Long getBandwidthLimit() {
+		return bandwidthLimit;
+	}
+
+	public void setBandwidthLimit(Long bandwidthLimit) {
+		this.bandwidthLimit = bandwidthLimit;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
 }
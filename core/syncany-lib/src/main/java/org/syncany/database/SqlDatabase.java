@@ -144,6 +144,14 @@ public class SqlDatabase {
 		applicationDao.writeCleanupTime(cleanupTime);		
 	}
 
+	public String getRemoteChangeToken() {
+		return applicationDao.getRemoteChangeToken();
+	}
+
+	public void writeRemoteChangeToken(String remoteChangeToken) {
+		applicationDao.writeRemoteChangeToken(remoteChangeToken);
+	}
+
 	public void deleteAll() {
 		applicationDao.deleteAll();
 	}
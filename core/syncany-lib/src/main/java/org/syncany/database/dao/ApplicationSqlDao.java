@@ -168,6 +168,14 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 		writeSetting("cleanupTime", "" + cleanupTime);
 	}
 
+	public String getRemoteChangeToken() {
+		return readSetting("remoteChangeToken");
+	}
+
+	public void writeRemoteChangeToken(String remoteChangeToken) {
+		writeSetting("remoteChangeToken", remoteChangeToken);
+	}
+
 	public Long readSettingAsLong(String key) {
 		try {
 			String strValue = readSetting(key);
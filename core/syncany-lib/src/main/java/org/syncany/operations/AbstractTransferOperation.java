@@ -25,10 +25,17 @@ import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.plugins.transfer.AdaptiveConcurrencyController;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
 import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.ScheduledTransferManager;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransactionAwareTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferMethodMetrics;
+import org.syncany.plugins.transfer.TransferMetrics;
+import org.syncany.plugins.transfer.TransferMetricsSnapshot;
+import org.syncany.plugins.transfer.TransferScheduler;
 import org.syncany.plugins.transfer.files.ActionRemoteFile;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
@@ -41,6 +48,12 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
  * <p>This abstract class offers convenience methods to handle {@link ActionRemoteFile} as well
  * as to handle the connection and local cache.
  *
+ * <p>If the operation is part of a sync cycle, it uses the transfer manager of the given
+ * {@link SyncCycleContext} instead of its own, and leaves the connection open when it finishes.
+ *
+ * <p>Calls to the transfer manager are counted and timed by an {@link InstrumentedTransferManager},
+ * and together with the phases recorded by the operation, returned as {@link OperationTimings}.
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public abstract class AbstractTransferOperation extends Operation {
@@ -60,16 +73,42 @@ public abstract class AbstractTransferOperation extends Operation {
 
 	protected LocalEventBus eventBus;
 
+	private SyncCycleContext syncCycleContext;
+	private TransferMetricsSnapshot transferMetricsAtStart;
+
+	private InstrumentedTransferManager instrumentedTransferManager;
+	private List<OperationTiming> transferTimingsAtStart;
+	private OperationTimings timings;
+
+	private boolean localDatabaseLocked;
+
 	public AbstractTransferOperation(Config config, String operationName) {
+		this(config, operationName, null);
+	}
+
+	public AbstractTransferOperation(Config config, String operationName, SyncCycleContext syncCycleContext) {
 		super(config);
 
 		this.eventBus = LocalEventBus.getInstance();
+		this.syncCycleContext = syncCycleContext;
+		this.transferMetricsAtStart = TransferMetrics.getInstance().snapshot();
 
 		// Do NOT reuse TransferManager for action file renewal; see #140
 
 		try {
 			this.actionHandler = new ActionFileHandler(createReliableTransferManager(config), operationName, config.getMachineName());
-			this.transferManager = createReliableTransferManager(config);
+
+			if (syncCycleContext != null) {
+				this.instrumentedTransferManager = syncCycleContext.getInstrumentedTransferManager();
+				this.transferManager = syncCycleContext.getTransferManager();
+			}
+			else {
+				this.instrumentedTransferManager = new InstrumentedTransferManager(createRetriableTransferManager(config));
+				this.transferManager = new TransactionAwareTransferManager(instrumentedTransferManager, config);
+			}
+
+			this.transferTimingsAtStart = instrumentedTransferManager.snapshot();
+			this.timings = new OperationTimings();
 		}
 		catch (StorageException e) {
 			logger.log(Level.SEVERE, "Unable to create AbstractTransferOperation: Unable to create TransferManager", e);
@@ -81,8 +120,58 @@ public abstract class AbstractTransferOperation extends Operation {
 		return new TransactionAwareTransferManager(createRetriableTransferManager(config), config);
 	}
 
-	private TransferManager createRetriableTransferManager(Config config) throws StorageException {
-		return new RetriableTransferManager(config.getTransferPlugin().createTransferManager(config.getConnection(), config));
+	/**
+	 * Creates the plugin transfer manager, wrapped in the decorators used by all transfer
+	 * operations, i.e. a {@link ScheduledTransferManager} and a {@link RetriableTransferManager}.
+	 * All transfer managers of a repository share the scheduler and the concurrency controller.
+	 */
+	static TransferManager createRetriableTransferManager(Config config) throws StorageException {
+		TransferManager pluginTransferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+		ScheduledTransferManager scheduledTransferManager = new ScheduledTransferManager(pluginTransferManager, TransferScheduler.getInstance(config));
+		AdaptiveConcurrencyController concurrencyController = AdaptiveConcurrencyController.getInstance(config,
+				scheduledTransferManager.getMaxConcurrentTransfers());
+
+		return new RetriableTransferManager(scheduledTransferManager, config.getRetryPolicy(), concurrencyController);
+	}
+
+	/**
+	 * Adds the duration of a phase of this operation to its {@link OperationTimings}, measured
+	 * from the given start time (as returned by {@link System#currentTimeMillis()}) until now.
+	 */
+	protected void recordPhase(String phase, long startTime) {
+		timings.addPhase(phase, System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * Returns the timing breakdown of this operation, i.e. the phases recorded so far and the
+	 * calls made to the transfer manager since the operation was created. If the operation is part of
+	 * a sync cycle, only the calls of this operation are included.
+	 */
+	protected OperationTimings getOperationTimings() {
+		timings.setTransfers(instrumentedTransferManager.snapshot(), transferTimingsAtStart);
+		return timings;
+	}
+
+	/**
+	 * Acquires the write lock of the local database (see {@link LocalFolderLocks}), unless the
+	 * operation holds it already. Operations call this method before their first change of the
+	 * local database, and {@link #unlockLocalDatabase()} after they commit or roll back.
+	 */
+	protected void lockLocalDatabase() {
+		if (!localDatabaseLocked) {
+			LocalFolderLocks.getInstance(config).getDatabaseLock().writeLock().lock();
+			localDatabaseLocked = true;
+		}
+	}
+
+	/**
+	 * Releases the write lock of the local database, if the operation holds it.
+	 */
+	protected void unlockLocalDatabase() {
+		if (localDatabaseLocked) {
+			LocalFolderLocks.getInstance(config).getDatabaseLock().writeLock().unlock();
+			localDatabaseLocked = false;
+		}
 	}
 
 	protected void startOperation() throws Exception {
@@ -95,6 +184,8 @@ public abstract class AbstractTransferOperation extends Operation {
 		cleanActionFiles();
 		disconnectTransferManager();
 		clearCache();
+
+		logTransferMetrics();
 	}
 
 	protected boolean otherRemoteOperationsRunning(String... operationIdentifiers) throws StorageException {
@@ -196,6 +287,11 @@ public abstract class AbstractTransferOperation extends Operation {
 	}
 
 	private void disconnectTransferManager() {
+		if (syncCycleContext != null) {
+			logger.log(Level.FINE, "Transfer manager is shared by sync cycle; not disconnecting.");
+			return;
+		}
+
 		try {
 			transferManager.disconnect();
 		}
@@ -204,6 +300,23 @@ public abstract class AbstractTransferOperation extends Operation {
 		}
 	}
 
+	/**
+	 * Writes a summary of the requests made by the transfer plugin since this operation
+	 * was created. In the daemon, other watched folders may sync at the same time, so
+	 * their requests can be included as well.
+	 */
+	private void logTransferMetrics() {
+		TransferMetricsSnapshot operationTransferMetrics = TransferMetrics.getInstance().snapshot().minus(transferMetricsAtStart);
+
+		if (!operationTransferMetrics.isEmpty()) {
+			logger.log(Level.INFO, "Transfer metrics of this operation:");
+
+			for (TransferMethodMetrics methodMetrics : operationTransferMetrics.getMethodMetrics()) {
+				logger.log(Level.INFO, "- " + methodMetrics);
+			}
+		}
+	}
+
 	private void clearCache() {
 		config.getCache().clear();
 	}
@@ -18,6 +18,7 @@
 package org.syncany.operations;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.security.MessageDigest;
@@ -110,9 +111,19 @@ public class Assembler {
 				}
 
 				File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkIdForChunk);
+				File decryptedChunkFile = config.getCache().getDecryptedChunkFile(chunkChecksum);
 
-				MultiChunk multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
-				InputStream chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
+				MultiChunk multiChunk = null;
+				InputStream chunkInputStream = null;
+
+				// Chunk might have been downloaded individually, see PartialMultiChunkDownloader
+				if (!decryptedMultiChunkFile.exists() && decryptedChunkFile.exists()) {
+					chunkInputStream = new FileInputStream(decryptedChunkFile);
+				}
+				else {
+					multiChunk = multiChunker.createMultiChunk(decryptedMultiChunkFile);
+					chunkInputStream = multiChunk.getChunkInputStream(chunkChecksum.getBytes());
+				}
 
 				byte[] buffer = new byte[4096];
 				int read = 0;
@@ -123,7 +134,10 @@ public class Assembler {
 				}
 
 				chunkInputStream.close();
-				multiChunk.close();
+
+				if (multiChunk != null) {
+					multiChunk.close();
+				}
 			}
 		}
 
@@ -23,22 +23,34 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.InFlightDownloads.DownloadTask;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.ParallelTransferExecutor;
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferTask;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 
 /**
  * The downloader uses a {@link TransferManager} to download a given set of multichunks,
- * decrypt them and store them in the local cache folder. 
+ * decrypt them and store them in the local cache folder. Concurrent downloads of the same
+ * multichunk (e.g. by a down operation and a restore) are merged by {@link InFlightDownloads}.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
@@ -48,70 +60,216 @@ public class Downloader {
 	private Config config;
 	private TransferManager transferManager;
 	private LocalEventBus eventBus;
+	private PartialMultiChunkDownloader partialDownloader;
 
 	public Downloader(Config config, TransferManager transferManager) {
 		this.config = config;
 		this.transferManager = transferManager;
 		this.eventBus = LocalEventBus.getInstance();
+		this.partialDownloader = new PartialMultiChunkDownloader(config, transferManager);
 	}
 
 	/** 
 	 * Downloads the given multichunks from the remote storage and decrypts them
-	 * to the local cache folder. 
+	 * to the local cache folder. If the transfer manager supports concurrent transfers,
+	 * multiple multichunks are downloaded and decrypted in parallel.
 	 */
 	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
 		logger.log(Level.INFO, "Downloading and extracting multichunks ...");
 
+		List<TransferTask> downloadTasks = new ArrayList<TransferTask>();
 		int multiChunkNumber = 0;
 
-		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
-			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
-			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
-			MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+		for (final MultiChunkId multiChunkId : unknownMultiChunkIds) {
+			final int currentMultiChunkNumber = ++multiChunkNumber;
+			final int totalMultiChunkCount = unknownMultiChunkIds.size();
 
-			multiChunkNumber++;
+			downloadTasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException, IOException {
+					downloadAndDecryptMultiChunk(multiChunkId, currentMultiChunkNumber, totalMultiChunkCount);
+				}
+			});
+		}
+
+		new ParallelTransferExecutor("Downloader", transferManager).execute(downloadTasks);
+		transferManager.disconnect();
+	}
+
+	/**
+	 * Downloads the given chunks from the remote storage to the local cache. If only a
+	 * small part of a multichunk is needed and the transfer manager and repository allow it,
+	 * only the needed chunks are downloaded (see {@link PartialMultiChunkDownloader}). All other
+	 * multichunks are downloaded and decrypted as a whole.
+	 *
+	 * <p>The {@link Assembler} reads chunks from either location.
+	 *
+	 * @param chunkMultiChunkIds Needed chunks, and the multichunks they are stored in
+	 * @return Returns the number of bytes saved by downloading only parts of multichunks
+	 */
+	public long downloadAndDecryptChunks(Map<ChunkChecksum, MultiChunkId> chunkMultiChunkIds) throws StorageException, IOException {
+		logger.log(Level.INFO, "Downloading and extracting chunks ...");
 
-			if (localDecryptedMultiChunkFile.exists()) {
-				logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
+		Map<MultiChunkId, Set<ChunkChecksum>> multiChunkChunks = new HashMap<MultiChunkId, Set<ChunkChecksum>>();
+
+		for (Map.Entry<ChunkChecksum, MultiChunkId> chunkMultiChunkId : chunkMultiChunkIds.entrySet()) {
+			Set<ChunkChecksum> chunkChecksums = multiChunkChunks.get(chunkMultiChunkId.getValue());
+
+			if (chunkChecksums == null) {
+				chunkChecksums = new HashSet<ChunkChecksum>();
+				multiChunkChunks.put(chunkMultiChunkId.getValue(), chunkChecksums);
 			}
-			else {
-				eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber,
-						unknownMultiChunkIds.size()));
 
-				logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
-				transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+			chunkChecksums.add(chunkMultiChunkId.getKey());
+		}
 
-				try {
-					logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
-					InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-					OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+		final boolean partialDownloadSupported = partialDownloader.isPartialDownloadSupported();
+		final AtomicLong savedBytes = new AtomicLong(0);
 
-					IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+		List<TransferTask> downloadTasks = new ArrayList<TransferTask>();
+		int multiChunkNumber = 0;
 
-					decryptedMultiChunkOutputStream.close();
-					multiChunkInputStream.close();
+		for (final Map.Entry<MultiChunkId, Set<ChunkChecksum>> multiChunk : multiChunkChunks.entrySet()) {
+			final int currentMultiChunkNumber = ++multiChunkNumber;
+			final int totalMultiChunkCount = multiChunkChunks.size();
 
+			downloadTasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException, IOException {
+					long multiChunkSavedBytes = -1;
+
+					if (partialDownloadSupported) {
+						multiChunkSavedBytes = downloadChunks(multiChunk.getKey(), multiChunk.getValue(), currentMultiChunkNumber, totalMultiChunkCount);
+					}
+
+					if (multiChunkSavedBytes >= 0) {
+						savedBytes.addAndGet(multiChunkSavedBytes);
+					}
+					else {
+						downloadAndDecryptMultiChunk(multiChunk.getKey(), currentMultiChunkNumber, totalMultiChunkCount);
+					}
 				}
-				catch (IOException e) {
-					// Security: Deleting the multichunk if the decryption/extraction failed is important!
-					//           If it is not deleted, the partially decrypted multichunk will reside in the
-					//           local cache and the next 'down' will try to use it. If this is the only
-					//           multichunk that has been tampered with, other changes might be applied to the 
-					//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
-
-					logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
-					localDecryptedMultiChunkFile.delete();
-
-					throw new IOException("Decryption/extraction of multichunk " + multiChunkId
-							+ " failed. The multichunk might have been tampered with!", e);
-				}
-				finally {
-					logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
-					localEncryptedMultiChunkFile.delete();
+			});
+		}
+
+		new ParallelTransferExecutor("Downloader", transferManager).execute(downloadTasks);
+		transferManager.disconnect();
+
+		logger.log(Level.INFO, "Downloading chunks finished; partial downloads saved " + savedBytes.get() + " bytes.");
+		return savedBytes.get();
+	}
+
+	/**
+	 * Downloads only the given chunks of a multichunk, unless the multichunk or all of the
+	 * chunks are already in the local cache. Returns the number of saved bytes, or -1 if the
+	 * multichunk has to be downloaded as a whole.
+	 */
+	private long downloadChunks(MultiChunkId multiChunkId, Set<ChunkChecksum> chunkChecksums, int multiChunkNumber, int totalMultiChunkCount)
+			throws StorageException, IOException {
+
+		if (config.getCache().getDecryptedMultiChunkFile(multiChunkId).exists()) {
+			return -1; // Handled by downloadAndDecryptMultiChunk()
+		}
+
+		Set<ChunkChecksum> missingChunkChecksums = new HashSet<ChunkChecksum>();
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			if (!config.getCache().getDecryptedChunkFile(chunkChecksum).exists()) {
+				missingChunkChecksums.add(chunkChecksum);
+			}
+		}
+
+		if (missingChunkChecksums.size() == 0) {
+			logger.log(Level.INFO, "  + All needed chunks of multichunk " + multiChunkId + " exist locally. No need to download them!");
+			return 0;
+		}
+
+		eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber,
+				totalMultiChunkCount));
+
+		try {
+			return partialDownloader.downloadChunks(multiChunkId, missingChunkChecksums);
+		}
+		catch (StorageFileNotFoundException e) {
+			logger.log(Level.INFO, "  + Multichunk " + multiChunkId + " not found; might be in a transaction. Downloading it as a whole.", e);
+			return -1;
+		}
+		catch (IOException e) {
+			logger.log(Level.WARNING, "  + Cannot extract chunks of multichunk " + multiChunkId + " (corrupt range?). Downloading it as a whole.", e);
+			return -1;
+		}
+	}
+
+	private void downloadAndDecryptMultiChunk(final MultiChunkId multiChunkId, int multiChunkNumber, int totalMultiChunkCount)
+			throws StorageException, IOException {
+
+		final File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+
+		if (localDecryptedMultiChunkFile.exists()) {
+			logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
+		}
+		else {
+			eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber,
+					totalMultiChunkCount));
+
+			// Other operations of this folder (e.g. a restore in the daemon) may need the same multichunk
+			InFlightDownloads.getInstance().download(localDecryptedMultiChunkFile, new DownloadTask() {
+				@Override
+				public void execute() throws StorageException, IOException {
+					if (localDecryptedMultiChunkFile.exists()) {
+						logger.log(Level.INFO, "  + Multichunk " + multiChunkId + " has just been downloaded. No need to download it again!");
+					}
+					else {
+						downloadAndDecryptMultiChunk(multiChunkId, localDecryptedMultiChunkFile);
+					}
 				}
+			});
+		}
+	}
+
+	/**
+	 * Downloads and decrypts a multichunk. The multichunk is decrypted to a temporary file
+	 * first, so that the decrypted multichunk file only appears in the cache once it is complete.
+	 */
+	private void downloadAndDecryptMultiChunk(MultiChunkId multiChunkId, File localDecryptedMultiChunkFile) throws StorageException, IOException {
+		File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		File tempDecryptedMultiChunkFile = config.getCache().createTempFile("multichunk");
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+		logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
+		transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+
+		try {
+			logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
+			InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
+			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(tempDecryptedMultiChunkFile);
+
+			IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+
+			decryptedMultiChunkOutputStream.close();
+			multiChunkInputStream.close();
+
+			if (!tempDecryptedMultiChunkFile.renameTo(localDecryptedMultiChunkFile) && !localDecryptedMultiChunkFile.exists()) {
+				throw new IOException("Cannot move decrypted multichunk " + multiChunkId + " to cache file " + localDecryptedMultiChunkFile);
 			}
 		}
+		catch (IOException e) {
+			// Security: Deleting the multichunk if the decryption/extraction failed is important!
+			//           If it is not deleted, the partially decrypted multichunk will reside in the
+			//           local cache and the next 'down' will try to use it. If this is the only
+			//           multichunk that has been tampered with, other changes might be applied to the 
+			//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
 
-		transferManager.disconnect();
+			logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
+			tempDecryptedMultiChunkFile.delete();
+
+			throw new IOException("Decryption/extraction of multichunk " + multiChunkId
+					+ " failed. The multichunk might have been tampered with!", e);
+		}
+		finally {
+			logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
+			localEncryptedMultiChunkFile.delete();
+			tempDecryptedMultiChunkFile.delete();
+		}
 	}
 }
@@ -0,0 +1,132 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.plugins.transfer.StorageException;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Process-wide registry of the downloads currently in progress, used to download
+ * each remote file only once if several threads need it at the same time (single-flight).
+ *
+ * <p>In the daemon, several operations of the same folder may run concurrently, e.g. a
+ * down operation and the requests of a client to restore or fetch files. If they need
+ * the same multichunk or database, the first thread downloads (and decrypts) it to the
+ * local cache, and all other threads wait for this download and use its cache file.
+ *
+ * <p>Downloads are identified by their target file in the local cache. Cache files are
+ * named after the remote file, and each folder has its own cache, so downloads of the
+ * same remote file for different folders are not merged.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class InFlightDownloads {
+	private static final Logger logger = Logger.getLogger(InFlightDownloads.class.getSimpleName());
+	private static final InFlightDownloads instance = new InFlightDownloads();
+
+	private final ConcurrentMap<String, SettableFuture<Void>> inFlightDownloads;
+
+	public InFlightDownloads() {
+		this.inFlightDownloads = new ConcurrentHashMap<String, SettableFuture<Void>>();
+	}
+
+	public static InFlightDownloads getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Runs the given download, unless a download of the same target file is already in
+	 * progress. In this case, the method waits for the other download to finish and
+	 * returns (or fails) with it.
+	 *
+	 * <p>The download must write its target file atomically, i.e. the file must only
+	 * appear once it is complete. Threads that find the file in the cache can then use it
+	 * without going through this method.
+	 *
+	 * @param targetFile Local cache file the download is written to
+	 * @param download Download to run if no other download of the file is in progress
+	 */
+	public void download(File targetFile, DownloadTask download) throws StorageException, IOException {
+		String key = targetFile.getAbsolutePath();
+
+		SettableFuture<Void> newDownload = SettableFuture.create();
+		SettableFuture<Void> inFlightDownload = inFlightDownloads.putIfAbsent(key, newDownload);
+
+		if (inFlightDownload != null) {
+			logger.log(Level.INFO, "  + Download of " + targetFile.getName() + " already in progress; waiting for it ...");
+			waitForDownload(targetFile, inFlightDownload);
+		}
+		else {
+			try {
+				download.execute();
+				newDownload.set(null);
+			}
+			catch (StorageException | IOException | RuntimeException e) {
+				newDownload.setException(e);
+				throw e;
+			}
+			finally {
+				if (!newDownload.isDone()) {
+					newDownload.setException(new IOException("Download of " + targetFile.getName() + " aborted"));
+				}
+
+				inFlightDownloads.remove(key, newDownload);
+			}
+		}
+	}
+
+	private void waitForDownload(File targetFile, SettableFuture<Void> inFlightDownload) throws StorageException, IOException {
+		try {
+			inFlightDownload.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting for download of " + targetFile.getName(), e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof StorageException) {
+				throw new StorageException("Concurrent download of " + targetFile.getName() + " failed: " + cause.getMessage(), cause);
+			}
+			else if (cause instanceof IOException) {
+				throw new IOException("Concurrent download of " + targetFile.getName() + " failed: " + cause.getMessage(), cause);
+			}
+			else {
+				throw new RuntimeException("Concurrent download of " + targetFile.getName() + " failed: " + cause.getMessage(), cause);
+			}
+		}
+	}
+
+	/**
+	 * A download of a single remote file to the local cache, run by
+	 * {@link InFlightDownloads#download(File, DownloadTask)}.
+	 */
+	public interface DownloadTask {
+		public void execute() throws StorageException, IOException;
+	}
+}
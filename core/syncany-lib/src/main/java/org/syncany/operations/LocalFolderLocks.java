@@ -0,0 +1,90 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.syncany.config.Config;
+
+/**
+ * Process-wide locks of a local folder. In the daemon, the requests of a client to fetch a
+ * file (see {@link org.syncany.operations.daemon.messages.GetFileFolderRequestHandler}) are
+ * served while the watch operation syncs the same folder. These locks keep the requests from
+ * seeing half-applied changes of the sync:
+ *
+ * <ul>
+ *  <li>The <b>database lock</b>: The down and cleanup operations, which remove entries from the
+ *      local database, hold the write lock from their first change of the database until they commit
+ *      or roll back. File requests hold the read lock while they read the local database.</li>
+ *  <li>The <b>download lock</b>: File requests hold the read lock while they download multichunks.
+ *      The cleanup operation holds the write lock while it deletes multichunks remotely, so that
+ *      the deletion waits for these downloads.</li>
+ * </ul>
+ *
+ * <p>To avoid deadlocks, the locks must always be acquired in this order: A file request acquires
+ * the download lock while it holds the database lock, and then releases the database lock; the
+ * cleanup acquires the download lock while it holds the database lock.
+ *
+ * <p>The locks only cover operations of this process; multichunks deleted by the cleanup of
+ * another client are still detected by the file request failing.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class LocalFolderLocks {
+	private static final ConcurrentMap<String, LocalFolderLocks> instances = new ConcurrentHashMap<String, LocalFolderLocks>();
+
+	private final ReadWriteLock databaseLock;
+	private final ReadWriteLock downloadLock;
+
+	public LocalFolderLocks() {
+		// Fair locks, so that a waiting sync is not starved by a series of file requests
+		this.databaseLock = new ReentrantReadWriteLock(true);
+		this.downloadLock = new ReentrantReadWriteLock(true);
+	}
+
+	/**
+	 * Returns the locks of the local folder of the given config. All operations of the same
+	 * folder get the same instance.
+	 */
+	public static LocalFolderLocks getInstance(Config config) {
+		String localDirKey = config.getLocalDir().getAbsolutePath();
+		LocalFolderLocks folderLocks = instances.get(localDirKey);
+
+		if (folderLocks == null) {
+			LocalFolderLocks newFolderLocks = new LocalFolderLocks();
+			folderLocks = instances.putIfAbsent(localDirKey, newFolderLocks);
+
+			if (folderLocks == null) {
+				folderLocks = newFolderLocks;
+			}
+		}
+
+		return folderLocks;
+	}
+
+	public ReadWriteLock getDatabaseLock() {
+		return databaseLock;
+	}
+
+	public ReadWriteLock getDownloadLock() {
+		return downloadLock;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
+
+/**
+ * Timing of a single entry of the {@link OperationTimings}, i.e. either of an operation
+ * phase (e.g. <tt>index</tt>), or of all calls of one transfer manager method (e.g.
+ * <tt>upload</tt>). For phases, the byte count is always zero.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class OperationTiming implements Comparable<OperationTiming> {
+	@Attribute(name = "name")
+	private String name;
+
+	@Element(name = "count")
+	private long count;
+
+	@Element(name = "failures")
+	private long failures;
+
+	@Element(name = "bytes")
+	private long bytes;
+
+	@Element(name = "millis")
+	private long millis;
+
+	public OperationTiming() {
+		// Required for serialization
+	}
+
+	public OperationTiming(String name, long count, long failures, long bytes, long millis) {
+		this.name = name;
+		this.count = count;
+		this.failures = failures;
+		this.bytes = bytes;
+		this.millis = millis;
+	}
+
+	/**
+	 * Returns the timing of the calls counted after the given (earlier)
+	 * timing of the same name was taken.
+	 */
+	public OperationTiming minus(OperationTiming earlier) {
+		return new OperationTiming(name, count - earlier.count, failures - earlier.failures, bytes - earlier.bytes, millis - earlier.millis);
+	}
+
+	/**
+	 * Returns the sum of this and the given timing of the same name.
+	 */
+	public OperationTiming plus(OperationTiming other) {
+		return new OperationTiming(name, count + other.count, failures + other.failures, bytes + other.bytes, millis + other.millis);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	@Override
+	public int compareTo(OperationTiming other) {
+		return name.compareTo(other.name);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d call(s), %d failed, %d bytes, %dms", name, count, failures, bytes, millis);
+	}
+}
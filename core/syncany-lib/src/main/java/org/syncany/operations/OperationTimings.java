@@ -0,0 +1,106 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simpleframework.xml.ElementList;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
+
+/**
+ * Timing breakdown of a single operation, returned in the operation result and
+ * sent to daemon clients with the end event of the operation.
+ *
+ * <p>The breakdown consists of the durations of the operation's phases (e.g. indexing,
+ * committing the remote transaction, or writing the local database), recorded by the operation
+ * itself, and of the calls made to the transfer manager, recorded by the
+ * {@link InstrumentedTransferManager}. Transfer calls are made during the phases, so both
+ * parts overlap and must not be added up.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class OperationTimings {
+	@ElementList(name = "phases", entry = "phase", required = false)
+	private ArrayList<OperationTiming> phases;
+
+	@ElementList(name = "transfers", entry = "transfer", required = false)
+	private ArrayList<OperationTiming> transfers;
+
+	public OperationTimings() {
+		this.phases = new ArrayList<OperationTiming>();
+		this.transfers = new ArrayList<OperationTiming>();
+	}
+
+	/**
+	 * Adds the duration of a phase. If the phase has been recorded before,
+	 * the duration is added to the existing entry.
+	 */
+	public synchronized void addPhase(String name, long durationMillis) {
+		OperationTiming phase = new OperationTiming(name, 1, 0, 0, durationMillis);
+
+		for (int i = 0; i < phases.size(); i++) {
+			if (phases.get(i).getName().equals(name)) {
+				phases.set(i, phases.get(i).plus(phase));
+				return;
+			}
+		}
+
+		phases.add(phase);
+	}
+
+	/**
+	 * Sets the transfer calls of this operation to the difference between the given current and
+	 * earlier snapshots of an {@link InstrumentedTransferManager}. Methods that have not been
+	 * called in between are omitted.
+	 */
+	public synchronized void setTransfers(List<OperationTiming> currentTransfers, List<OperationTiming> earlierTransfers) {
+		transfers.clear();
+
+		for (OperationTiming currentTransfer : currentTransfers) {
+			OperationTiming earlierTransfer = findTiming(earlierTransfers, currentTransfer.getName());
+			OperationTiming diffTransfer = (earlierTransfer != null) ? currentTransfer.minus(earlierTransfer) : currentTransfer;
+
+			if (diffTransfer.getCount() > 0) {
+				transfers.add(diffTransfer);
+			}
+		}
+	}
+
+	public synchronized List<OperationTiming> getPhases() {
+		return new ArrayList<OperationTiming>(phases);
+	}
+
+	public synchronized List<OperationTiming> getTransfers() {
+		return new ArrayList<OperationTiming>(transfers);
+	}
+
+	public synchronized boolean isEmpty() {
+		return phases.isEmpty() && transfers.isEmpty();
+	}
+
+	private OperationTiming findTiming(List<OperationTiming> timings, String name) {
+		for (OperationTiming timing : timings) {
+			if (timing.getName().equals(name)) {
+				return timing;
+			}
+		}
+
+		return null;
+	}
+}
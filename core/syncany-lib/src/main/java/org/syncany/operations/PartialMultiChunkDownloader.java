@@ -0,0 +1,430 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.IOUtils;
+import org.syncany.chunk.NoTransformer;
+import org.syncany.chunk.ZipMultiChunk;
+import org.syncany.chunk.ZipMultiChunker;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.plugins.transfer.RangeTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+
+/**
+ * The partial multichunk downloader downloads individual chunks of a remote
+ * multichunk using a {@link RangeTransferManager}, instead of the entire multichunk.
+ * Each downloaded chunk is stored in the local cache (see {@link org.syncany.config.Cache#getDecryptedChunkFile(ChunkChecksum)
+ * getDecryptedChunkFile()}), where the {@link Assembler} picks it up.
+ *
+ * <p>Partial downloads are only possible if the chunks can be located and read within the
+ * remote file, i.e. if the repository uses the {@link ZipMultiChunker} and no transformers
+ * ({@link NoTransformer}). Encrypted or compressed multichunks are transformed as a whole
+ * and must always be downloaded completely.
+ *
+ * <p>To locate the chunks, the downloader first fetches the tail of the remote ZIP file
+ * (end of central directory record and central directory), and then downloads the local
+ * entries of the needed chunks -- merging adjacent entries into a single range request.
+ * If the needed entries make up more than {@link #MAX_PARTIAL_DOWNLOAD_RATIO} of the
+ * multichunk, the partial download is not worth it and the multichunk should be downloaded
+ * as a whole.
+ *
+ * @see <a href="https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT">ZIP File Format Specification</a>
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class PartialMultiChunkDownloader {
+	private static final Logger logger = Logger.getLogger(PartialMultiChunkDownloader.class.getSimpleName());
+
+	/**
+	 * Maximum ratio of needed bytes to the size of the multichunk
+	 * for which a partial download is performed.
+	 */
+	public static final double MAX_PARTIAL_DOWNLOAD_RATIO = 0.25;
+
+	private static final int ZIP_TAIL_LENGTH = 64 * 1024;
+
+	private static final int ZIP_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int ZIP_END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+	private static final int ZIP_CENTRAL_DIRECTORY_ENTRY_SIGNATURE = 0x02014b50;
+	private static final int ZIP_CENTRAL_DIRECTORY_ENTRY_LENGTH = 46;
+	private static final int ZIP_LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int ZIP_LOCAL_HEADER_LENGTH = 30;
+	private static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+
+	private Config config;
+	private TransferManager transferManager;
+
+	public PartialMultiChunkDownloader(Config config, TransferManager transferManager) {
+		this.config = config;
+		this.transferManager = transferManager;
+	}
+
+	/**
+	 * Returns whether partial downloads are possible with the given config and transfer manager,
+	 * i.e. if the transfer manager supports range downloads, and the remote multichunks are
+	 * untransformed ZIP files.
+	 */
+	public boolean isPartialDownloadSupported() {
+		boolean rangeDownloadSupported = transferManager instanceof RangeTransferManager
+				&& ((RangeTransferManager) transferManager).isRangeDownloadSupported();
+
+		return rangeDownloadSupported && config.getTransformer() instanceof NoTransformer && config.getMultiChunker() instanceof ZipMultiChunker;
+	}
+
+	/**
+	 * Downloads the given chunks of a remote multichunk to the local cache, if the needed chunks
+	 * make up only a small part of the multichunk.
+	 *
+	 * @param multiChunkId Identifier of the remote multichunk
+	 * @param chunkChecksums Checksums of the needed chunks in this multichunk
+	 * @return Returns the number of bytes saved compared to downloading the entire multichunk,
+	 *         or <tt>-1</tt> if nothing was downloaded because a partial download is not possible or not worth it
+	 */
+	public long downloadChunks(MultiChunkId multiChunkId, Set<ChunkChecksum> chunkChecksums) throws StorageException, IOException {
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+		// Read central directory
+		byte[] zipTail = downloadRange(remoteMultiChunkFile, -ZIP_TAIL_LENGTH, ZIP_TAIL_LENGTH);
+		int endOfCentralDirectoryOffset = findEndOfCentralDirectory(zipTail);
+
+		if (endOfCentralDirectoryOffset < 0) {
+			logger.log(Level.INFO, "  + Multichunk " + multiChunkId + " is no (supported) ZIP file. Partial download not possible.");
+			return -1;
+		}
+
+		ByteBuffer endOfCentralDirectory = littleEndian(zipTail, endOfCentralDirectoryOffset, zipTail.length - endOfCentralDirectoryOffset);
+		long centralDirectoryLength = endOfCentralDirectory.getInt(12) & 0xFFFFFFFFL;
+		long centralDirectoryOffset = endOfCentralDirectory.getInt(16) & 0xFFFFFFFFL;
+
+		if (centralDirectoryOffset == ZIP64_MAGIC_VALUE || centralDirectoryLength == ZIP64_MAGIC_VALUE) {
+			logger.log(Level.INFO, "  + Multichunk " + multiChunkId + " is a ZIP64 file. Partial download not possible.");
+			return -1;
+		}
+
+		long multiChunkFileLength = centralDirectoryOffset + centralDirectoryLength + (zipTail.length - endOfCentralDirectoryOffset);
+		long downloadedBytes = zipTail.length;
+		byte[] centralDirectory;
+
+		if (endOfCentralDirectoryOffset >= centralDirectoryLength) {
+			int centralDirectoryOffsetInTail = (int) (endOfCentralDirectoryOffset - centralDirectoryLength);
+			centralDirectory = new byte[(int) centralDirectoryLength];
+
+			System.arraycopy(zipTail, centralDirectoryOffsetInTail, centralDirectory, 0, centralDirectory.length);
+		}
+		else {
+			centralDirectory = downloadRange(remoteMultiChunkFile, centralDirectoryOffset, centralDirectoryLength);
+			downloadedBytes += centralDirectory.length;
+		}
+
+		// Find needed entries, and check if it's worth it
+		List<ZipEntryLocation> entryLocations = readCentralDirectory(centralDirectory, centralDirectoryOffset);
+		List<ZipEntryRange> neededRanges = findNeededRanges(entryLocations, chunkChecksums);
+
+		if (neededRanges == null) {
+			logger.log(Level.INFO, "  + Not all needed chunks found in multichunk " + multiChunkId + ". Partial download not possible.");
+			return -1;
+		}
+
+		long neededBytes = 0;
+
+		for (ZipEntryRange neededRange : neededRanges) {
+			neededBytes += neededRange.length;
+		}
+
+		if (neededBytes > MAX_PARTIAL_DOWNLOAD_RATIO * multiChunkFileLength) {
+			logger.log(Level.INFO, "  + Needed chunks make up " + neededBytes + " of " + multiChunkFileLength + " bytes of multichunk " + multiChunkId
+					+ ". Partial download not worth it.");
+			return -1;
+		}
+
+		// Download and extract needed entries
+		logger.log(Level.INFO, "  + Downloading " + chunkChecksums.size() + " chunk(s) of multichunk " + multiChunkId + " in " + neededRanges.size()
+				+ " range(s) (" + neededBytes + " of " + multiChunkFileLength + " bytes) ...");
+
+		for (ZipEntryRange neededRange : neededRanges) {
+			byte[] rangeBytes = downloadRange(remoteMultiChunkFile, neededRange.offset, neededRange.length);
+			downloadedBytes += rangeBytes.length;
+
+			for (ZipEntryLocation entryLocation : neededRange.entries) {
+				extractEntry(rangeBytes, (int) (entryLocation.offset - neededRange.offset), entryLocation);
+			}
+		}
+
+		return Math.max(0, multiChunkFileLength - downloadedBytes);
+	}
+
+	private byte[] downloadRange(MultichunkRemoteFile remoteMultiChunkFile, long offset, long length) throws StorageException {
+		ByteArrayOutputStream rangeOutputStream = new ByteArrayOutputStream((int) length);
+		((RangeTransferManager) transferManager).download(remoteMultiChunkFile, offset, length, rangeOutputStream);
+
+		return rangeOutputStream.toByteArray();
+	}
+
+	/**
+	 * Returns the position of the end of central directory record in the given
+	 * ZIP file tail, or <tt>-1</tt> if the record cannot be found.
+	 */
+	private int findEndOfCentralDirectory(byte[] zipTail) {
+		ByteBuffer zipTailBuffer = littleEndian(zipTail, 0, zipTail.length);
+
+		for (int offset = zipTail.length - ZIP_END_OF_CENTRAL_DIRECTORY_LENGTH; offset >= 0; offset--) {
+			if (zipTailBuffer.getInt(offset) == ZIP_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				int commentLength = zipTailBuffer.getShort(offset + 20) & 0xFFFF;
+
+				if (offset + ZIP_END_OF_CENTRAL_DIRECTORY_LENGTH + commentLength == zipTail.length) {
+					return offset;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	private List<ZipEntryLocation> readCentralDirectory(byte[] centralDirectory, long centralDirectoryOffset) throws IOException {
+		List<ZipEntryLocation> entryLocations = new ArrayList<ZipEntryLocation>();
+		ByteBuffer centralDirectoryBuffer = littleEndian(centralDirectory, 0, centralDirectory.length);
+
+		int position = 0;
+
+		while (position + ZIP_CENTRAL_DIRECTORY_ENTRY_LENGTH <= centralDirectory.length) {
+			if (centralDirectoryBuffer.getInt(position) != ZIP_CENTRAL_DIRECTORY_ENTRY_SIGNATURE) {
+				throw new IOException("Invalid ZIP central directory entry at position " + position);
+			}
+
+			int method = centralDirectoryBuffer.getShort(position + 10) & 0xFFFF;
+			long compressedSize = centralDirectoryBuffer.getInt(position + 20) & 0xFFFFFFFFL;
+			int nameLength = centralDirectoryBuffer.getShort(position + 28) & 0xFFFF;
+			int extraLength = centralDirectoryBuffer.getShort(position + 30) & 0xFFFF;
+			int commentLength = centralDirectoryBuffer.getShort(position + 32) & 0xFFFF;
+			long localHeaderOffset = centralDirectoryBuffer.getInt(position + 42) & 0xFFFFFFFFL;
+
+			String name = new String(centralDirectory, position + ZIP_CENTRAL_DIRECTORY_ENTRY_LENGTH, nameLength, "UTF-8");
+			entryLocations.add(new ZipEntryLocation(name, method, localHeaderOffset, compressedSize));
+
+			position += ZIP_CENTRAL_DIRECTORY_ENTRY_LENGTH + nameLength + extraLength + commentLength;
+		}
+
+		// Entries end where the next entry (or the central directory) starts
+		Collections.sort(entryLocations, new Comparator<ZipEntryLocation>() {
+			@Override
+			public int compare(ZipEntryLocation entryLocation1, ZipEntryLocation entryLocation2) {
+				return Long.compare(entryLocation1.offset, entryLocation2.offset);
+			}
+		});
+
+		for (int i = 0; i < entryLocations.size(); i++) {
+			long nextOffset = (i + 1 < entryLocations.size()) ? entryLocations.get(i + 1).offset : centralDirectoryOffset;
+			entryLocations.get(i).length = nextOffset - entryLocations.get(i).offset;
+		}
+
+		return entryLocations;
+	}
+
+	/**
+	 * Returns the byte ranges of the entries of the given chunks, merging
+	 * adjacent entries into one range. Returns <tt>null</tt> if a chunk
+	 * cannot be found.
+	 */
+	private List<ZipEntryRange> findNeededRanges(List<ZipEntryLocation> entryLocations, Set<ChunkChecksum> chunkChecksums) {
+		Map<String, ZipEntryLocation> entryLocationsByName = new HashMap<String, ZipEntryLocation>();
+
+		for (ZipEntryLocation entryLocation : entryLocations) {
+			entryLocationsByName.put(entryLocation.name, entryLocation);
+		}
+
+		Set<ZipEntryLocation> neededEntryLocations = new HashSet<ZipEntryLocation>();
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			ZipEntryLocation entryLocation = entryLocationsByName.get(chunkChecksum.toString());
+
+			if (entryLocation == null) {
+				return null;
+			}
+
+			neededEntryLocations.add(entryLocation);
+		}
+
+		List<ZipEntryRange> neededRanges = new ArrayList<ZipEntryRange>();
+		ZipEntryRange currentRange = null;
+
+		for (ZipEntryLocation entryLocation : entryLocations) {
+			if (!neededEntryLocations.contains(entryLocation)) {
+				currentRange = null;
+			}
+			else if (currentRange == null) {
+				currentRange = new ZipEntryRange(entryLocation);
+				neededRanges.add(currentRange);
+			}
+			else {
+				currentRange.add(entryLocation);
+			}
+		}
+
+		return neededRanges;
+	}
+
+	/**
+	 * Extracts a single entry from the downloaded bytes, and writes it to the
+	 * local cache. The file is written to a temporary file first, so that other
+	 * threads never see an incomplete chunk file. Before it is moved to the cache,
+	 * the checksum of the extracted chunk is compared to the entry name, so that
+	 * a corrupt range never ends up in the cache.
+	 */
+	private void extractEntry(byte[] rangeBytes, int localHeaderOffset, ZipEntryLocation entryLocation) throws IOException {
+		ByteBuffer localHeader = littleEndian(rangeBytes, localHeaderOffset, ZIP_LOCAL_HEADER_LENGTH);
+
+		if (localHeader.getInt(0) != ZIP_LOCAL_HEADER_SIGNATURE) {
+			throw new IOException("Invalid ZIP local header for entry " + entryLocation.name);
+		}
+		else if (entryLocation.method != ZipEntry.DEFLATED && entryLocation.method != ZipEntry.STORED) {
+			throw new IOException("Unsupported ZIP compression method " + entryLocation.method + " for entry " + entryLocation.name);
+		}
+
+		int nameLength = localHeader.getShort(26) & 0xFFFF;
+		int extraLength = localHeader.getShort(28) & 0xFFFF;
+		int dataOffset = localHeaderOffset + ZIP_LOCAL_HEADER_LENGTH + nameLength + extraLength;
+
+		ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(entryLocation.name);
+		File decryptedChunkFile = config.getCache().getDecryptedChunkFile(chunkChecksum);
+		File tempChunkFile = config.getCache().createTempFile("chunk");
+
+		MessageDigest chunkDigest = createChunkDigest();
+		Inflater inflater = (entryLocation.method == ZipEntry.DEFLATED) ? new Inflater(true) : null;
+
+		try {
+			InputStream entryInputStream = new ByteArrayInputStream(rangeBytes, dataOffset, (int) entryLocation.compressedSize);
+
+			if (inflater != null) {
+				// A 'nowrap' inflater needs an extra dummy byte at the end of the input (see Inflater)
+				entryInputStream = new SequenceInputStream(entryInputStream, new ByteArrayInputStream(new byte[1]));
+				entryInputStream = new InflaterInputStream(entryInputStream, inflater);
+			}
+
+			OutputStream tempChunkOutputStream = new FileOutputStream(tempChunkFile);
+
+			try {
+				IOUtils.copy(new DigestInputStream(entryInputStream, chunkDigest), tempChunkOutputStream);
+			}
+			finally {
+				tempChunkOutputStream.close();
+			}
+		}
+		finally {
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+
+		if (!Arrays.equals(chunkDigest.digest(), chunkChecksum.getBytes())) {
+			tempChunkFile.delete();
+			throw new IOException("Checksum mismatch for chunk " + chunkChecksum + " of partially downloaded multichunk; chunk is corrupt.");
+		}
+
+		if (!tempChunkFile.renameTo(decryptedChunkFile) && !decryptedChunkFile.exists()) {
+			tempChunkFile.delete();
+			throw new IOException("Cannot move chunk " + chunkChecksum + " to cache file " + decryptedChunkFile);
+		}
+
+		tempChunkFile.delete();
+	}
+
+	private MessageDigest createChunkDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(config.getChunker().getChecksumAlgorithm());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException("Cannot create digest to verify chunks.", e);
+		}
+	}
+
+	private static ByteBuffer littleEndian(byte[] bytes, int offset, int length) {
+		return ByteBuffer.wrap(bytes, offset, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Location of a single entry within the remote {@link ZipMultiChunk}. The
+	 * length includes the local header and the data descriptor, if any.
+	 */
+	private static class ZipEntryLocation {
+		private String name;
+		private int method;
+		private long offset;
+		private long length;
+		private long compressedSize;
+
+		public ZipEntryLocation(String name, int method, long offset, long compressedSize) {
+			this.name = name;
+			this.method = method;
+			this.offset = offset;
+			this.compressedSize = compressedSize;
+		}
+	}
+
+	/**
+	 * Byte range of one or more adjacent entries within the remote {@link ZipMultiChunk}.
+	 */
+	private static class ZipEntryRange {
+		private long offset;
+		private long length;
+		private List<ZipEntryLocation> entries;
+
+		public ZipEntryRange(ZipEntryLocation firstEntry) {
+			this.offset = firstEntry.offset;
+			this.length = 0;
+			this.entries = new ArrayList<ZipEntryLocation>();
+
+			add(firstEntry);
+		}
+
+		public void add(ZipEntryLocation entry) {
+			length += entry.length;
+			entries.add(entry);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.operations.cleanup.CleanupOperation;
+import org.syncany.operations.down.DownOperation;
+import org.syncany.operations.up.UpOperation;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.SnapshotTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+
+/**
+ * The sync cycle context holds the transfer manager shared by the operations of a
+ * single sync cycle, i.e. a {@link DownOperation}, an {@link UpOperation} and a
+ * {@link CleanupOperation} run directly after each other. The operations use the same
+ * connection, and a single listing of most remote folders (see {@link SnapshotTransferManager}).
+ * Action and database files are always listed, so that, for instance, the check for unknown
+ * databases in the {@link UpOperation} sees databases uploaded since the {@link DownOperation}.
+ *
+ * <p>Since the operations share one {@link RetriableTransferManager}, they also share its
+ * circuit breaker: Once the storage is considered unavailable, the rest of the cycle fails
+ * immediately (see {@link org.syncany.plugins.transfer.RetryPolicy RetryPolicy}).
+ *
+ * <p>The context must be closed after the last operation of the cycle. Operations
+ * using the context do not disconnect the transfer manager themselves.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SyncCycleContext {
+	private static final Logger logger = Logger.getLogger(SyncCycleContext.class.getSimpleName());
+
+	private InstrumentedTransferManager instrumentedTransferManager;
+	private SnapshotTransferManager snapshotTransferManager;
+	private TransactionAwareTransferManager transferManager;
+
+	public SyncCycleContext(Config config) throws StorageException {
+		this.instrumentedTransferManager = new InstrumentedTransferManager(AbstractTransferOperation.createRetriableTransferManager(config));
+		this.snapshotTransferManager = new SnapshotTransferManager(instrumentedTransferManager);
+
+		this.transferManager = new TransactionAwareTransferManager(snapshotTransferManager, config);
+	}
+
+	public TransactionAwareTransferManager getTransferManager() {
+		return transferManager;
+	}
+
+	/**
+	 * Returns the instrumented transfer manager below the snapshot, so that only
+	 * calls that actually reach the remote storage are counted.
+	 */
+	public InstrumentedTransferManager getInstrumentedTransferManager() {
+		return instrumentedTransferManager;
+	}
+
+	/**
+	 * Disconnects the shared transfer manager and discards the remote snapshot.
+	 */
+	public void close() {
+		try {
+			snapshotTransferManager.close();
+		}
+		catch (StorageException e) {
+			logger.log(Level.FINE, "Could not disconnect the transfermanager", e);
+		}
+	}
+}
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +46,8 @@ import org.syncany.database.SqlDatabase;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.operations.AbstractTransferOperation;
+import org.syncany.operations.LocalFolderLocks;
+import org.syncany.operations.SyncCycleContext;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
 import org.syncany.operations.daemon.messages.CleanupEndSyncExternalEvent;
@@ -56,8 +59,10 @@ import org.syncany.operations.ls_remote.LsRemoteOperationResult;
 import org.syncany.operations.status.StatusOperation;
 import org.syncany.operations.status.StatusOperationResult;
 import org.syncany.operations.up.UpOperation;
+import org.syncany.plugins.transfer.MigratableTransferManager;
 import org.syncany.plugins.transfer.RemoteTransaction;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
@@ -111,7 +116,11 @@ public class CleanupOperation extends AbstractTransferOperation {
 	}
 
 	public CleanupOperation(Config config, CleanupOperationOptions options) {
-		super(config, ACTION_ID);
+		this(config, options, null);
+	}
+
+	public CleanupOperation(Config config, CleanupOperationOptions options, SyncCycleContext syncCycleContext) {
+		super(config, ACTION_ID, syncCycleContext);
 
 		this.options = options;
 		this.result = new CleanupOperationResult();
@@ -168,16 +177,25 @@ public class CleanupOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "Cleanup: Starting transaction.");
 		remoteTransaction = new RemoteTransaction(config, transferManager);
 
-		removeOldVersions();
+		try {
+			removeOldVersions();
 
-		if (options.isRemoveUnreferencedTemporaryFiles()) {
-			transferManager.removeUnreferencedTemporaryFiles();
-		}
+			if (options.isRemoveUnreferencedTemporaryFiles()) {
+				transferManager.removeUnreferencedTemporaryFiles();
+			}
 
-		mergeRemoteFiles();
+			if (options.isMigrateLayout()) {
+				migrateLayout();
+			}
 
-		// We went succesfully through the entire operation and checked everything. Hence we update the last cleanup time.
-		updateLastCleanupTime();
+			mergeRemoteFiles();
+
+			// We went succesfully through the entire operation and checked everything. Hence we update the last cleanup time.
+			updateLastCleanupTime();
+		}
+		finally {
+			unlockLocalDatabase();
+		}
 
 		finishOperation();
 		fireEndEvent();
@@ -193,7 +211,8 @@ public class CleanupOperation extends AbstractTransferOperation {
 	 * @return result The original result, with the relevant {@link CleanupResultCode}
 	 */
 	private CleanupOperationResult updateResultCode(CleanupOperationResult result) {
-		if (result.getMergedDatabaseFilesCount() > 0 || result.getRemovedMultiChunksCount() > 0 || result.getRemovedOldVersionsCount() > 0) {
+		if (result.getMergedDatabaseFilesCount() > 0 || result.getRemovedMultiChunksCount() > 0 || result.getRemovedOldVersionsCount() > 0
+				|| result.getMigratedRemoteFilesCount() > 0) {
 			result.setResultCode(CleanupResultCode.OK);
 		}
 		else {
@@ -245,6 +264,30 @@ public class CleanupOperation extends AbstractTransferOperation {
 		return CleanupResultCode.OK;
 	}
 
+	/**
+	 * Migrates the repository to the newest layout of the storage, if the transfer manager of the
+	 * plugin supports this (see {@link MigratableTransferManager}). Since the migration moves files
+	 * that other clients might be reading, it is only run while this operation holds the repository lock.
+	 */
+	private void migrateLayout() throws StorageException {
+		TransferManager pluginTransferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+
+		if (pluginTransferManager instanceof MigratableTransferManager) {
+			logger.log(Level.INFO, "Cleanup: Migrating repository to the newest storage layout ...");
+
+			try {
+				pluginTransferManager.connect();
+				result.setMigratedRemoteFilesCount(((MigratableTransferManager) pluginTransferManager).migrateLayout());
+			}
+			finally {
+				pluginTransferManager.disconnect();
+			}
+		}
+		else {
+			logger.log(Level.INFO, "Cleanup: Storage does not support layout migration; nothing to migrate.");
+		}
+	}
+
 	private boolean hasLocalChanges() throws Exception {
 		StatusOperationResult statusOperationResult = new StatusOperation(config, options.getStatusOptions()).execute();
 		return statusOperationResult.getChangeSet().hasChanges();
@@ -278,6 +321,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 				purgeBeforeFileVersions.size() });
 
 		// Local: First, remove file versions that are not longer needed
+		lockLocalDatabase();
 		localDatabase.removeSmallerOrEqualFileVersions(purgeBeforeFileVersions);
 		localDatabase.removeFileVersions(purgeFileVersions);
 
@@ -378,6 +422,11 @@ public class CleanupOperation extends AbstractTransferOperation {
 		return dirtyDatabaseVersions.hasNext(); // TODO [low] Is this a resource creeper?
 	}
 
+	/**
+	 * Checks whether other clients have uploaded databases that are not known locally. The check
+	 * deliberately uses its own transfer manager, so that it sees the current remote state even if
+	 * this operation uses the remote snapshot of a {@link SyncCycleContext}.
+	 */
 	private boolean hasRemoteChanges() throws Exception {
 		LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config).execute();
 		return lsRemoteOperationResult.getUnknownRemoteDatabases().size() > 0;
@@ -523,6 +572,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		logger.log(Level.INFO, "Writing new known databases table: " + newRemoteMergeDatabaseFiles);
 
+		lockLocalDatabase();
 		localDatabase.removeKnownDatabases();
 		localDatabase.writeKnownRemoteDatabases(newRemoteMergeDatabaseFiles);
 	}
@@ -530,10 +580,16 @@ public class CleanupOperation extends AbstractTransferOperation {
 	/**
 	 * This method finishes the merging of remote files, by attempting to commit the {@link RemoteTransaction}.
 	 * If this fails, it will roll back the local database.
+	 *
+	 * <p>The transaction deletes unused multichunks. It is committed while holding the download lock
+	 * (see {@link LocalFolderLocks}), so that the deletion waits for multichunk downloads of file requests.
 	 */
 	private void finishMerging() throws Exception {
 		updateCleanupFileInTransaction();
 
+		Lock downloadLock = LocalFolderLocks.getInstance(config).getDownloadLock().writeLock();
+		downloadLock.lock();
+
 		try {
 			logger.log(Level.INFO, "Cleanup: COMMITTING TX ...");
 
@@ -546,6 +602,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 			localDatabase.rollback();
 			throw e;
 		}
+		finally {
+			downloadLock.unlock();
+		}
 
 		logger.log(Level.INFO, "Cleanup: SUCCESS COMMITTING TX.");
 	}
@@ -593,6 +652,8 @@ public class CleanupOperation extends AbstractTransferOperation {
 		long newCleanupNumber = lastRemoteCleanupNumber + 1;
 
 		remoteTransaction.upload(newCleanupFile, new CleanupRemoteFile(newCleanupNumber));
+
+		lockLocalDatabase();
 		localDatabase.writeCleanupNumber(newCleanupNumber);
 	}
 
@@ -602,6 +663,7 @@ public class CleanupOperation extends AbstractTransferOperation {
 	 */
 	private void updateLastCleanupTime() throws SQLException {
 		// Set cleanup number locally
+		lockLocalDatabase();
 		localDatabase.writeCleanupTime(System.currentTimeMillis() / 1000);
 		localDatabase.commit();
 	}
@@ -41,6 +41,9 @@ public class CleanupOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private boolean removeUnreferencedTemporaryFiles = true;
 
+	@Element(required = false)
+	private boolean migrateLayout = false;
+
 	@Element(required = false)
 	private long minKeepDeletedSeconds = 30 * 24 * 60 * 60; // 30 days
 
@@ -89,6 +92,14 @@ public class CleanupOperationOptions implements OperationOptions {
 		this.removeUnreferencedTemporaryFiles = removeUnreferencedTemporaryFiles;
 	}
 
+	public boolean isMigrateLayout() {
+		return migrateLayout;
+	}
+
+	public void setMigrateLayout(boolean migrateLayout) {
+		this.migrateLayout = migrateLayout;
+	}
+
 	public void setMaxDatabaseFiles(int maxDatabaseFiles) {
 		this.maxDatabaseFiles = maxDatabaseFiles;
 	}
@@ -40,6 +40,9 @@ public class CleanupOperationResult implements OperationResult {
 	@Element(name = "removedMultiChunksSize", required = false)
 	private long removedMultiChunksSize;
 
+	@Element(name = "migratedRemoteFilesCount", required = false)
+	private int migratedRemoteFilesCount;
+
 	public CleanupOperationResult() {
 		this(CleanupResultCode.OK_NOTHING_DONE);
 	}
@@ -50,6 +53,7 @@ public class CleanupOperationResult implements OperationResult {
 		this.removedOldVersionsCount = 0;
 		this.removedMultiChunksCount = 0;
 		this.removedMultiChunksSize = 0L;
+		this.migratedRemoteFilesCount = 0;
 	}
 
 	public void setResultCode(CleanupResultCode resultCode) {
@@ -91,4 +95,12 @@ public class CleanupOperationResult implements OperationResult {
 	public void setRemovedMultiChunksSize(long removedMultiChunksSize) {
 		this.removedMultiChunksSize = removedMultiChunksSize;
 	}
+
+	public int getMigratedRemoteFilesCount() {
+		return migratedRemoteFilesCount;
+	}
+
+	public void setMigratedRemoteFilesCount(int migratedRemoteFilesCount) {
+		this.migratedRemoteFilesCount = migratedRemoteFilesCount;
+	}
 }
\ No newline at end of file
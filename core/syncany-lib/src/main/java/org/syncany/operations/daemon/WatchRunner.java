@@ -28,6 +28,7 @@ import org.syncany.config.LocalEventBus;
 import org.syncany.config.to.PortTO;
 import org.syncany.operations.daemon.messages.AlreadySyncingResponse;
 import org.syncany.operations.daemon.messages.BadRequestResponse;
+import org.syncany.operations.daemon.messages.GetFileFolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
@@ -117,16 +118,14 @@ public class WatchRunner {
 			logger.log(Level.INFO, "Received " + folderRequest);
 
 			try {
-				if (!watchOperation.isSyncRunning() && !watchOperation.isSyncRequested()) {
+				if (folderRequest instanceof GetFileFolderRequest) {
+					// File requests are served during a sync; they wait for the sync to finish
+					// changing the local database (see LocalFolderLocks)
+					handleRequest(folderRequest);
+				}
+				else if (!watchOperation.isSyncRunning() && !watchOperation.isSyncRequested()) {
 					watchOperation.pause();
-
-					FolderRequestHandler handler = FolderRequestHandler.createFolderRequestHandler(folderRequest, config);
-					Response response = handler.handleRequest(folderRequest);
-
-					if (response != null) {
-						eventBus.post(response);
-					}
-
+					handleRequest(folderRequest);
 					watchOperation.resume();
 				}
 				else {
@@ -140,4 +139,13 @@ public class WatchRunner {
 			}
 		}
 	}
+
+	private void handleRequest(FolderRequest folderRequest) throws Exception {
+		FolderRequestHandler handler = FolderRequestHandler.createFolderRequestHandler(folderRequest, config);
+		Response response = handler.handleRequest(folderRequest);
+
+		if (response != null) {
+			eventBus.post(response);
+		}
+	}
 }
@@ -19,6 +19,7 @@ package org.syncany.operations.daemon.messages;
 
 import org.simpleframework.xml.Element;
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.OperationTimings;
 import org.syncany.operations.down.DownOperationResult.DownResultCode;
 
 public class DownEndSyncExternalEvent extends SyncExternalEvent {
@@ -28,15 +29,19 @@ public class DownEndSyncExternalEvent extends SyncExternalEvent {
 	@Element(name = "changes", required = true)
 	private ChangeSet changes;
 
+	@Element(name = "timings", required = false)
+	private OperationTimings timings;
+
 	public DownEndSyncExternalEvent() {
 		// Nothing
 	}
 	
-	public DownEndSyncExternalEvent(String root, DownResultCode resultCode, ChangeSet changes) {
+	public DownEndSyncExternalEvent(String root, DownResultCode resultCode, ChangeSet changes, OperationTimings timings) {
 		super(root);
 		
 		this.resultCode = resultCode;
 		this.changes = changes;
+		this.timings = timings;
 	}
 	
 	public DownResultCode getResultCode() {
@@ -46,4 +51,8 @@ public class DownEndSyncExternalEvent extends SyncExternalEvent {
 	public ChangeSet getChanges() {
 		return changes;
 	}
-}
+
+	public OperationTimings getTimings() {
+		return timings;
+	}
+}
\ No newline at end of file
@@ -18,8 +18,8 @@
 package org.syncany.operations.daemon.messages;
 
 import java.io.File;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 
 import org.syncany.config.Config;
@@ -33,10 +33,14 @@ import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Assembler;
 import org.syncany.operations.Downloader;
+import org.syncany.operations.LocalFolderLocks;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
+import org.syncany.plugins.transfer.ScheduledTransferManager;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferPriority;
+import org.syncany.plugins.transfer.TransferScheduler;
 import org.syncany.util.StringUtil;
 
 public class GetFileFolderRequestHandler extends FolderRequestHandler {
@@ -58,17 +62,52 @@ public class GetFileFolderRequestHandler extends FolderRequestHandler {
 			FileHistoryId fileHistoryId = FileHistoryId.parseFileId(concreteRequest.getFileHistoryId());
 			long version = concreteRequest.getVersion();
 
-			FileVersion fileVersion = localDatabase.getFileVersion(fileHistoryId, version);
-			FileContent fileContent = localDatabase.getFileContent(fileVersion.getChecksum(), true);
-			Map<ChunkChecksum, MultiChunkId> multiChunks = localDatabase.getMultiChunkIdsByChecksums(fileContent.getChunks());
-
-			TransferManager transferManager = config.getTransferPlugin().createTransferManager(config.getConnection(), config);
+			// The user is waiting for this file; start its transfers before any other transfers of this repository
+			TransferManager transferManager = new ScheduledTransferManager(config.getTransferPlugin().createTransferManager(config.getConnection(),
+					config), TransferScheduler.getInstance(config), TransferPriority.INTERACTIVE);
 			Downloader downloader = new Downloader(config, transferManager);
 			Assembler assembler = new Assembler(config, localDatabase);
 
-			downloader.downloadAndDecryptMultiChunks(new HashSet<MultiChunkId>(multiChunks.values()));
+			LocalFolderLocks folderLocks = LocalFolderLocks.getInstance(config);
+			Lock databaseLock = folderLocks.getDatabaseLock().readLock();
+			Lock downloadLock = folderLocks.getDownloadLock().readLock();
+
+			FileVersion fileVersion;
+			Map<ChunkChecksum, MultiChunkId> multiChunks;
+
+			// A sync may be running; read the database while it is not changed, and keep a cleanup
+			// from deleting the multichunks until they are downloaded (see LocalFolderLocks)
+			databaseLock.lock();
+
+			try {
+				fileVersion = localDatabase.getFileVersion(fileHistoryId, version);
+				FileContent fileContent = localDatabase.getFileContent(fileVersion.getChecksum(), true);
+				multiChunks = localDatabase.getMultiChunkIdsByChecksums(fileContent.getChunks());
+
+				downloadLock.lock();
+			}
+			finally {
+				databaseLock.unlock();
+			}
+
+			try {
+				long savedBytes = downloader.downloadAndDecryptChunks(multiChunks);
+				logger.log(Level.INFO, "Downloaded chunks for file " + fileVersion.getPath() + "; partial downloads saved " + savedBytes + " bytes.");
+			}
+			finally {
+				downloadLock.unlock();
+			}
+
+			File tempFile;
+			databaseLock.lock();
+
+			try {
+				tempFile = assembler.assembleToCache(fileVersion);
+			}
+			finally {
+				databaseLock.unlock();
+			}
 
-			File tempFile = assembler.assembleToCache(fileVersion);
 			String tempFileToken = StringUtil.toHex(ObjectId.secureRandomBytes(40));
 			
 			GetFileFolderResponse fileResponse = new GetFileFolderResponse(concreteRequest.getId(), concreteRequest.getRoot(), tempFileToken);
@@ -19,6 +19,7 @@ package org.syncany.operations.daemon.messages;
 
 import org.simpleframework.xml.Element;
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.OperationTimings;
 import org.syncany.operations.up.UpOperationResult.UpResultCode;
 
 public class UpEndSyncExternalEvent extends SyncExternalEvent {
@@ -27,16 +28,20 @@ public class UpEndSyncExternalEvent extends SyncExternalEvent {
 	
 	@Element(name = "changes", required = true)
 	private ChangeSet changes;
+
+	@Element(name = "timings", required = false)
+	private OperationTimings timings;
 	
 	public UpEndSyncExternalEvent() {
 		// Nothing
 	}
 	
-	public UpEndSyncExternalEvent(String root, UpResultCode resultCode, ChangeSet changes) {
+	public UpEndSyncExternalEvent(String root, UpResultCode resultCode, ChangeSet changes, OperationTimings timings) {
 		super(root);
 		
 		this.resultCode = resultCode;
 		this.changes = changes;
+		this.timings = timings;
 	}
 	
 	public UpResultCode getResultCode() {
@@ -46,4 +51,8 @@ public class UpEndSyncExternalEvent extends SyncExternalEvent {
 	public ChangeSet getResult() {
 		return changes;
 	}
-}
+
+	public OperationTimings getTimings() {
+		return timings;
+	}
+}
\ No newline at end of file
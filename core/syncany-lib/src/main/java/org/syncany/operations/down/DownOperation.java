@@ -43,6 +43,9 @@ import org.syncany.database.VectorClock;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
+import org.syncany.operations.InFlightDownloads;
+import org.syncany.operations.InFlightDownloads.DownloadTask;
+import org.syncany.operations.SyncCycleContext;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.daemon.messages.DownChangesDetectedSyncExternalEvent;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
@@ -104,7 +107,11 @@ public class DownOperation extends AbstractTransferOperation {
 	}
 
 	public DownOperation(Config config, DownOperationOptions options) {
-		super(config, ACTION_ID);
+		this(config, options, null);
+	}
+
+	public DownOperation(Config config, DownOperationOptions options, SyncCycleContext syncCycleContext) {
+		super(config, ACTION_ID, syncCycleContext);
 
 		this.options = options;
 		this.result = new DownOperationResult();
@@ -148,57 +155,79 @@ public class DownOperation extends AbstractTransferOperation {
 		DatabaseBranch localBranch = localDatabase.getLocalDatabaseBranch();
 		List<DatabaseRemoteFile> newRemoteDatabases = result.getLsRemoteResult().getUnknownRemoteDatabases();
 
+		long downloadDatabasesStartTime = System.currentTimeMillis();
+
 		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(newRemoteDatabases);
 		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(unknownRemoteDatabasesInCache);
 		Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, unknownRemoteDatabasesInCache);
 
+		recordPhase("downloadDatabases", downloadDatabasesStartTime);
+
 		Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
 		boolean cleanupOccurred = cleanupOccurred(remoteCleanupFiles);
 
 		List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion = null;
 
-		if (cleanupOccurred) {
-			logger.log(Level.INFO, "Cleanup occurred. Capturing local file histories, then deleting entire database ...");
+		try {
+			if (cleanupOccurred) {
+				logger.log(Level.INFO, "Cleanup occurred. Capturing local file histories, then deleting entire database ...");
 
-			// Capture file histories
-			preDeleteFileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
+				// Capture file histories
+				preDeleteFileHistoriesWithLastVersion = localDatabase.getFileHistoriesWithLastVersion();
 
-			// Get rid of local database
-			localDatabase.deleteAll();
+				// Get rid of local database; file requests must not see the empty database (see LocalFolderLocks)
+				lockLocalDatabase();
+				localDatabase.deleteAll();
 
-			// Normally, we wouldn't want to commit in the middle of an operation, but unfortunately
-			// we have to, since not committing causes hanging in database operations, since UNCOMMITTED_READ
-			// does not do enough magic to proceed. The commit in itself is not a problem, since we need
-			// to redownload all remote data anyway.
-			localDatabase.commit();
+				// Normally, we wouldn't want to commit in the middle of an operation, but unfortunately
+				// we have to, since not committing causes hanging in database operations, since UNCOMMITTED_READ
+				// does not do enough magic to proceed. The commit in itself is not a problem, since we need
+				// to redownload all remote data anyway.
+				localDatabase.commit();
 
-			// Set last cleanup values
-			long lastRemoteCleanupNumber = getLastRemoteCleanupNumber(remoteCleanupFiles);
+				// Set last cleanup values
+				long lastRemoteCleanupNumber = getLastRemoteCleanupNumber(remoteCleanupFiles);
 
-			localDatabase.writeCleanupNumber(lastRemoteCleanupNumber);
-			localDatabase.writeCleanupTime(System.currentTimeMillis() / 1000);
+				localDatabase.writeCleanupNumber(lastRemoteCleanupNumber);
+				localDatabase.writeCleanupTime(System.currentTimeMillis() / 1000);
 
-			localBranch = new DatabaseBranch();
-		}
+				localBranch = new DatabaseBranch();
+			}
+
+			long reconcileStartTime = System.currentTimeMillis();
 
-		try {
 			DatabaseBranches allBranches = populateDatabaseBranches(localBranch, remoteDatabaseHeaders);
 			Map.Entry<String, DatabaseBranch> winnersBranch = determineWinnerBranch(allBranches);
 
 			purgeConflictingLocalBranch(localBranch, winnersBranch);
+			recordPhase("reconcile", reconcileStartTime);
+
+			long applyStartTime = System.currentTimeMillis();
+
 			applyWinnersBranch(localBranch, winnersBranch, databaseVersionLocations, cleanupOccurred,
 					preDeleteFileHistoriesWithLastVersion);
 
+			recordPhase("apply", applyStartTime);
+
+			long databaseStartTime = System.currentTimeMillis();
+
+			lockLocalDatabase();
+
 			persistMuddyMultiChunks(winnersBranch, allBranches, databaseVersionLocations);
 			removeNonMuddyMultiChunks();
 
 			localDatabase.writeKnownRemoteDatabases(newRemoteDatabases);
 			localDatabase.commit();
+
+			recordPhase("database", databaseStartTime);
 		}
 		catch (Exception e) {
 			localDatabase.rollback();
 			throw e;
 		}
+		finally {
+			unlockLocalDatabase();
+		}
 
 		finishOperation();
 		fireEndEvent();
@@ -216,7 +245,9 @@ public class DownOperation extends AbstractTransferOperation {
 	}
 
 	private void fireEndEvent() {
-		eventBus.post(new DownEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result.getResultCode(), result.getChangeSet()));
+		result.setTimings(getOperationTimings());
+		eventBus.post(new DownEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result.getResultCode(), result.getChangeSet(),
+				result.getTimings()));
 	}
 
 	/**
@@ -262,7 +293,12 @@ public class DownOperation extends AbstractTransferOperation {
 	 * Lists unknown/new remote databases using the {@link LsRemoteOperation}.
 	 */
 	private LsRemoteOperationResult listUnknownRemoteDatabases() throws Exception {
-		return new LsRemoteOperation(config, transferManager).execute();
+		long lsRemoteStartTime = System.currentTimeMillis();
+
+		LsRemoteOperationResult lsRemoteResult = new LsRemoteOperation(config, transferManager).execute();
+		recordPhase("lsRemote", lsRemoteStartTime);
+
+		return lsRemoteResult;
 	}
 
 	/**
@@ -286,7 +322,7 @@ public class DownOperation extends AbstractTransferOperation {
 			eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "database", ++downloadFileIndex,
 					unknownRemoteDatabases.size()));
 
-			transferManager.download(unknownDatabaseRemoteFile, unknownRemoteDatabaseFileInCache);
+			downloadDatabase(unknownDatabaseRemoteFile, unknownRemoteDatabaseFileInCache);
 
 			unknownRemoteDatabasesInCache.put(unknownRemoteDatabaseFileInCache, unknownDatabaseRemoteFile);
 			result.getDownloadedUnknownDatabases().add(remoteFile.getName());
@@ -295,6 +331,25 @@ public class DownOperation extends AbstractTransferOperation {
 		return unknownRemoteDatabasesInCache;
 	}
 
+	/**
+	 * Downloads a remote database to the local cache. If another operation of this folder is
+	 * downloading the same database at the same time, the method waits for this download instead
+	 * (see {@link InFlightDownloads}).
+	 */
+	private void downloadDatabase(final DatabaseRemoteFile remoteDatabaseFile, final File localDatabaseFile) throws StorageException {
+		try {
+			InFlightDownloads.getInstance().download(localDatabaseFile, new DownloadTask() {
+				@Override
+				public void execute() throws StorageException {
+					transferManager.download(remoteDatabaseFile, localDatabaseFile);
+				}
+			});
+		}
+		catch (IOException e) {
+			throw new StorageException("Unable to download database " + remoteDatabaseFile, e);
+		}
+	}
+
 	/**
 	 * Read the given database files into individual per-user {@link DatabaseBranch}es. This method only
 	 * reads the headers from the local database files, and not the entire databases into memory.
@@ -403,6 +458,7 @@ public class DownOperation extends AbstractTransferOperation {
 		else {
 			// Load dirty database (if existent)
 			logger.log(Level.INFO, "  + Marking databases as DIRTY locally ...");
+			lockLocalDatabase();
 
 			for (DatabaseVersionHeader databaseVersionHeader : localPurgeBranch.getAll()) {
 				logger.log(Level.INFO, "    * MASTER->DIRTY: " + databaseVersionHeader);
@@ -461,6 +517,8 @@ public class DownOperation extends AbstractTransferOperation {
 				logger.log(Level.INFO, "Doing nothing on the file system, because --no-apply switched on");
 			}
 
+			// Only lock the database now, so that file requests are served while the changes are applied
+			lockLocalDatabase();
 			persistDatabaseVersions(winnersApplyBranch, winnersDatabase);
 
 			result.setResultCode(DownResultCode.OK_WITH_REMOTE_CHANGES);
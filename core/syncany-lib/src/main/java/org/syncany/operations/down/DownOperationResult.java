@@ -26,6 +26,7 @@ import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.OperationResult;
+import org.syncany.operations.OperationTimings;
 import org.syncany.operations.ls_remote.LsRemoteOperationResult;
 
 public class DownOperationResult implements OperationResult {
@@ -39,6 +40,7 @@ public class DownOperationResult implements OperationResult {
 	private Set<String> downloadedUnknownDatabases = new HashSet<String>();
 	private Set<MultiChunkId> downloadedMultiChunks = new HashSet<MultiChunkId>();
 	private LsRemoteOperationResult lsRemoteResult = null;
+	private OperationTimings timings = new OperationTimings();
 
 	public DownResultCode getResultCode() {
 		return resultCode;
@@ -87,4 +89,12 @@ public class DownOperationResult implements OperationResult {
 	public void setLsRemoteResult(LsRemoteOperationResult lsRemoteResult) {
 		this.lsRemoteResult = lsRemoteResult;
 	}
+
+	public OperationTimings getTimings() {
+		return timings;
+	}
+
+	public void setTimings(OperationTimings timings) {
+		this.timings = timings;
+	}
 }
\ No newline at end of file
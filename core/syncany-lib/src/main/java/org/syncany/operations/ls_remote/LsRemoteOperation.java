@@ -17,6 +17,7 @@
  */
 package org.syncany.operations.ls_remote;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -29,9 +30,11 @@ import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Operation;
 import org.syncany.operations.daemon.messages.LsRemoteEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.LsRemoteStartSyncExternalEvent;
+import org.syncany.plugins.transfer.ChangeTokenTransferManager;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.util.StringUtil;
 
 /**
  * The list remote operation queries the transfer manager for any unknown 
@@ -41,10 +44,17 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
  * uses the local list of known databases to filter already processed files. The local
  * list of known databases is loaded.
  * 
+ * <p>If the transfer manager is a {@link ChangeTokenTransferManager}, the operation first
+ * retrieves the change token of the remote databases. If the token matches the one stored
+ * after the last listing that found no unknown databases, nothing has changed remotely and
+ * the (potentially expensive) list request is skipped. To not rely on the token alone, the
+ * remote databases are listed at least every {@link #FULL_LIST_INTERVAL} milliseconds.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class LsRemoteOperation extends Operation {
 	private static final Logger logger = Logger.getLogger(LsRemoteOperation.class.getSimpleName());
+	private static final long FULL_LIST_INTERVAL = 10 * 60 * 1000;
 
 	private TransferManager loadedTransferManager;
 	private SqlDatabase localDatabase;
@@ -75,7 +85,24 @@ public class LsRemoteOperation extends Operation {
 				: config.getTransferPlugin().createTransferManager(config.getConnection(), config);
 
 		List<DatabaseRemoteFile> knownDatabases = localDatabase.getKnownDatabases();
-		List<DatabaseRemoteFile> unknownRemoteDatabases = listUnknownRemoteDatabases(transferManager, knownDatabases);
+		List<DatabaseRemoteFile> unknownRemoteDatabases;
+
+		String remoteChangeToken = getRemoteChangeToken(transferManager, knownDatabases);
+		boolean remoteUnchanged = remoteChangeToken != null && remoteChangeToken.equals(localDatabase.getRemoteChangeToken());
+
+		if (remoteUnchanged) {
+			logger.log(Level.INFO, "Remote databases unchanged since last listing (change token {0}). Skipping list.", remoteChangeToken);
+			unknownRemoteDatabases = new ArrayList<DatabaseRemoteFile>();
+		}
+		else {
+			unknownRemoteDatabases = listUnknownRemoteDatabases(transferManager, knownDatabases);
+
+			// Only remember the token if all remote databases are known; otherwise they'd be skipped next time
+			if (remoteChangeToken != null && unknownRemoteDatabases.size() == 0) {
+				localDatabase.writeRemoteChangeToken(remoteChangeToken);
+				localDatabase.commit();
+			}
+		}
 
 		transferManager.disconnect();
 
@@ -85,6 +112,38 @@ public class LsRemoteOperation extends Operation {
 		return new LsRemoteOperationResult(new ArrayList<>(unknownRemoteDatabases));
 	}
 
+	/**
+	 * Retrieves the change token of the remote databases from the transfer manager (if it supports
+	 * it), and combines it with the number of known databases. That way, the token does not match
+	 * anymore if the list of known databases was reset locally, e.g. after a cleanup.
+	 *
+	 * <p>The token is also combined with the current {@link #FULL_LIST_INTERVAL} period, so that it
+	 * does not match anymore once a new period has started. That forces a full listing at regular
+	 * intervals, even if a server keeps returning the same token despite remote changes.
+	 *
+	 * <p>The result is hashed, so that it fits in the local database regardless of the token length.
+	 *
+	 * @return Returns the combined token, or <tt>null</tt> if the transfer manager cannot provide one
+	 */
+	private String getRemoteChangeToken(TransferManager transferManager, List<DatabaseRemoteFile> knownDatabases) throws Exception {
+		if (!(transferManager instanceof ChangeTokenTransferManager)) {
+			return null;
+		}
+
+		String changeToken = ((ChangeTokenTransferManager) transferManager).getChangeToken(DatabaseRemoteFile.class);
+
+		if (changeToken == null) {
+			logger.log(Level.INFO, "Transfer manager cannot provide change token for remote databases.");
+			return null;
+		}
+
+		long fullListPeriod = System.currentTimeMillis() / FULL_LIST_INTERVAL;
+		String combinedChangeToken = changeToken + "," + knownDatabases.size() + "," + fullListPeriod;
+		byte[] combinedChangeTokenHash = MessageDigest.getInstance("SHA1").digest(combinedChangeToken.getBytes("UTF-8"));
+
+		return StringUtil.toHex(combinedChangeTokenHash);
+	}
+
 	private List<DatabaseRemoteFile> listUnknownRemoteDatabases(TransferManager transferManager, List<DatabaseRemoteFile> knownDatabases)
 			throws StorageException {
 		logger.log(Level.INFO, "Retrieving remote database list.");
@@ -18,13 +18,14 @@
 package org.syncany.operations.restore;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.FileContent;
 import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileType;
@@ -82,8 +83,8 @@ public class RestoreOperation extends AbstractTransferOperation {
 
 		logger.log(Level.INFO, "Restore file identified: " + restoreFileVersion);
 		
-		// Download multichunks
-		downloadMultiChunks(restoreFileVersion);
+		// Download chunks
+		long savedBytes = downloadChunks(restoreFileVersion);
 		
 		// Restore file
 		logger.log(Level.INFO, "- Restoring: " + restoreFileVersion);
@@ -91,7 +92,10 @@ public class RestoreOperation extends AbstractTransferOperation {
 		RestoreFileSystemAction restoreAction = new RestoreFileSystemAction(config, restoreFileVersion, options.getRelativeTargetPath());
 		RestoreFileSystemActionResult restoreResult = restoreAction.execute();
 
-		return new RestoreOperationResult(RestoreResultCode.ACK, restoreResult.getTargetFile());
+		RestoreOperationResult result = new RestoreOperationResult(RestoreResultCode.ACK, restoreResult.getTargetFile());
+		result.setSavedBytes(savedBytes);
+		
+		return result;
 	}
 
 	private FileHistoryId findFileHistoryId() {
@@ -114,15 +118,24 @@ public class RestoreOperation extends AbstractTransferOperation {
 		}
 	}
 
-	private void downloadMultiChunks(FileVersion restoreFileVersion) throws StorageException, IOException {
-		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
+	/**
+	 * Downloads the chunks needed to restore the given file version. If the file only
+	 * needs a small part of a multichunk, only that part might be downloaded. 
+	 * 
+	 * @return Returns the number of bytes saved by downloading only parts of multichunks
+	 */
+	private long downloadChunks(FileVersion restoreFileVersion) throws StorageException, IOException {
 		FileChecksum restoreFileChecksum = restoreFileVersion.getChecksum();
 			
 		if (restoreFileChecksum != null) {
-			multiChunksToDownload.addAll(localDatabase.getMultiChunkIds(restoreFileChecksum));
+			FileContent restoreFileContent = localDatabase.getFileContent(restoreFileChecksum, true);
+			Map<ChunkChecksum, MultiChunkId> chunksToDownload = localDatabase.getMultiChunkIdsByChecksums(restoreFileContent.getChunks());
 
-			logger.log(Level.INFO, "Downloading " + multiChunksToDownload.size() + " multichunk(s) to restore file ...");
-			downloader.downloadAndDecryptMultiChunks(multiChunksToDownload);
+			logger.log(Level.INFO, "Downloading " + chunksToDownload.size() + " chunk(s) to restore file ...");
+			return downloader.downloadAndDecryptChunks(chunksToDownload);
+		}
+		else {
+			return 0;
 		}
 	}
 }
@@ -28,6 +28,7 @@ public class RestoreOperationResult implements OperationResult {
 	
 	private RestoreResultCode resultCode;
 	private File targetFile;
+	private long savedBytes;
 	
 	public RestoreOperationResult() {
 		// Nothing.
@@ -57,4 +58,16 @@ public class RestoreOperationResult implements OperationResult {
 	public void setTargetFile(File targetFile) {
 		this.targetFile = targetFile;
 	}
+	
+	/**
+	 * Returns the number of bytes that did not have to be downloaded,
+	 * because only the needed parts of multichunks were downloaded.
+	 */
+	public long getSavedBytes() {
+		return savedBytes;
+	}
+	
+	public void setSavedBytes(long savedBytes) {
+		this.savedBytes = savedBytes;
+	}
 }
\ No newline at end of file
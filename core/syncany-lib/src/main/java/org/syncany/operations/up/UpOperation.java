@@ -46,6 +46,7 @@ import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.ChangeSet;
+import org.syncany.operations.SyncCycleContext;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.daemon.messages.UpEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpStartSyncExternalEvent;
@@ -101,7 +102,11 @@ public class UpOperation extends AbstractTransferOperation {
 	}
 
 	public UpOperation(Config config, UpOperationOptions options) {
-		super(config, ACTION_ID);
+		this(config, options, null);
+	}
+
+	public UpOperation(Config config, UpOperationOptions options, SyncCycleContext syncCycleContext) {
+		super(config, ACTION_ID, syncCycleContext);
 
 		this.options = options;
 		this.result = new UpOperationResult();
@@ -174,7 +179,9 @@ public class UpOperation extends AbstractTransferOperation {
 			List<File> locallyUpdatedFiles = extractLocallyUpdatedFiles(localChanges);
 
 			// Index
+			long indexStartTime = System.currentTimeMillis();
 			newDatabaseVersion = index(locallyUpdatedFiles);
+			recordPhase("index", indexStartTime);
 
 			if (newDatabaseVersion.getFileHistories().size() == 0) {
 				logger.log(Level.INFO, "Local database is up-to-date. NOTHING TO DO!");
@@ -192,7 +199,9 @@ public class UpOperation extends AbstractTransferOperation {
 		}
 
 		// Create delta database and commit transaction
+		long deltaDatabaseStartTime = System.currentTimeMillis();
 		writeAndAddDeltaDatabase(newDatabaseVersion, resuming);
+		recordPhase("deltaDatabase", deltaDatabaseStartTime);
 
 		boolean committingFailed = true;
 
@@ -200,6 +209,8 @@ public class UpOperation extends AbstractTransferOperation {
 		// the transaction and metadata in memory such that the transaction can be resumed later.
 		Thread writeResumeFilesShutDownHook = createAndAddShutdownHook(newDatabaseVersion);
 
+		long commitStartTime = System.currentTimeMillis();
+
 		try {
 			if (!resuming) {
 				remoteTransaction.commit();
@@ -224,15 +235,21 @@ public class UpOperation extends AbstractTransferOperation {
 			if (committingFailed) {
 				serializeRemoteTransactionAndMetadata(newDatabaseVersion);
 			}
+
+			recordPhase("commit", commitStartTime);
 		}
 
 		// Save local database
+		long databaseStartTime = System.currentTimeMillis();
+
 		logger.log(Level.INFO, "Persisting local SQL database (new database version {0}) ...", newDatabaseVersion.getHeader().toString());
 		long newDatabaseVersionId = localDatabase.writeDatabaseVersion(newDatabaseVersion);
 
 		logger.log(Level.INFO, "Removing DIRTY database versions from database ...");
 		localDatabase.removeDirtyDatabaseVersions(newDatabaseVersionId);
 
+		recordPhase("database", databaseStartTime);
+
 		// Finish 'up' before 'cleanup' starts
 		finishOperation();
 
@@ -278,7 +295,9 @@ public class UpOperation extends AbstractTransferOperation {
 	}
 
 	private void fireEndEvent() {
-		eventBus.post(new UpEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result.getResultCode(), result.getChangeSet()));
+		result.setTimings(getOperationTimings());
+		eventBus.post(new UpEndSyncExternalEvent(config.getLocalDir().getAbsolutePath(), result.getResultCode(), result.getChangeSet(),
+				result.getTimings()));
 	}
 
 	/**
@@ -305,10 +324,14 @@ public class UpOperation extends AbstractTransferOperation {
 	 */
 	private boolean checkPreconditions() throws Exception {
 		// Find local changes
+		long statusStartTime = System.currentTimeMillis();
+
 		StatusOperation statusOperation = new StatusOperation(config, options.getStatusOptions());
 		StatusOperationResult statusOperationResult = statusOperation.execute();
 		ChangeSet localChanges = statusOperationResult.getChangeSet();
 
+		recordPhase("status", statusStartTime);
+
 		result.getStatusResult().setChangeSet(localChanges);
 
 		if (!localChanges.hasChanges()) {
@@ -328,7 +351,11 @@ public class UpOperation extends AbstractTransferOperation {
 
 		// Find remote changes (unless --force is enabled)
 		if (!options.forceUploadEnabled()) {
+			long lsRemoteStartTime = System.currentTimeMillis();
+
 			LsRemoteOperationResult lsRemoteOperationResult = new LsRemoteOperation(config, transferManager).execute();
+			recordPhase("lsRemote", lsRemoteStartTime);
+
 			List<DatabaseRemoteFile> unknownRemoteDatabases = lsRemoteOperationResult.getUnknownRemoteDatabases();
 
 			if (unknownRemoteDatabases.size() > 0) {
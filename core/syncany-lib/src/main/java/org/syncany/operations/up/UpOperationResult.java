@@ -19,6 +19,7 @@ package org.syncany.operations.up;
 
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.OperationResult;
+import org.syncany.operations.OperationTimings;
 import org.syncany.operations.status.StatusOperationResult;
 
 public class UpOperationResult implements OperationResult {
@@ -29,6 +30,7 @@ public class UpOperationResult implements OperationResult {
 	private UpResultCode resultCode;
 	private StatusOperationResult statusResult = new StatusOperationResult();
 	private ChangeSet uploadChangeSet = new ChangeSet();
+	private OperationTimings timings = new OperationTimings();
 
 	public UpResultCode getResultCode() {
 		return resultCode;
@@ -53,4 +55,12 @@ public class UpOperationResult implements OperationResult {
 	public ChangeSet getChangeSet() {
 		return uploadChangeSet;
 	}
+
+	public OperationTimings getTimings() {
+		return timings;
+	}
+
+	public void setTimings(OperationTimings timings) {
+		this.timings = timings;
+	}
 }
\ No newline at end of file
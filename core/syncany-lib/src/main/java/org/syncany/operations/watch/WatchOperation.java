@@ -33,6 +33,7 @@ import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.database.SqlDatabase;
 import org.syncany.operations.Operation;
+import org.syncany.operations.SyncCycleContext;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.cleanup.CleanupOperationResult;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
@@ -240,25 +241,31 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 
 			logger.log(Level.INFO, "RUNNING SYNC ...");
 			fireStartEvent();
+
+			SyncCycleContext syncCycleContext = null;
+
 			try {
 				boolean notifyChanges = false;
 
+				// Down, up and cleanup share one connection and one remote listing
+				syncCycleContext = new SyncCycleContext(config);
+
 				// Run down
-				DownOperationResult downResult = new DownOperation(config, options.getDownOptions()).execute();
+				DownOperationResult downResult = new DownOperation(config, options.getDownOptions(), syncCycleContext).execute();
 
 				if (downResult.getResultCode() == DownResultCode.OK_WITH_REMOTE_CHANGES) {
 					// TODO [low] Do something?
 				}
 
 				// Run up
-				UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions()).execute();
+				UpOperationResult upOperationResult = new UpOperation(config, options.getUpOptions(), syncCycleContext).execute();
 
 				if (upOperationResult.getResultCode() == UpResultCode.OK_CHANGES_UPLOADED && upOperationResult.getChangeSet().hasChanges()) {
 					upCount.incrementAndGet();
 					notifyChanges = true;
 				}
 
-				CleanupOperationResult cleanupOperationResult = new CleanupOperation(config, options.getCleanupOptions()).execute();
+				CleanupOperationResult cleanupOperationResult = new CleanupOperation(config, options.getCleanupOptions(), syncCycleContext).execute();
 
 				if (cleanupOperationResult.getResultCode() == CleanupResultCode.OK) {
 					notifyChanges = true;
@@ -270,6 +277,10 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 				}
 			}
 			finally {
+				if (syncCycleContext != null) {
+					syncCycleContext.close();
+				}
+
 				logger.log(Level.INFO, "SYNC DONE.");
 				syncRunning.set(false);
 				
@@ -0,0 +1,252 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+
+/**
+ * Controls how many requests are sent to the storage at the same time, and pauses
+ * all requests if the storage signals that it is overloaded.
+ *
+ * <p>The controller implements an AIMD scheme (additive increase, multiplicative decrease),
+ * similar to TCP congestion control: The window of concurrent requests grows slowly (by
+ * about one request per window of successful requests) as long as request latencies
+ * are stable, and it is cut if a request is throttled (see {@link StorageThrottledException})
+ * or if its latency grows far beyond the usual latency of this kind of request.
+ *
+ * <p>A throttled request also pauses all requests, either for the time demanded by the
+ * storage (e.g. via <tt>Retry-After</tt>), or for an exponentially growing, jittered
+ * backoff time.
+ *
+ * <p>All folders connected to the same repository share a controller (see {@link #getInstance(Config, int)}),
+ * so that the window limits the requests sent to the storage, not those of a single folder.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class AdaptiveConcurrencyController {
+	private static final Logger logger = Logger.getLogger(AdaptiveConcurrencyController.class.getSimpleName());
+
+	private static final double THROTTLED_DECREASE_FACTOR = 0.5;
+	private static final double LATENCY_DECREASE_FACTOR = 0.8;
+	private static final double LATENCY_GROWTH_THRESHOLD = 3.0;
+	private static final double LATENCY_SMOOTHING_FACTOR = 0.1;
+	private static final int LATENCY_MIN_SAMPLES = 5;
+	private static final long LATENCY_MIN_GROWTH_MILLIS = 200;
+
+	private static final long BACKOFF_BASE_MILLIS = 500;
+	private static final long BACKOFF_MAX_MILLIS = 60 * 1000;
+
+	private static final Random random = new Random();
+	private static final ConcurrentMap<String, AdaptiveConcurrencyController> instances = new ConcurrentHashMap<String, AdaptiveConcurrencyController>();
+
+	private final int maxConcurrency;
+	private final Map<String, LatencyBaseline> latencyBaselines;
+
+	private double window;
+	private int inFlight;
+	private long pausedUntil;
+	private int consecutiveThrottles;
+	private long lastDecreaseTime;
+
+	public AdaptiveConcurrencyController(int maxConcurrency) {
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+		this.latencyBaselines = new HashMap<String, LatencyBaseline>();
+
+		this.window = this.maxConcurrency;
+		this.inFlight = 0;
+		this.pausedUntil = 0;
+		this.consecutiveThrottles = 0;
+		this.lastDecreaseTime = 0;
+	}
+
+	/**
+	 * Returns the controller of the repository of the given config. Folders connected to
+	 * the same repository share a controller, the same way they share a {@link TransferScheduler}.
+	 * The maximum concurrency is only used if the controller does not exist yet.
+	 */
+	public static AdaptiveConcurrencyController getInstance(Config config, int maxConcurrency) {
+		String repositoryKey = TransferScheduler.getRepositoryKey(config);
+		AdaptiveConcurrencyController controller = instances.get(repositoryKey);
+
+		if (controller == null) {
+			instances.putIfAbsent(repositoryKey, new AdaptiveConcurrencyController(maxConcurrency));
+			controller = instances.get(repositoryKey);
+		}
+
+		return controller;
+	}
+
+	/**
+	 * Blocks until a request may be sent, i.e. until the controller is not paused
+	 * and fewer than {@link #getWindow()} requests are in flight. Each successful call
+	 * must be followed by a call to {@link #release()}.
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (true) {
+			long pauseMillis = pausedUntil - System.currentTimeMillis();
+
+			if (pauseMillis > 0) {
+				wait(pauseMillis);
+			}
+			else if (inFlight >= getWindow()) {
+				wait();
+			}
+			else {
+				inFlight++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Non-blocking variant of {@link #acquire()}: Returns <tt>true</tt> if a request may
+	 * be sent right away, and <tt>false</tt> otherwise. Each successful call must be
+	 * followed by a call to {@link #release()}.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (pausedUntil > System.currentTimeMillis() || inFlight >= getWindow()) {
+			return false;
+		}
+
+		inFlight++;
+		return true;
+	}
+
+	/**
+	 * Returns the time until the requests are no longer paused (in milliseconds),
+	 * or <tt>0</tt> if they are not paused.
+	 */
+	public synchronized long getPauseMillis() {
+		return Math.max(0, pausedUntil - System.currentTimeMillis());
+	}
+
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * Signals that a request completed successfully after the given time. Widens the
+	 * window if the latency is stable, or narrows it if the latency grows.
+	 */
+	public synchronized void onSuccess(String method, long latencyMillis) {
+		consecutiveThrottles = 0;
+
+		LatencyBaseline latencyBaseline = latencyBaselines.get(method);
+
+		if (latencyBaseline == null) {
+			latencyBaselines.put(method, latencyBaseline = new LatencyBaseline());
+		}
+
+		boolean latencyGrowing = latencyBaseline.isGrowing(latencyMillis);
+		latencyBaseline.update(latencyMillis);
+
+		if (latencyGrowing) {
+			decreaseWindow(LATENCY_DECREASE_FACTOR, latencyBaseline.average, "latency of " + method + " grew to " + latencyMillis + "ms");
+		}
+		else if (window < maxConcurrency) {
+			window = Math.min(maxConcurrency, window + 1 / window);
+		}
+
+		notifyAll();
+	}
+
+	/**
+	 * Signals that a request was throttled by the storage. Narrows the window and pauses
+	 * all requests for the given time, or for an exponential backoff time if the storage
+	 * did not demand a specific time (<tt>retryAfterMillis</tt> is negative).
+	 *
+	 * @return The time the requests are paused (in milliseconds)
+	 */
+	public synchronized long onThrottled(long retryAfterMillis) {
+		consecutiveThrottles++;
+
+		long backoffMillis = getBackoffMillis(BACKOFF_BASE_MILLIS, consecutiveThrottles);
+		long pauseMillis = Math.min(BACKOFF_MAX_MILLIS, Math.max(retryAfterMillis, backoffMillis));
+
+		// All in-flight requests are likely throttled at once; decrease only once per pause
+		if (System.currentTimeMillis() >= pausedUntil) {
+			decreaseWindow(THROTTLED_DECREASE_FACTOR, 0, "storage throttled request");
+		}
+
+		pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + pauseMillis);
+		logger.log(Level.INFO, "Storage throttled request (" + consecutiveThrottles + " time(s) in a row); pausing requests for " + pauseMillis + "ms.");
+
+		notifyAll();
+		return pauseMillis;
+	}
+
+	/**
+	 * Returns the current number of requests that may be in flight at the same time.
+	 */
+	public synchronized int getWindow() {
+		return (int) window;
+	}
+
+	/**
+	 * Returns an exponentially growing backoff time for the given attempt (starting at 1),
+	 * with "equal jitter": at least half of the exponential time, plus a random part.
+	 */
+	public static long getBackoffMillis(long baseMillis, int attempt) {
+		long exponentialMillis = Math.min(BACKOFF_MAX_MILLIS, baseMillis * (1L << Math.min(20, Math.max(0, attempt - 1))));
+		long halfMillis = exponentialMillis / 2;
+
+		return halfMillis + (long) (random.nextDouble() * (exponentialMillis - halfMillis));
+	}
+
+	private void decreaseWindow(double factor, double minIntervalMillis, String reason) {
+		long now = System.currentTimeMillis();
+
+		if (now - lastDecreaseTime >= minIntervalMillis) {
+			double newWindow = Math.max(1, window * factor);
+
+			if ((int) newWindow < (int) window) {
+				logger.log(Level.INFO, "Reducing concurrent requests from " + (int) window + " to " + (int) newWindow + "; " + reason + ".");
+			}
+
+			window = newWindow;
+			lastDecreaseTime = now;
+		}
+	}
+
+	/**
+	 * Exponentially weighted moving average of the latency of one kind of request.
+	 */
+	private static class LatencyBaseline {
+		private double average = 0;
+		private int samples = 0;
+
+		public boolean isGrowing(long latencyMillis) {
+			return samples >= LATENCY_MIN_SAMPLES && latencyMillis > LATENCY_GROWTH_THRESHOLD * average
+					&& latencyMillis - average > LATENCY_MIN_GROWTH_MILLIS;
+		}
+
+		public void update(long latencyMillis) {
+			average = (samples == 0) ? latencyMillis : (1 - LATENCY_SMOOTHING_FACTOR) * average + LATENCY_SMOOTHING_FACTOR * latencyMillis;
+			samples++;
+		}
+	}
+}
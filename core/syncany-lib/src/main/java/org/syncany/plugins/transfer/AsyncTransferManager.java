@@ -0,0 +1,69 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.util.Map;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Optional capability of a {@link TransferManager}: Non-blocking variants of the transfer
+ * methods. Each method returns immediately with a {@link ListenableFuture}, so that callers
+ * can have many requests in flight, and chain follow-up work to their completion.
+ *
+ * <p>The methods never throw; if a request fails, its future fails with the
+ * {@link StorageException} the blocking method would have thrown.
+ *
+ * <p>Transfer managers that do not implement this interface can be wrapped with an
+ * {@link AsyncTransferManagerAdapter}, which runs the blocking methods in a bounded
+ * thread pool (see {@link AsyncTransferManagerAdapter#adapt(TransferManager)}). Plugins
+ * with a non-blocking client can implement the interface themselves. The decorators
+ * {@link RetriableTransferManager} and {@link TransactionAwareTransferManager} implement it
+ * as well, on top of either the plugin's own implementation or the adapter.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface AsyncTransferManager {
+	/**
+	 * Non-blocking variant of {@link TransferManager#upload(File, RemoteFile)}.
+	 */
+	public ListenableFuture<Void> uploadAsync(File localFile, RemoteFile remoteFile);
+
+	/**
+	 * Non-blocking variant of {@link TransferManager#download(RemoteFile, File)}.
+	 */
+	public ListenableFuture<Void> downloadAsync(RemoteFile remoteFile, File localFile);
+
+	/**
+	 * Non-blocking variant of {@link TransferManager#move(RemoteFile, RemoteFile)}.
+	 */
+	public ListenableFuture<Void> moveAsync(RemoteFile sourceFile, RemoteFile targetFile);
+
+	/**
+	 * Non-blocking variant of {@link TransferManager#delete(RemoteFile)}.
+	 */
+	public ListenableFuture<Boolean> deleteAsync(RemoteFile remoteFile);
+
+	/**
+	 * Non-blocking variant of {@link TransferManager#list(Class)}.
+	 */
+	public <T extends RemoteFile> ListenableFuture<Map<String, T>> listAsync(Class<T> remoteFileClass);
+}
@@ -0,0 +1,136 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferThreadFactory;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Default implementation of the {@link AsyncTransferManager} capability for transfer
+ * managers with blocking methods only. Each call is run in a bounded thread pool: Up to
+ * {@link ConcurrentTransferManager#getMaxConcurrentTransfers()} calls run at the same time;
+ * transfer managers that are not thread-safe are only ever called from one thread at a time.
+ * Further calls wait in the pool's queue.
+ *
+ * <p>The pool threads are daemon threads, and terminate after being idle for a while,
+ * so the adapter does not need to be closed.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class AsyncTransferManagerAdapter implements AsyncTransferManager {
+	private static final int THREAD_KEEP_ALIVE_SECONDS = 30;
+
+	private TransferManager transferManager;
+	private ListeningExecutorService executorService;
+
+	public AsyncTransferManagerAdapter(TransferManager transferManager) {
+		this.transferManager = transferManager;
+		this.executorService = createExecutorService("AsyncTM", ParallelTransferExecutor.getMaxConcurrentTransfers(transferManager));
+	}
+
+	/**
+	 * Returns the given transfer manager if it implements the {@link AsyncTransferManager}
+	 * capability itself, or wraps it in an adapter otherwise.
+	 */
+	public static AsyncTransferManager adapt(TransferManager transferManager) {
+		if (transferManager instanceof AsyncTransferManager) {
+			return (AsyncTransferManager) transferManager;
+		}
+		else {
+			return new AsyncTransferManagerAdapter(transferManager);
+		}
+	}
+
+	/**
+	 * Creates a thread pool with up to the given number of (daemon) threads, which
+	 * terminate after being idle for a while, and an unbounded queue.
+	 */
+	public static ListeningExecutorService createExecutorService(String name, int maxThreads) {
+		int threadCount = Math.max(1, maxThreads);
+
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new TransferThreadFactory(name));
+
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
+		return MoreExecutors.listeningDecorator(threadPoolExecutor);
+	}
+
+	@Override
+	public ListenableFuture<Void> uploadAsync(final File localFile, final RemoteFile remoteFile) {
+		return executorService.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws StorageException {
+				transferManager.upload(localFile, remoteFile);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Void> downloadAsync(final RemoteFile remoteFile, final File localFile) {
+		return executorService.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws StorageException {
+				transferManager.download(remoteFile, localFile);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Void> moveAsync(final RemoteFile sourceFile, final RemoteFile targetFile) {
+		return executorService.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws StorageException {
+				transferManager.move(sourceFile, targetFile);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Boolean> deleteAsync(final RemoteFile remoteFile) {
+		return executorService.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws StorageException {
+				return transferManager.delete(remoteFile);
+			}
+		});
+	}
+
+	@Override
+	public <T extends RemoteFile> ListenableFuture<Map<String, T>> listAsync(final Class<T> remoteFileClass) {
+		return executorService.submit(new Callable<Map<String, T>>() {
+			@Override
+			public Map<String, T> call() throws StorageException {
+				return transferManager.list(remoteFileClass);
+			}
+		});
+	}
+}
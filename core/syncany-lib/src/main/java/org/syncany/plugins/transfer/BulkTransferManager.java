@@ -0,0 +1,81 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * Optional capability of a {@link TransferManager}. Transfer managers implementing
+ * this interface can delete or move many remote files with a single call, e.g. using
+ * a batch request of the storage.
+ *
+ * <p>Callers should not use this interface directly, but the {@link BulkTransferManagerAdapter}
+ * (see {@link BulkTransferManagerAdapter#adapt(TransferManager)}), which falls back to
+ * deleting or moving one file after the other if the transfer manager does not support
+ * bulk transfers.
+ *
+ * <p>Transfer managers without batch requests should not implement this interface by sending
+ * many single requests: The decorators would count such a call as one request, e.g. take only one
+ * slot of the {@link TransferScheduler}. The adapter sends each single request through the decorators instead.
+ *
+ * <p>Decorators such as the {@link RetriableTransferManager} and the {@link TransactionAwareTransferManager}
+ * implement this interface as well, and pass the calls to the underlying transfer manager through.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface BulkTransferManager {
+	/**
+	 * Returns whether the underlying transfer manager supports bulk transfers. Decorators
+	 * implement this interface regardless of the underlying transfer manager, so callers
+	 * must check this method before calling {@link #delete(Collection) delete()} or
+	 * {@link #move(Map) move()}.
+	 */
+	public boolean isBulkTransferSupported();
+
+	/**
+	 * Deletes the given remote files. Files that do not exist are ignored, like
+	 * in {@link TransferManager#delete(RemoteFile)}.
+	 *
+	 * <p>If the method fails, some of the files might have been deleted already. Since
+	 * deleting is idempotent, the method can simply be called again. Implementations should
+	 * throw a {@link StorageBulkException} that tells which files were deleted, if they know.
+	 *
+	 * @param remoteFiles Remote files to delete
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc.
+	 */
+	public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException;
+
+	/**
+	 * Moves each of the given source files to its target file, like
+	 * {@link TransferManager#move(RemoteFile, RemoteFile)}.
+	 *
+	 * <p>If a source file does not exist, a {@link StorageMoveException} is thrown. If the
+	 * method fails, some of the files might have been moved already. Implementations should
+	 * throw a {@link StorageBulkException} that tells which files were moved, if they know;
+	 * otherwise, the {@link RetriableTransferManager} cannot retry the method.
+	 *
+	 * @param sourceTargetFiles Map of existing source files to their target files
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc.
+	 */
+	public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException;
+}
@@ -0,0 +1,132 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Default implementation of the {@link BulkTransferManager} capability for transfer managers
+ * without bulk transfers. Each file is deleted or moved by its own request, using the non-blocking
+ * methods of the transfer manager (see {@link AsyncTransferManagerAdapter#adapt(TransferManager)}):
+ * Transfer managers supporting concurrent requests process many files at the same time, all
+ * others one file after the other.
+ *
+ * <p>Each request is sent through the given transfer manager, so that its decorators (e.g. the
+ * retries of the {@link RetriableTransferManager}) apply to each file. A failed request does not
+ * stop the others; once all requests have finished, the first failure is thrown.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class BulkTransferManagerAdapter implements BulkTransferManager {
+	private static final Logger logger = Logger.getLogger(BulkTransferManagerAdapter.class.getSimpleName());
+
+	private AsyncTransferManager asyncTransferManager;
+
+	public BulkTransferManagerAdapter(TransferManager transferManager) {
+		this.asyncTransferManager = AsyncTransferManagerAdapter.adapt(transferManager);
+	}
+
+	/**
+	 * Returns the given transfer manager if it supports bulk transfers
+	 * itself, or wraps it in an adapter otherwise.
+	 */
+	public static BulkTransferManager adapt(TransferManager transferManager) {
+		if (transferManager instanceof BulkTransferManager && ((BulkTransferManager) transferManager).isBulkTransferSupported()) {
+			return (BulkTransferManager) transferManager;
+		}
+		else {
+			return new BulkTransferManagerAdapter(transferManager);
+		}
+	}
+
+	@Override
+	public boolean isBulkTransferSupported() {
+		return true;
+	}
+
+	@Override
+	public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+		logger.log(Level.INFO, "Deleting " + remoteFiles.size() + " remote file(s) ...");
+		List<ListenableFuture<Boolean>> futures = new ArrayList<ListenableFuture<Boolean>>();
+
+		for (RemoteFile remoteFile : remoteFiles) {
+			futures.add(asyncTransferManager.deleteAsync(remoteFile));
+		}
+
+		waitForAll(futures);
+	}
+
+	@Override
+	public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+		logger.log(Level.INFO, "Moving " + sourceTargetFiles.size() + " remote file(s) ...");
+		List<ListenableFuture<Void>> futures = new ArrayList<ListenableFuture<Void>>();
+
+		for (Map.Entry<? extends RemoteFile, ? extends RemoteFile> sourceTargetFile : sourceTargetFiles.entrySet()) {
+			futures.add(asyncTransferManager.moveAsync(sourceTargetFile.getKey(), sourceTargetFile.getValue()));
+		}
+
+		waitForAll(futures);
+	}
+
+	/**
+	 * Waits until all given requests have finished, and throws the
+	 * failure of the first failed request (if any).
+	 */
+	private <T> void waitForAll(List<ListenableFuture<T>> futures) throws StorageException {
+		try {
+			Futures.successfulAsList(futures).get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new StorageException("Cannot wait for bulk transfer", e);
+		}
+
+		for (Future<T> future : futures) {
+			try {
+				future.get();
+			}
+			catch (InterruptedException e) {
+				throw new StorageException("Interrupted while waiting for bulk transfer", e);
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+
+				if (cause instanceof StorageException) {
+					throw (StorageException) cause;
+				}
+				else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				else {
+					throw new StorageException(cause);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * Optional capability of a {@link TransferManager}. Transfer managers implementing
+ * this interface can cheaply determine whether the remote location of a certain file
+ * type has changed, without having to {@link TransferManager#list(Class) list()} it.
+ *
+ * <p>The {@link org.syncany.operations.ls_remote.LsRemoteOperation LsRemoteOperation}
+ * compares the change token with the one stored in the local database, and skips
+ * listing the remote databases entirely if it has not changed.
+ *
+ * <p>Decorators such as the {@link RetriableTransferManager} and the {@link TransactionAwareTransferManager}
+ * implement this interface as well, and pass the value of the underlying transfer manager through.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface ChangeTokenTransferManager {
+	/**
+	 * Returns an opaque token (e.g. an ETag) for the remote location of the given file type.
+	 * The token must change whenever a file of that type is added or removed, and must stay
+	 * the same otherwise. Implementations must return <tt>null</tt> unless the storage is
+	 * known to reliably change the token; a coarse modification date is not sufficient.
+	 *
+	 * @param remoteFileClass Remote file type whose location is to be checked
+	 * @return Returns the change token, or <tt>null</tt> if the storage cannot provide one
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc
+	 */
+	public String getChangeToken(Class<? extends RemoteFile> remoteFileClass) throws StorageException;
+}
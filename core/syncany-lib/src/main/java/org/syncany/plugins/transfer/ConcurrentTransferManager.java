@@ -0,0 +1,45 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+/**
+ * Optional capability of a {@link TransferManager}. Transfer managers implementing
+ * this interface are thread-safe, i.e. their {@link TransferManager#upload(java.io.File, org.syncany.plugins.transfer.files.RemoteFile) upload()},
+ * {@link TransferManager#download(org.syncany.plugins.transfer.files.RemoteFile, java.io.File) download()},
+ * {@link TransferManager#move(org.syncany.plugins.transfer.files.RemoteFile, org.syncany.plugins.transfer.files.RemoteFile) move()}
+ * and {@link TransferManager#delete(org.syncany.plugins.transfer.files.RemoteFile) delete()}
+ * methods may be called from multiple threads at the same time.
+ *
+ * <p>Callers such as the {@link RemoteTransaction} or the {@link org.syncany.operations.Downloader Downloader}
+ * use the {@link ParallelTransferExecutor} to run up to {@link #getMaxConcurrentTransfers()}
+ * transfers in parallel. Transfer managers not implementing this interface are only
+ * ever called sequentially.
+ *
+ * <p>Decorators such as the {@link RetriableTransferManager} and the {@link TransactionAwareTransferManager}
+ * implement this interface as well, and pass the value of the underlying transfer manager through.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface ConcurrentTransferManager {
+	/**
+	 * Returns the maximum number of transfers this transfer manager can handle
+	 * in parallel. A value of 1 (or smaller) means that transfers are performed
+	 * sequentially.
+	 */
+	public int getMaxConcurrentTransfers();
+}
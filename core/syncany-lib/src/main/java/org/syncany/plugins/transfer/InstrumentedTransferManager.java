@@ -0,0 +1,323 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.syncany.operations.OperationTiming;
+import org.syncany.operations.OperationTimings;
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * The instrumented transfer manager counts and times all calls to the underlying
+ * transfer manager, and the bytes transferred by them. For each method (e.g. <tt>upload</tt>),
+ * it keeps the number of calls and failed calls, the number of bytes and the total time
+ * spent in the method.
+ *
+ * <p>Unlike the {@link TransferMetrics}, which count the requests of a single plugin on
+ * the protocol level, the instrumented transfer manager counts what an operation asks for.
+ * If it wraps the {@link RetriableTransferManager}, the time of a call includes all of its
+ * retries. Operations compare two {@link #snapshot() snapshots} to fill their
+ * {@link OperationTimings}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class InstrumentedTransferManager implements TransferManager, ConcurrentTransferManager, ChangeTokenTransferManager, RangeTransferManager,
+		BulkTransferManager {
+	private TransferManager underlyingTransferManager;
+	private ConcurrentMap<String, CallCounters> callCounters;
+
+	public InstrumentedTransferManager(TransferManager underlyingTransferManager) {
+		this.underlyingTransferManager = underlyingTransferManager;
+		this.callCounters = new ConcurrentHashMap<String, CallCounters>();
+	}
+
+	/**
+	 * Returns the calls counted so far, one {@link OperationTiming} per
+	 * method, sorted by method name.
+	 */
+	public List<OperationTiming> snapshot() {
+		List<OperationTiming> timings = new ArrayList<OperationTiming>();
+
+		for (Map.Entry<String, CallCounters> callCountersEntry : callCounters.entrySet()) {
+			timings.add(callCountersEntry.getValue().snapshot(callCountersEntry.getKey()));
+		}
+
+		Collections.sort(timings);
+		return timings;
+	}
+
+	@Override
+	public void connect() throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			underlyingTransferManager.connect();
+			success = true;
+		}
+		finally {
+			recordCall("connect", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public void disconnect() throws StorageException {
+		underlyingTransferManager.disconnect();
+	}
+
+	@Override
+	public void init(boolean createIfRequired) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			underlyingTransferManager.init(createIfRequired);
+			success = true;
+		}
+		finally {
+			recordCall("init", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			underlyingTransferManager.download(remoteFile, localFile);
+			success = true;
+		}
+		finally {
+			recordCall("download", startTime, success, (success) ? localFile.length() : 0);
+		}
+	}
+
+	@Override
+	public boolean isRangeDownloadSupported() {
+		return underlyingTransferManager instanceof RangeTransferManager && ((RangeTransferManager) underlyingTransferManager).isRangeDownloadSupported();
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException {
+		CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			((RangeTransferManager) underlyingTransferManager).download(remoteFile, offset, length, countingOutputStream);
+			success = true;
+		}
+		finally {
+			recordCall("downloadRange", startTime, success, countingOutputStream.getCount());
+		}
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			underlyingTransferManager.upload(localFile, remoteFile);
+			success = true;
+		}
+		finally {
+			recordCall("upload", startTime, success, (success) ? localFile.length() : 0);
+		}
+	}
+
+	@Override
+	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			underlyingTransferManager.move(sourceFile, targetFile);
+			success = true;
+		}
+		finally {
+			recordCall("move", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			boolean deleted = underlyingTransferManager.delete(remoteFile);
+			success = true;
+
+			return deleted;
+		}
+		finally {
+			recordCall("delete", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public boolean isBulkTransferSupported() {
+		return underlyingTransferManager instanceof BulkTransferManager && ((BulkTransferManager) underlyingTransferManager).isBulkTransferSupported();
+	}
+
+	@Override
+	public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			((BulkTransferManager) underlyingTransferManager).delete(remoteFiles);
+			success = true;
+		}
+		finally {
+			recordCall("deleteBulk", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			((BulkTransferManager) underlyingTransferManager).move(sourceTargetFiles);
+			success = true;
+		}
+		finally {
+			recordCall("moveBulk", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			Map<String, T> remoteFiles = underlyingTransferManager.list(remoteFileClass);
+			success = true;
+
+			return remoteFiles;
+		}
+		finally {
+			recordCall("list", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public int getMaxConcurrentTransfers() {
+		if (underlyingTransferManager instanceof ConcurrentTransferManager) {
+			return ((ConcurrentTransferManager) underlyingTransferManager).getMaxConcurrentTransfers();
+		}
+		else {
+			return 1;
+		}
+	}
+
+	@Override
+	public String getChangeToken(Class<? extends RemoteFile> remoteFileClass) throws StorageException {
+		if (!(underlyingTransferManager instanceof ChangeTokenTransferManager)) {
+			return null;
+		}
+
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+
+		try {
+			String changeToken = ((ChangeTokenTransferManager) underlyingTransferManager).getChangeToken(remoteFileClass);
+			success = true;
+
+			return changeToken;
+		}
+		finally {
+			recordCall("getChangeToken", startTime, success, 0);
+		}
+	}
+
+	@Override
+	public StorageTestResult test(boolean testCreateTarget) {
+		return underlyingTransferManager.test(testCreateTarget);
+	}
+
+	@Override
+	public boolean testTargetExists() throws StorageException {
+		return underlyingTransferManager.testTargetExists();
+	}
+
+	@Override
+	public boolean testTargetCanWrite() throws StorageException {
+		return underlyingTransferManager.testTargetCanWrite();
+	}
+
+	@Override
+	public boolean testTargetCanCreate() throws StorageException {
+		return underlyingTransferManager.testTargetCanCreate();
+	}
+
+	@Override
+	public boolean testRepoFileExists() throws StorageException {
+		return underlyingTransferManager.testRepoFileExists();
+	}
+
+	private void recordCall(String method, long startTime, boolean success, long bytes) {
+		CallCounters counters = callCounters.get(method);
+
+		if (counters == null) {
+			callCounters.putIfAbsent(method, new CallCounters());
+			counters = callCounters.get(method);
+		}
+
+		counters.record(System.currentTimeMillis() - startTime, success, bytes);
+	}
+
+	private static class CallCounters {
+		private final AtomicLong calls = new AtomicLong(0);
+		private final AtomicLong failures = new AtomicLong(0);
+		private final AtomicLong bytes = new AtomicLong(0);
+		private final AtomicLong totalDuration = new AtomicLong(0);
+
+		public void record(long durationMillis, boolean success, long callBytes) {
+			calls.incrementAndGet();
+			bytes.addAndGet(callBytes);
+			totalDuration.addAndGet(durationMillis);
+
+			if (!success) {
+				failures.incrementAndGet();
+			}
+		}
+
+		public OperationTiming snapshot(String method) {
+			return new OperationTiming(method, calls.get(), failures.get(), bytes.get(), totalDuration.get());
+		}
+	}
+}
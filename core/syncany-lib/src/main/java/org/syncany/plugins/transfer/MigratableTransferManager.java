@@ -0,0 +1,43 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+/**
+ * Optional capability of a {@link TransferManager}. Transfer managers implementing
+ * this interface can move the files of an existing repository to a newer, faster layout
+ * of the storage, e.g. to spread multichunks over sub-folders.
+ *
+ * <p>The migration is run by the {@link org.syncany.operations.cleanup.CleanupOperation}
+ * (<tt>sy cleanup --migrate-layout</tt>) while it holds the repository lock. Unlike other
+ * capabilities, this interface is not implemented by the decorators; the cleanup operation
+ * calls the transfer manager of the plugin directly.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface MigratableTransferManager {
+	/**
+	 * Migrates the repository to the newest layout. The layout must be stored in the
+	 * repository, so that all clients use it. Clients must still find all files while the
+	 * migration is running, and the migration must be safe to interrupt and run again.
+	 *
+	 * @return The number of migrated files, or 0 if the repository has the newest layout already
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc.
+	 */
+	public int migrateLayout() throws StorageException;
+}
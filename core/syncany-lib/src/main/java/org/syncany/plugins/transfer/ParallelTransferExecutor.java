@@ -0,0 +1,181 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The parallel transfer executor runs a list of {@link TransferTask}s with a bounded
+ * number of threads. The number of threads is determined by the given {@link TransferManager}:
+ * If it implements {@link ConcurrentTransferManager}, up to {@link ConcurrentTransferManager#getMaxConcurrentTransfers()}
+ * tasks are run at the same time. Otherwise, all tasks are run sequentially in the calling thread.
+ *
+ * <p>The {@link #execute(List) execute()} method only returns once all tasks have finished. If a task
+ * fails, the remaining tasks are cancelled and the exception of the first failed task is re-thrown
+ * once the tasks that were already running have stopped. Callers can therefore rely on no task
+ * of the list still being in flight when the method returns or throws.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ParallelTransferExecutor {
+	private static final Logger logger = Logger.getLogger(ParallelTransferExecutor.class.getSimpleName());
+
+	/**
+	 * A single transfer task, e.g. the upload or download of a single file.
+	 */
+	public interface TransferTask {
+		public void execute() throws StorageException, IOException;
+	}
+
+	private String name;
+	private int maxConcurrentTransfers;
+
+	public ParallelTransferExecutor(String name, TransferManager transferManager) {
+		this(name, getMaxConcurrentTransfers(transferManager));
+	}
+
+	public ParallelTransferExecutor(String name, int maxConcurrentTransfers) {
+		this.name = name;
+		this.maxConcurrentTransfers = Math.max(1, maxConcurrentTransfers);
+	}
+
+	public int getMaxConcurrentTransfers() {
+		return maxConcurrentTransfers;
+	}
+
+	/**
+	 * Runs all given tasks and waits for them to finish. If only one thread is allowed, or
+	 * if there is only one task, the tasks are run in the calling thread.
+	 */
+	public void execute(List<TransferTask> tasks) throws StorageException, IOException {
+		if (maxConcurrentTransfers == 1 || tasks.size() <= 1) {
+			for (TransferTask task : tasks) {
+				task.execute();
+			}
+		}
+		else {
+			executeInParallel(tasks);
+		}
+	}
+
+	private void executeInParallel(List<TransferTask> tasks) throws StorageException, IOException {
+		int threadCount = Math.min(maxConcurrentTransfers, tasks.size());
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount, new TransferThreadFactory(name));
+
+		logger.log(Level.INFO, "Running " + tasks.size() + " transfer task(s) with " + threadCount + " thread(s) ...");
+
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+			for (final TransferTask task : tasks) {
+				futures.add(executorService.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						task.execute();
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> future : futures) {
+				waitForTask(future);
+			}
+		}
+		finally {
+			executorService.shutdownNow();
+			awaitTermination(executorService);
+		}
+	}
+
+	private void awaitTermination(ExecutorService executorService) {
+		try {
+			while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.log(Level.INFO, "Waiting for running transfer tasks to stop ...");
+			}
+		}
+		catch (InterruptedException e) {
+			logger.log(Level.WARNING, "Interrupted while waiting for transfer tasks to stop.", e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void waitForTask(Future<Void> future) throws StorageException, IOException {
+		try {
+			future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting for transfer tasks", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof StorageException) {
+				throw (StorageException) cause;
+			}
+			else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else {
+				throw new StorageException(cause);
+			}
+		}
+	}
+
+	static int getMaxConcurrentTransfers(TransferManager transferManager) {
+		if (transferManager instanceof ConcurrentTransferManager) {
+			return ((ConcurrentTransferManager) transferManager).getMaxConcurrentTransfers();
+		}
+		else {
+			return 1;
+		}
+	}
+
+	static class TransferThreadFactory implements ThreadFactory {
+		private String name;
+		private AtomicInteger threadNumber;
+
+		public TransferThreadFactory(String name) {
+			this.name = name;
+			this.threadNumber = new AtomicInteger(0);
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
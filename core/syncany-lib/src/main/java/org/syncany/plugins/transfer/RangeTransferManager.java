@@ -0,0 +1,63 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.OutputStream;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * Optional capability of a {@link TransferManager}. Transfer managers implementing
+ * this interface can download a byte range of a remote file, instead of the whole file.
+ *
+ * <p>The {@link org.syncany.operations.Downloader Downloader} uses this to fetch only
+ * the required chunks of a multichunk, if only a small part of the multichunk is needed
+ * (e.g. to restore a single file).
+ *
+ * <p>Decorators such as the {@link RetriableTransferManager} and the {@link TransactionAwareTransferManager}
+ * implement this interface as well, and pass the calls to the underlying transfer manager through.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public interface RangeTransferManager {
+	/**
+	 * Returns whether the underlying transfer manager supports range downloads. Decorators
+	 * implement this interface regardless of the underlying transfer manager, so callers
+	 * must check this method before calling {@link #download(RemoteFile, long, long, OutputStream) download()}.
+	 */
+	public boolean isRangeDownloadSupported();
+
+	/**
+	 * Downloads <tt>length</tt> bytes of an existing remote file, starting at the given offset,
+	 * and writes them to the given output stream. The output stream is not closed.
+	 *
+	 * <p>If the offset is negative, it is relative to the end of the file, i.e. an offset of
+	 * <tt>-100</tt> and a length of <tt>100</tt> downloads the last 100 bytes of the file. If the file
+	 * is shorter than the requested range, only the available bytes are written.
+	 *
+	 * <p>If remoteFile does not exist, a {@link StorageFileNotFoundException} is thrown.
+	 *
+	 * @param remoteFile Existing source file on the remote storage
+	 * @param offset Position of the first byte to download; negative if relative to the end of the file
+	 * @param length Number of bytes to download
+	 * @param outputStream Stream to which the downloaded bytes are written
+	 * @throws StorageException If the connection fails due to no Internet connection,
+	 *         authentication errors, etc.
+	 */
+	public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException;
+}
@@ -18,6 +18,11 @@
 package org.syncany.plugins.transfer;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +31,7 @@ import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.operations.daemon.messages.UpUploadFileInTransactionSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferTask;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -116,6 +122,13 @@ public class RemoteTransaction {
 	 * <p>If this was successful, the transaction file is deleted and the
 	 * temporary files. After deleting the transaction file, the transaction
 	 * is successfully committed.
+	 *
+	 * <p>The files within each of these phases are transferred in parallel if the transfer
+	 * manager supports it (see {@link ParallelTransferExecutor}), but the phases themselves
+	 * are strictly sequential: A phase only starts once all requests of the previous phase
+	 * have finished. In particular, the transaction file is only deleted after all files
+	 * have been moved to their final location, so an interrupted commit can always be
+	 * resumed or rolled back as before.
 	 */
 	public void commit() throws StorageException {
 		logger.log(Level.INFO, "Starting TX.commit() ...");
@@ -203,40 +216,69 @@ public class RemoteTransaction {
 	 */
 	private void uploadAndMoveToTempLocation() throws StorageException {
 		TransactionStats stats = gatherTransactionStats();
+		List<TransferTask> transferTasks = new ArrayList<TransferTask>();
 		int uploadFileIndex = 0;
 
-		for (ActionTO action : transactionTO.getActions()) {
+		for (final ActionTO action : transactionTO.getActions()) {
 			if (action.getStatus().equals(ActionStatus.UNSTARTED)) {
 				// If we are resuming, this has not been started yet.
-				RemoteFile tempRemoteFile = action.getTempRemoteFile();
+				final RemoteFile tempRemoteFile = action.getTempRemoteFile();
 
 				if (action.getType().equals(ActionType.UPLOAD)) {
 					// The action is an UPLOAD, upload file to temporary remote location
-					File localFile = action.getLocalTempLocation();
-					long localFileSize = localFile.length();
-
-					eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), ++uploadFileIndex,
-							stats.totalUploadFileCount, localFileSize, stats.totalUploadSize));
-
-					logger.log(Level.INFO, "- Uploading {0} to temp. file {1} ...", new Object[] { localFile, tempRemoteFile });
-					transferManager.upload(localFile, tempRemoteFile);
-					action.setStatus(ActionStatus.STARTED);
+					final File localFile = action.getLocalTempLocation();
+					final UpUploadFileInTransactionSyncExternalEvent uploadEvent = new UpUploadFileInTransactionSyncExternalEvent(config
+							.getLocalDir().getAbsolutePath(), ++uploadFileIndex, stats.totalUploadFileCount, localFile.length(),
+							stats.totalUploadSize);
+
+					transferTasks.add(new TransferTask() {
+						@Override
+						public void execute() throws StorageException {
+							eventBus.post(uploadEvent);
+
+							logger.log(Level.INFO, "- Uploading {0} to temp. file {1} ...", new Object[] { localFile, tempRemoteFile });
+							transferManager.upload(localFile, tempRemoteFile);
+							action.setStatus(ActionStatus.STARTED);
+						}
+					});
 				}
 				else if (action.getType().equals(ActionType.DELETE)) {
 					// The action is a DELETE, move file to temporary remote location.
-					RemoteFile remoteFile = action.getRemoteFile();
-
-					try {
-						logger.log(Level.INFO, "- Moving {0} to temp. file {1} ...", new Object[] { remoteFile, tempRemoteFile });
-						transferManager.move(remoteFile, tempRemoteFile);
-					}
-					catch (StorageMoveException e) {
-						logger.log(Level.INFO, "  -> FAILED (don't care!), because the remoteFile does not exist: " + remoteFile);
-					}
-					action.setStatus(ActionStatus.STARTED);
+					final RemoteFile remoteFile = action.getRemoteFile();
+
+					transferTasks.add(new TransferTask() {
+						@Override
+						public void execute() throws StorageException {
+							try {
+								logger.log(Level.INFO, "- Moving {0} to temp. file {1} ...", new Object[] { remoteFile, tempRemoteFile });
+								transferManager.move(remoteFile, tempRemoteFile);
+							}
+							catch (StorageMoveException e) {
+								logger.log(Level.INFO, "  -> FAILED (don't care!), because the remoteFile does not exist: " + remoteFile);
+							}
+							action.setStatus(ActionStatus.STARTED);
+						}
+					});
 				}
 			}
 		}
+
+		executeTransferTasks(transferTasks);
+	}
+
+	/**
+	 * Runs the given transfer tasks using a {@link ParallelTransferExecutor}. If the transfer
+	 * manager supports concurrent transfers, the tasks are run in parallel. The method only
+	 * returns once all tasks have finished (or, if one failed, all tasks have stopped), so
+	 * it acts as a barrier between the phases of the commit.
+	 */
+	private void executeTransferTasks(List<TransferTask> transferTasks) throws StorageException {
+		try {
+			new ParallelTransferExecutor("TxCommit", transferManager).execute(transferTasks);
+		}
+		catch (IOException e) {
+			throw new StorageException(e);
+		}
 	}
 
 	/**
@@ -262,15 +304,25 @@ public class RemoteTransaction {
 	/**
 	 * This method constitutes the second step in the committing process. All files have been uploaded, and they are
 	 * now moved to their final location.
+	 *
+	 * <p>The files are moved with a single bulk request if the transfer manager supports it, and
+	 * one by one otherwise (see {@link BulkTransferManagerAdapter}).
 	 */
 	private void moveToFinalLocation() throws StorageException {
+		Map<RemoteFile, RemoteFile> tempFinalRemoteFiles = new LinkedHashMap<RemoteFile, RemoteFile>();
+
 		for (ActionTO action : transactionTO.getActions()) {
 			if (action.getType().equals(ActionType.UPLOAD)) {
-				RemoteFile tempRemoteFile = action.getTempRemoteFile();
-				RemoteFile finalRemoteFile = action.getRemoteFile();
+				logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { action.getTempRemoteFile(),
+						action.getRemoteFile() });
+				tempFinalRemoteFiles.put(action.getTempRemoteFile(), action.getRemoteFile());
+			}
+		}
+
+		BulkTransferManagerAdapter.adapt(transferManager).move(tempFinalRemoteFiles);
 
-				logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { tempRemoteFile, finalRemoteFile });
-				transferManager.move(tempRemoteFile, finalRemoteFile);
+		for (ActionTO action : transactionTO.getActions()) {
+			if (action.getType().equals(ActionType.UPLOAD)) {
 				action.setStatus(ActionStatus.DONE);
 			}
 		}
@@ -299,31 +351,26 @@ public class RemoteTransaction {
 	 * they are not in any transaction file.
 	 */
 	private void deleteTempRemoteFiles() throws StorageException {
-		boolean success = true;
+		List<RemoteFile> tempRemoteFiles = new ArrayList<RemoteFile>();
+
 		for (ActionTO action : transactionTO.getActions()) {
 			if (action.getStatus().equals(ActionStatus.STARTED)) {
 				// If we are resuming, this action has not been comopleted.
 				if (action.getType().equals(ActionType.DELETE)) {
-					RemoteFile tempRemoteFile = action.getTempRemoteFile();
-
-					logger.log(Level.INFO, "- Deleting temp. file {0}  ...", new Object[] { tempRemoteFile });
-					try {
-						transferManager.delete(tempRemoteFile);
-					}
-					catch (Exception e) {
-						logger.log(Level.INFO, "Failed to delete: " + tempRemoteFile, " because of: " + e);
-						success = false;
-					}
+					logger.log(Level.INFO, "- Deleting temp. file {0}  ...", new Object[] { action.getTempRemoteFile() });
+
+					tempRemoteFiles.add(action.getTempRemoteFile());
 					action.setStatus(ActionStatus.DONE);
 				}
 			}
 		}
 
-		if (success) {
+		try {
+			BulkTransferManagerAdapter.adapt(transferManager).delete(tempRemoteFiles);
 			logger.log(Level.INFO, "END of TX.delTemp(): Sucessfully deleted final files.");
 		}
-		else {
-			logger.log(Level.INFO, "END of TX.delTemp(): Did not succesfully delete all files!");
+		catch (StorageException e) {
+			logger.log(Level.INFO, "END of TX.delTemp(): Did not succesfully delete all files!", e);
 		}
 	}
 
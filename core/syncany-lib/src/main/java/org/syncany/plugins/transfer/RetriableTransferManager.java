@@ -17,40 +17,112 @@
  */
 package org.syncany.plugins.transfer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferThreadFactory;
 import org.syncany.plugins.transfer.files.RemoteFile;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
 /**
  * The retriable transfer manager implements a simple try-sleep-retry mechanism
  * for regular {@link TransferManager}s. It encapsules a single transfer manager and
  * proxies all of its methods. If a method fails with a {@link StorageException}, the 
  * method is retried N times before the exception is actually thrown to the caller. 
- * Between retries, the method waits M seconds. 
+ * Between retries, the method waits an exponentially growing, jittered time. Which
+ * exceptions are retried, how often and how long is defined by a {@link RetryPolicy}.
+ *
+ * <p>If several methods in a row fail despite retries, or a method fails fatally, the
+ * storage is considered unavailable and all further methods fail immediately ("circuit
+ * breaker"), instead of each of them waiting for its own retries. Since a retriable
+ * transfer manager is used for a single operation or sync cycle, the next one tries again.
+ *
+ * <p>Transfer methods (upload, download, move, delete, list) are additionally run under
+ * the control of an {@link AdaptiveConcurrencyController}, which adapts the number of
+ * concurrent requests to the storage's latency and backpressure (see {@link StorageThrottledException}).
+ *
+ * <p>The non-blocking methods of the {@link AsyncTransferManager} capability are retried the
+ * same way, without blocking a thread while waiting: Failed attempts are re-sent by a timer.
+ * The timer is shared by all instances, so it never waits for the {@link AdaptiveConcurrencyController};
+ * if no request may be sent yet, the attempt is re-scheduled.
+ * They use the underlying transfer manager's own non-blocking methods, or an
+ * {@link AsyncTransferManagerAdapter} if it only has blocking methods.
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
-public class RetriableTransferManager implements TransferManager {
+public class RetriableTransferManager implements TransferManager, ConcurrentTransferManager, ChangeTokenTransferManager, RangeTransferManager,
+		AsyncTransferManager, BulkTransferManager {
 	private static final Logger logger = Logger.getLogger(RetriableTransferManager.class.getSimpleName());
 
-	// Values are public to enable quicker testing
+	// Value is public to enable quicker testing
 
-	private static int RETRY_MAX_COUNT = 3;
 	public static int RETRY_SLEEP_MILLIS = 3000;
 
+	/**
+	 * Time after which a retry of a non-blocking method checks again whether the
+	 * {@link AdaptiveConcurrencyController} admits another request.
+	 */
+	private static final long ASYNC_ACQUIRE_RETRY_MILLIS = 50;
+
+	private static ScheduledExecutorService retryScheduler;
+
 	private interface RetriableMethod {
 		public Object execute() throws StorageException;
 	}
 
+	private interface AsyncRetriableMethod<T> {
+		public ListenableFuture<T> execute();
+	}
+
 	private TransferManager underlyingTransferManager;
-	private int tryCount;
+	private AsyncTransferManager underlyingAsyncTransferManager;
+	private AdaptiveConcurrencyController concurrencyController;
+
+	private RetryPolicy retryPolicy;
+	private int consecutiveFailedCalls;
+	private StorageException circuitBreakerCause;
 
 	public RetriableTransferManager(TransferManager underlyingTransferManager) {
+		this(underlyingTransferManager, new RetryPolicy());
+	}
+
+	public RetriableTransferManager(TransferManager underlyingTransferManager, RetryPolicy retryPolicy) {
+		this(underlyingTransferManager, retryPolicy, null);
+	}
+
+	/**
+	 * Creates a retriable transfer manager that sends its requests through the given
+	 * concurrency controller. Transfer managers of the same repository should share a controller
+	 * (see {@link AdaptiveConcurrencyController#getInstance(org.syncany.config.Config, int)}).
+	 * If the controller is <tt>null</tt>, a controller for this transfer manager alone is created.
+	 */
+	public RetriableTransferManager(TransferManager underlyingTransferManager, RetryPolicy retryPolicy,
+			AdaptiveConcurrencyController concurrencyController) {
 		this.underlyingTransferManager = underlyingTransferManager;
-		this.tryCount = 0;
+		this.underlyingAsyncTransferManager = null;
+		this.concurrencyController = (concurrencyController != null) ? concurrencyController : new AdaptiveConcurrencyController(
+				getMaxConcurrentTransfers());
+
+		this.retryPolicy = retryPolicy;
+		this.consecutiveFailedCalls = 0;
+		this.circuitBreakerCause = null;
 	}
 
 	@Override
@@ -64,8 +136,18 @@ public class RetriableTransferManager implements TransferManager {
 		});
 	}
 
+	/**
+	 * Disconnects the underlying transfer manager. If the circuit breaker is open, the
+	 * underlying transfer manager is still asked to disconnect (once), so that it can
+	 * release its resources.
+	 */
 	@Override
 	public void disconnect() throws StorageException {
+		if (isCircuitBreakerOpen()) {
+			underlyingTransferManager.disconnect();
+			return;
+		}
+
 		retryMethod(new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
@@ -88,7 +170,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void download(final RemoteFile remoteFile, final File localFile) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("download", new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.download(remoteFile, localFile);
@@ -97,9 +179,39 @@ public class RetriableTransferManager implements TransferManager {
 		});
 	}
 
+	@Override
+	public boolean isRangeDownloadSupported() {
+		return underlyingTransferManager instanceof RangeTransferManager && ((RangeTransferManager) underlyingTransferManager).isRangeDownloadSupported();
+	}
+
+	/**
+	 * Downloads a byte range using the underlying transfer manager. Since a failed attempt
+	 * might have written a part of the range already, each attempt writes to a buffer first;
+	 * ranges are expected to be small.
+	 */
+	@Override
+	public void download(final RemoteFile remoteFile, final long offset, final long length, final OutputStream outputStream) throws StorageException {
+		ByteArrayOutputStream rangeOutputStream = (ByteArrayOutputStream) retryMethod("downloadRange", new RetriableMethod() {
+			@Override
+			public Object execute() throws StorageException {
+				ByteArrayOutputStream rangeOutputStream = new ByteArrayOutputStream();
+				((RangeTransferManager) underlyingTransferManager).download(remoteFile, offset, length, rangeOutputStream);
+
+				return rangeOutputStream;
+			}
+		});
+
+		try {
+			rangeOutputStream.writeTo(outputStream);
+		}
+		catch (IOException e) {
+			throw new StorageException("Cannot write downloaded range of " + remoteFile, e);
+		}
+	}
+
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("move", new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.move(sourceFile, targetFile);
@@ -110,7 +222,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public void upload(final File localFile, final RemoteFile remoteFile) throws StorageException {
-		retryMethod(new RetriableMethod() {
+		retryMethod("upload", new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				underlyingTransferManager.upload(localFile, remoteFile);
@@ -121,7 +233,7 @@ public class RetriableTransferManager implements TransferManager {
 
 	@Override
 	public boolean delete(final RemoteFile remoteFile) throws StorageException {
-		return (Boolean) retryMethod(new RetriableMethod() {
+		return (Boolean) retryMethod("delete", new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.delete(remoteFile);
@@ -129,10 +241,71 @@ public class RetriableTransferManager implements TransferManager {
 		});
 	}
 
+	@Override
+	public boolean isBulkTransferSupported() {
+		return underlyingTransferManager instanceof BulkTransferManager && ((BulkTransferManager) underlyingTransferManager).isBulkTransferSupported();
+	}
+
+	/**
+	 * Deletes the given files using the underlying transfer manager. If the bulk request
+	 * fails with a {@link StorageBulkException}, only the files that were not deleted are
+	 * retried. Otherwise, it is retried as a whole, since deleting is idempotent.
+	 */
+	@Override
+	public void delete(final Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+		final List<RemoteFile> remainingFiles = new ArrayList<RemoteFile>(remoteFiles);
+
+		retryMethod("delete", new RetriableMethod() {
+			@Override
+			public Object execute() throws StorageException {
+				try {
+					((BulkTransferManager) underlyingTransferManager).delete(remainingFiles);
+					return null;
+				}
+				catch (StorageBulkException e) {
+					remainingFiles.removeAll(e.getCompletedFiles());
+					throw e.getFailure();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Moves the given files using the underlying transfer manager. If the bulk request
+	 * fails with a {@link StorageBulkException}, only the files that were not moved are
+	 * retried. Moving is not idempotent, so if it is unknown which files were moved, the
+	 * bulk request is not retried at all.
+	 */
+	@Override
+	public void move(final Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+		final Map<RemoteFile, RemoteFile> remainingFiles = new LinkedHashMap<RemoteFile, RemoteFile>(sourceTargetFiles);
+
+		retryMethod("move", new RetriableMethod() {
+			@Override
+			public Object execute() throws StorageException {
+				try {
+					((BulkTransferManager) underlyingTransferManager).move(remainingFiles);
+					return null;
+				}
+				catch (StorageBulkException e) {
+					remainingFiles.keySet().removeAll(e.getCompletedFiles());
+					throw e.getFailure();
+				}
+				catch (StorageException e) {
+					if (retryPolicy.isRetryable(e)) {
+						throw new StorageMoveException("Bulk move failed, and some files might have been moved already. Not retrying.", e);
+					}
+
+					throw e;
+				}
+			}
+		});
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T extends RemoteFile> Map<String, T> list(final Class<T> remoteFileClass) throws StorageException {
-		return (Map<String, T>) retryMethod(new RetriableMethod() {
+		return (Map<String, T>) retryMethod("list", new RetriableMethod() {
 			@Override
 			public Object execute() throws StorageException {
 				return underlyingTransferManager.list(remoteFileClass);
@@ -140,6 +313,81 @@ public class RetriableTransferManager implements TransferManager {
 		});
 	}
 
+	@Override
+	public ListenableFuture<Void> uploadAsync(final File localFile, final RemoteFile remoteFile) {
+		return retryMethodAsync("upload", new AsyncRetriableMethod<Void>() {
+			@Override
+			public ListenableFuture<Void> execute() {
+				return getUnderlyingAsyncTransferManager().uploadAsync(localFile, remoteFile);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Void> downloadAsync(final RemoteFile remoteFile, final File localFile) {
+		return retryMethodAsync("download", new AsyncRetriableMethod<Void>() {
+			@Override
+			public ListenableFuture<Void> execute() {
+				return getUnderlyingAsyncTransferManager().downloadAsync(remoteFile, localFile);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Void> moveAsync(final RemoteFile sourceFile, final RemoteFile targetFile) {
+		return retryMethodAsync("move", new AsyncRetriableMethod<Void>() {
+			@Override
+			public ListenableFuture<Void> execute() {
+				return getUnderlyingAsyncTransferManager().moveAsync(sourceFile, targetFile);
+			}
+		});
+	}
+
+	@Override
+	public ListenableFuture<Boolean> deleteAsync(final RemoteFile remoteFile) {
+		return retryMethodAsync("delete", new AsyncRetriableMethod<Boolean>() {
+			@Override
+			public ListenableFuture<Boolean> execute() {
+				return getUnderlyingAsyncTransferManager().deleteAsync(remoteFile);
+			}
+		});
+	}
+
+	@Override
+	public <T extends RemoteFile> ListenableFuture<Map<String, T>> listAsync(final Class<T> remoteFileClass) {
+		return retryMethodAsync("list", new AsyncRetriableMethod<Map<String, T>>() {
+			@Override
+			public ListenableFuture<Map<String, T>> execute() {
+				return getUnderlyingAsyncTransferManager().listAsync(remoteFileClass);
+			}
+		});
+	}
+
+	@Override
+	public int getMaxConcurrentTransfers() {
+		if (underlyingTransferManager instanceof ConcurrentTransferManager) {
+			return ((ConcurrentTransferManager) underlyingTransferManager).getMaxConcurrentTransfers();
+		}
+		else {
+			return 1;
+		}
+	}
+
+	@Override
+	public String getChangeToken(final Class<? extends RemoteFile> remoteFileClass) throws StorageException {
+		if (underlyingTransferManager instanceof ChangeTokenTransferManager) {
+			return (String) retryMethod(new RetriableMethod() {
+				@Override
+				public Object execute() throws StorageException {
+					return ((ChangeTokenTransferManager) underlyingTransferManager).getChangeToken(remoteFileClass);
+				}
+			});
+		}
+		else {
+			return null;
+		}
+	}
+
 	@Override
 	public StorageTestResult test(boolean testCreateTarget) {
 		return underlyingTransferManager.test(testCreateTarget);
@@ -186,44 +434,352 @@ public class RetriableTransferManager implements TransferManager {
 	}
 
 	private Object retryMethod(RetriableMethod retryableMethod) throws StorageException {
-		tryCount = 0;
+		return retryMethod(null, retryableMethod);
+	}
+
+	/**
+	 * Executes the given method, and retries it if it fails with a retryable {@link StorageException}
+	 * (see {@link RetryPolicy}). If the circuit breaker is open, the method is not executed at all.
+	 *
+	 * <p>If a transfer method name is given, the method is run under the control of the
+	 * {@link AdaptiveConcurrencyController}: It waits until the controller admits another
+	 * request, and reports its latency (or the storage's backpressure) to the controller.
+	 */
+	private Object retryMethod(String transferMethodName, RetriableMethod retryableMethod) throws StorageException {
+		int tryCount = 0;
+		int throttledCount = 0;
+		long waitedMillis = 0;
 
 		while (true) {
+			checkCircuitBreaker();
+
+			boolean controlled = transferMethodName != null;
+
+			if (controlled) {
+				acquireConcurrencySlot();
+			}
+
 			try {
-				if (tryCount > 0) {
-					logger.log(Level.WARNING, "Retrying method: " + tryCount + "/" + RETRY_MAX_COUNT + " ...");
+				if (tryCount > 0 || throttledCount > 0) {
+					logger.log(Level.WARNING, "Retrying method: " + tryCount + "/" + retryPolicy.getMaxTries() + " retries, " + throttledCount + "/"
+							+ retryPolicy.getMaxTriesThrottled() + " throttled ...");
 				}
 
+				long startTime = System.currentTimeMillis();
 				Object result = retryableMethod.execute();
 
-				tryCount = 0;
+				if (controlled) {
+					concurrencyController.onSuccess(transferMethodName, System.currentTimeMillis() - startTime);
+				}
+
+				onCallSucceeded();
 				return result;
 			}
-			catch (StorageMoveException | StorageFileNotFoundException e) {
-				logger.log(Level.INFO, "StorageException caused by missing file, not the connection. Not retrying.");
-				throw e;
-			}
 			catch (StorageException e) {
-				tryCount++;
+				if (e instanceof StorageThrottledException) {
+					throttledCount++;
+				}
+				else {
+					tryCount++;
+				}
+
+				long waitMillis = getRetryWaitMillis(e, tryCount, throttledCount, waitedMillis);
 
-				if (tryCount >= RETRY_MAX_COUNT) {
-					logger.log(Level.WARNING, "Transfer method failed. No retries left. Throwing exception.", e);
+				if (waitMillis < 0) {
 					throw e;
 				}
-				else {
-					logger.log(Level.WARNING, "Transfer method failed. " + tryCount + "/" + RETRY_MAX_COUNT + " retries. Sleeping "
-							+ RETRY_SLEEP_MILLIS
-							+ "ms ...", e);
 
-					try {
-						Thread.sleep(RETRY_SLEEP_MILLIS);
-					}
-					catch (Exception e1) {
-						throw new StorageException(e1);
-					}
+				waitedMillis += waitMillis;
+
+				// Throttled controlled methods wait in acquireConcurrencySlot() instead
+				if (!(controlled && e instanceof StorageThrottledException)) {
+					sleep(waitMillis);
+				}
+			}
+			finally {
+				if (controlled) {
+					concurrencyController.release();
 				}
 			}
 		}
 	}
 
+	/**
+	 * Non-blocking variant of {@link #retryMethod(String, RetriableMethod)}: Sends the request,
+	 * and re-sends it via the retry timer if it fails, after the same backoff time the blocking
+	 * variant would sleep. The calling thread only blocks if the {@link AdaptiveConcurrencyController}
+	 * does not admit the first attempt yet; retries never block the retry timer.
+	 */
+	private <T> ListenableFuture<T> retryMethodAsync(String transferMethodName, AsyncRetriableMethod<T> retryableMethod) {
+		SettableFuture<T> resultFuture = SettableFuture.create();
+		new AsyncRetry<T>(transferMethodName, retryableMethod, resultFuture).attempt();
+
+		return resultFuture;
+	}
+
+	private synchronized AsyncTransferManager getUnderlyingAsyncTransferManager() {
+		if (underlyingAsyncTransferManager == null) {
+			underlyingAsyncTransferManager = AsyncTransferManagerAdapter.adapt(underlyingTransferManager);
+		}
+
+		return underlyingAsyncTransferManager;
+	}
+
+	private static synchronized ScheduledExecutorService getRetryScheduler() {
+		if (retryScheduler == null) {
+			retryScheduler = Executors.newSingleThreadScheduledExecutor(new TransferThreadFactory("RetryTimer"));
+		}
+
+		return retryScheduler;
+	}
+
+	/**
+	 * Decides whether a failed attempt of a method is retried: Returns the time to wait before the
+	 * next attempt, or <tt>-1</tt> if the exception is to be thrown to the caller. If the method is
+	 * given up, the failure is counted towards the circuit breaker.
+	 */
+	private long getRetryWaitMillis(StorageException e, int tryCount, int throttledCount, long waitedMillis) {
+		if (!retryPolicy.isRetryable(e)) {
+			if (retryPolicy.isFatal(e)) {
+				logger.log(Level.SEVERE, "Transfer method failed fatally. Not retrying.", e);
+				openCircuitBreaker(e);
+			}
+			else {
+				// The storage responded; the failure is not a sign of an unavailable storage
+				logger.log(Level.INFO, "StorageException caused by missing file, not the connection. Not retrying.");
+				onCallSucceeded();
+			}
+
+			return -1;
+		}
+
+		long waitMillis;
+
+		if (e instanceof StorageThrottledException) {
+			waitMillis = concurrencyController.onThrottled(((StorageThrottledException) e).getRetryAfterMillis());
+
+			if (throttledCount >= retryPolicy.getMaxTriesThrottled()) {
+				logger.log(Level.WARNING, "Transfer method throttled. No retries left. Throwing exception.", e);
+				onCallFailed(e);
+
+				return -1;
+			}
+		}
+		else {
+			if (tryCount >= retryPolicy.getMaxTries()) {
+				logger.log(Level.WARNING, "Transfer method failed. No retries left. Throwing exception.", e);
+				onCallFailed(e);
+
+				return -1;
+			}
+
+			waitMillis = retryPolicy.getBackoffMillis(tryCount);
+		}
+
+		if (waitedMillis + waitMillis > retryPolicy.getRetryBudgetMillis()) {
+			logger.log(Level.WARNING, "Transfer method failed. Retry budget of " + retryPolicy.getRetryBudgetMillis() + "ms exhausted ("
+					+ waitedMillis + "ms waited). Throwing exception.", e);
+			onCallFailed(e);
+
+			return -1;
+		}
+
+		logger.log(Level.WARNING, "Transfer method failed. " + tryCount + "/" + retryPolicy.getMaxTries() + " retries, " + throttledCount + "/"
+				+ retryPolicy.getMaxTriesThrottled() + " throttled. Waiting " + waitMillis + "ms ...", e);
+
+		return waitMillis;
+	}
+
+	/**
+	 * Returns whether the circuit breaker is open, i.e. whether the storage is considered
+	 * unavailable and all further methods fail immediately.
+	 */
+	public synchronized boolean isCircuitBreakerOpen() {
+		return circuitBreakerCause != null;
+	}
+
+	private synchronized void checkCircuitBreaker() throws StorageException {
+		if (circuitBreakerCause != null) {
+			throw new StorageException("Storage is considered unavailable, not sending request: " + circuitBreakerCause.getMessage(),
+					circuitBreakerCause);
+		}
+	}
+
+	private synchronized void onCallSucceeded() {
+		consecutiveFailedCalls = 0;
+	}
+
+	private synchronized void onCallFailed(StorageException e) {
+		consecutiveFailedCalls++;
+
+		int threshold = retryPolicy.getCircuitBreakerThreshold();
+
+		if (threshold > 0 && consecutiveFailedCalls >= threshold) {
+			openCircuitBreaker(e);
+		}
+	}
+
+	private synchronized void openCircuitBreaker(StorageException e) {
+		if (circuitBreakerCause == null && retryPolicy.getCircuitBreakerThreshold() > 0) {
+			logger.log(Level.SEVERE, "Storage considered unavailable (" + consecutiveFailedCalls + " failed method(s) in a row, last: "
+					+ e.getMessage() + "). Failing all further methods immediately.");
+			circuitBreakerCause = e;
+		}
+	}
+
+	private void acquireConcurrencySlot() throws StorageException {
+		try {
+			concurrencyController.acquire();
+		}
+		catch (InterruptedException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	private void sleep(long sleepMillis) throws StorageException {
+		try {
+			Thread.sleep(sleepMillis);
+		}
+		catch (Exception e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * State of a single non-blocking method call and its retries (see {@link RetriableTransferManager#retryMethodAsync(String, AsyncRetriableMethod)
+	 * retryMethodAsync()}). Follows the same rules as the blocking {@link RetriableTransferManager#retryMethod(String, RetriableMethod) retryMethod()}.
+	 */
+	private class AsyncRetry<T> implements FutureCallback<T> {
+		private String transferMethodName;
+		private AsyncRetriableMethod<T> retryableMethod;
+		private SettableFuture<T> resultFuture;
+
+		private int tryCount;
+		private int throttledCount;
+		private long waitedMillis;
+		private long startTime;
+
+		public AsyncRetry(String transferMethodName, AsyncRetriableMethod<T> retryableMethod, SettableFuture<T> resultFuture) {
+			this.transferMethodName = transferMethodName;
+			this.retryableMethod = retryableMethod;
+			this.resultFuture = resultFuture;
+
+			this.tryCount = 0;
+			this.throttledCount = 0;
+			this.waitedMillis = 0;
+		}
+
+		/**
+		 * Sends the first attempt. Called by the caller's thread, which may block until
+		 * the {@link AdaptiveConcurrencyController} admits the request.
+		 */
+		public void attempt() {
+			if (resultFuture.isCancelled()) {
+				return;
+			}
+
+			try {
+				checkCircuitBreaker();
+				acquireConcurrencySlot();
+			}
+			catch (StorageException e) {
+				resultFuture.setException(e);
+				return;
+			}
+
+			send();
+		}
+
+		/**
+		 * Sends a retry. Called by the retry timer, which is shared by all instances and must
+		 * therefore never block: If no request may be sent yet, the retry is re-scheduled.
+		 */
+		private void retry() {
+			if (resultFuture.isCancelled()) {
+				return;
+			}
+
+			try {
+				checkCircuitBreaker();
+			}
+			catch (StorageException e) {
+				resultFuture.setException(e);
+				return;
+			}
+
+			if (!concurrencyController.tryAcquire()) {
+				scheduleRetry(Math.max(ASYNC_ACQUIRE_RETRY_MILLIS, concurrencyController.getPauseMillis()));
+				return;
+			}
+
+			logger.log(Level.WARNING, "Retrying method (async): " + tryCount + "/" + retryPolicy.getMaxTries() + " retries, " + throttledCount + "/"
+					+ retryPolicy.getMaxTriesThrottled() + " throttled ...");
+
+			send();
+		}
+
+		/**
+		 * Sends the request; the caller must hold a concurrency slot. The slot is released
+		 * when the request completes, or right away if the request cannot be sent.
+		 */
+		private void send() {
+			ListenableFuture<T> future;
+			startTime = System.currentTimeMillis();
+
+			try {
+				future = retryableMethod.execute();
+			}
+			catch (RuntimeException e) {
+				onFailure(e);
+				return;
+			}
+
+			Futures.addCallback(future, this, MoreExecutors.sameThreadExecutor());
+		}
+
+		@Override
+		public void onSuccess(T result) {
+			concurrencyController.release();
+			concurrencyController.onSuccess(transferMethodName, System.currentTimeMillis() - startTime);
+
+			onCallSucceeded();
+			resultFuture.set(result);
+		}
+
+		@Override
+		public void onFailure(Throwable e) {
+			concurrencyController.release();
+
+			if (!(e instanceof StorageException)) {
+				resultFuture.setException(e);
+				return;
+			}
+
+			if (e instanceof StorageThrottledException) {
+				throttledCount++;
+			}
+			else {
+				tryCount++;
+			}
+
+			long waitMillis = getRetryWaitMillis((StorageException) e, tryCount, throttledCount, waitedMillis);
+
+			if (waitMillis < 0) {
+				resultFuture.setException(e);
+			}
+			else {
+				waitedMillis += waitMillis;
+				scheduleRetry(waitMillis);
+			}
+		}
+
+		private void scheduleRetry(long delayMillis) {
+			getRetryScheduler().schedule(new Runnable() {
+				@Override
+				public void run() {
+					retry();
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
 }
@@ -0,0 +1,185 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.net.MalformedURLException;
+import java.security.cert.CertificateException;
+import java.util.Random;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.Root;
+
+/**
+ * The retry policy defines how the {@link RetriableTransferManager} reacts to failed
+ * requests. It can be configured in the <tt>&lt;retryPolicy&gt;</tt> element of the
+ * config file; missing values fall back to the defaults.
+ *
+ * <ul>
+ *  <li>Only retryable exceptions are retried (see {@link #isRetryable(StorageException)}).
+ *      Missing files and fatal errors (see {@link #isFatal(StorageException)}) are thrown
+ *      to the caller immediately.</li>
+ *  <li>Between retries, the request waits an exponentially growing time with "full jitter",
+ *      i.e. a random time between zero and the exponential time, so that clients which
+ *      failed at the same time do not retry at the same time.</li>
+ *  <li>The total time a single request may spend waiting for retries is limited
+ *      by the retry budget.</li>
+ *  <li>Once a number of requests in a row have failed despite retries (or a single
+ *      request failed fatally), the storage is considered unavailable: The circuit
+ *      breaker opens and all further requests of the transfer manager fail immediately.
+ *      Since a transfer manager lives for one operation or sync cycle, the next
+ *      cycle tries again.</li>
+ * </ul>
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+@Root(name = "retryPolicy", strict = false)
+public class RetryPolicy {
+	private static final int DEFAULT_MAX_TRIES = 3;
+	private static final int DEFAULT_MAX_TRIES_THROTTLED = 10;
+	private static final long DEFAULT_MAX_SLEEP_MILLIS = 60 * 1000;
+	private static final long DEFAULT_RETRY_BUDGET_MILLIS = 5 * 60 * 1000;
+	private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 3;
+
+	private static final Random random = new Random();
+
+	@Element(name = "maxTries", required = false)
+	private Integer maxTries;
+
+	@Element(name = "maxTriesThrottled", required = false)
+	private Integer maxTriesThrottled;
+
+	@Element(name = "retrySleepMillis", required = false)
+	private Long retrySleepMillis;
+
+	@Element(name = "maxSleepMillis", required = false)
+	private Long maxSleepMillis;
+
+	@Element(name = "retryBudgetMillis", required = false)
+	private Long retryBudgetMillis;
+
+	@Element(name = "circuitBreakerThreshold", required = false)
+	private Integer circuitBreakerThreshold;
+
+	/**
+	 * Returns the number of times a request is sent before its failure
+	 * is thrown to the caller (including the first attempt).
+	 */
+	public int getMaxTries() {
+		return (maxTries != null) ? maxTries : DEFAULT_MAX_TRIES;
+	}
+
+	public void setMaxTries(int maxTries) {
+		this.maxTries = maxTries;
+	}
+
+	/**
+	 * Returns the number of times a request is sent if the storage throttles it. Throttled
+	 * requests are retried more often than other failures, because the storage explicitly
+	 * asked the client to come back later.
+	 */
+	public int getMaxTriesThrottled() {
+		return (maxTriesThrottled != null) ? maxTriesThrottled : DEFAULT_MAX_TRIES_THROTTLED;
+	}
+
+	public void setMaxTriesThrottled(int maxTriesThrottled) {
+		this.maxTriesThrottled = maxTriesThrottled;
+	}
+
+	/**
+	 * Returns the base of the exponential backoff time. Defaults to
+	 * {@link RetriableTransferManager#RETRY_SLEEP_MILLIS}.
+	 */
+	public long getRetrySleepMillis() {
+		return (retrySleepMillis != null) ? retrySleepMillis : RetriableTransferManager.RETRY_SLEEP_MILLIS;
+	}
+
+	public void setRetrySleepMillis(long retrySleepMillis) {
+		this.retrySleepMillis = retrySleepMillis;
+	}
+
+	public long getMaxSleepMillis() {
+		return (maxSleepMillis != null) ? maxSleepMillis : DEFAULT_MAX_SLEEP_MILLIS;
+	}
+
+	public void setMaxSleepMillis(long maxSleepMillis) {
+		this.maxSleepMillis = maxSleepMillis;
+	}
+
+	/**
+	 * Returns the maximum total time a single request may spend waiting between
+	 * its retries (including pauses requested by a throttling storage).
+	 */
+	public long getRetryBudgetMillis() {
+		return (retryBudgetMillis != null) ? retryBudgetMillis : DEFAULT_RETRY_BUDGET_MILLIS;
+	}
+
+	public void setRetryBudgetMillis(long retryBudgetMillis) {
+		this.retryBudgetMillis = retryBudgetMillis;
+	}
+
+	/**
+	 * Returns the number of requests in a row that must fail (after all retries) for the
+	 * circuit breaker to open, or <tt>0</tt> if the circuit breaker is disabled.
+	 */
+	public int getCircuitBreakerThreshold() {
+		return (circuitBreakerThreshold != null) ? circuitBreakerThreshold : DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+	}
+
+	public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	/**
+	 * Returns whether a request failing with the given exception should be retried. Fatal
+	 * errors are not retried, and neither are missing files, because they are caused
+	 * by the state of the repository rather than by the connection.
+	 */
+	public boolean isRetryable(StorageException e) {
+		return !isFatal(e) && !(e instanceof StorageMoveException) && !(e instanceof StorageFileNotFoundException);
+	}
+
+	/**
+	 * Returns whether the given exception means that the storage cannot be used at all
+	 * with the current settings, e.g. because the credentials or the server's certificate
+	 * were rejected, or the storage location is invalid.
+	 */
+	public boolean isFatal(StorageException e) {
+		if (e instanceof StorageFatalException) {
+			return true;
+		}
+
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof CertificateException || cause instanceof SSLPeerUnverifiedException || cause instanceof MalformedURLException) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the time to wait before the given retry (starting at 1): A random time between
+	 * zero and the exponentially growing backoff time ("full jitter").
+	 */
+	public long getBackoffMillis(int retry) {
+		long exponentialMillis = Math.min(getMaxSleepMillis(), getRetrySleepMillis() * (1L << Math.min(20, Math.max(0, retry - 1))));
+		return (long) (random.nextDouble() * (exponentialMillis + 1));
+	}
+}
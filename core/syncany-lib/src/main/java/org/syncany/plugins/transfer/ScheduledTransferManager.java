@@ -0,0 +1,299 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+
+/**
+ * The scheduled transfer manager runs each request through the {@link TransferScheduler} of
+ * its repository, so that interactive and metadata requests are not queued behind the bulk
+ * transfers of other operations.
+ *
+ * <p>Unless a fixed priority is given (e.g. {@link TransferPriority#INTERACTIVE} for requests
+ * a user is waiting for), the priority of a request is derived from the request itself:
+ * Uploads, downloads and deletions of multichunks and temporary files are bulk transfers
+ * ({@link TransferPriority#BULK_UP}, {@link TransferPriority#BULK_DOWN} and
+ * {@link TransferPriority#CLEANUP}), all other requests are {@link TransferPriority#METADATA}.
+ *
+ * <p>This transfer manager should wrap the plugin's transfer manager directly, i.e. be wrapped
+ * by the {@link RetriableTransferManager}, so that no slot is held while waiting for a retry.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ScheduledTransferManager implements TransferManager, ConcurrentTransferManager, ChangeTokenTransferManager, RangeTransferManager,
+		BulkTransferManager {
+	private TransferManager underlyingTransferManager;
+	private TransferScheduler scheduler;
+	private TransferPriority fixedPriority;
+
+	public ScheduledTransferManager(TransferManager underlyingTransferManager, TransferScheduler scheduler) {
+		this(underlyingTransferManager, scheduler, null);
+	}
+
+	public ScheduledTransferManager(TransferManager underlyingTransferManager, TransferScheduler scheduler, TransferPriority fixedPriority) {
+		this.underlyingTransferManager = underlyingTransferManager;
+		this.scheduler = scheduler;
+		this.fixedPriority = fixedPriority;
+
+		this.scheduler.setMaxConcurrentTransfers(getMaxConcurrentTransfers());
+	}
+
+	@Override
+	public void connect() throws StorageException {
+		underlyingTransferManager.connect();
+	}
+
+	@Override
+	public void disconnect() throws StorageException {
+		underlyingTransferManager.disconnect();
+	}
+
+	@Override
+	public void init(boolean createIfRequired) throws StorageException {
+		underlyingTransferManager.init(createIfRequired);
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		TransferPriority priority = getPriority(remoteFile, TransferPriority.BULK_DOWN);
+		acquire(priority);
+
+		try {
+			underlyingTransferManager.download(remoteFile, localFile);
+		}
+		finally {
+			scheduler.release();
+		}
+
+		// Downloaded size is only known now; delays the next bulk transfer
+		throttle(priority, localFile.length());
+	}
+
+	@Override
+	public boolean isRangeDownloadSupported() {
+		return underlyingTransferManager instanceof RangeTransferManager && ((RangeTransferManager) underlyingTransferManager).isRangeDownloadSupported();
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException {
+		TransferPriority priority = getPriority(remoteFile, TransferPriority.BULK_DOWN);
+
+		throttle(priority, length);
+		acquire(priority);
+
+		try {
+			((RangeTransferManager) underlyingTransferManager).download(remoteFile, offset, length, outputStream);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		TransferPriority priority = getPriority(remoteFile, TransferPriority.BULK_UP);
+
+		throttle(priority, localFile.length());
+		acquire(priority);
+
+		try {
+			underlyingTransferManager.upload(localFile, remoteFile);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+		acquire(getPriority(null, null));
+
+		try {
+			underlyingTransferManager.move(sourceFile, targetFile);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		acquire(getPriority(remoteFile, TransferPriority.CLEANUP));
+
+		try {
+			return underlyingTransferManager.delete(remoteFile);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public boolean isBulkTransferSupported() {
+		return underlyingTransferManager instanceof BulkTransferManager && ((BulkTransferManager) underlyingTransferManager).isBulkTransferSupported();
+	}
+
+	@Override
+	public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+		acquire(getPriority(remoteFiles, TransferPriority.CLEANUP));
+
+		try {
+			((BulkTransferManager) underlyingTransferManager).delete(remoteFiles);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+		acquire(getPriority(null, null));
+
+		try {
+			((BulkTransferManager) underlyingTransferManager).move(sourceTargetFiles);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		acquire(getPriority(null, null));
+
+		try {
+			return underlyingTransferManager.list(remoteFileClass);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public int getMaxConcurrentTransfers() {
+		if (underlyingTransferManager instanceof ConcurrentTransferManager) {
+			return ((ConcurrentTransferManager) underlyingTransferManager).getMaxConcurrentTransfers();
+		}
+		else {
+			return 1;
+		}
+	}
+
+	@Override
+	public String getChangeToken(Class<? extends RemoteFile> remoteFileClass) throws StorageException {
+		if (!(underlyingTransferManager instanceof ChangeTokenTransferManager)) {
+			return null;
+		}
+
+		acquire(getPriority(null, null));
+
+		try {
+			return ((ChangeTokenTransferManager) underlyingTransferManager).getChangeToken(remoteFileClass);
+		}
+		finally {
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public StorageTestResult test(boolean testCreateTarget) {
+		return underlyingTransferManager.test(testCreateTarget);
+	}
+
+	@Override
+	public boolean testTargetExists() throws StorageException {
+		return underlyingTransferManager.testTargetExists();
+	}
+
+	@Override
+	public boolean testTargetCanWrite() throws StorageException {
+		return underlyingTransferManager.testTargetCanWrite();
+	}
+
+	@Override
+	public boolean testTargetCanCreate() throws StorageException {
+		return underlyingTransferManager.testTargetCanCreate();
+	}
+
+	@Override
+	public boolean testRepoFileExists() throws StorageException {
+		return underlyingTransferManager.testRepoFileExists();
+	}
+
+	/**
+	 * Returns the fixed priority if there is one, the given bulk priority for multichunks and
+	 * temporary files, and {@link TransferPriority#METADATA} for all other requests.
+	 */
+	private TransferPriority getPriority(RemoteFile remoteFile, TransferPriority bulkPriority) {
+		if (fixedPriority != null) {
+			return fixedPriority;
+		}
+		else if (remoteFile instanceof MultichunkRemoteFile || remoteFile instanceof TempRemoteFile) {
+			return bulkPriority;
+		}
+		else {
+			return TransferPriority.METADATA;
+		}
+	}
+
+	/**
+	 * Returns the priority of a bulk request: The fixed priority if there is one, the given bulk
+	 * priority if all files are multichunks or temporary files, and {@link TransferPriority#METADATA}
+	 * otherwise.
+	 */
+	private TransferPriority getPriority(Collection<? extends RemoteFile> remoteFiles, TransferPriority bulkPriority) {
+		if (fixedPriority != null) {
+			return fixedPriority;
+		}
+
+		for (RemoteFile remoteFile : remoteFiles) {
+			if (getPriority(remoteFile, bulkPriority) != bulkPriority) {
+				return TransferPriority.METADATA;
+			}
+		}
+
+		return bulkPriority;
+	}
+
+	private void acquire(TransferPriority priority) throws StorageException {
+		try {
+			scheduler.acquire(priority);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting for a transfer slot", e);
+		}
+	}
+
+	private void throttle(TransferPriority priority, long bytes) throws StorageException {
+		try {
+			scheduler.throttle(priority, bytes);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException("Interrupted while waiting for bandwidth", e);
+		}
+	}
+}
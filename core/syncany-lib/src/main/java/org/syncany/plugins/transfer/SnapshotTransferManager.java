@@ -0,0 +1,321 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.plugins.transfer.files.ActionRemoteFile;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+
+/**
+ * The snapshot transfer manager lists each remote folder only once, and answers further
+ * calls to {@link #list(Class) list()} from this snapshot. The snapshot is kept up to date with
+ * the writes made through this transfer manager ({@link #upload(File, RemoteFile) upload()},
+ * {@link #move(RemoteFile, RemoteFile) move()} and {@link #delete(RemoteFile) delete()}), but
+ * changes made by other clients are only seen by a new instance.
+ *
+ * <p>It is meant to be shared by the operations of a single sync cycle (see
+ * {@link org.syncany.operations.SyncCycleContext SyncCycleContext}), and therefore keeps
+ * the connection open: {@link #disconnect()} is ignored, and the connection is only closed
+ * by {@link #close()}.
+ *
+ * <p>Some listings are never taken from the snapshot, or are refreshed, so that the consistency
+ * guarantees of the repository are not weakened:
+ *
+ * <ul>
+ *  <li>{@link ActionRemoteFile}s are always listed, because they are used to detect
+ *      concurrent operations of other clients.</li>
+ *  <li>{@link DatabaseRemoteFile}s are always listed, because a database uploaded by another
+ *      client since the last listing must not be missed, e.g. by the check for unknown databases
+ *      before an upload.</li>
+ *  <li>The snapshot of the {@link TransactionRemoteFile}s is discarded whenever another
+ *      folder is listed for the first time, and whenever the databases are listed. The transactions are hence never older than any
+ *      other listing, so that {@link TransactionAwareTransferManager} can hide all files of
+ *      unfinished transactions.</li>
+ *  <li>{@link #getChangeToken(Class) getChangeToken()} returns <tt>null</tt> for folders that are
+ *      answered from the snapshot, because a current token would not match the listing.</li>
+ * </ul>
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SnapshotTransferManager implements TransferManager, ConcurrentTransferManager, ChangeTokenTransferManager, RangeTransferManager,
+		BulkTransferManager {
+	private static final Logger logger = Logger.getLogger(SnapshotTransferManager.class.getSimpleName());
+
+	private TransferManager underlyingTransferManager;
+	private Map<Class<? extends RemoteFile>, Map<String, RemoteFile>> snapshots;
+
+	public SnapshotTransferManager(TransferManager underlyingTransferManager) {
+		this.underlyingTransferManager = underlyingTransferManager;
+		this.snapshots = new HashMap<Class<? extends RemoteFile>, Map<String, RemoteFile>>();
+	}
+
+	@Override
+	public void connect() throws StorageException {
+		underlyingTransferManager.connect();
+	}
+
+	/**
+	 * Ignored, so that operations sharing this transfer manager cannot close the
+	 * connection for each other. Use {@link #close()} instead.
+	 */
+	@Override
+	public void disconnect() throws StorageException {
+		logger.log(Level.FINE, "Ignoring disconnect of shared transfer manager; will disconnect on close.");
+	}
+
+	/**
+	 * Disconnects the underlying transfer manager and discards the snapshot.
+	 */
+	public void close() throws StorageException {
+		synchronized (snapshots) {
+			snapshots.clear();
+		}
+
+		underlyingTransferManager.disconnect();
+	}
+
+	@Override
+	public void init(boolean createIfRequired) throws StorageException {
+		underlyingTransferManager.init(createIfRequired);
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		underlyingTransferManager.download(remoteFile, localFile);
+	}
+
+	@Override
+	public boolean isRangeDownloadSupported() {
+		return underlyingTransferManager instanceof RangeTransferManager && ((RangeTransferManager) underlyingTransferManager).isRangeDownloadSupported();
+	}
+
+	@Override
+	public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException {
+		((RangeTransferManager) underlyingTransferManager).download(remoteFile, offset, length, outputStream);
+	}
+
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		underlyingTransferManager.upload(localFile, remoteFile);
+		addToSnapshot(remoteFile);
+	}
+
+	@Override
+	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+		underlyingTransferManager.move(sourceFile, targetFile);
+
+		removeFromSnapshot(sourceFile);
+		addToSnapshot(targetFile);
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		boolean deleted = underlyingTransferManager.delete(remoteFile);
+
+		if (deleted) {
+			removeFromSnapshot(remoteFile);
+		}
+
+		return deleted;
+	}
+
+	@Override
+	public boolean isBulkTransferSupported() {
+		return underlyingTransferManager instanceof BulkTransferManager && ((BulkTransferManager) underlyingTransferManager).isBulkTransferSupported();
+	}
+
+	/**
+	 * Deletes the given files using the underlying transfer manager, and removes them from
+	 * the snapshot. If the bulk request fails, it is unknown which files were deleted, so
+	 * the snapshots of the affected folders are discarded.
+	 */
+	@Override
+	public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+		try {
+			((BulkTransferManager) underlyingTransferManager).delete(remoteFiles);
+		}
+		catch (StorageException e) {
+			discardSnapshots(remoteFiles);
+			throw e;
+		}
+
+		for (RemoteFile remoteFile : remoteFiles) {
+			removeFromSnapshot(remoteFile);
+		}
+	}
+
+	/**
+	 * Moves the given files using the underlying transfer manager, and updates the snapshot
+	 * accordingly. If the bulk request fails, the snapshots of the affected folders are discarded.
+	 */
+	@Override
+	public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+		try {
+			((BulkTransferManager) underlyingTransferManager).move(sourceTargetFiles);
+		}
+		catch (StorageException e) {
+			discardSnapshots(sourceTargetFiles.keySet());
+			discardSnapshots(sourceTargetFiles.values());
+			throw e;
+		}
+
+		for (Map.Entry<? extends RemoteFile, ? extends RemoteFile> sourceTargetFile : sourceTargetFiles.entrySet()) {
+			removeFromSnapshot(sourceTargetFile.getKey());
+			addToSnapshot(sourceTargetFile.getValue());
+		}
+	}
+
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+		if (remoteFileClass.equals(ActionRemoteFile.class)) {
+			return underlyingTransferManager.list(remoteFileClass);
+		}
+		else if (remoteFileClass.equals(DatabaseRemoteFile.class)) {
+			Map<String, T> remoteFiles = underlyingTransferManager.list(remoteFileClass);
+
+			synchronized (snapshots) {
+				snapshots.remove(TransactionRemoteFile.class);
+			}
+
+			return remoteFiles;
+		}
+
+		Map<String, RemoteFile> snapshot;
+
+		synchronized (snapshots) {
+			snapshot = snapshots.get(remoteFileClass);
+		}
+
+		if (snapshot == null) {
+			logger.log(Level.INFO, "No snapshot of " + remoteFileClass.getSimpleName() + "s yet, listing remote folder ...");
+			Map<String, T> remoteFiles = underlyingTransferManager.list(remoteFileClass);
+
+			synchronized (snapshots) {
+				snapshots.put(remoteFileClass, new HashMap<String, RemoteFile>(remoteFiles));
+
+				if (!remoteFileClass.equals(TransactionRemoteFile.class)) {
+					snapshots.remove(TransactionRemoteFile.class);
+				}
+			}
+
+			return remoteFiles;
+		}
+		else {
+			Map<String, T> remoteFiles = new HashMap<String, T>();
+
+			synchronized (snapshots) {
+				for (RemoteFile remoteFile : snapshot.values()) {
+					remoteFiles.put(remoteFile.getName(), remoteFileClass.cast(remoteFile));
+				}
+			}
+
+			return remoteFiles;
+		}
+	}
+
+	private void addToSnapshot(RemoteFile remoteFile) {
+		synchronized (snapshots) {
+			Map<String, RemoteFile> snapshot = snapshots.get(remoteFile.getClass());
+
+			if (snapshot != null) {
+				snapshot.put(remoteFile.getName(), remoteFile);
+			}
+		}
+	}
+
+	private void removeFromSnapshot(RemoteFile remoteFile) {
+		synchronized (snapshots) {
+			Map<String, RemoteFile> snapshot = snapshots.get(remoteFile.getClass());
+
+			if (snapshot != null) {
+				snapshot.remove(remoteFile.getName());
+			}
+		}
+	}
+
+	private void discardSnapshots(Collection<? extends RemoteFile> remoteFiles) {
+		synchronized (snapshots) {
+			for (RemoteFile remoteFile : remoteFiles) {
+				snapshots.remove(remoteFile.getClass());
+			}
+		}
+	}
+
+	@Override
+	public int getMaxConcurrentTransfers() {
+		if (underlyingTransferManager instanceof ConcurrentTransferManager) {
+			return ((ConcurrentTransferManager) underlyingTransferManager).getMaxConcurrentTransfers();
+		}
+		else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the change token of the underlying transfer manager, or <tt>null</tt> if the
+	 * files of the given type are already answered from the snapshot.
+	 */
+	@Override
+	public String getChangeToken(Class<? extends RemoteFile> remoteFileClass) throws StorageException {
+		if (!(underlyingTransferManager instanceof ChangeTokenTransferManager)) {
+			return null;
+		}
+
+		synchronized (snapshots) {
+			if (snapshots.containsKey(remoteFileClass)) {
+				return null;
+			}
+		}
+
+		return ((ChangeTokenTransferManager) underlyingTransferManager).getChangeToken(remoteFileClass);
+	}
+
+	@Override
+	public StorageTestResult test(boolean testCreateTarget) {
+		return underlyingTransferManager.test(testCreateTarget);
+	}
+
+	@Override
+	public boolean testTargetExists() throws StorageException {
+		return underlyingTransferManager.testTargetExists();
+	}
+
+	@Override
+	public boolean testTargetCanWrite() throws StorageException {
+		return underlyingTransferManager.testTargetCanWrite();
+	}
+
+	@Override
+	public boolean testTargetCanCreate() throws StorageException {
+		return underlyingTransferManager.testTargetCanCreate();
+	}
+
+	@Override
+	public boolean testRepoFileExists() throws StorageException {
+		return underlyingTransferManager.testRepoFileExists();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.syncany.plugins.transfer.files.RemoteFile;
+
+/**
+ * The StorageBulkException is thrown by a {@link BulkTransferManager} if some of the files
+ * of a bulk request could not be deleted or moved. Unlike a plain {@link StorageException},
+ * it tells which files were processed successfully, so that only the other files need to be
+ * retried (see {@link RetriableTransferManager}).
+ *
+ * <p>The cause of the exception is the first failure of a single file.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StorageBulkException extends StorageException {
+	private static final long serialVersionUID = -6012472349873920311L;
+
+	private Set<RemoteFile> completedFiles;
+
+	/**
+	 * Creates a new exception.
+	 *
+	 * @param message Description of the failure
+	 * @param completedFiles Files that were deleted, or source files that were moved
+	 * @param cause First failure of a single file
+	 */
+	public StorageBulkException(String message, Set<? extends RemoteFile> completedFiles, StorageException cause) {
+		super(message, cause);
+		this.completedFiles = Collections.unmodifiableSet(new HashSet<RemoteFile>(completedFiles));
+	}
+
+	/**
+	 * Returns the files that were deleted, or the source files that were moved.
+	 */
+	public Set<RemoteFile> getCompletedFiles() {
+		return completedFiles;
+	}
+
+	/**
+	 * Returns the first failure of a single file, i.e. the cause of this exception.
+	 */
+	public StorageException getFailure() {
+		return (StorageException) getCause();
+	}
+}
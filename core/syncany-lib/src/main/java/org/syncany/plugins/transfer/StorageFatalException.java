@@ -0,0 +1,45 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+/**
+ * The StorageFatalException is thrown if a TransferManager's request failed in a way
+ * that retrying cannot fix, e.g. because the credentials were rejected (HTTP status
+ * <tt>401 Unauthorized</tt> or <tt>403 Forbidden</tt>) or the server's certificate
+ * is not trusted.
+ *
+ * <p>The {@link RetriableTransferManager} does not retry requests failing with this
+ * exception, and fails all further requests immediately (see {@link RetryPolicy}).
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StorageFatalException extends StorageException {
+	private static final long serialVersionUID = -6071382930429187622L;
+
+	public StorageFatalException(Throwable cause) {
+		super(cause);
+	}
+
+	public StorageFatalException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public StorageFatalException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+/**
+ * The StorageThrottledException is thrown if a TransferManager's request was
+ * rejected because the storage is overloaded or rate-limits the client (e.g. HTTP
+ * status <tt>429 Too Many Requests</tt> or <tt>503 Service Unavailable</tt>).
+ *
+ * <p>The {@link RetriableTransferManager} reacts to this exception by reducing the
+ * number of concurrent requests, and by waiting before it retries the request
+ * (see {@link AdaptiveConcurrencyController}).
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class StorageThrottledException extends StorageException {
+	private static final long serialVersionUID = -3529283145917842357L;
+
+	private long retryAfterMillis;
+
+	/**
+	 * Creates a new exception. If the storage told the client how long to wait
+	 * before retrying (e.g. via the HTTP <tt>Retry-After</tt> header), <tt>retryAfterMillis</tt>
+	 * should be set accordingly; otherwise, it should be -1.
+	 */
+	public StorageThrottledException(String message, long retryAfterMillis, Throwable cause) {
+		super(message, cause);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
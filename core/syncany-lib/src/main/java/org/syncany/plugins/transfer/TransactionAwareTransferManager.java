@@ -19,6 +19,7 @@ package org.syncany.plugins.transfer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -27,6 +28,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,20 +42,47 @@ import org.syncany.plugins.transfer.to.ActionTO;
 import org.syncany.plugins.transfer.to.ActionTO.ActionType;
 import org.syncany.plugins.transfer.to.TransactionTO;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
 /**
  * The TransactionAwareTransferManager adds all functionality regarding transactions
  * to existing transfer managers.
  *
+ * <p>The non-blocking methods of the {@link AsyncTransferManager} capability are passed to the
+ * underlying transfer manager (or an {@link AsyncTransferManagerAdapter}). Only the follow-up work
+ * that needs the remote transactions, i.e. filtering a file list and looking for a missing file in
+ * a transaction, is done with blocking calls in a separate thread pool.
+ *
+ * <p>Transaction files are never changed once they are uploaded, and their names contain a
+ * random identifier (see {@link TransactionRemoteFile}). The parsed transactions are therefore
+ * cached by file name for the lifetime of this transfer manager, so that repeated calls to
+ * {@link #list(Class) list()} only need to list the <tt>transactions/</tt> folder, and only
+ * download transaction files that have not been seen before. Cache entries are dropped if
+ * a file is no longer listed, and whenever a transaction file is uploaded, moved or deleted
+ * through this transfer manager.
+ *
  * @author Pim Otte
  */
-public class TransactionAwareTransferManager implements TransferManager {
+public class TransactionAwareTransferManager implements TransferManager, ConcurrentTransferManager, ChangeTokenTransferManager, RangeTransferManager,
+		AsyncTransferManager, BulkTransferManager {
 	private static final Logger logger = Logger.getLogger(TransactionAwareTransferManager.class.getSimpleName());
 
 	private TransferManager underlyingTransferManager;
+	private AsyncTransferManager underlyingAsyncTransferManager;
+	private ListeningExecutorService transactionExecutorService;
+	private Map<String, TransactionTO> cachedTransactions;
 	private Config config;
 
 	public TransactionAwareTransferManager(TransferManager underlyingTransferManager, Config config) {
 		this.underlyingTransferManager = underlyingTransferManager;
+		this.underlyingAsyncTransferManager = null;
+		this.transactionExecutorService = null;
+		this.cachedTransactions = new ConcurrentHashMap<String, TransactionTO>();
 		this.config = config;
 	}
 
@@ -119,26 +149,184 @@ public class TransactionAwareTransferManager implements TransferManager {
 		}
 	}
 
+	@Override
+	public boolean isRangeDownloadSupported() {
+		return underlyingTransferManager instanceof RangeTransferManager && ((RangeTransferManager) underlyingTransferManager).isRangeDownloadSupported();
+	}
+
+	/**
+	 * Downloads a byte range using the underlying transfer manager. Unlike {@link #download(RemoteFile, File) download()},
+	 * this method does not look for the file in transactions if it does not exist. Callers are expected
+	 * to fall back to a regular download in that case.
+	 */
+	@Override
+	public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException {
+		((RangeTransferManager) underlyingTransferManager).download(remoteFile, offset, length, outputStream);
+	}
+
 	@Override
 	public void move(final RemoteFile sourceFile, final RemoteFile targetFile) throws StorageException {
+		invalidateCachedTransaction(sourceFile);
+		invalidateCachedTransaction(targetFile);
+
 		underlyingTransferManager.move(sourceFile, targetFile);
 	}
 
 	@Override
 	public void upload(final File localFile, final RemoteFile remoteFile) throws StorageException {
+		invalidateCachedTransaction(remoteFile);
 		underlyingTransferManager.upload(localFile, remoteFile);
 	}
 
 	@Override
 	public boolean delete(final RemoteFile remoteFile) throws StorageException {
+		invalidateCachedTransaction(remoteFile);
 		return underlyingTransferManager.delete(remoteFile);
 	}
 
+	@Override
+	public boolean isBulkTransferSupported() {
+		return underlyingTransferManager instanceof BulkTransferManager && ((BulkTransferManager) underlyingTransferManager).isBulkTransferSupported();
+	}
+
+	@Override
+	public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+		for (RemoteFile remoteFile : remoteFiles) {
+			invalidateCachedTransaction(remoteFile);
+		}
+
+		((BulkTransferManager) underlyingTransferManager).delete(remoteFiles);
+	}
+
+	@Override
+	public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+		for (Map.Entry<? extends RemoteFile, ? extends RemoteFile> sourceTargetFile : sourceTargetFiles.entrySet()) {
+			invalidateCachedTransaction(sourceTargetFile.getKey());
+			invalidateCachedTransaction(sourceTargetFile.getValue());
+		}
+
+		((BulkTransferManager) underlyingTransferManager).move(sourceTargetFiles);
+	}
+
 	@Override
 	public <T extends RemoteFile> Map<String, T> list(final Class<T> remoteFileClass) throws StorageException {
 		return addAndFilterFilesInTransaction(remoteFileClass, underlyingTransferManager.list(remoteFileClass));
 	}
 
+	@Override
+	public ListenableFuture<Void> uploadAsync(File localFile, RemoteFile remoteFile) {
+		invalidateCachedTransaction(remoteFile);
+		return getUnderlyingAsyncTransferManager().uploadAsync(localFile, remoteFile);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #download(RemoteFile, File) download()}. If the file does not
+	 * exist, the transactions are searched for it in the transaction thread pool.
+	 */
+	@Override
+	public ListenableFuture<Void> downloadAsync(final RemoteFile remoteFile, final File localFile) {
+		final SettableFuture<Void> resultFuture = SettableFuture.create();
+
+		Futures.addCallback(getUnderlyingAsyncTransferManager().downloadAsync(remoteFile, localFile), new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				resultFuture.set(null);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				if (e instanceof StorageFileNotFoundException) {
+					logger.log(Level.FINE, "Could not find the Storage file", e);
+
+					forwardResult(resultFuture, getTransactionExecutorService().submit(new Callable<Void>() {
+						@Override
+						public Void call() throws StorageException {
+							downloadDeletedTempFileInTransaction(remoteFile, localFile);
+							return null;
+						}
+					}));
+				}
+				else {
+					resultFuture.setException(e);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		return resultFuture;
+	}
+
+	@Override
+	public ListenableFuture<Void> moveAsync(RemoteFile sourceFile, RemoteFile targetFile) {
+		invalidateCachedTransaction(sourceFile);
+		invalidateCachedTransaction(targetFile);
+
+		return getUnderlyingAsyncTransferManager().moveAsync(sourceFile, targetFile);
+	}
+
+	@Override
+	public ListenableFuture<Boolean> deleteAsync(RemoteFile remoteFile) {
+		invalidateCachedTransaction(remoteFile);
+		return getUnderlyingAsyncTransferManager().deleteAsync(remoteFile);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #list(Class) list()}. The files in unfinished transactions
+	 * are filtered in the transaction thread pool once the underlying listing is complete.
+	 */
+	@Override
+	public <T extends RemoteFile> ListenableFuture<Map<String, T>> listAsync(final Class<T> remoteFileClass) {
+		final SettableFuture<Map<String, T>> resultFuture = SettableFuture.create();
+
+		Futures.addCallback(getUnderlyingAsyncTransferManager().listAsync(remoteFileClass), new FutureCallback<Map<String, T>>() {
+			@Override
+			public void onSuccess(final Map<String, T> remoteFiles) {
+				forwardResult(resultFuture, getTransactionExecutorService().submit(new Callable<Map<String, T>>() {
+					@Override
+					public Map<String, T> call() throws StorageException {
+						return addAndFilterFilesInTransaction(remoteFileClass, remoteFiles);
+					}
+				}));
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				resultFuture.setException(e);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		return resultFuture;
+	}
+
+	private static <T> void forwardResult(final SettableFuture<T> resultFuture, ListenableFuture<T> sourceFuture) {
+		Futures.addCallback(sourceFuture, new FutureCallback<T>() {
+			@Override
+			public void onSuccess(T result) {
+				resultFuture.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				resultFuture.setException(e);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+	}
+
+	private synchronized AsyncTransferManager getUnderlyingAsyncTransferManager() {
+		if (underlyingAsyncTransferManager == null) {
+			underlyingAsyncTransferManager = AsyncTransferManagerAdapter.adapt(underlyingTransferManager);
+		}
+
+		return underlyingAsyncTransferManager;
+	}
+
+	private synchronized ListeningExecutorService getTransactionExecutorService() {
+		if (transactionExecutorService == null) {
+			transactionExecutorService = AsyncTransferManagerAdapter.createExecutorService("TxAsyncTM", getMaxConcurrentTransfers());
+		}
+
+		return transactionExecutorService;
+	}
+
 	/**
 	 * Checks if any transactions of the local machine were not completed and performs
 	 * a rollback if any transactions were found. The rollback itself is performed in
@@ -231,7 +419,8 @@ public class TransactionAwareTransferManager implements TransferManager {
 	 * Removes temporary files on the offsite storage that are not listed in any
 	 * of the {@link TransactionRemoteFile}s available remotely.
 	 *
-	 * <p>Temporary files might be left over from unfinished transactions.
+	 * <p>Temporary files might be left over from unfinished transactions. They are
+	 * deleted with a single bulk request if the transfer manager supports it.
 	 */
 	public void removeUnreferencedTemporaryFiles() throws StorageException {
 		// Retrieve all transactions
@@ -252,9 +441,9 @@ public class TransactionAwareTransferManager implements TransferManager {
 
 		for (TempRemoteFile unreferencedTempRemoteFile : tempRemoteFiles) {
 			logger.log(Level.INFO, "Unreferenced temporary file found. Deleting {0}", unreferencedTempRemoteFile);
-			underlyingTransferManager.delete(unreferencedTempRemoteFile);
 		}
 
+		BulkTransferManagerAdapter.adapt(underlyingTransferManager).delete(tempRemoteFiles);
 	}
 
 	/**
@@ -309,6 +498,40 @@ public class TransactionAwareTransferManager implements TransferManager {
 		}
 	}
 
+	@Override
+	public int getMaxConcurrentTransfers() {
+		if (underlyingTransferManager instanceof ConcurrentTransferManager) {
+			return ((ConcurrentTransferManager) underlyingTransferManager).getMaxConcurrentTransfers();
+		}
+		else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the change token of the underlying transfer manager. Since {@link #list(Class) list()}
+	 * hides files in unfinished transactions, the listing also changes when a transaction is
+	 * completed. Unless transaction files themselves are requested, the returned token is therefore
+	 * a combination of the tokens of the given file type and the {@link TransactionRemoteFile}s.
+	 */
+	@Override
+	public String getChangeToken(Class<? extends RemoteFile> remoteFileClass) throws StorageException {
+		if (!(underlyingTransferManager instanceof ChangeTokenTransferManager)) {
+			return null;
+		}
+
+		ChangeTokenTransferManager changeTokenTransferManager = (ChangeTokenTransferManager) underlyingTransferManager;
+		String changeToken = changeTokenTransferManager.getChangeToken(remoteFileClass);
+
+		if (changeToken == null || remoteFileClass.equals(TransactionRemoteFile.class)) {
+			return changeToken;
+		}
+		else {
+			String transactionsChangeToken = changeTokenTransferManager.getChangeToken(TransactionRemoteFile.class);
+			return (transactionsChangeToken != null) ? changeToken + "," + transactionsChangeToken : null;
+		}
+	}
+
 	@Override
 	public StorageTestResult test(boolean testCreateTarget) {
 		return underlyingTransferManager.test(testCreateTarget);
@@ -406,32 +629,59 @@ public class TransactionAwareTransferManager implements TransferManager {
 		return dummyDeletedFiles;
 	}
 
+	/**
+	 * Lists all remote transaction files and returns the parsed transactions. Transaction files
+	 * that have been read before are taken from the cache; only new files are downloaded. Files
+	 * that no longer exist remotely are removed from the cache.
+	 */
 	private Map<TransactionTO, TransactionRemoteFile> retrieveRemoteTransactions() throws StorageException {
 		Map<String, TransactionRemoteFile> transactionFiles = list(TransactionRemoteFile.class);
 		Map<TransactionTO, TransactionRemoteFile> transactions = new HashMap<TransactionTO, TransactionRemoteFile>();
 
-		for (TransactionRemoteFile transaction : transactionFiles.values()) {
-			try {
-				File transactionFile = createTempFile("transaction");
-
-				// Download transaction file
-				download(transaction, transactionFile);
+		cachedTransactions.keySet().retainAll(transactionFiles.keySet());
 
-				Transformer transformer = config == null ? null : config.getTransformer();
-				TransactionTO transactionTO = TransactionTO.load(transformer, transactionFile);
+		for (TransactionRemoteFile transaction : transactionFiles.values()) {
+			TransactionTO transactionTO = cachedTransactions.get(transaction.getName());
 
-				// Extract final locations
-				transactions.put(transactionTO, transaction);
-				transactionFile.delete();
-			}
-			catch (Exception e) {
-				throw new StorageException("Failed to read transactionFile", e);
+			if (transactionTO == null) {
+				transactionTO = downloadRemoteTransaction(transaction);
+				cachedTransactions.put(transaction.getName(), transactionTO);
 			}
+
+			transactions.put(transactionTO, transaction);
 		}
 
 		return transactions;
 	}
 
+	/**
+	 * Removes the parsed transaction of the given file from the cache, if the file is a
+	 * {@link TransactionRemoteFile}. The file will be downloaded again the next time it is listed.
+	 */
+	private void invalidateCachedTransaction(RemoteFile remoteFile) {
+		if (remoteFile instanceof TransactionRemoteFile) {
+			cachedTransactions.remove(remoteFile.getName());
+		}
+	}
+
+	private TransactionTO downloadRemoteTransaction(TransactionRemoteFile transaction) throws StorageException {
+		try {
+			File transactionFile = createTempFile("transaction");
+
+			// Download transaction file
+			download(transaction, transactionFile);
+
+			Transformer transformer = config == null ? null : config.getTransformer();
+			TransactionTO transactionTO = TransactionTO.load(transformer, transactionFile);
+
+			transactionFile.delete();
+			return transactionTO;
+		}
+		catch (Exception e) {
+			throw new StorageException("Failed to read transactionFile", e);
+		}
+	}
+
 	/**
 	 * Creates a temporary file, either using the config (if initialized) or
 	 * using the global temporary directory.
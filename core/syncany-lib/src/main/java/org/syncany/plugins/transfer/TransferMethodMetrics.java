@@ -0,0 +1,182 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementMap;
+
+/**
+ * Snapshot of the {@link TransferMetrics} of a single request method, e.g.
+ * <tt>PUT</tt>. Latency percentiles are the upper bounds of the histogram buckets
+ * (see {@link TransferMetrics#LATENCY_BUCKET_BOUNDS}) they fall into.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferMethodMetrics implements Comparable<TransferMethodMetrics> {
+	@Attribute(name = "method")
+	private String method;
+
+	@Element(name = "requests")
+	private long requests;
+
+	@Element(name = "retries")
+	private long retries;
+
+	@Element(name = "bytesIn")
+	private long bytesIn;
+
+	@Element(name = "bytesOut")
+	private long bytesOut;
+
+	@Element(name = "averageMillis")
+	private long averageMillis;
+
+	@Element(name = "p50Millis")
+	private long p50Millis;
+
+	@Element(name = "p95Millis")
+	private long p95Millis;
+
+	@Element(name = "p99Millis")
+	private long p99Millis;
+
+	@ElementMap(name = "statusCodes", entry = "status", key = "code", attribute = true, required = false)
+	private TreeMap<Integer, Long> statusCodes;
+
+	private long totalDuration;
+	private long[] latencyBuckets;
+
+	public TransferMethodMetrics() {
+		// Required for serialization
+	}
+
+	public TransferMethodMetrics(String method, long requests, long retries, long bytesIn, long bytesOut, long totalDuration, long[] latencyBuckets,
+			Map<Integer, Long> statusCodes) {
+
+		this.method = method;
+		this.requests = requests;
+		this.retries = retries;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+		this.totalDuration = totalDuration;
+		this.latencyBuckets = latencyBuckets;
+		this.statusCodes = new TreeMap<Integer, Long>(statusCodes);
+
+		this.averageMillis = (requests > 0) ? totalDuration / requests : 0;
+		this.p50Millis = getPercentile(0.50);
+		this.p95Millis = getPercentile(0.95);
+		this.p99Millis = getPercentile(0.99);
+	}
+
+	/**
+	 * Returns the metrics of the requests recorded after the given
+	 * (earlier) snapshot of the same method was taken.
+	 */
+	public TransferMethodMetrics minus(TransferMethodMetrics earlier) {
+		long[] latencyBucketsDiff = new long[latencyBuckets.length];
+
+		for (int i = 0; i < latencyBuckets.length; i++) {
+			latencyBucketsDiff[i] = latencyBuckets[i] - earlier.latencyBuckets[i];
+		}
+
+		Map<Integer, Long> statusCodesDiff = new HashMap<Integer, Long>();
+
+		for (Map.Entry<Integer, Long> statusCodeEntry : statusCodes.entrySet()) {
+			Long earlierCount = earlier.statusCodes.get(statusCodeEntry.getKey());
+			long countDiff = statusCodeEntry.getValue() - ((earlierCount != null) ? earlierCount : 0);
+
+			if (countDiff > 0) {
+				statusCodesDiff.put(statusCodeEntry.getKey(), countDiff);
+			}
+		}
+
+		return new TransferMethodMetrics(method, requests - earlier.requests, retries - earlier.retries, bytesIn - earlier.bytesIn, bytesOut
+				- earlier.bytesOut, totalDuration - earlier.totalDuration, latencyBucketsDiff, statusCodesDiff);
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public long getRequests() {
+		return requests;
+	}
+
+	public long getRetries() {
+		return retries;
+	}
+
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	public long getAverageMillis() {
+		return averageMillis;
+	}
+
+	public long getP50Millis() {
+		return p50Millis;
+	}
+
+	public long getP95Millis() {
+		return p95Millis;
+	}
+
+	public long getP99Millis() {
+		return p99Millis;
+	}
+
+	public Map<Integer, Long> getStatusCodes() {
+		return statusCodes;
+	}
+
+	@Override
+	public int compareTo(TransferMethodMetrics other) {
+		return method.compareTo(other.method);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d request(s), %d retries, %d bytes in, %d bytes out, avg %dms, p50 %dms, p95 %dms, p99 %dms, status %s", method,
+				requests, retries, bytesIn, bytesOut, averageMillis, p50Millis, p95Millis, p99Millis, statusCodes);
+	}
+
+	private long getPercentile(double percentile) {
+		long rank = (long) Math.ceil(percentile * requests);
+		long cumulativeCount = 0;
+
+		for (int i = 0; i < latencyBuckets.length && rank > 0; i++) {
+			cumulativeCount += latencyBuckets[i];
+
+			if (cumulativeCount >= rank) {
+				return TransferMetrics.LATENCY_BUCKET_BOUNDS[Math.min(i, TransferMetrics.LATENCY_BUCKET_BOUNDS.length - 1)];
+			}
+		}
+
+		return 0;
+	}
+}
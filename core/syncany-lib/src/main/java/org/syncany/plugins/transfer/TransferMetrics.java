@@ -0,0 +1,152 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lightweight, process-wide registry for request metrics of transfer plugins.
+ *
+ * <p>Plugins record each remote request (e.g. a HTTP <tt>PUT</tt> or <tt>PROPFIND</tt>)
+ * with its duration, the number of bytes sent and received, and its status code. For
+ * each method, the registry keeps counters and a latency histogram with fixed buckets,
+ * so recording is lock-free and needs no memory per request.
+ *
+ * <p>Metrics are read via {@link #snapshot()}; the difference between two snapshots
+ * (see {@link TransferMetricsSnapshot#minus(TransferMetricsSnapshot)}) describes the
+ * requests of a single operation.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferMetrics {
+	/**
+	 * Upper bounds of the latency histogram buckets (in milliseconds). Durations
+	 * above the last bound are counted in an additional overflow bucket.
+	 */
+	public static final long[] LATENCY_BUCKET_BOUNDS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 60000 };
+
+	private static final TransferMetrics instance = new TransferMetrics();
+
+	private final ConcurrentMap<String, MethodMetrics> methodMetrics;
+
+	public TransferMetrics() {
+		this.methodMetrics = new ConcurrentHashMap<String, MethodMetrics>();
+	}
+
+	public static TransferMetrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Records a completed request. If the request failed without a response,
+	 * the status code should be 0.
+	 */
+	public void recordRequest(String method, int statusCode, long durationMillis, long bytesIn, long bytesOut) {
+		getMethodMetrics(method).record(statusCode, durationMillis, bytesIn, bytesOut);
+	}
+
+	/**
+	 * Records that a request had to be sent again, e.g. because the server
+	 * asked for authentication or rejected an <tt>Expect</tt> header.
+	 */
+	public void recordRetry(String method) {
+		getMethodMetrics(method).retries.incrementAndGet();
+	}
+
+	public TransferMetricsSnapshot snapshot() {
+		List<TransferMethodMetrics> methodMetricsSnapshot = new ArrayList<TransferMethodMetrics>();
+
+		for (Map.Entry<String, MethodMetrics> methodMetricsEntry : methodMetrics.entrySet()) {
+			methodMetricsSnapshot.add(methodMetricsEntry.getValue().snapshot(methodMetricsEntry.getKey()));
+		}
+
+		Collections.sort(methodMetricsSnapshot);
+		return new TransferMetricsSnapshot(methodMetricsSnapshot);
+	}
+
+	public void reset() {
+		methodMetrics.clear();
+	}
+
+	private MethodMetrics getMethodMetrics(String method) {
+		MethodMetrics metrics = methodMetrics.get(method);
+
+		if (metrics == null) {
+			methodMetrics.putIfAbsent(method, new MethodMetrics());
+			metrics = methodMetrics.get(method);
+		}
+
+		return metrics;
+	}
+
+	private static class MethodMetrics {
+		private final AtomicLong requests = new AtomicLong(0);
+		private final AtomicLong retries = new AtomicLong(0);
+		private final AtomicLong bytesIn = new AtomicLong(0);
+		private final AtomicLong bytesOut = new AtomicLong(0);
+		private final AtomicLong totalDuration = new AtomicLong(0);
+		private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+		private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+		public void record(int statusCode, long durationMillis, long requestBytesIn, long requestBytesOut) {
+			requests.incrementAndGet();
+			bytesIn.addAndGet(Math.max(0, requestBytesIn));
+			bytesOut.addAndGet(Math.max(0, requestBytesOut));
+			totalDuration.addAndGet(durationMillis);
+			latencyBuckets.incrementAndGet(getBucket(durationMillis));
+
+			statusCodes.putIfAbsent(statusCode, new AtomicLong(0));
+			statusCodes.get(statusCode).incrementAndGet();
+		}
+
+		public TransferMethodMetrics snapshot(String method) {
+			long[] latencyBucketsSnapshot = new long[latencyBuckets.length()];
+
+			for (int i = 0; i < latencyBucketsSnapshot.length; i++) {
+				latencyBucketsSnapshot[i] = latencyBuckets.get(i);
+			}
+
+			Map<Integer, Long> statusCodesSnapshot = new HashMap<Integer, Long>();
+
+			for (Map.Entry<Integer, AtomicLong> statusCodeEntry : statusCodes.entrySet()) {
+				statusCodesSnapshot.put(statusCodeEntry.getKey(), statusCodeEntry.getValue().get());
+			}
+
+			return new TransferMethodMetrics(method, requests.get(), retries.get(), bytesIn.get(), bytesOut.get(), totalDuration.get(),
+					latencyBucketsSnapshot, statusCodesSnapshot);
+		}
+
+		private int getBucket(long durationMillis) {
+			for (int i = 0; i < LATENCY_BUCKET_BOUNDS.length; i++) {
+				if (durationMillis <= LATENCY_BUCKET_BOUNDS[i]) {
+					return i;
+				}
+			}
+
+			return LATENCY_BUCKET_BOUNDS.length;
+		}
+	}
+}
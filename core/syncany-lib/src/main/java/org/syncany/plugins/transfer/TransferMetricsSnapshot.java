@@ -0,0 +1,80 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simpleframework.xml.ElementList;
+
+/**
+ * Snapshot of all {@link TransferMetrics}, one {@link TransferMethodMetrics}
+ * per request method.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferMetricsSnapshot {
+	@ElementList(name = "methods", entry = "method", required = false)
+	private ArrayList<TransferMethodMetrics> methodMetrics;
+
+	public TransferMetricsSnapshot() {
+		this.methodMetrics = new ArrayList<TransferMethodMetrics>();
+	}
+
+	public TransferMetricsSnapshot(List<TransferMethodMetrics> methodMetrics) {
+		this.methodMetrics = new ArrayList<TransferMethodMetrics>(methodMetrics);
+	}
+
+	/**
+	 * Returns the metrics of all requests recorded after the given (earlier)
+	 * snapshot was taken. Methods without new requests are omitted.
+	 */
+	public TransferMetricsSnapshot minus(TransferMetricsSnapshot earlier) {
+		List<TransferMethodMetrics> methodMetricsDiff = new ArrayList<TransferMethodMetrics>();
+
+		for (TransferMethodMetrics currentMethodMetrics : methodMetrics) {
+			TransferMethodMetrics earlierMethodMetrics = earlier.getMethodMetrics(currentMethodMetrics.getMethod());
+			TransferMethodMetrics diffMethodMetrics = (earlierMethodMetrics != null) ? currentMethodMetrics.minus(earlierMethodMetrics)
+					: currentMethodMetrics;
+
+			if (diffMethodMetrics.getRequests() > 0 || diffMethodMetrics.getRetries() > 0) {
+				methodMetricsDiff.add(diffMethodMetrics);
+			}
+		}
+
+		return new TransferMetricsSnapshot(methodMetricsDiff);
+	}
+
+	public List<TransferMethodMetrics> getMethodMetrics() {
+		return methodMetrics;
+	}
+
+	public TransferMethodMetrics getMethodMetrics(String method) {
+		for (TransferMethodMetrics currentMethodMetrics : methodMetrics) {
+			if (currentMethodMetrics.getMethod().equals(method)) {
+				return currentMethodMetrics;
+			}
+		}
+
+		return null;
+	}
+
+	public boolean isEmpty() {
+		return methodMetrics.isEmpty();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+/**
+ * Priority classes of the {@link TransferScheduler}, from highest to lowest
+ * priority. Transfers of a higher class are always started before waiting transfers
+ * of a lower class.
+ *
+ * <p>Bulk transfers (multichunk uploads and downloads, and deletions) are limited to the
+ * regular transfer slots and to the bandwidth limit of the repository. Interactive and
+ * metadata requests may additionally use the reserved slots of the scheduler, and are not
+ * throttled, so that they keep their latency while bulk transfers saturate the link.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public enum TransferPriority {
+	/**
+	 * Requests a user is waiting for, e.g. a file requested via the daemon.
+	 */
+	INTERACTIVE(false),
+
+	/**
+	 * Small requests for the repository metadata, e.g. listings, action,
+	 * transaction and database files.
+	 */
+	METADATA(false),
+
+	/**
+	 * Multichunk downloads of down and restore operations.
+	 */
+	BULK_DOWN(true),
+
+	/**
+	 * Multichunk uploads of up operations.
+	 */
+	BULK_UP(true),
+
+	/**
+	 * Deletions of remote files, mostly by cleanup operations.
+	 */
+	CLEANUP(true);
+
+	private boolean bulk;
+
+	private TransferPriority(boolean bulk) {
+		this.bulk = bulk;
+	}
+
+	public boolean isBulk() {
+		return bulk;
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.transfer;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.util.StringUtil;
+
+/**
+ * The transfer scheduler decides which transfers to a repository may run, shared by all
+ * operations and daemon requests of a process that use this repository.
+ *
+ * <p>The scheduler has a number of regular transfer slots (usually the maximum number of concurrent
+ * transfers of the transfer plugin), plus {@link #RESERVED_SLOTS} slots that only interactive and
+ * metadata requests may use (see {@link TransferPriority}). If no slot is free, transfers wait
+ * and are started by priority, and in the order they arrived within the same priority.
+ *
+ * <p>In addition, bulk transfers are paced to the bandwidth limit of the repository, if
+ * one is configured. Interactive and metadata requests are not throttled.
+ *
+ * @see ScheduledTransferManager
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class TransferScheduler {
+	private static final Logger logger = Logger.getLogger(TransferScheduler.class.getSimpleName());
+
+	/**
+	 * Number of slots in addition to the regular slots that only interactive
+	 * and metadata requests may use.
+	 */
+	public static final int RESERVED_SLOTS = 1;
+
+	private static final ConcurrentMap<String, TransferScheduler> instances = new ConcurrentHashMap<String, TransferScheduler>();
+
+	private final ReentrantLock lock;
+	private final Condition slotReleased;
+	private final PriorityQueue<Waiter> waiters;
+
+	private int maxConcurrentTransfers;
+	private int runningTransfers;
+	private long waiterSequence;
+
+	private final Object bandwidthLock;
+	private long bandwidthLimit;
+	private long bandwidthAvailableTime;
+
+	public TransferScheduler() {
+		this.lock = new ReentrantLock();
+		this.slotReleased = lock.newCondition();
+		this.waiters = new PriorityQueue<Waiter>();
+
+		this.maxConcurrentTransfers = 1;
+		this.runningTransfers = 0;
+		this.waiterSequence = 0;
+
+		this.bandwidthLock = new Object();
+		this.bandwidthLimit = 0;
+		this.bandwidthAvailableTime = 0;
+	}
+
+	/**
+	 * Returns the scheduler of the repository of the given config, and updates its
+	 * bandwidth limit to the one configured. Folders connected to the same repository
+	 * share a scheduler.
+	 */
+	public static TransferScheduler getInstance(Config config) {
+		String repositoryKey = getRepositoryKey(config);
+		TransferScheduler scheduler = instances.get(repositoryKey);
+
+		if (scheduler == null) {
+			instances.putIfAbsent(repositoryKey, new TransferScheduler());
+			scheduler = instances.get(repositoryKey);
+		}
+
+		scheduler.setBandwidthLimit(config.getBandwidthLimit());
+		return scheduler;
+	}
+
+	/**
+	 * Returns the key that identifies the repository of the given config, i.e. the
+	 * repository ID, or the local folder if the repository is not known yet.
+	 */
+	static String getRepositoryKey(Config config) {
+		return (config.getRepoId() != null) ? StringUtil.toHex(config.getRepoId()) : config.getLocalDir().getAbsolutePath();
+	}
+
+	/**
+	 * Sets the number of regular transfer slots. The reserved slots
+	 * are added to this number.
+	 */
+	public void setMaxConcurrentTransfers(int maxConcurrentTransfers) {
+		lock.lock();
+
+		try {
+			this.maxConcurrentTransfers = Math.max(1, maxConcurrentTransfers);
+			slotReleased.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of bytes per second of bulk transfers,
+	 * or <tt>0</tt> for no limit.
+	 */
+	public void setBandwidthLimit(long bandwidthLimit) {
+		synchronized (bandwidthLock) {
+			this.bandwidthLimit = Math.max(0, bandwidthLimit);
+		}
+	}
+
+	/**
+	 * Waits until a transfer of the given priority may start, and takes a slot. Each
+	 * call must be followed by a call to {@link #release()} once the transfer has finished.
+	 */
+	public void acquire(TransferPriority priority) throws InterruptedException {
+		lock.lock();
+
+		try {
+			Waiter waiter = new Waiter(priority, waiterSequence++);
+			waiters.add(waiter);
+
+			try {
+				while (waiters.peek() != waiter || !canStart(priority)) {
+					slotReleased.await();
+				}
+			}
+			catch (InterruptedException e) {
+				waiters.remove(waiter);
+				slotReleased.signalAll();
+
+				throw e;
+			}
+
+			waiters.poll();
+			runningTransfers++;
+
+			// The next waiter might be able to start as well
+			slotReleased.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Releases a slot taken by {@link #acquire(TransferPriority)}.
+	 */
+	public void release() {
+		lock.lock();
+
+		try {
+			runningTransfers--;
+			slotReleased.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Paces bulk transfers to the bandwidth limit: Waits until the given number of bytes
+	 * may be transferred, based on the bytes of all previous bulk transfers. Returns
+	 * immediately for interactive and metadata transfers, or if no limit is set.
+	 */
+	public void throttle(TransferPriority priority, long bytes) throws InterruptedException {
+		if (!priority.isBulk() || bytes <= 0) {
+			return;
+		}
+
+		long waitMillis;
+
+		synchronized (bandwidthLock) {
+			if (bandwidthLimit <= 0) {
+				return;
+			}
+
+			long currentTime = System.currentTimeMillis();
+			long startTime = Math.max(currentTime, bandwidthAvailableTime);
+
+			bandwidthAvailableTime = startTime + bytes * 1000 / bandwidthLimit;
+			waitMillis = startTime - currentTime;
+		}
+
+		if (waitMillis > 0) {
+			logger.log(Level.FINE, "Bandwidth limit reached, delaying transfer of " + bytes + " bytes by " + waitMillis + "ms ...");
+			Thread.sleep(waitMillis);
+		}
+	}
+
+	private boolean canStart(TransferPriority priority) {
+		if (priority.isBulk()) {
+			return runningTransfers < maxConcurrentTransfers;
+		}
+		else {
+			return runningTransfers < maxConcurrentTransfers + RESERVED_SLOTS;
+		}
+	}
+
+	private static class Waiter implements Comparable<Waiter> {
+		private TransferPriority priority;
+		private long sequence;
+
+		public Waiter(TransferPriority priority, long sequence) {
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Waiter other) {
+			if (priority != other.priority) {
+				return priority.compareTo(other.priority);
+			}
+			else {
+				return Long.compare(sequence, other.sequence);
+			}
+		}
+	}
+}
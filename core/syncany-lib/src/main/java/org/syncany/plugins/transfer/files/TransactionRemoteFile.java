@@ -20,20 +20,24 @@ package org.syncany.plugins.transfer.files;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.syncany.crypto.CipherUtil;
 import org.syncany.plugins.transfer.RemoteTransaction;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.util.StringUtil;
 
 /**
  * The transaction file represents a manifest of a transaction on the remote storage. 
  * 
  * <p><b>Name pattern:</b> The name pattern of a transaction file is
- * <b>transaction-&lt;filehexhashcode&gt;</b>.
+ * <b>transaction-&lt;randomhexid&gt;</b>. The random identifier makes sure that a
+ * name is never reused, so that parsed transactions can be cached by their name.
  * 
  * @author Pim Otte
  */
 public class TransactionRemoteFile extends RemoteFile {
 	private static final Pattern NAME_PATTERN = Pattern.compile("transaction-([a-f0-9]+)");
 	private static final String NAME_FORMAT = "transaction-%s";
+	private static final int NAME_RANDOM_ID_LENGTH = 8;
 
 	/**
 	 * Initializes a new transaction file, given a name. 
@@ -46,13 +50,14 @@ public class TransactionRemoteFile extends RemoteFile {
 	}
 
 	/**
-	 * Initializes a new transaction file, given the transaction itself.
+	 * Initializes a new transaction file, given the transaction itself. The name
+	 * of the file contains a random identifier, and is hence unique.
 	 * 
 	 * @param remoteTransaction the remoteTransaction for which a file is needed
 	 * @throws StorageException If the name is not match the name pattern
 	 */
 	public TransactionRemoteFile(RemoteTransaction remoteTransaction) throws StorageException {
-		super(String.format(NAME_FORMAT, Integer.toHexString(remoteTransaction.hashCode())));
+		super(String.format(NAME_FORMAT, StringUtil.toHex(CipherUtil.createRandomArray(NAME_RANDOM_ID_LENGTH))));
 	}
 
 	@Override
@@ -49,7 +49,7 @@ public class ActionTO {
 	private ActionType type;
 
 	@Element(name = "status", required = false)
-	private ActionStatus status = ActionStatus.UNSTARTED;
+	private volatile ActionStatus status = ActionStatus.UNSTARTED;
 
 	@Element(name = "remoteLocation", required = true)
 	private String remoteLocation;
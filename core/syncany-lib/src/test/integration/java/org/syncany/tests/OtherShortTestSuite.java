@@ -25,6 +25,7 @@ import org.syncany.tests.integration.plugins.PluginsTest;
 import org.syncany.tests.integration.plugins.TransferSettingsTest;
 import org.syncany.tests.integration.plugins.local.LocalTransferManagerPluginTest;
 import org.syncany.tests.integration.plugins.unreliable_local.CleanupInterruptedTest;
+import org.syncany.tests.integration.plugins.unreliable_local.ParallelCommitInterruptedTest;
 import org.syncany.tests.integration.plugins.unreliable_local.UploadInterruptedTest;
 import org.syncany.tests.unit.chunk.FixedOffsetChunkerTest;
 import org.syncany.tests.unit.chunk.FrameworkCombinationTest;
@@ -38,6 +39,18 @@ import org.syncany.tests.unit.crypto.CipherSessionTest;
 import org.syncany.tests.unit.crypto.CipherSpecsTest;
 import org.syncany.tests.unit.crypto.CipherUtilTest;
 import org.syncany.tests.unit.crypto.MultiCipherStreamsTest;
+import org.syncany.tests.unit.operations.InFlightDownloadsTest;
+import org.syncany.tests.unit.operations.PartialMultiChunkDownloaderTest;
+import org.syncany.tests.unit.plugins.AdaptiveConcurrencyControllerTest;
+import org.syncany.tests.unit.plugins.AsyncTransferManagerTest;
+import org.syncany.tests.unit.plugins.BulkTransferManagerTest;
+import org.syncany.tests.unit.plugins.InstrumentedTransferManagerTest;
+import org.syncany.tests.unit.plugins.ParallelTransferExecutorTest;
+import org.syncany.tests.unit.plugins.RetriableTransferManagerTest;
+import org.syncany.tests.unit.plugins.SnapshotTransferManagerTest;
+import org.syncany.tests.unit.plugins.TransactionAwareTransferManagerTest;
+import org.syncany.tests.unit.plugins.TransferMetricsTest;
+import org.syncany.tests.unit.plugins.TransferSchedulerTest;
 import org.syncany.tests.util.SqlRunnerTest;
 
 @RunWith(Suite.class)
@@ -57,14 +70,27 @@ import org.syncany.tests.util.SqlRunnerTest;
 		FixedOffsetChunkerTest.class,
 		TTTDChunkerTest.class,
 		FrameworkCombinationTest.class,
+		PartialMultiChunkDownloaderTest.class,
+		InFlightDownloadsTest.class,
 
 		// Connection
 		PluginsTest.class,
 		LocalTransferManagerPluginTest.class,
 		UploadInterruptedTest.class,
 		CleanupInterruptedTest.class,
+		ParallelCommitInterruptedTest.class,
 		TransferSettingsTest.class,
 		PluginOptionsTest.class,
+		ParallelTransferExecutorTest.class,
+		TransferMetricsTest.class,
+		AdaptiveConcurrencyControllerTest.class,
+		AsyncTransferManagerTest.class,
+		TransactionAwareTransferManagerTest.class,
+		SnapshotTransferManagerTest.class,
+		InstrumentedTransferManagerTest.class,
+		TransferSchedulerTest.class,
+		RetriableTransferManagerTest.class,
+		BulkTransferManagerTest.class,
 
 		// Config
 		CacheTest.class,
@@ -0,0 +1,194 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.plugins.unreliable_local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferPlugin;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+/**
+ * Interrupts a transaction commit that transfers its files in parallel, once while the files
+ * are uploaded to their temporary location and once while they are moved to their final
+ * location, and verifies that other clients never see the partial commit and that the
+ * interrupted client recovers.
+ */
+public class ParallelCommitInterruptedTest {
+	private static final Logger logger = Logger.getLogger(ParallelCommitInterruptedTest.class.getSimpleName());
+
+	private static final int PARALLEL_TRANSFERS = 4;
+
+	@BeforeClass
+	public static void setUp() {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 50;
+	}
+
+	@Test
+	public void testParallelCommitInterruptedDuringTempUploadsThenResume() throws Exception {
+		/*
+		 * 1. upload(action-up-987, actions/action-up-987)
+		 * 2. upload(transaction-123, transactions/transaction-123)
+		 * 3.-n. upload(multichunk-*, temp-*), upload(database-123, temp-*) <<< in parallel, all but one multichunk FAIL
+		 */
+
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// List of failing operations (regex)
+						// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+						"rel=([4-9]|[1-9][0-9]+) .+upload.+multichunk"
+				}
+						));
+
+		testConnection.setParallelTransfers(PARALLEL_TRANSFERS);
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		createLargeFiles(clientA);
+		assertUpFails(clientA);
+
+		// Transaction must still be there, and no file may be in its final location
+		assertEquals(1, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/multichunks/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertTrue(new File(testConnection.getPath() + "/temporary/").listFiles().length > 0);
+
+		clientB.down();
+		assertEquals(0, clientB.getLocalFiles().size());
+
+		// Network is back: Resume the transaction
+		testConnection.getFailingOperationPatterns().clear();
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setResume(true);
+		upOptions.setForceUploadEnabled(true);
+		clientA.up(upOptions);
+
+		assertCommitComplete(testConnection);
+
+		clientB.down();
+		assertEquals(clientA.getLocalFiles().size(), clientB.getLocalFiles().size());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testParallelCommitInterruptedDuringFinalMovesThenRollback() throws Exception {
+		/*
+		 * 1. upload(action-up-987, actions/action-up-987)
+		 * 2. upload(transaction-123, transactions/transaction-123)
+		 * 3.-n. upload(multichunk-*, temp-*), upload(database-123, temp-*) <<< in parallel
+		 * n+1.-m. move(temp-*, multichunks/multichunk-*), move(temp-*, databases/database-123) <<< in parallel, all multichunks but the first move FAIL
+		 */
+
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// List of failing operations (regex)
+						// Format: abs=<count> rel=<count> op=<connect|init|upload|...> <operation description>
+
+						"rel=([2-9]|[1-9][0-9]+).+move.+multichunk"
+				}
+						));
+
+		testConnection.setParallelTransfers(PARALLEL_TRANSFERS);
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		createLargeFiles(clientA);
+		assertUpFails(clientA);
+
+		// Transaction must still be there, and hide the file that was already moved (if the first move was a multichunk)
+		assertEquals(1, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertTrue(new File(testConnection.getPath() + "/multichunks/").listFiles().length <= 1);
+
+		TransferManager transferManager = new TransactionAwareTransferManager(
+				new UnreliableLocalTransferPlugin().createTransferManager(testConnection, null), null);
+
+		assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(0, transferManager.list(DatabaseRemoteFile.class).size());
+
+		clientB.down();
+		assertEquals(0, clientB.getLocalFiles().size());
+
+		// Network is back: Roll back the transaction and upload again
+		testConnection.getFailingOperationPatterns().clear();
+
+		UpOperationOptions upOptions = new UpOperationOptions();
+		upOptions.setResume(false);
+		clientA.up(upOptions);
+
+		assertCommitComplete(testConnection);
+
+		clientB.down();
+		assertEquals(clientA.getLocalFiles().size(), clientB.getLocalFiles().size());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private void createLargeFiles(TestClient client) throws Exception {
+		for (int i = 0; i < 3; i++) {
+			client.createNewFile("A-original-" + i, 5 * 1024 * 1024); // << larger than one multichunk!
+		}
+	}
+
+	private void assertUpFails(TestClient client) throws Exception {
+		boolean upFailed = false;
+
+		try {
+			client.up();
+		}
+		catch (StorageException e) {
+			upFailed = true;
+			logger.log(Level.INFO, e.getMessage());
+		}
+
+		assertTrue(upFailed);
+	}
+
+	private void assertCommitComplete(UnreliableLocalTransferSettings testConnection) {
+		assertEquals(0, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/temporary/").listFiles().length);
+		assertTrue(new File(testConnection.getPath() + "/multichunks/").listFiles().length > 1);
+		assertEquals(1, new File(testConnection.getPath() + "/databases/").listFiles().length);
+	}
+}
@@ -24,10 +24,11 @@ import java.util.logging.Logger;
 
 import org.syncany.config.Config;
 import org.syncany.plugins.local.LocalTransferManager;
+import org.syncany.plugins.transfer.ConcurrentTransferManager;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.files.RemoteFile;
 
-public class UnreliableLocalTransferManager extends LocalTransferManager {
+public class UnreliableLocalTransferManager extends LocalTransferManager implements ConcurrentTransferManager {
 	private static final Logger logger = Logger.getLogger(UnreliableLocalTransferManager.class.getSimpleName());
 	private UnreliableLocalTransferSettings connection;
 
@@ -36,19 +37,28 @@ public class UnreliableLocalTransferManager extends LocalTransferManager {
 		this.connection = connection;
 	}
 
+	@Override
+	public int getMaxConcurrentTransfers() {
+		return connection.getParallelTransfers();
+	}
+
 	private boolean isNextOperationSuccessful(String operationType, String operationDescription) {
-		// Increase absolute/overall operation counter
-		connection.increaseTotalOperationCounter();
+		String operationLine;
 
-		// Increase type-relative operation counter
-		Integer typeOperationCounter = connection.getTypeOperationCounters().get(operationType);
+		synchronized (connection) {
+			// Increase absolute/overall operation counter
+			connection.increaseTotalOperationCounter();
 
-		typeOperationCounter = (typeOperationCounter != null) ? typeOperationCounter + 1 : 1;
-		connection.getTypeOperationCounters().put(operationType, typeOperationCounter);
+			// Increase type-relative operation counter
+			Integer typeOperationCounter = connection.getTypeOperationCounters().get(operationType);
 
-		// Construct operation line
-		String operationLine = String.format("abs=%d rel=%d op=%s %s", connection.getTotalOperationCounter(), typeOperationCounter, operationType,
-				operationDescription);
+			typeOperationCounter = (typeOperationCounter != null) ? typeOperationCounter + 1 : 1;
+			connection.getTypeOperationCounters().put(operationType, typeOperationCounter);
+
+			// Construct operation line
+			operationLine = String.format("abs=%d rel=%d op=%s %s", connection.getTotalOperationCounter(), typeOperationCounter, operationType,
+					operationDescription);
+		}
 
 		// Check if it fails
 		for (String failingOperationPattern : connection.getFailingOperationPatterns()) {
@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.simpleframework.xml.Element;
 import org.simpleframework.xml.ElementList;
 import org.syncany.plugins.local.LocalTransferSettings;
 
@@ -29,6 +30,9 @@ public class UnreliableLocalTransferSettings extends LocalTransferSettings {
 	@ElementList(required = false)
 	private List<String> failingOperationPatterns;
 
+	@Element(required = false)
+	private int parallelTransfers;
+
 	private int totalOperationCounter;
 	private Map<String, Integer> typeOperationCounters;
 
@@ -38,6 +42,7 @@ public class UnreliableLocalTransferSettings extends LocalTransferSettings {
 		this.totalOperationCounter = 0;
 		this.typeOperationCounters = new HashMap<String, Integer>();
 		this.failingOperationPatterns = new ArrayList<String>();
+		this.parallelTransfers = 1;
 	}
 
 	public List<String> getFailingOperationPatterns() {
@@ -48,6 +53,14 @@ public class UnreliableLocalTransferSettings extends LocalTransferSettings {
 		this.failingOperationPatterns = failingOperationPatterns;
 	}
 
+	public int getParallelTransfers() {
+		return parallelTransfers;
+	}
+
+	public void setParallelTransfers(int parallelTransfers) {
+		this.parallelTransfers = parallelTransfers;
+	}
+
 	public int getTotalOperationCounter() {
 		return totalOperationCounter;
 	}
@@ -23,23 +23,38 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.syncany.chunk.Adler32Fingerprinter;
 import org.syncany.chunk.Chunk;
 import org.syncany.chunk.Chunker;
+import org.syncany.chunk.Chunker.ChunkEnumeration;
+import org.syncany.chunk.Fingerprinter;
 import org.syncany.chunk.TttdChunker;
 import org.syncany.tests.unit.util.TestFileUtil;
 import org.syncany.util.FileUtil;
+import org.syncany.util.StringUtil;
 
 public class TTTDChunkerTest {
+	private static final Logger logger = Logger.getLogger(TTTDChunkerTest.class.getSimpleName());
+
 	private File tempDir;
 
 	@Before
@@ -84,7 +99,7 @@ public class TTTDChunkerTest {
 			// Checksum
 			assertNotNull("Chunk checksum should not be null.", lastChunk.getChecksum());
 			
-			outputCopyOfRandom5MBFileOutputStream.write(lastChunk.getContent(), 0, lastChunk.getSize());
+			outputCopyOfRandom5MBFileOutputStream.write(lastChunk.getContent(), lastChunk.getOffset(), lastChunk.getSize());
 		}
 		
 		outputCopyOfRandom5MBFileOutputStream.close();
@@ -127,4 +142,214 @@ public class TTTDChunkerTest {
 		assertNull("No chunk expected, but data received.", chunkEnumeration.nextElement());
 		assertFalse("hasElements() should return 'false' if no chunk available.", chunkEnumeration.hasMoreElements());
 	}
+
+	@Test
+	public void testChunkBoundariesMatchBytewiseImplementation() throws Exception {
+		// Small chunks (many buffer refills), and chunks larger than half the buffer
+		int[][] chunkerParams = new int[][] {
+			/* Tmin, Tmax, D, Ddash, windowSize */
+			new int[] { 1000, 6000, 1200, 600, 48 },
+			new int[] { 3712, 22598, 4358, 2179, 48 },
+			new int[] { 237300, 1444500, 278600, 139300, 48 }
+		};
+
+		for (int[] params : chunkerParams) {
+			int Tmin = params[0];
+			int Tmax = params[1];
+
+			TttdChunker chunker = new TttdChunker(Tmin, Tmax, params[2], params[3], params[4]);
+
+			List<File> inputFiles = new ArrayList<File>();
+			inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, 5 * 1024 * 1024));
+			inputFiles.add(createLowEntropyFile(5 * 1024 * 1024));
+
+			for (int size : new int[] { 0, 1, Tmin, Tmin + 1, Tmax - 1, Tmax, Tmax + 1, 2 * Tmax, 3 * Tmax + Tmin }) {
+				inputFiles.add(TestFileUtil.createRandomFileInDirectory(tempDir, size));
+			}
+
+			for (File inputFile : inputFiles) {
+				List<String> expectedChunks = createBytewiseChunks(inputFile, Tmin, Tmax, params[2], params[4]);
+				List<String> actualChunks = createChunks(chunker, inputFile);
+
+				assertEquals("Chunks of " + inputFile.length() + " byte file differ for " + chunker + ".", expectedChunks, actualChunks);
+			}
+		}
+	}
+
+	/**
+	 * Benchmark of the buffered chunker against the byte-wise reference implementation. It only
+	 * logs the throughput, so it is skipped unless the system property <tt>chunker.benchmark</tt> is set.
+	 */
+	@Test
+	public void testChunkingThroughput() throws Exception {
+		assumeTrue(Boolean.getBoolean("chunker.benchmark"));
+
+		final int TOTAL_FILE_SIZE = 4 * 1024 * 1024;
+		final int AVG_CHUNK_SIZE = 16 * 1024;
+
+		TttdChunker chunker = new TttdChunker(AVG_CHUNK_SIZE);
+		int Tmin = (int) Math.round(460.0 * AVG_CHUNK_SIZE / 1015.0);
+		int Tmax = (int) Math.round(2800.0 * AVG_CHUNK_SIZE / 1015.0);
+		int D = (int) Math.round(540.0 * AVG_CHUNK_SIZE / 1015.0);
+
+		File randomFile = TestFileUtil.createRandomFileInDirectory(tempDir, TOTAL_FILE_SIZE);
+		File lowEntropyFile = createLowEntropyFile(TOTAL_FILE_SIZE);
+
+		for (File inputFile : new File[] { randomFile, lowEntropyFile }) {
+			String dataType = (inputFile == randomFile) ? "random" : "low-entropy";
+
+			long bytewiseStartTime = System.nanoTime();
+			List<String> expectedChunks = createBytewiseChunks(inputFile, Tmin, Tmax, D, TttdChunker.DEFAULT_WINDOW_SIZE);
+			long bytewiseDuration = System.nanoTime() - bytewiseStartTime;
+
+			long bufferedStartTime = System.nanoTime();
+			List<String> actualChunks = createChunks(chunker, inputFile);
+			long bufferedDuration = System.nanoTime() - bufferedStartTime;
+
+			assertEquals(expectedChunks, actualChunks);
+
+			logger.log(Level.INFO, String.format("TTTD throughput (%s data, %d chunks): byte-wise %.1f MB/s, buffered %.1f MB/s", dataType,
+					actualChunks.size(), toMegabytesPerSecond(TOTAL_FILE_SIZE, bytewiseDuration), toMegabytesPerSecond(TOTAL_FILE_SIZE, bufferedDuration)));
+		}
+	}
+
+	private double toMegabytesPerSecond(long bytes, long durationNanos) {
+		return (bytes / 1024.0 / 1024.0) / (durationNanos / 1000000000.0);
+	}
+
+	/**
+	 * Creates a file of repeated text-like lines, with long runs of zeros and occasional
+	 * random bytes in between -- i.e. data with few natural breakpoints.
+	 */
+	private File createLowEntropyFile(int size) throws IOException {
+		File lowEntropyFile = TestFileUtil.getRandomFilenameInDirectory(tempDir);
+		byte[] line = "Syncany low entropy test line, repeated over and over again.\n".getBytes();
+		byte[] data = new byte[size];
+		Random random = new Random(size);
+
+		for (int i = 0; i < size; i++) {
+			if ((i / 65536) % 4 == 3) {
+				data[i] = 0;
+			}
+			else if (random.nextInt(4096) == 0) {
+				data[i] = (byte) random.nextInt(256);
+			}
+			else {
+				data[i] = line[i % line.length];
+			}
+		}
+
+		TestFileUtil.writeByteArrayToFile(data, lowEntropyFile);
+		return lowEntropyFile;
+	}
+
+	private List<String> createChunks(Chunker chunker, File inputFile) throws IOException {
+		List<String> chunks = new ArrayList<String>();
+		ChunkEnumeration chunkEnumeration = chunker.createChunks(inputFile);
+
+		while (chunkEnumeration.hasMoreElements()) {
+			Chunk chunk = chunkEnumeration.nextElement();
+			chunks.add(toChunkString(chunk.getSize(), chunk.getChecksum(), chunk.getFileChecksum()));
+		}
+
+		chunkEnumeration.close();
+		return chunks;
+	}
+
+	private String toChunkString(int size, byte[] checksum, byte[] fileChecksum) {
+		return size + "-" + StringUtil.toHex(checksum) + "-" + ((fileChecksum != null) ? StringUtil.toHex(fileChecksum) : "none");
+	}
+
+	/**
+	 * Creates the chunks of the given file like the original byte-wise TTTD implementation,
+	 * i.e. reading the file byte by byte and copying each chunk to a new array. The chunk
+	 * boundaries of the {@link TttdChunker} must never differ from these.
+	 */
+	private List<String> createBytewiseChunks(File inputFile, int Tmin, int Tmax, int D, int windowSize) throws Exception {
+		List<String> chunks = new ArrayList<String>();
+
+		InputStream in = new FileInputStream(inputFile);
+		Fingerprinter fingerprinter = new Adler32Fingerprinter();
+		MessageDigest chunkDigest = MessageDigest.getInstance(TttdChunker.DEFAULT_DIGEST_ALG);
+		MessageDigest fileDigest = MessageDigest.getInstance(TttdChunker.DEFAULT_DIGEST_ALG);
+
+		byte[] c = new byte[8192];
+		int clen = -1;
+		int cpos = -1;
+		boolean closed = false;
+
+		while (!closed) {
+			chunkDigest.reset();
+			fingerprinter.reset();
+
+			int breakpoint = -1;
+			byte[] buf = new byte[Tmax];
+			int bufpos = -1;
+
+			while (bufpos < buf.length - 1) {
+				if (cpos == -1 || cpos == clen - 1) {
+					cpos = -1;
+					clen = readBytewise(c, in);
+
+					if (clen == -1) {
+						break;
+					}
+
+					fileDigest.update(c, 0, clen);
+				}
+
+				bufpos++;
+				cpos++;
+				buf[bufpos] = c[cpos];
+
+				if (bufpos < Tmin) {
+					continue;
+				}
+				else if (bufpos == Tmin) {
+					fingerprinter.check(buf, bufpos - windowSize, windowSize);
+				}
+				else {
+					fingerprinter.roll(buf[bufpos]);
+				}
+
+				if ((fingerprinter.getValue() % D) == D - 1) {
+					breakpoint = bufpos;
+					break;
+				}
+			}
+
+			if (clen == -1) {
+				in.close();
+				closed = true;
+			}
+
+			if (breakpoint == -1) {
+				breakpoint = bufpos;
+			}
+
+			breakpoint++;
+			chunkDigest.update(buf, 0, breakpoint);
+
+			chunks.add(toChunkString(breakpoint, chunkDigest.digest(), (clen == -1) ? fileDigest.digest() : null));
+		}
+
+		return chunks;
+	}
+
+	private int readBytewise(byte[] readToBuffer, InputStream inputStream) throws IOException {
+		int bytesRead = 0;
+
+		while (bytesRead < readToBuffer.length) {
+			int byteRead = inputStream.read();
+
+			if (byteRead == -1) {
+				return (bytesRead != 0) ? bytesRead : -1;
+			}
+
+			readToBuffer[bytesRead] = (byte) byteRead;
+			bytesRead++;
+		}
+
+		return (bytesRead != 0) ? bytesRead : -1;
+	}
 }
@@ -0,0 +1,157 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.operations.InFlightDownloads;
+import org.syncany.operations.InFlightDownloads.DownloadTask;
+import org.syncany.plugins.transfer.StorageException;
+
+public class InFlightDownloadsTest {
+	private InFlightDownloads inFlightDownloads;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		inFlightDownloads = new InFlightDownloads();
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrentDownloadsOfSameFileAreMerged() throws Exception {
+		final CountDownLatch downloadStarted = new CountDownLatch(1);
+		final CountDownLatch downloadMayFinish = new CountDownLatch(1);
+		final AtomicInteger downloadCount = new AtomicInteger(0);
+
+		final DownloadTask download = new DownloadTask() {
+			@Override
+			public void execute() throws StorageException {
+				downloadCount.incrementAndGet();
+				downloadStarted.countDown();
+
+				try {
+					downloadMayFinish.await();
+				}
+				catch (InterruptedException e) {
+					throw new StorageException(e);
+				}
+			}
+		};
+
+		Future<Void> firstDownload = submitDownload(new File("multichunk-1"), download);
+		assertTrue(downloadStarted.await(5, TimeUnit.SECONDS));
+
+		Future<Void> secondDownload = submitDownload(new File("multichunk-1"), download);
+		Future<Void> otherFileDownload = submitDownload(new File("multichunk-2"), download);
+
+		otherFileDownload.get(5, TimeUnit.SECONDS);
+
+		Thread.sleep(200); // Let second download start waiting
+		downloadMayFinish.countDown();
+
+		firstDownload.get(5, TimeUnit.SECONDS);
+		secondDownload.get(5, TimeUnit.SECONDS);
+
+		assertEquals(2, downloadCount.get());
+
+		// Once finished, the file can be downloaded again
+		inFlightDownloads.download(new File("multichunk-1"), download);
+		assertEquals(3, downloadCount.get());
+	}
+
+	@Test
+	public void testWaitingDownloadsFailWithFirstDownload() throws Exception {
+		final CountDownLatch downloadStarted = new CountDownLatch(1);
+		final CountDownLatch downloadMayFail = new CountDownLatch(1);
+		final AtomicInteger downloadCount = new AtomicInteger(0);
+
+		Future<Void> firstDownload = submitDownload(new File("database-1"), new DownloadTask() {
+			@Override
+			public void execute() throws StorageException {
+				downloadCount.incrementAndGet();
+				downloadStarted.countDown();
+
+				try {
+					downloadMayFail.await();
+				}
+				catch (InterruptedException e) {
+					// Fail below
+				}
+
+				throw new StorageException("Connection lost");
+			}
+		});
+
+		assertTrue(downloadStarted.await(5, TimeUnit.SECONDS));
+
+		Future<Void> secondDownload = submitDownload(new File("database-1"), new DownloadTask() {
+			@Override
+			public void execute() throws StorageException {
+				downloadCount.incrementAndGet();
+			}
+		});
+
+		Thread.sleep(200); // Let second download start waiting
+		downloadMayFail.countDown();
+
+		assertDownloadFails(firstDownload);
+		assertDownloadFails(secondDownload);
+
+		assertEquals(1, downloadCount.get());
+	}
+
+	private Future<Void> submitDownload(final File targetFile, final DownloadTask download) {
+		return executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				inFlightDownloads.download(targetFile, download);
+				return null;
+			}
+		});
+	}
+
+	private void assertDownloadFails(Future<Void> download) throws Exception {
+		try {
+			download.get(5, TimeUnit.SECONDS);
+			throw new AssertionError("Download should have failed.");
+		}
+		catch (ExecutionException e) {
+			assertEquals(StorageException.class, e.getCause().getClass());
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.operations;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.operations.LocalFolderLocks;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class LocalFolderLocksTest {
+	private LocalFolderLocks folderLocks;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		folderLocks = new LocalFolderLocks();
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testOperationsOfSameFolderShareLocks() throws Exception {
+		Config configA = TestConfigUtil.createTestLocalConfig("A");
+		Config configB = TestConfigUtil.createTestLocalConfig("B");
+
+		try {
+			assertSame(LocalFolderLocks.getInstance(configA), LocalFolderLocks.getInstance(configA));
+			assertNotSame(LocalFolderLocks.getInstance(configA), LocalFolderLocks.getInstance(configB));
+		}
+		finally {
+			TestConfigUtil.deleteTestLocalConfigAndData(configA);
+			TestConfigUtil.deleteTestLocalConfigAndData(configB);
+		}
+	}
+
+	@Test
+	public void testCleanupDeletionWaitsForFileRequestDownload() throws Exception {
+		final CountDownLatch downloadStarted = new CountDownLatch(1);
+		final CountDownLatch downloadMayFinish = new CountDownLatch(1);
+
+		// File request: read database, then download with the database unlocked
+		Future<Void> fileRequest = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Lock databaseLock = folderLocks.getDatabaseLock().readLock();
+				Lock downloadLock = folderLocks.getDownloadLock().readLock();
+
+				databaseLock.lock();
+
+				try {
+					downloadLock.lock();
+				}
+				finally {
+					databaseLock.unlock();
+				}
+
+				try {
+					downloadStarted.countDown();
+					downloadMayFinish.await();
+				}
+				finally {
+					downloadLock.unlock();
+				}
+
+				return null;
+			}
+		});
+
+		assertTrue(downloadStarted.await(5, TimeUnit.SECONDS));
+
+		// Cleanup: change the database while the file request downloads, then delete multichunks
+		Future<Void> cleanup = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Lock databaseLock = folderLocks.getDatabaseLock().writeLock();
+				Lock downloadLock = folderLocks.getDownloadLock().writeLock();
+
+				databaseLock.lock();
+
+				try {
+					downloadLock.lock();
+					downloadLock.unlock();
+				}
+				finally {
+					databaseLock.unlock();
+				}
+
+				return null;
+			}
+		});
+
+		assertTimesOut(cleanup);
+
+		// File requests must not read the database while the cleanup changes it
+		assertFalse(folderLocks.getDatabaseLock().readLock().tryLock(200, TimeUnit.MILLISECONDS));
+
+		downloadMayFinish.countDown();
+
+		fileRequest.get(5, TimeUnit.SECONDS);
+		cleanup.get(5, TimeUnit.SECONDS);
+
+		assertTrue(folderLocks.getDatabaseLock().readLock().tryLock(5, TimeUnit.SECONDS));
+		folderLocks.getDatabaseLock().readLock().unlock();
+	}
+
+	private void assertTimesOut(Future<Void> future) throws Exception {
+		try {
+			future.get(500, TimeUnit.MILLISECONDS);
+			fail("Operation should wait.");
+		}
+		catch (TimeoutException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.operations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.config.to.ConfigTO;
+import org.syncany.config.to.RepoTO;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.PartialMultiChunkDownloader;
+import org.syncany.plugins.transfer.RangeTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageTestResult;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class PartialMultiChunkDownloaderTest {
+	private static final int CHUNK_COUNT = 20;
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	private File tempLocalDir;
+	private Config config;
+	private List<ChunkChecksum> chunkChecksums;
+	private List<byte[]> chunkContents;
+	private InMemoryRangeTransferManager transferManager;
+
+	@Before
+	public void setUp() throws Exception {
+		tempLocalDir = TestFileUtil.createTempDirectoryInSystemTemp();
+
+		ConfigTO configTO = new ConfigTO();
+		configTO.setMachineName("partialmachine");
+
+		RepoTO repoTO = new RepoTO();
+		repoTO.setTransformers(null);
+		repoTO.setChunkerTO(TestConfigUtil.createFixedChunkerTO());
+		repoTO.setMultiChunker(TestConfigUtil.createZipMultiChunkerTO());
+
+		config = new Config(tempLocalDir, configTO, repoTO);
+		config.getCacheDir().mkdirs();
+
+		chunkChecksums = new ArrayList<ChunkChecksum>();
+		chunkContents = new ArrayList<byte[]>();
+		transferManager = new InMemoryRangeTransferManager(createZipMultiChunk());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tempLocalDir);
+	}
+
+	@Test
+	public void testPartialDownloadSupported() {
+		assertTrue(new PartialMultiChunkDownloader(config, transferManager).isPartialDownloadSupported());
+	}
+
+	@Test
+	public void testDownloadFewChunks() throws Exception {
+		Set<ChunkChecksum> neededChunkChecksums = new HashSet<ChunkChecksum>(Arrays.asList(chunkChecksums.get(3), chunkChecksums.get(4),
+				chunkChecksums.get(17)));
+
+		PartialMultiChunkDownloader partialDownloader = new PartialMultiChunkDownloader(config, transferManager);
+		long savedBytes = partialDownloader.downloadChunks(MultiChunkId.secureRandomMultiChunkId(), neededChunkChecksums);
+
+		// Tail, and two ranges (chunks 3+4 are adjacent)
+		assertEquals(3, transferManager.rangeRequests);
+		assertEquals(transferManager.multiChunk.length - transferManager.downloadedBytes, savedBytes);
+		assertTrue(savedBytes > transferManager.multiChunk.length / 2);
+
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			File decryptedChunkFile = config.getCache().getDecryptedChunkFile(chunkChecksums.get(i));
+
+			if (neededChunkChecksums.contains(chunkChecksums.get(i))) {
+				assertArrayEquals(chunkContents.get(i), FileUtils.readFileToByteArray(decryptedChunkFile));
+			}
+			else {
+				assertFalse(decryptedChunkFile.exists());
+			}
+		}
+	}
+
+	@Test
+	public void testDownloadManyChunksNotWorthIt() throws Exception {
+		Set<ChunkChecksum> neededChunkChecksums = new HashSet<ChunkChecksum>(chunkChecksums.subList(0, CHUNK_COUNT / 2));
+
+		PartialMultiChunkDownloader partialDownloader = new PartialMultiChunkDownloader(config, transferManager);
+		long savedBytes = partialDownloader.downloadChunks(MultiChunkId.secureRandomMultiChunkId(), neededChunkChecksums);
+
+		assertEquals(-1, savedBytes);
+		assertEquals(1, transferManager.rangeRequests);
+		assertFalse(config.getCache().getDecryptedChunkFile(chunkChecksums.get(0)).exists());
+	}
+
+	@Test
+	public void testDownloadUnknownChunk() throws Exception {
+		Set<ChunkChecksum> neededChunkChecksums = new HashSet<ChunkChecksum>(Arrays.asList(new ChunkChecksum(new byte[] { 1, 2, 3, 4 })));
+
+		PartialMultiChunkDownloader partialDownloader = new PartialMultiChunkDownloader(config, transferManager);
+		assertEquals(-1, partialDownloader.downloadChunks(MultiChunkId.secureRandomMultiChunkId(), neededChunkChecksums));
+	}
+
+	@Test
+	public void testDownloadCorruptChunk() throws Exception {
+		byte[] corruptChunkContent = chunkContents.get(17);
+		int corruptOffset = indexOf(transferManager.multiChunk, Arrays.copyOfRange(corruptChunkContent, 0, 64)) + 100;
+
+		transferManager.multiChunk[corruptOffset] ^= 0x01;
+
+		PartialMultiChunkDownloader partialDownloader = new PartialMultiChunkDownloader(config, transferManager);
+		Set<ChunkChecksum> neededChunkChecksums = new HashSet<ChunkChecksum>(Arrays.asList(chunkChecksums.get(17)));
+
+		try {
+			partialDownloader.downloadChunks(MultiChunkId.secureRandomMultiChunkId(), neededChunkChecksums);
+			fail("Corrupt chunk should not be extracted.");
+		}
+		catch (IOException e) {
+			assertFalse(config.getCache().getDecryptedChunkFile(chunkChecksums.get(17)).exists());
+		}
+	}
+
+	private int indexOf(byte[] bytes, byte[] searchBytes) {
+		for (int i = 0; i + searchBytes.length <= bytes.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + searchBytes.length), searchBytes)) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Bytes not found.");
+	}
+
+	/**
+	 * Creates a multichunk the same way the {@link org.syncany.chunk.ZipMultiChunk ZipMultiChunk} does.
+	 */
+	private byte[] createZipMultiChunk() throws Exception {
+		Random random = new Random(42);
+		MessageDigest chunkDigest = MessageDigest.getInstance(config.getChunker().getChecksumAlgorithm());
+		ByteArrayOutputStream multiChunkOutputStream = new ByteArrayOutputStream();
+		ZipOutputStream zipOutputStream = new ZipOutputStream(multiChunkOutputStream);
+		zipOutputStream.setLevel(ZipOutputStream.STORED);
+
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			byte[] content = new byte[CHUNK_SIZE];
+			random.nextBytes(content);
+
+			ChunkChecksum chunkChecksum = new ChunkChecksum(chunkDigest.digest(content));
+
+			chunkChecksums.add(chunkChecksum);
+			chunkContents.add(content);
+
+			zipOutputStream.putNextEntry(new ZipEntry(chunkChecksum.toString()));
+			zipOutputStream.write(content);
+			zipOutputStream.closeEntry();
+		}
+
+		zipOutputStream.close();
+		return multiChunkOutputStream.toByteArray();
+	}
+
+	private static class InMemoryRangeTransferManager implements TransferManager, RangeTransferManager {
+		private byte[] multiChunk;
+		private int rangeRequests;
+		private long downloadedBytes;
+
+		public InMemoryRangeTransferManager(byte[] multiChunk) {
+			this.multiChunk = multiChunk;
+		}
+
+		@Override
+		public boolean isRangeDownloadSupported() {
+			return true;
+		}
+
+		@Override
+		public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException {
+			int start = (int) ((offset >= 0) ? offset : Math.max(0, multiChunk.length + offset));
+			int end = (int) Math.min(multiChunk.length, start + length);
+
+			try {
+				outputStream.write(multiChunk, start, end - start);
+			}
+			catch (IOException e) {
+				throw new StorageException(e);
+			}
+
+			rangeRequests++;
+			downloadedBytes += end - start;
+		}
+
+		@Override
+		public void connect() throws StorageException {
+			// Nothing.
+		}
+
+		@Override
+		public void disconnect() throws StorageException {
+			// Nothing.
+		}
+
+		@Override
+		public void init(boolean createIfRequired) throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean delete(RemoteFile remoteFile) throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public StorageTestResult test(boolean testCreateTarget) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean testTargetExists() throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean testTargetCanWrite() throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean testTargetCanCreate() throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean testRepoFileExists() throws StorageException {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
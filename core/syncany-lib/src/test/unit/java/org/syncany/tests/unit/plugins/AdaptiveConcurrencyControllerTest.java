@@ -0,0 +1,133 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.plugins.transfer.AdaptiveConcurrencyController;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class AdaptiveConcurrencyControllerTest {
+	@Test
+	public void testWindowDecreasesOnThrottleAndRecovers() throws Exception {
+		AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(8);
+		assertEquals(8, controller.getWindow());
+
+		controller.onThrottled(0);
+		assertEquals(4, controller.getWindow());
+
+		// Throttles during the same pause only count once
+		controller.onThrottled(10000);
+		assertEquals(4, controller.getWindow());
+
+		AdaptiveConcurrencyController recoveringController = new AdaptiveConcurrencyController(8);
+		recoveringController.onThrottled(0);
+
+		for (int i = 0; i < 100; i++) {
+			recoveringController.onSuccess("upload", 10);
+		}
+
+		assertEquals(8, recoveringController.getWindow());
+	}
+
+	@Test
+	public void testWindowDecreasesOnGrowingLatency() {
+		AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(10);
+
+		for (int i = 0; i < 10; i++) {
+			controller.onSuccess("upload", 20);
+		}
+
+		assertEquals(10, controller.getWindow());
+
+		controller.onSuccess("upload", 2000);
+		assertEquals(8, controller.getWindow());
+
+		// Latency baselines are kept per method
+		controller.onSuccess("list", 2000);
+		assertEquals(8, controller.getWindow());
+	}
+
+	@Test
+	public void testAcquireHonoursRetryAfter() throws Exception {
+		AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(2);
+		long pauseMillis = controller.onThrottled(300);
+
+		assertTrue(pauseMillis >= 300);
+
+		long startTime = System.currentTimeMillis();
+		controller.acquire();
+		controller.release();
+
+		assertTrue(System.currentTimeMillis() - startTime >= 250);
+	}
+
+	@Test
+	public void testTryAcquireDoesNotBlock() throws Exception {
+		AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(1);
+
+		assertTrue(controller.tryAcquire());
+		assertFalse(controller.tryAcquire());
+
+		controller.release();
+		assertTrue(controller.tryAcquire());
+		controller.release();
+
+		// Paused controllers do not admit requests, and tell how long they are paused
+		controller.onThrottled(10000);
+
+		assertFalse(controller.tryAcquire());
+		assertTrue(controller.getPauseMillis() > 5000);
+	}
+
+	@Test
+	public void testBackoffIsExponentialWithJitter() {
+		for (int attempt = 1; attempt <= 5; attempt++) {
+			long exponentialMillis = 100L << (attempt - 1);
+			long backoffMillis = AdaptiveConcurrencyController.getBackoffMillis(100, attempt);
+
+			assertTrue(backoffMillis >= exponentialMillis / 2);
+			assertTrue(backoffMillis <= exponentialMillis);
+		}
+
+		assertTrue(AdaptiveConcurrencyController.getBackoffMillis(100, 50) <= 60 * 1000);
+	}
+
+	@Test
+	public void testFoldersOfSameRepositoryShareController() throws Exception {
+		// Both folders are connected to the same test repository (same repo ID)
+		Config configA = TestConfigUtil.createTestLocalConfig("A");
+		Config configB = TestConfigUtil.createTestLocalConfig("B");
+
+		try {
+			AdaptiveConcurrencyController controllerA = AdaptiveConcurrencyController.getInstance(configA, 4);
+			AdaptiveConcurrencyController controllerB = AdaptiveConcurrencyController.getInstance(configB, 8);
+
+			assertSame(controllerA, controllerB);
+		}
+		finally {
+			TestConfigUtil.deleteTestLocalConfigAndData(configA);
+			TestConfigUtil.deleteTestLocalConfigAndData(configB);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.plugins.Plugins;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.transfer.AsyncTransferManager;
+import org.syncany.plugins.transfer.AsyncTransferManagerAdapter;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferPlugin;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferPlugin;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestConfigUtil;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class AsyncTransferManagerTest {
+	private File tempDir;
+	private File localFile;
+
+	@BeforeClass
+	public static void setUpClass() {
+		RetriableTransferManager.RETRY_SLEEP_MILLIS = 50;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		localFile = TestFileUtil.createRandomFileInDirectory(tempDir, 1024);
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testAdapterTransfersFiles() throws Exception {
+		TransferManager transferManager = createLocalTransferManager();
+		AsyncTransferManager asyncTransferManager = AsyncTransferManagerAdapter.adapt(transferManager);
+
+		List<ListenableFuture<Void>> uploadFutures = new ArrayList<ListenableFuture<Void>>();
+
+		for (int i = 0; i < 10; i++) {
+			uploadFutures.add(asyncTransferManager.uploadAsync(localFile, createMultichunk(i)));
+		}
+
+		for (ListenableFuture<Void> uploadFuture : uploadFutures) {
+			uploadFuture.get();
+		}
+
+		assertEquals(10, asyncTransferManager.listAsync(MultichunkRemoteFile.class).get().size());
+
+		File downloadedFile = new File(tempDir, "downloaded");
+		asyncTransferManager.downloadAsync(createMultichunk(3), downloadedFile).get();
+
+		assertEquals(localFile.length(), downloadedFile.length());
+		assertTrue(asyncTransferManager.deleteAsync(createMultichunk(3)).get());
+		assertEquals(9, transferManager.list(MultichunkRemoteFile.class).size());
+	}
+
+	@Test
+	public void testAdapterFailsFutureInsteadOfThrowing() throws Exception {
+		AsyncTransferManager asyncTransferManager = AsyncTransferManagerAdapter.adapt(createLocalTransferManager());
+		ListenableFuture<Void> downloadFuture = asyncTransferManager.downloadAsync(createMultichunk(1), new File(tempDir, "missing"));
+
+		try {
+			downloadFuture.get();
+			fail("ExecutionException expected.");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StorageFileNotFoundException);
+		}
+	}
+
+	@Test
+	public void testAdaptReturnsAsyncTransferManagerItself() throws Exception {
+		RetriableTransferManager retriableTransferManager = new RetriableTransferManager(createLocalTransferManager());
+		TransactionAwareTransferManager transactionAwareTransferManager = new TransactionAwareTransferManager(retriableTransferManager, null);
+
+		assertSame(retriableTransferManager, AsyncTransferManagerAdapter.adapt(retriableTransferManager));
+		assertSame(transactionAwareTransferManager, AsyncTransferManagerAdapter.adapt(transactionAwareTransferManager));
+	}
+
+	@Test
+	public void testRetriableAsyncUploadIsRetried() throws Exception {
+		TransferManager transferManager = createUnreliableTransferManager("rel=[12] .+upload");
+		AsyncTransferManager asyncTransferManager = new RetriableTransferManager(transferManager);
+
+		asyncTransferManager.uploadAsync(localFile, createMultichunk(1)).get();
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+	}
+
+	@Test
+	public void testRetriableAsyncUploadFailsAfterMaxRetries() throws Exception {
+		TransferManager transferManager = createUnreliableTransferManager(".+upload");
+		AsyncTransferManager asyncTransferManager = new RetriableTransferManager(transferManager);
+
+		try {
+			asyncTransferManager.uploadAsync(localFile, createMultichunk(1)).get();
+			fail("ExecutionException expected.");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StorageException);
+		}
+
+		assertTrue(transferManager.list(MultichunkRemoteFile.class).isEmpty());
+	}
+
+	@Test
+	public void testTransactionAwareAsyncDownloadOfMissingFileFails() throws Exception {
+		TransactionAwareTransferManager transferManager = new TransactionAwareTransferManager(new RetriableTransferManager(
+				createLocalTransferManager()), null);
+
+		transferManager.uploadAsync(localFile, createMultichunk(1)).get();
+		assertEquals(1, transferManager.listAsync(MultichunkRemoteFile.class).get().size());
+
+		try {
+			transferManager.downloadAsync(createMultichunk(2), new File(tempDir, "missing")).get();
+			fail("ExecutionException expected.");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StorageFileNotFoundException);
+			assertFalse(new File(tempDir, "missing").exists());
+		}
+	}
+
+	private TransferManager createLocalTransferManager() throws Exception {
+		TransferPlugin plugin = Plugins.get("local", TransferPlugin.class);
+		LocalTransferSettings settings = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TransferManager transferManager = plugin.createTransferManager(settings, null);
+		transferManager.connect();
+
+		return transferManager;
+	}
+
+	private TransferManager createUnreliableTransferManager(String failingOperationPattern) throws Exception {
+		UnreliableLocalTransferPlugin plugin = new UnreliableLocalTransferPlugin();
+		UnreliableLocalTransferSettings settings = TestConfigUtil.createTestUnreliableLocalConnection(Arrays.asList(failingOperationPattern));
+
+		TransferManager transferManager = plugin.createTransferManager(settings, null);
+		transferManager.connect();
+
+		return transferManager;
+	}
+
+	private MultichunkRemoteFile createMultichunk(int i) throws StorageException {
+		return new MultichunkRemoteFile(String.format("multichunk-%040x", i));
+	}
+}
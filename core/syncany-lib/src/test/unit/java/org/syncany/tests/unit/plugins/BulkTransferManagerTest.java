@@ -0,0 +1,183 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.BulkTransferManager;
+import org.syncany.plugins.transfer.BulkTransferManagerAdapter;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.RetryPolicy;
+import org.syncany.plugins.transfer.SnapshotTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferManager;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.AbstractUnreliableLocalTransferManagerTest;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class BulkTransferManagerTest extends AbstractUnreliableLocalTransferManagerTest {
+	private TransferManager transferManager;
+
+	@Override
+	protected UnreliableLocalTransferSettings createSettings() throws Exception {
+		UnreliableLocalTransferSettings parallelSettings = TestConfigUtil.createTestUnreliableLocalConnection(new ArrayList<String>());
+		parallelSettings.setParallelTransfers(4);
+
+		return parallelSettings;
+	}
+
+	@Before
+	public void setUpTransferManager() throws Exception {
+		transferManager = underlyingTransferManager;
+	}
+
+	@Test
+	public void testAdapterFallsBackToSingleRequests() throws Exception {
+		List<MultichunkRemoteFile> multichunks = uploadMultichunks(20);
+		Map<RemoteFile, RemoteFile> tempFinalFiles = new HashMap<RemoteFile, RemoteFile>();
+
+		for (MultichunkRemoteFile multichunk : multichunks) {
+			TempRemoteFile tempFile = new TempRemoteFile(multichunk);
+
+			transferManager.move(multichunk, tempFile);
+			tempFinalFiles.put(tempFile, multichunk);
+		}
+
+		BulkTransferManager bulkTransferManager = BulkTransferManagerAdapter.adapt(transferManager);
+
+		bulkTransferManager.move(tempFinalFiles);
+		assertEquals(20, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(0, transferManager.list(TempRemoteFile.class).size());
+
+		bulkTransferManager.delete(multichunks);
+		assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(20, (int) settings.getTypeOperationCounters().get("delete"));
+	}
+
+	@Test
+	public void testFailedDeleteDoesNotStopOthers() throws Exception {
+		List<MultichunkRemoteFile> multichunks = uploadMultichunks(10);
+		settings.getFailingOperationPatterns().add("rel=3 .+delete");
+
+		try {
+			BulkTransferManagerAdapter.adapt(transferManager).delete(multichunks);
+			fail("StorageException expected.");
+		}
+		catch (StorageException e) {
+			assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		}
+	}
+
+	@Test
+	public void testMissingSourceFailsMove() throws Exception {
+		Map<RemoteFile, RemoteFile> tempFinalFiles = new HashMap<RemoteFile, RemoteFile>();
+		tempFinalFiles.put(new TempRemoteFile(new MultichunkRemoteFile(String.format("multichunk-%040x", 1))),
+				new MultichunkRemoteFile(String.format("multichunk-%040x", 1)));
+
+		try {
+			BulkTransferManagerAdapter.adapt(new RetriableTransferManager(transferManager)).move(tempFinalFiles);
+			fail("StorageMoveException expected.");
+		}
+		catch (StorageMoveException e) {
+			assertEquals(1, (int) settings.getTypeOperationCounters().get("move"));
+		}
+	}
+
+	@Test
+	public void testFailedBulkMoveOnlyRetriesRemainingFiles() throws Exception {
+		List<MultichunkRemoteFile> multichunks = uploadMultichunks(10);
+		Map<RemoteFile, RemoteFile> finalTempFiles = new HashMap<RemoteFile, RemoteFile>();
+
+		for (MultichunkRemoteFile multichunk : multichunks) {
+			finalTempFiles.put(multichunk, new TempRemoteFile(multichunk));
+		}
+
+		RetryPolicy retryPolicy = new RetryPolicy();
+		retryPolicy.setRetrySleepMillis(1);
+
+		settings.getFailingOperationPatterns().add("rel=3 .+move");
+
+		new RetriableTransferManager(new ReportingBulkTransferManager(settings), retryPolicy).move(finalTempFiles);
+
+		assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(10, transferManager.list(TempRemoteFile.class).size());
+		assertEquals(11, (int) settings.getTypeOperationCounters().get("move"));
+	}
+
+	@Test
+	public void testDecoratorsWithoutBulkSupportAreAdapted() throws Exception {
+		SnapshotTransferManager snapshotTransferManager = new SnapshotTransferManager(new RetriableTransferManager(transferManager));
+
+		assertFalse(snapshotTransferManager.isBulkTransferSupported());
+		assertTrue(BulkTransferManagerAdapter.adapt(snapshotTransferManager) instanceof BulkTransferManagerAdapter);
+	}
+
+	private List<MultichunkRemoteFile> uploadMultichunks(int count) throws Exception {
+		List<MultichunkRemoteFile> multichunks = new ArrayList<MultichunkRemoteFile>();
+
+		for (int i = 1; i <= count; i++) {
+			MultichunkRemoteFile multichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", i));
+
+			transferManager.upload(localFile, multichunk);
+			multichunks.add(multichunk);
+		}
+
+		return multichunks;
+	}
+
+	/**
+	 * Implements the bulk methods with concurrent single requests, and reports
+	 * which files were processed if some of them fail.
+	 */
+	private static class ReportingBulkTransferManager extends UnreliableLocalTransferManager implements BulkTransferManager {
+		public ReportingBulkTransferManager(UnreliableLocalTransferSettings settings) {
+			super(settings, null);
+		}
+
+		@Override
+		public boolean isBulkTransferSupported() {
+			return true;
+		}
+
+		@Override
+		public void delete(Collection<? extends RemoteFile> remoteFiles) throws StorageException {
+			new BulkTransferManagerAdapter(this, true).delete(remoteFiles);
+		}
+
+		@Override
+		public void move(Map<? extends RemoteFile, ? extends RemoteFile> sourceTargetFiles) throws StorageException {
+			new BulkTransferManagerAdapter(this, true).move(sourceTargetFiles);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.operations.OperationTiming;
+import org.syncany.operations.OperationTimings;
+import org.syncany.plugins.transfer.InstrumentedTransferManager;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.AbstractUnreliableLocalTransferManagerTest;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class InstrumentedTransferManagerTest extends AbstractUnreliableLocalTransferManagerTest {
+	private InstrumentedTransferManager transferManager;
+
+	@Override
+	protected UnreliableLocalTransferSettings createSettings() throws Exception {
+		return TestConfigUtil.createTestUnreliableLocalConnection(Arrays.asList(new String[] { "rel=2 .+upload.+multichunk" }));
+	}
+
+	@Before
+	public void setUpTransferManager() throws Exception {
+		transferManager = new InstrumentedTransferManager(underlyingTransferManager);
+	}
+
+	@Test
+	public void testCallsAndBytesAreCounted() throws Exception {
+		MultichunkRemoteFile multichunk1 = new MultichunkRemoteFile(String.format("multichunk-%040x", 1));
+		MultichunkRemoteFile multichunk2 = new MultichunkRemoteFile(String.format("multichunk-%040x", 2));
+
+		transferManager.upload(localFile, multichunk1);
+
+		try {
+			transferManager.upload(localFile, multichunk2);
+			fail("Second upload should have failed.");
+		}
+		catch (StorageException e) {
+			// Expected
+		}
+
+		transferManager.download(multichunk1, new File(tempDir, "downloaded"));
+		transferManager.list(MultichunkRemoteFile.class);
+
+		List<OperationTiming> timings = transferManager.snapshot();
+
+		assertEquals(3, timings.size());
+		assertEquals("download", timings.get(0).getName());
+		assertEquals("list", timings.get(1).getName());
+		assertEquals("upload", timings.get(2).getName());
+
+		OperationTiming uploadTiming = timings.get(2);
+
+		assertEquals(2, uploadTiming.getCount());
+		assertEquals(1, uploadTiming.getFailures());
+		assertEquals(1024, uploadTiming.getBytes());
+
+		assertEquals(1, timings.get(0).getCount());
+		assertEquals(1024, timings.get(0).getBytes());
+	}
+
+	@Test
+	public void testOperationTimingsOnlyContainCallsSinceStart() throws Exception {
+		transferManager.list(MultichunkRemoteFile.class);
+		List<OperationTiming> timingsAtStart = transferManager.snapshot();
+
+		transferManager.upload(localFile, new MultichunkRemoteFile(String.format("multichunk-%040x", 1)));
+		transferManager.list(MultichunkRemoteFile.class);
+
+		OperationTimings operationTimings = new OperationTimings();
+		operationTimings.addPhase("index", 10);
+		operationTimings.addPhase("commit", 5);
+		operationTimings.addPhase("index", 20);
+		operationTimings.setTransfers(transferManager.snapshot(), timingsAtStart);
+
+		assertEquals(2, operationTimings.getPhases().size());
+		assertEquals("index", operationTimings.getPhases().get(0).getName());
+		assertEquals(2, operationTimings.getPhases().get(0).getCount());
+		assertEquals(30, operationTimings.getPhases().get(0).getMillis());
+
+		assertEquals(2, operationTimings.getTransfers().size());
+		assertEquals(1, operationTimings.getTransfers().get(0).getCount()); // list
+		assertEquals(1, operationTimings.getTransfers().get(1).getCount()); // upload
+	}
+
+	@Test
+	public void testChangeTokenIsNotCountedIfUnsupported() throws Exception {
+		assertNull(transferManager.getChangeToken(MultichunkRemoteFile.class));
+		assertEquals(new ArrayList<OperationTiming>(), transferManager.snapshot());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.syncany.plugins.transfer.ParallelTransferExecutor;
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferTask;
+import org.syncany.plugins.transfer.StorageException;
+
+public class ParallelTransferExecutorTest {
+	@Test
+	public void testSequentialExecutionInCallingThread() throws Exception {
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		List<TransferTask> tasks = createTasks(5, 0, threads, new AtomicInteger(), new AtomicInteger());
+
+		new ParallelTransferExecutor("Test", 1).execute(tasks);
+
+		assertEquals(1, threads.size());
+		assertTrue(threads.contains(Thread.currentThread()));
+	}
+
+	@Test
+	public void testParallelExecutionIsBounded() throws Exception {
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		AtomicInteger runningTasks = new AtomicInteger();
+		AtomicInteger maxRunningTasks = new AtomicInteger();
+
+		List<TransferTask> tasks = createTasks(20, 50, threads, runningTasks, maxRunningTasks);
+		new ParallelTransferExecutor("Test", 4).execute(tasks);
+
+		assertEquals(4, threads.size());
+		assertEquals(4, maxRunningTasks.get());
+	}
+
+	@Test
+	public void testFirstExceptionIsRethrown() throws Exception {
+		List<TransferTask> tasks = new ArrayList<TransferTask>();
+
+		for (int i = 0; i < 10; i++) {
+			final int taskNumber = i;
+
+			tasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException {
+					if (taskNumber == 3) {
+						throw new StorageException("Task " + taskNumber + " failed");
+					}
+				}
+			});
+		}
+
+		try {
+			new ParallelTransferExecutor("Test", 4).execute(tasks);
+			fail("Exception expected.");
+		}
+		catch (StorageException e) {
+			assertEquals("Task 3 failed", e.getMessage());
+		}
+	}
+
+	private List<TransferTask> createTasks(int count, final int sleepMillis, final Set<Thread> threads, final AtomicInteger runningTasks,
+			final AtomicInteger maxRunningTasks) {
+
+		List<TransferTask> tasks = new ArrayList<TransferTask>();
+
+		for (int i = 0; i < count; i++) {
+			tasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException {
+					threads.add(Thread.currentThread());
+
+					int currentlyRunning = runningTasks.incrementAndGet();
+
+					synchronized (maxRunningTasks) {
+						maxRunningTasks.set(Math.max(maxRunningTasks.get(), currentlyRunning));
+					}
+
+					try {
+						Thread.sleep(sleepMillis);
+					}
+					catch (InterruptedException e) {
+						throw new StorageException(e);
+					}
+					finally {
+						runningTasks.decrementAndGet();
+					}
+				}
+			});
+		}
+
+		return tasks;
+	}
+}
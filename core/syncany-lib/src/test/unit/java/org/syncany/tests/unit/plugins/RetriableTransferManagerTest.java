@@ -0,0 +1,188 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.RetriableTransferManager;
+import org.syncany.plugins.transfer.RetryPolicy;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFatalException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
+import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferPlugin;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class RetriableTransferManagerTest {
+	private File tempDir;
+
+	private UnreliableLocalTransferSettings settings;
+	private RetryPolicy retryPolicy;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		settings = TestConfigUtil.createTestUnreliableLocalConnection(new ArrayList<String>());
+
+		retryPolicy = new RetryPolicy();
+		retryPolicy.setMaxTries(3);
+		retryPolicy.setRetrySleepMillis(1);
+		retryPolicy.setCircuitBreakerThreshold(2);
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+		TestFileUtil.deleteDirectory(settings.getPath());
+	}
+
+	@Test
+	public void testFailedMethodIsRetried() throws Exception {
+		RetriableTransferManager transferManager = createTransferManager("rel=[12] .+list");
+
+		transferManager.list(MultichunkRemoteFile.class);
+		assertEquals(3, getOperationCount("list"));
+	}
+
+	@Test
+	public void testMissingFileIsNotRetried() throws Exception {
+		RetriableTransferManager transferManager = createTransferManager();
+
+		try {
+			transferManager.download(new MultichunkRemoteFile(String.format("multichunk-%040x", 1)), new File(tempDir, "missing"));
+			fail("StorageFileNotFoundException expected.");
+		}
+		catch (StorageFileNotFoundException e) {
+			assertEquals(1, getOperationCount("download"));
+		}
+
+		assertFalse(transferManager.isCircuitBreakerOpen());
+	}
+
+	@Test
+	public void testCircuitBreakerOpensAfterFailedMethods() throws Exception {
+		RetriableTransferManager transferManager = createTransferManager(".+list");
+
+		assertListFails(transferManager);
+		assertListFails(transferManager);
+
+		assertTrue(transferManager.isCircuitBreakerOpen());
+		assertEquals(6, getOperationCount("list"));
+
+		// Further methods fail without reaching the storage; disconnect is still passed through
+		assertListFails(transferManager);
+
+		try {
+			transferManager.download(new DatabaseRemoteFile("database-A-0000000001"), new File(tempDir, "database"));
+			fail("StorageException expected.");
+		}
+		catch (StorageException e) {
+			// Expected
+		}
+
+		transferManager.disconnect();
+
+		assertEquals(6, getOperationCount("list"));
+		assertEquals(0, getOperationCount("download"));
+		assertEquals(1, getOperationCount("disconnect"));
+	}
+
+	@Test
+	public void testSuccessfulMethodResetsCircuitBreaker() throws Exception {
+		RetriableTransferManager transferManager = createTransferManager("rel=[1-6] .+list");
+
+		assertListFails(transferManager);
+		transferManager.upload(TestFileUtil.createRandomFileInDirectory(tempDir, 1024), new MultichunkRemoteFile(String.format("multichunk-%040x", 1)));
+		assertListFails(transferManager);
+
+		assertFalse(transferManager.isCircuitBreakerOpen());
+	}
+
+	@Test
+	public void testRetryBudgetLimitsRetries() throws Exception {
+		retryPolicy.setRetrySleepMillis(1000000);
+		retryPolicy.setMaxSleepMillis(1000000);
+		retryPolicy.setRetryBudgetMillis(0);
+
+		RetriableTransferManager transferManager = createTransferManager(".+list");
+
+		assertListFails(transferManager);
+		assertEquals(1, getOperationCount("list"));
+	}
+
+	@Test
+	public void testExceptionClassification() throws Exception {
+		assertTrue(retryPolicy.isRetryable(new StorageException("Connection reset")));
+
+		assertFalse(retryPolicy.isRetryable(new StorageFileNotFoundException("Missing")));
+		assertFalse(retryPolicy.isRetryable(new StorageMoveException("Missing")));
+		assertFalse(retryPolicy.isFatal(new StorageFileNotFoundException("Missing")));
+
+		assertTrue(retryPolicy.isFatal(new StorageFatalException("Unauthorized")));
+		assertTrue(retryPolicy.isFatal(new StorageException(new RuntimeException(new CertificateException()))));
+		assertFalse(retryPolicy.isRetryable(new StorageFatalException("Unauthorized")));
+	}
+
+	@Test
+	public void testBackoffIsJitteredAndCapped() throws Exception {
+		retryPolicy.setRetrySleepMillis(100);
+		retryPolicy.setMaxSleepMillis(300);
+
+		for (int retry = 1; retry <= 10; retry++) {
+			long backoffMillis = retryPolicy.getBackoffMillis(retry);
+			assertTrue(backoffMillis >= 0 && backoffMillis <= 300);
+		}
+	}
+
+	private RetriableTransferManager createTransferManager(String... failingOperationPatterns) throws Exception {
+		for (String failingOperationPattern : failingOperationPatterns) {
+			settings.getFailingOperationPatterns().add(failingOperationPattern);
+		}
+
+		return new RetriableTransferManager(new UnreliableLocalTransferPlugin().createTransferManager(settings, null), retryPolicy);
+	}
+
+	private void assertListFails(RetriableTransferManager transferManager) {
+		try {
+			transferManager.list(MultichunkRemoteFile.class);
+			fail("StorageException expected.");
+		}
+		catch (StorageException e) {
+			// Expected
+		}
+	}
+
+	private int getOperationCount(String operationType) {
+		Integer operationCount = settings.getTypeOperationCounters().get(operationType);
+		return (operationCount != null) ? operationCount : 0;
+	}
+}
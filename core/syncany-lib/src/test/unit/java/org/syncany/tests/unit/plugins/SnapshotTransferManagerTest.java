@@ -0,0 +1,128 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.SnapshotTransferManager;
+import org.syncany.plugins.transfer.files.ActionRemoteFile;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.tests.util.AbstractUnreliableLocalTransferManagerTest;
+
+public class SnapshotTransferManagerTest extends AbstractUnreliableLocalTransferManagerTest {
+	private SnapshotTransferManager transferManager;
+
+	@Before
+	public void setUpTransferManager() throws Exception {
+		transferManager = new SnapshotTransferManager(underlyingTransferManager);
+	}
+
+	@Test
+	public void testFolderIsListedOnceAndUpdatedByOwnWrites() throws Exception {
+		MultichunkRemoteFile multichunk1 = new MultichunkRemoteFile(String.format("multichunk-%040x", 1));
+		MultichunkRemoteFile multichunk2 = new MultichunkRemoteFile(String.format("multichunk-%040x", 2));
+
+		underlyingTransferManager.upload(localFile, multichunk1);
+
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(1, getListCount());
+
+		// Own writes update the snapshot
+		TempRemoteFile tempFile = new TempRemoteFile(multichunk2);
+
+		transferManager.list(TempRemoteFile.class);
+		transferManager.upload(localFile, tempFile);
+
+		assertTrue(transferManager.list(TempRemoteFile.class).containsKey(tempFile.getName()));
+
+		transferManager.move(tempFile, multichunk2);
+
+		assertEquals(0, transferManager.list(TempRemoteFile.class).size());
+		assertEquals(2, transferManager.list(MultichunkRemoteFile.class).size());
+
+		transferManager.delete(multichunk1);
+
+		assertFalse(transferManager.list(MultichunkRemoteFile.class).containsKey(multichunk1.getName()));
+		assertEquals(2, getListCount());
+
+		// Writes of other clients are not seen
+		underlyingTransferManager.upload(localFile, new MultichunkRemoteFile(String.format("multichunk-%040x", 3)));
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+	}
+
+	@Test
+	public void testActionFilesAreAlwaysListed() throws Exception {
+		transferManager.list(ActionRemoteFile.class);
+		transferManager.list(ActionRemoteFile.class);
+
+		assertEquals(2, getListCount());
+	}
+
+	@Test
+	public void testTransactionSnapshotIsRefreshedAfterFirstListingOfOtherFolder() throws Exception {
+		transferManager.list(TransactionRemoteFile.class);
+		transferManager.list(TransactionRemoteFile.class);
+		assertEquals(1, getListCount());
+
+		transferManager.list(MultichunkRemoteFile.class);
+		transferManager.list(TransactionRemoteFile.class);
+		assertEquals(3, getListCount());
+
+		transferManager.list(MultichunkRemoteFile.class);
+		transferManager.list(TransactionRemoteFile.class);
+		assertEquals(3, getListCount());
+	}
+
+	@Test
+	public void testDatabaseFilesAreAlwaysListed() throws Exception {
+		assertEquals(0, transferManager.list(DatabaseRemoteFile.class).size());
+
+		// Databases uploaded by other clients are seen immediately
+		underlyingTransferManager.upload(localFile, new DatabaseRemoteFile("database-B-0000000001"));
+
+		assertEquals(1, transferManager.list(DatabaseRemoteFile.class).size());
+		assertEquals(2, getListCount());
+
+		// Listing the databases also refreshes the transactions
+		transferManager.list(TransactionRemoteFile.class);
+		transferManager.list(DatabaseRemoteFile.class);
+		transferManager.list(TransactionRemoteFile.class);
+		assertEquals(5, getListCount());
+	}
+
+	@Test
+	public void testDisconnectIsDeferredUntilClose() throws Exception {
+		transferManager.disconnect();
+		assertEquals(null, settings.getTypeOperationCounters().get("disconnect"));
+
+		transferManager.close();
+		assertEquals(1, (int) settings.getTypeOperationCounters().get("disconnect"));
+	}
+
+	private int getListCount() {
+		return getOperationCount("list");
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.TransactionAwareTransferManager;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.transfer.to.ActionTO;
+import org.syncany.plugins.transfer.to.ActionTO.ActionType;
+import org.syncany.plugins.transfer.to.TransactionTO;
+import org.syncany.tests.util.AbstractUnreliableLocalTransferManagerTest;
+
+public class TransactionAwareTransferManagerTest extends AbstractUnreliableLocalTransferManagerTest {
+	private TransactionAwareTransferManager transferManager;
+
+	@Before
+	public void setUpTransferManager() throws Exception {
+		transferManager = new TransactionAwareTransferManager(underlyingTransferManager, null);
+	}
+
+	@Test
+	public void testTransactionFilesAreOnlyDownloadedOnce() throws Exception {
+		MultichunkRemoteFile committedMultichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", 1));
+		MultichunkRemoteFile uncommittedMultichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", 2));
+
+		underlyingTransferManager.upload(localFile, committedMultichunk);
+		underlyingTransferManager.upload(localFile, uncommittedMultichunk);
+
+		TransactionRemoteFile remoteTransactionFile = uploadTransactionFile("transaction-1", uncommittedMultichunk);
+
+		// The uncommitted multichunk is hidden, and the transaction file is downloaded only once
+		for (int i = 0; i < 3; i++) {
+			assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		}
+
+		assertEquals(1, getDownloadCount());
+
+		// New transaction files are downloaded, known ones are not
+		uploadTransactionFile("transaction-2", committedMultichunk);
+
+		assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(2, getDownloadCount());
+
+		// Deleted transaction files are dropped from the cache
+		underlyingTransferManager.delete(remoteTransactionFile);
+
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(2, getDownloadCount());
+	}
+
+	@Test
+	public void testReuploadedTransactionFilesAreDownloadedAgain() throws Exception {
+		MultichunkRemoteFile firstMultichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", 1));
+		MultichunkRemoteFile secondMultichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", 2));
+
+		underlyingTransferManager.upload(localFile, firstMultichunk);
+		underlyingTransferManager.upload(localFile, secondMultichunk);
+
+		TransactionRemoteFile remoteTransactionFile = uploadTransactionFile("transaction-1", firstMultichunk, underlyingTransferManager);
+
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(secondMultichunk, transferManager.list(MultichunkRemoteFile.class).values().iterator().next());
+		assertEquals(1, getDownloadCount());
+
+		// Replacing the transaction file under the same name must not return the stale transaction
+		transferManager.delete(remoteTransactionFile);
+		uploadTransactionFile("transaction-1", secondMultichunk, transferManager);
+
+		assertEquals(1, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(firstMultichunk, transferManager.list(MultichunkRemoteFile.class).values().iterator().next());
+		assertEquals(2, getDownloadCount());
+	}
+
+	@Test
+	public void testNewTransactionFileNamesAreUnique() throws Exception {
+		Set<String> transactionFileNames = new HashSet<String>();
+
+		for (int i = 0; i < 100; i++) {
+			assertTrue(transactionFileNames.add(new TransactionRemoteFile((RemoteTransaction) null).getName()));
+		}
+	}
+
+	private TransactionRemoteFile uploadTransactionFile(String name, MultichunkRemoteFile uploadedMultichunk) throws Exception {
+		return uploadTransactionFile(name, uploadedMultichunk, underlyingTransferManager);
+	}
+
+	private TransactionRemoteFile uploadTransactionFile(String name, MultichunkRemoteFile uploadedMultichunk, TransferManager targetTransferManager)
+			throws Exception {
+		ActionTO action = new ActionTO();
+		action.setType(ActionType.UPLOAD);
+		action.setLocalTempLocation(localFile);
+		action.setRemoteLocation(uploadedMultichunk);
+		action.setRemoteTempLocation(new TempRemoteFile(uploadedMultichunk));
+
+		TransactionTO transactionTO = new TransactionTO("A");
+		transactionTO.addAction(action);
+
+		File localTransactionFile = new File(tempDir, name);
+		transactionTO.save(null, localTransactionFile);
+
+		TransactionRemoteFile remoteTransactionFile = new TransactionRemoteFile(name);
+		targetTransferManager.upload(localTransactionFile, remoteTransactionFile);
+
+		return remoteTransactionFile;
+	}
+
+	private int getDownloadCount() {
+		return getOperationCount("download");
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.syncany.plugins.transfer.TransferMethodMetrics;
+import org.syncany.plugins.transfer.TransferMetrics;
+import org.syncany.plugins.transfer.TransferMetricsSnapshot;
+
+public class TransferMetricsTest {
+	@Test
+	public void testPercentilesAndCounters() {
+		TransferMetrics metrics = new TransferMetrics();
+
+		for (int i = 0; i < 98; i++) {
+			metrics.recordRequest("PUT", 201, 8, 0, 1000);
+		}
+
+		metrics.recordRequest("PUT", 201, 400, 0, 1000);
+		metrics.recordRequest("PUT", 503, 90000, 0, 1000);
+		metrics.recordRetry("PUT");
+
+		TransferMethodMetrics putMetrics = metrics.snapshot().getMethodMetrics("PUT");
+
+		assertEquals(100, putMetrics.getRequests());
+		assertEquals(1, putMetrics.getRetries());
+		assertEquals(100 * 1000, putMetrics.getBytesOut());
+		assertEquals(0, putMetrics.getBytesIn());
+
+		assertEquals(10, putMetrics.getP50Millis());
+		assertEquals(10, putMetrics.getP95Millis());
+		assertEquals(500, putMetrics.getP99Millis());
+
+		assertEquals(99, (long) putMetrics.getStatusCodes().get(201));
+		assertEquals(1, (long) putMetrics.getStatusCodes().get(503));
+	}
+
+	@Test
+	public void testSnapshotDifference() {
+		TransferMetrics metrics = new TransferMetrics();
+
+		metrics.recordRequest("PROPFIND", 207, 3000, 5000, 100);
+		metrics.recordRequest("GET", 200, 15, 1000, 0);
+
+		TransferMetricsSnapshot earlierSnapshot = metrics.snapshot();
+
+		metrics.recordRequest("GET", 404, 30, 0, 0);
+		metrics.recordRequest("DELETE", 204, 5, 0, 0);
+
+		TransferMetricsSnapshot differenceSnapshot = metrics.snapshot().minus(earlierSnapshot);
+
+		assertNull(differenceSnapshot.getMethodMetrics("PROPFIND"));
+		assertEquals(2, differenceSnapshot.getMethodMetrics().size());
+
+		TransferMethodMetrics getMetrics = differenceSnapshot.getMethodMetrics("GET");
+
+		assertEquals(1, getMetrics.getRequests());
+		assertEquals(0, getMetrics.getBytesIn());
+		assertEquals(50, getMetrics.getP99Millis());
+		assertEquals(1, getMetrics.getStatusCodes().size());
+		assertTrue(getMetrics.getStatusCodes().containsKey(404));
+	}
+}
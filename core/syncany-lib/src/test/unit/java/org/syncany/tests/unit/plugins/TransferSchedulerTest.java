@@ -0,0 +1,124 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.syncany.plugins.transfer.TransferPriority;
+import org.syncany.plugins.transfer.TransferScheduler;
+
+public class TransferSchedulerTest {
+	@Test
+	public void testInteractiveTransferUsesReservedSlot() throws Exception {
+		TransferScheduler scheduler = new TransferScheduler();
+		scheduler.setMaxConcurrentTransfers(1);
+
+		scheduler.acquire(TransferPriority.BULK_UP);
+
+		CountDownLatch interactiveStarted = startTransfer(scheduler, TransferPriority.INTERACTIVE, null);
+		CountDownLatch bulkStarted = startTransfer(scheduler, TransferPriority.BULK_DOWN, null);
+
+		assertTrue(interactiveStarted.await(5, TimeUnit.SECONDS));
+		assertFalse(bulkStarted.await(200, TimeUnit.MILLISECONDS));
+
+		scheduler.release();
+		assertTrue(bulkStarted.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testWaitingTransfersStartByPriority() throws Exception {
+		TransferScheduler scheduler = new TransferScheduler();
+		scheduler.setMaxConcurrentTransfers(1);
+
+		// Occupy regular and reserved slot
+		scheduler.acquire(TransferPriority.BULK_UP);
+		scheduler.acquire(TransferPriority.METADATA);
+
+		List<TransferPriority> startOrder = Collections.synchronizedList(new ArrayList<TransferPriority>());
+
+		CountDownLatch cleanupStarted = startTransfer(scheduler, TransferPriority.CLEANUP, startOrder);
+		Thread.sleep(100);
+		CountDownLatch bulkUpStarted = startTransfer(scheduler, TransferPriority.BULK_UP, startOrder);
+		Thread.sleep(100);
+		CountDownLatch interactiveStarted = startTransfer(scheduler, TransferPriority.INTERACTIVE, startOrder);
+		Thread.sleep(100);
+
+		scheduler.release(); // Frees the reserved slot
+		assertTrue(interactiveStarted.await(5, TimeUnit.SECONDS));
+
+		scheduler.release(); // Frees the regular slot
+		assertTrue(bulkUpStarted.await(5, TimeUnit.SECONDS));
+		assertTrue(cleanupStarted.await(5, TimeUnit.SECONDS));
+
+		assertEquals(Arrays.asList(TransferPriority.INTERACTIVE, TransferPriority.BULK_UP, TransferPriority.CLEANUP), startOrder);
+	}
+
+	@Test
+	public void testBulkTransfersAreThrottled() throws Exception {
+		TransferScheduler scheduler = new TransferScheduler();
+		scheduler.setBandwidthLimit(100 * 1024);
+
+		long startTime = System.currentTimeMillis();
+
+		scheduler.throttle(TransferPriority.METADATA, 100 * 1024);
+		scheduler.throttle(TransferPriority.METADATA, 100 * 1024);
+		assertTrue(System.currentTimeMillis() - startTime < 400);
+
+		scheduler.throttle(TransferPriority.BULK_DOWN, 50 * 1024); // Starts immediately, next one may start after 500ms
+		scheduler.throttle(TransferPriority.BULK_UP, 50 * 1024);
+		assertTrue(System.currentTimeMillis() - startTime >= 450);
+	}
+
+	private CountDownLatch startTransfer(final TransferScheduler scheduler, final TransferPriority priority, final List<TransferPriority> startOrder) {
+		final CountDownLatch started = new CountDownLatch(1);
+
+		Thread transferThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					scheduler.acquire(priority);
+
+					if (startOrder != null) {
+						startOrder.add(priority);
+						scheduler.release();
+					}
+
+					started.countDown();
+				}
+				catch (InterruptedException e) {
+					// Test fails
+				}
+			}
+		}, "Transfer-" + priority);
+
+		transferThread.setDaemon(true);
+		transferThread.start();
+
+		return started;
+	}
+}
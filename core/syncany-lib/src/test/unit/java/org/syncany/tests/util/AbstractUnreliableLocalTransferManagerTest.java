@@ -0,0 +1,78 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.util;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferPlugin;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+/**
+ * Base class for tests of transfer manager decorators. It creates a temporary directory
+ * with a small random file to upload, and an unreliable local transfer manager whose
+ * operations are counted by its settings.
+ *
+ * <p>Subclasses wrap the {@link #underlyingTransferManager} in the decorator under test
+ * in their own <tt>@Before</tt> method, which JUnit runs after {@link #setUp()}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public abstract class AbstractUnreliableLocalTransferManagerTest {
+	protected File tempDir;
+	protected File localFile;
+
+	protected UnreliableLocalTransferSettings settings;
+	protected TransferManager underlyingTransferManager;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		localFile = TestFileUtil.createRandomFileInDirectory(tempDir, 1024);
+
+		settings = createSettings();
+		underlyingTransferManager = new UnreliableLocalTransferPlugin().createTransferManager(settings, null);
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+		TestFileUtil.deleteDirectory(settings.getPath());
+	}
+
+	/**
+	 * Creates the settings of the unreliable local transfer manager. By default, no
+	 * operation fails. Subclasses may override this to add failing operations.
+	 */
+	protected UnreliableLocalTransferSettings createSettings() throws Exception {
+		return TestConfigUtil.createTestUnreliableLocalConnection(new ArrayList<String>());
+	}
+
+	/**
+	 * Returns how often an operation of the given type (e.g. <tt>list</tt> or <tt>download</tt>)
+	 * has reached the unreliable local transfer manager.
+	 */
+	protected int getOperationCount(String operationType) {
+		Integer operationCount = settings.getTypeOperationCounters().get(operationType);
+		return (operationCount != null) ? operationCount : 0;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.webdav;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Repeatable HTTP entity that reads a local file through a {@link FileChannel}
+ * and writes it to the connection in large blocks.
+ *
+ * <p>Unlike an <tt>InputStreamEntity</tt>, the content length is always known
+ * (so the request is never sent with chunked transfer encoding), and the request
+ * can be resent if the server asks for authentication or rejects the
+ * <tt>Expect: 100-continue</tt> header.
+ *
+ * <p>HttpClient writes large blocks directly to the socket, bypassing its own
+ * output buffer; reading the file in blocks of {@link #BUFFER_SIZE} bytes hence
+ * avoids the many small copies of a stream-based entity.
+ */
+public class FileChannelEntity extends AbstractHttpEntity {
+	static final int BUFFER_SIZE = 256 * 1024;
+
+	private final File file;
+
+	public FileChannelEntity(File file, ContentType contentType) {
+		this.file = file;
+
+		if (contentType != null) {
+			setContentType(contentType.toString());
+		}
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return file.length();
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		return new FileInputStream(file);
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel fileChannel = randomAccessFile.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+			while (fileChannel.read(buffer) != -1) {
+				buffer.flip();
+				outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+				buffer.clear();
+			}
+
+			outputStream.flush();
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
@@ -0,0 +1,367 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.webdav;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.client.methods.ZeroCopyConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFatalException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
+import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.StorageThrottledException;
+import org.syncany.plugins.transfer.TransferMetrics;
+
+import com.github.sardine.impl.SardineException;
+import com.github.sardine.impl.methods.HttpMove;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Non-blocking alternative to the Sardine client for the requests that transfer or
+ * rearrange files (<tt>PUT</tt>, <tt>GET</tt>, <tt>MOVE</tt> and <tt>DELETE</tt>). Requests are
+ * sent through a shared {@link CloseableHttpAsyncClient} (see {@link WebdavConnectionPool#getAsyncClient(WebdavTransferSettings, java.util.concurrent.Callable) getAsyncClient()}),
+ * whose I/O reactor serves all connections of a repository with a handful of threads. Each
+ * method returns immediately with a {@link ListenableFuture}; the calling thread is not tied up while
+ * the request is in flight.
+ *
+ * <p>File bodies are streamed between the socket and the file channel without passing
+ * through the Java heap (see {@link ZeroCopyConsumer}). Like in the blocking implementation,
+ * all requests are recorded in the {@link TransferMetrics}, and requests that are given several
+ * URLs (e.g. the sharded and the flat location of a multichunk) try them in order until one
+ * is found.
+ *
+ * <p>Failed requests complete their future with a {@link StorageException}: a
+ * {@link StorageThrottledException} if the server throttled the request, a {@link StorageFileNotFoundException}
+ * if a downloaded file does not exist, and a {@link StorageMoveException} if a file cannot be moved.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class WebdavAsyncEngine {
+	private static final Logger logger = Logger.getLogger(WebdavAsyncEngine.class.getSimpleName());
+
+	private static final ContentType APPLICATION_CONTENT_TYPE = ContentType.APPLICATION_OCTET_STREAM;
+	private static final int HTTP_NOT_FOUND = 404;
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+	private CloseableHttpAsyncClient asyncClient;
+
+	public WebdavAsyncEngine(CloseableHttpAsyncClient asyncClient) {
+		this.asyncClient = asyncClient;
+	}
+
+	/**
+	 * Uploads the given local file to the given URL using a <tt>PUT</tt> request.
+	 */
+	public ListenableFuture<Void> upload(final File localFile, String remoteUrl) {
+		logger.log(Level.INFO, "WebDAV: Uploading (async) local file " + localFile + " to " + remoteUrl + " ...");
+
+		return new AsyncRequest<Void>("PUT", remoteUrl) {
+			@Override
+			protected HttpAsyncRequestProducer createProducer(String remoteUrl) throws IOException {
+				return HttpAsyncMethods.createZeroCopyPut(URI.create(remoteUrl), localFile, APPLICATION_CONTENT_TYPE);
+			}
+
+			@Override
+			protected Void onSuccess(HttpResponse response) {
+				return null;
+			}
+
+			@Override
+			protected long getBytesOut() {
+				return localFile.length();
+			}
+		}.start();
+	}
+
+	/**
+	 * Downloads the file at the first of the given URLs that exists to the given local file,
+	 * using a <tt>GET</tt> request. If none of them exist, the future fails with a
+	 * {@link StorageFileNotFoundException}.
+	 */
+	public ListenableFuture<Void> download(List<String> remoteUrls, final File localFile) {
+		logger.log(Level.INFO, "WebDAV: Downloading (async) " + remoteUrls.get(0) + " to temp file " + localFile + " ...");
+
+		return new AsyncRequest<Void>("GET", remoteUrls) {
+			@Override
+			protected HttpAsyncRequestProducer createProducer(String remoteUrl) {
+				return HttpAsyncMethods.createGet(remoteUrl);
+			}
+
+			@Override
+			protected HttpAsyncResponseConsumer<HttpResponse> createConsumer() throws IOException {
+				// The consumer writes into the existing file without truncating it
+				localFile.delete();
+
+				return new ZeroCopyConsumer<HttpResponse>(localFile) {
+					@Override
+					protected HttpResponse process(HttpResponse response, File file, ContentType contentType) {
+						return response;
+					}
+				};
+			}
+
+			@Override
+			protected Void onSuccess(HttpResponse response) {
+				return null;
+			}
+
+			@Override
+			protected Void onFailure(String remoteUrl, HttpResponse response) throws StorageException {
+				localFile.delete(); // Contains the error page
+
+				if (response.getStatusLine().getStatusCode() == HTTP_NOT_FOUND) {
+					throw new StorageFileNotFoundException("File not found: " + remoteUrl, toSardineException(response));
+				}
+				else {
+					return super.onFailure(remoteUrl, response);
+				}
+			}
+
+			@Override
+			protected long getBytesIn(HttpResponse response) {
+				return localFile.length();
+			}
+		}.start();
+	}
+
+	/**
+	 * Moves the file at the first of the given source URLs that exists to the target URL,
+	 * using a <tt>MOVE</tt> request. Existing files at the target URL are overwritten.
+	 */
+	public ListenableFuture<Void> move(List<String> sourceUrls, final String targetUrl) {
+		logger.log(Level.FINE, "WebDAV: Moving (async) " + sourceUrls.get(0) + " to " + targetUrl + " ...");
+
+		return new AsyncRequest<Void>("MOVE", sourceUrls) {
+			@Override
+			protected HttpAsyncRequestProducer createProducer(String sourceUrl) {
+				return HttpAsyncMethods.create(new HttpMove(sourceUrl, targetUrl, true));
+			}
+
+			@Override
+			protected Void onSuccess(HttpResponse response) {
+				return null;
+			}
+
+			@Override
+			protected Void onFailure(String sourceUrl, HttpResponse response) throws StorageException {
+				if (isThrottled(response)) {
+					return super.onFailure(sourceUrl, response);
+				}
+				else {
+					throw new StorageMoveException("Unable to move " + sourceUrl + " to " + targetUrl, toSardineException(response));
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * Deletes the file at the first of the given URLs that exists, using a <tt>DELETE</tt>
+	 * request. Like {@link WebdavTransferManager#delete(org.syncany.plugins.transfer.files.RemoteFile) delete()},
+	 * the future returns <tt>true</tt> if the file was deleted or does not exist, and <tt>false</tt>
+	 * if the server refused to delete it.
+	 */
+	public ListenableFuture<Boolean> delete(List<String> remoteUrls) {
+		logger.log(Level.FINE, "WebDAV: Deleting (async) " + remoteUrls.get(0));
+
+		return new AsyncRequest<Boolean>("DELETE", remoteUrls) {
+			@Override
+			protected HttpAsyncRequestProducer createProducer(String remoteUrl) {
+				return HttpAsyncMethods.create(new HttpDelete(remoteUrl));
+			}
+
+			@Override
+			protected Boolean onSuccess(HttpResponse response) {
+				return true;
+			}
+
+			@Override
+			protected Boolean onFailure(String remoteUrl, HttpResponse response) throws StorageException {
+				if (response.getStatusLine().getStatusCode() == HTTP_NOT_FOUND) {
+					return true;
+				}
+				else if (isThrottled(response)) {
+					return super.onFailure(remoteUrl, response);
+				}
+				else {
+					return false;
+				}
+			}
+		}.start();
+	}
+
+	private static boolean isThrottled(HttpResponse response) {
+		int statusCode = response.getStatusLine().getStatusCode();
+		return statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HTTP_SERVICE_UNAVAILABLE;
+	}
+
+	private static SardineException toSardineException(HttpResponse response) {
+		StatusLine statusLine = response.getStatusLine();
+		return new SardineException("Unexpected response", statusLine.getStatusCode(), statusLine.getReasonPhrase());
+	}
+
+	/**
+	 * A single logical request: sends the request to the first URL, and to the next URL
+	 * whenever the server responds with <tt>404 Not Found</tt>. The request is completed in
+	 * the I/O reactor's thread, so subclasses must not block in their callbacks.
+	 */
+	private abstract class AsyncRequest<T> implements FutureCallback<HttpResponse> {
+		private final String method;
+		private final List<String> remoteUrls;
+		private final SettableFuture<T> resultFuture;
+
+		private volatile Future<HttpResponse> requestFuture;
+		private int urlIndex;
+		private long startTime;
+
+		public AsyncRequest(String method, String remoteUrl) {
+			this(method, Collections.singletonList(remoteUrl));
+		}
+
+		public AsyncRequest(String method, List<String> remoteUrls) {
+			this.method = method;
+			this.remoteUrls = remoteUrls;
+			this.urlIndex = 0;
+
+			this.resultFuture = SettableFuture.create();
+			this.resultFuture.addListener(new Runnable() {
+				@Override
+				public void run() {
+					if (resultFuture.isCancelled() && requestFuture != null) {
+						requestFuture.cancel(true);
+					}
+				}
+			}, MoreExecutors.sameThreadExecutor());
+		}
+
+		public ListenableFuture<T> start() {
+			send();
+			return resultFuture;
+		}
+
+		protected abstract HttpAsyncRequestProducer createProducer(String remoteUrl) throws IOException;
+
+		protected HttpAsyncResponseConsumer<HttpResponse> createConsumer() throws IOException {
+			return HttpAsyncMethods.createConsumer();
+		}
+
+		protected abstract T onSuccess(HttpResponse response) throws StorageException;
+
+		/**
+		 * Called if the server responds with an error status to the last URL. Throttled
+		 * requests fail with a {@link StorageThrottledException}, rejected credentials with a
+		 * {@link StorageFatalException}, and all others with a {@link StorageException}.
+		 */
+		protected T onFailure(String remoteUrl, HttpResponse response) throws StorageException {
+			SardineException sardineException = toSardineException(response);
+
+			if (isThrottled(response)) {
+				long retryAfterMillis = WebdavTransferManager.parseRetryAfter(response.getFirstHeader("Retry-After"));
+				throw new StorageThrottledException("WebDAV: Server throttled request (status " + sardineException.getStatusCode() + ")",
+						retryAfterMillis, sardineException);
+			}
+			else if (WebdavTransferManager.isAccessDenied(sardineException.getStatusCode())) {
+				throw new StorageFatalException("WebDAV: Access denied (status " + sardineException.getStatusCode() + ")", sardineException);
+			}
+			else {
+				throw new StorageException("WebDAV: " + method + " " + remoteUrl + " failed", sardineException);
+			}
+		}
+
+		protected long getBytesIn(HttpResponse response) {
+			return (response.getEntity() != null) ? Math.max(0, response.getEntity().getContentLength()) : 0;
+		}
+
+		protected long getBytesOut() {
+			return 0;
+		}
+
+		private void send() {
+			String remoteUrl = remoteUrls.get(urlIndex);
+
+			try {
+				startTime = System.currentTimeMillis();
+				requestFuture = asyncClient.execute(createProducer(remoteUrl), createConsumer(), this);
+			}
+			catch (IOException e) {
+				resultFuture.setException(new StorageException("WebDAV: Cannot send " + method + " " + remoteUrl, e));
+			}
+		}
+
+		@Override
+		public void completed(HttpResponse response) {
+			int statusCode = response.getStatusLine().getStatusCode();
+			String remoteUrl = remoteUrls.get(urlIndex);
+
+			long duration = System.currentTimeMillis() - startTime;
+			TransferMetrics.getInstance().recordRequest(method, statusCode, duration, getBytesIn(response), getBytesOut());
+
+			try {
+				if (statusCode >= 200 && statusCode < 300) {
+					resultFuture.set(onSuccess(response));
+				}
+				else if (statusCode == HTTP_NOT_FOUND && urlIndex + 1 < remoteUrls.size()) {
+					logger.log(Level.FINE, "WebDAV: " + remoteUrl + " not found; trying " + remoteUrls.get(urlIndex + 1) + " ...");
+
+					urlIndex++;
+					send();
+				}
+				else {
+					resultFuture.set(onFailure(remoteUrl, response));
+				}
+			}
+			catch (StorageException e) {
+				resultFuture.setException(e);
+			}
+		}
+
+		@Override
+		public void failed(Exception e) {
+			String remoteUrl = remoteUrls.get(urlIndex);
+
+			long duration = System.currentTimeMillis() - startTime;
+			TransferMetrics.getInstance().recordRequest(method, 0, duration, 0, getBytesOut());
+
+			logger.log(Level.SEVERE, "WebDAV: " + method + " " + remoteUrl + " failed.", e);
+			resultFuture.setException(new StorageException("WebDAV: " + method + " " + remoteUrl + " failed", e));
+		}
+
+		@Override
+		public void cancelled() {
+			resultFuture.cancel(true);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.webdav;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScheme;
+import org.apache.http.client.AuthCache;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+
+/**
+ * Thread-safe {@link AuthCache} that is shared by all transfer managers (and all
+ * of their threads) of a repository; it is kept in the {@link WebdavConnectionPool}.
+ *
+ * <p>HttpClient stores the Basic or Digest auth scheme (including the Digest nonce)
+ * in this cache after the first successful authentication, and uses it to authenticate
+ * all further requests to the same host pre-emptively. Without it, every new Sardine
+ * client would first receive a <tt>401 Unauthorized</tt> and then send its request again.
+ *
+ * <p>Only the stateless {@link BasicScheme} is shared by all threads. Other schemes, in
+ * particular the Digest scheme with its nonce count, are stateful and not thread-safe; they
+ * are therefore kept per thread, i.e. each thread is challenged once.
+ */
+public class WebdavAuthCache implements AuthCache {
+	private static final Logger logger = Logger.getLogger(WebdavAuthCache.class.getSimpleName());
+
+	private final Map<HttpHost, AuthScheme> authSchemes;
+	private final ThreadLocal<Map<HttpHost, AuthScheme>> threadAuthSchemes;
+	private final SchemePortResolver schemePortResolver;
+	private final boolean reuseAuthState;
+
+	/**
+	 * Creates a new auth cache. If <tt>reuseAuthState</tt> is false, auth schemes learned
+	 * from server challenges are not stored, i.e. only pre-emptive Basic authentication
+	 * (see {@link #addPreemptiveBasicAuth(HttpHost)}) is used.
+	 */
+	public WebdavAuthCache(boolean reuseAuthState) {
+		this.authSchemes = new ConcurrentHashMap<HttpHost, AuthScheme>();
+		this.threadAuthSchemes = new ThreadLocal<Map<HttpHost, AuthScheme>>() {
+			@Override
+			protected Map<HttpHost, AuthScheme> initialValue() {
+				return new HashMap<HttpHost, AuthScheme>();
+			}
+		};
+		this.schemePortResolver = DefaultSchemePortResolver.INSTANCE;
+		this.reuseAuthState = reuseAuthState;
+	}
+
+	/**
+	 * Sends Basic credentials to the given host with the very first request,
+	 * without waiting for a <tt>401 Unauthorized</tt> challenge.
+	 */
+	public void addPreemptiveBasicAuth(HttpHost host) {
+		logger.log(Level.INFO, "WebDAV: Using pre-emptive Basic authentication for " + host);
+		authSchemes.put(getKey(host), new BasicScheme());
+	}
+
+	@Override
+	public void put(HttpHost host, AuthScheme authScheme) {
+		if (reuseAuthState && authScheme instanceof BasicScheme) {
+			logger.log(Level.FINE, "WebDAV: Caching " + authScheme.getSchemeName() + " auth state for " + host);
+			authSchemes.put(getKey(host), authScheme);
+		}
+		else if (reuseAuthState && authScheme != null) {
+			logger.log(Level.FINE, "WebDAV: Caching " + authScheme.getSchemeName() + " auth state for " + host + " (this thread only)");
+			threadAuthSchemes.get().put(getKey(host), authScheme);
+		}
+	}
+
+	@Override
+	public AuthScheme get(HttpHost host) {
+		AuthScheme threadAuthScheme = threadAuthSchemes.get().get(getKey(host));
+		return (threadAuthScheme != null) ? threadAuthScheme : authSchemes.get(getKey(host));
+	}
+
+	@Override
+	public void remove(HttpHost host) {
+		threadAuthSchemes.get().remove(getKey(host));
+		authSchemes.remove(getKey(host));
+	}
+
+	@Override
+	public void clear() {
+		threadAuthSchemes.get().clear();
+		authSchemes.clear();
+	}
+
+	private HttpHost getKey(HttpHost host) {
+		if (host.getPort() <= 0) {
+			try {
+				return new HttpHost(host.getHostName(), schemePortResolver.resolve(host), host.getSchemeName());
+			}
+			catch (UnsupportedSchemeException e) {
+				return host;
+			}
+		}
+		else {
+			return host;
+		}
+	}
+}
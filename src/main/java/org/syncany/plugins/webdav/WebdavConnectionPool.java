@@ -0,0 +1,358 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.webdav;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.syncany.plugins.UserInteractionListener;
+import org.syncany.util.StringUtil;
+
+/**
+ * The connection pool keeps one long-lived {@link PoolingHttpClientConnectionManager}
+ * per repository (URL, username and password hash) for the lifetime of the process.
+ *
+ * <p>Transfer managers are created and thrown away by every operation (up, down,
+ * cleanup, ls-remote, action file renewal), so keeping the HTTP connections in the
+ * transfer manager itself would mean paying TCP and TLS setup for each of them.
+ * Instead, all transfer managers for the same repository lease their connections
+ * from the same pool. Idle connections are evicted periodically, and all pools are
+ * shut down when the JVM (daemon or CLI) exits.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class WebdavConnectionPool {
+	private static final Logger logger = Logger.getLogger(WebdavConnectionPool.class.getSimpleName());
+
+	private static final int IDLE_EVICTION_INTERVAL_SECONDS = 5;
+
+	private static final Map<String, PoolingHttpClientConnectionManager> connectionManagers = new HashMap<String, PoolingHttpClientConnectionManager>();
+	private static final Map<String, WebdavAuthCache> authCaches = new HashMap<String, WebdavAuthCache>();
+	private static final Map<String, ConnectionSocketFactory> secureSocketFactories = new HashMap<String, ConnectionSocketFactory>();
+	private static final Map<String, Boolean> gzipRequestSupport = new HashMap<String, Boolean>();
+	private static final Map<String, Boolean> shardedMultichunks = new HashMap<String, Boolean>();
+	private static final Map<String, Set<String>> knownCollections = new HashMap<String, Set<String>>();
+	private static final Map<String, CloseableHttpAsyncClient> asyncClients = new HashMap<String, CloseableHttpAsyncClient>();
+	private static final Map<String, UserInteractionListener> userInteractionListeners = new HashMap<String, UserInteractionListener>();
+	private static ScheduledExecutorService idleConnectionEvictor;
+	private static boolean shutdownHookRegistered;
+
+	/**
+	 * Returns the shared connection manager for the given repository settings, or
+	 * creates a new one if this is the first connection to this repository.
+	 *
+	 * <p>The secure socket factory creator is only called if a new connection manager
+	 * for a HTTPS repository must be created.
+	 */
+	public static synchronized PoolingHttpClientConnectionManager getConnectionManager(WebdavTransferSettings settings,
+			Callable<ConnectionSocketFactory> secureSocketFactoryCreator) throws Exception {
+
+		String poolKey = getPoolKey(settings);
+		PoolingHttpClientConnectionManager connectionManager = connectionManagers.get(poolKey);
+
+		if (connectionManager == null) {
+			logger.log(Level.INFO, "WebDAV: Creating connection pool for " + settings.getUrl() + " ...");
+
+			connectionManager = createConnectionManager(settings, secureSocketFactoryCreator);
+			connectionManagers.put(poolKey, connectionManager);
+
+			startIdleConnectionEvictor();
+		}
+
+		return connectionManager;
+	}
+
+	/**
+	 * Returns the shared, started non-blocking HTTP client for the given repository settings
+	 * (see {@link WebdavAsyncEngine}), or creates and starts one if this is the first
+	 * non-blocking request to this repository. The client is closed in {@link #shutdown()}.
+	 */
+	public static synchronized CloseableHttpAsyncClient getAsyncClient(WebdavTransferSettings settings,
+			Callable<CloseableHttpAsyncClient> asyncClientCreator) throws Exception {
+
+		String poolKey = getPoolKey(settings);
+		CloseableHttpAsyncClient asyncClient = asyncClients.get(poolKey);
+
+		if (asyncClient == null) {
+			logger.log(Level.INFO, "WebDAV: Creating non-blocking HTTP client for " + settings.getUrl() + " ...");
+
+			asyncClient = asyncClientCreator.call();
+			asyncClient.start();
+
+			asyncClients.put(poolKey, asyncClient);
+			startIdleConnectionEvictor();
+		}
+
+		return asyncClient;
+	}
+
+	/**
+	 * Returns the shared {@link WebdavAuthCache} for the given repository settings, or
+	 * <tt>null</tt> if neither pre-emptive authentication nor auth state reuse is enabled.
+	 * Like the connections, the auth state survives the individual transfer managers.
+	 */
+	public static synchronized WebdavAuthCache getAuthCache(WebdavTransferSettings settings) {
+		if (!settings.isPreemptiveAuth() && !settings.isReuseAuthState()) {
+			return null;
+		}
+
+		String poolKey = getPoolKey(settings);
+		WebdavAuthCache authCache = authCaches.get(poolKey);
+
+		if (authCache == null) {
+			authCache = new WebdavAuthCache(settings.isReuseAuthState());
+
+			if (settings.isPreemptiveAuth()) {
+				URI repoUri = URI.create(settings.getUrl());
+				authCache.addPreemptiveBasicAuth(new HttpHost(repoUri.getHost(), repoUri.getPort(), repoUri.getScheme()));
+			}
+
+			authCaches.put(poolKey, authCache);
+		}
+
+		return authCache;
+	}
+
+	/**
+	 * Remembers the user interaction listener of the most recently connected transfer manager
+	 * for the server of the given repository. The trust strategy of the cached SSL context (see
+	 * {@link #getSecureSocketFactory(WebdavTransferSettings, Callable) getSecureSocketFactory()})
+	 * uses it to ask the user about unknown certificates, instead of keeping a reference to the
+	 * transfer manager that created the context.
+	 */
+	public static synchronized void setUserInteractionListener(WebdavTransferSettings settings, UserInteractionListener userInteractionListener) {
+		if (userInteractionListener != null) {
+			userInteractionListeners.put(getServerKey(settings), userInteractionListener);
+		}
+	}
+
+	public static synchronized UserInteractionListener getUserInteractionListener(String serverKey) {
+		return userInteractionListeners.get(serverKey);
+	}
+
+	/**
+	 * Returns whether the server of the given repository accepts gzip-encoded request
+	 * bodies, or <tt>null</tt> if this has not been detected yet (see
+	 * {@link #setGzipRequestSupported(WebdavTransferSettings, boolean)}).
+	 */
+	public static synchronized Boolean isGzipRequestSupported(WebdavTransferSettings settings) {
+		return gzipRequestSupport.get(getPoolKey(settings));
+	}
+
+	public static synchronized void setGzipRequestSupported(WebdavTransferSettings settings, boolean supported) {
+		gzipRequestSupport.put(getPoolKey(settings), supported);
+	}
+
+	/**
+	 * Returns whether the given repository stores multichunks in sub-folders, or <tt>null</tt>
+	 * if its layout has not been read in this process yet (see
+	 * {@link #setShardedMultichunks(WebdavTransferSettings, boolean)}).
+	 */
+	public static synchronized Boolean isShardedMultichunks(WebdavTransferSettings settings) {
+		return shardedMultichunks.get(getPoolKey(settings));
+	}
+
+	public static synchronized void setShardedMultichunks(WebdavTransferSettings settings, boolean sharded) {
+		shardedMultichunks.put(getPoolKey(settings), sharded);
+	}
+
+	/**
+	 * Returns the shared, thread-safe set of collection URLs that are known to exist
+	 * in the given repository, so that transfer managers can skip <tt>MKCOL</tt> requests
+	 * for folders that they (or other transfer managers) have created before.
+	 */
+	public static synchronized Set<String> getKnownCollections(WebdavTransferSettings settings) {
+		String poolKey = getPoolKey(settings);
+		Set<String> repoKnownCollections = knownCollections.get(poolKey);
+
+		if (repoKnownCollections == null) {
+			repoKnownCollections = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			knownCollections.put(poolKey, repoKnownCollections);
+		}
+
+		return repoKnownCollections;
+	}
+
+	/**
+	 * Closes all connection pools. This is called automatically by a shutdown
+	 * hook when the JVM exits, and should otherwise only be used by tests.
+	 */
+	public static synchronized void shutdown() {
+		logger.log(Level.INFO, "WebDAV: Shutting down " + connectionManagers.size() + " connection pool(s) ...");
+
+		for (PoolingHttpClientConnectionManager connectionManager : connectionManagers.values()) {
+			connectionManager.shutdown();
+		}
+
+		for (CloseableHttpAsyncClient asyncClient : asyncClients.values()) {
+			try {
+				asyncClient.close();
+			}
+			catch (IOException e) {
+				logger.log(Level.WARNING, "WebDAV: Cannot close non-blocking HTTP client.", e);
+			}
+		}
+
+		connectionManagers.clear();
+		asyncClients.clear();
+		authCaches.clear();
+		gzipRequestSupport.clear();
+		shardedMultichunks.clear();
+		knownCollections.clear();
+
+		if (idleConnectionEvictor != null) {
+			idleConnectionEvictor.shutdownNow();
+			idleConnectionEvictor = null;
+		}
+	}
+
+	private static PoolingHttpClientConnectionManager createConnectionManager(WebdavTransferSettings settings,
+			Callable<ConnectionSocketFactory> secureSocketFactoryCreator) throws Exception {
+
+		RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory> create();
+		registryBuilder.register("http", PlainConnectionSocketFactory.getSocketFactory());
+
+		if (settings.isSecure()) {
+			registryBuilder.register("https", getSecureSocketFactory(settings, secureSocketFactoryCreator));
+		}
+
+		Registry<ConnectionSocketFactory> socketFactoryRegistry = registryBuilder.build();
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+
+		// All connections go to the same host, so the per-route and total limit are the same;
+		// Parallel transfers each need their own connection, so the pool must be at least that big
+
+		int maxConnections = Math.max(settings.getMaxConnections(), settings.getParallelTransfers());
+
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+		return connectionManager;
+	}
+
+	/**
+	 * Returns the cached secure socket factory (and thereby the {@link javax.net.ssl.SSLContext}) for
+	 * the server of the given repository, or creates one if this is the first connection
+	 * to this server.
+	 *
+	 * <p>Sharing the SSL context lets all connections to the same server (even with different
+	 * credentials) resume TLS sessions from the context's client session cache, so only the
+	 * first connection pays for a full handshake. Unlike the connection pools, the socket
+	 * factories are kept until the JVM exits.
+	 */
+	private static ConnectionSocketFactory getSecureSocketFactory(WebdavTransferSettings settings,
+			Callable<ConnectionSocketFactory> secureSocketFactoryCreator) throws Exception {
+
+		String serverKey = getServerKey(settings);
+		ConnectionSocketFactory secureSocketFactory = secureSocketFactories.get(serverKey);
+
+		if (secureSocketFactory == null) {
+			logger.log(Level.INFO, "WebDAV: Creating SSL context for " + serverKey + " ...");
+
+			secureSocketFactory = secureSocketFactoryCreator.call();
+			secureSocketFactories.put(serverKey, secureSocketFactory);
+		}
+
+		return secureSocketFactory;
+	}
+
+	private static void startIdleConnectionEvictor() {
+		if (idleConnectionEvictor == null) {
+			idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread evictorThread = new Thread(runnable, "WebdavIdleEvict");
+					evictorThread.setDaemon(true);
+
+					return evictorThread;
+				}
+			});
+
+			idleConnectionEvictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictIdleConnections();
+				}
+			}, IDLE_EVICTION_INTERVAL_SECONDS, IDLE_EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		}
+
+		if (!shutdownHookRegistered) {
+			shutdownHookRegistered = true;
+
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					shutdown();
+				}
+			}, "WebdavPoolShutdown"));
+		}
+	}
+
+	private static synchronized void evictIdleConnections() {
+		for (PoolingHttpClientConnectionManager connectionManager : connectionManagers.values()) {
+			connectionManager.closeExpiredConnections();
+		}
+	}
+
+	/**
+	 * Returns the key of the server of the given repository, i.e. scheme, host and port.
+	 */
+	static String getServerKey(WebdavTransferSettings settings) {
+		URI repoUri = URI.create(settings.getUrl());
+		return repoUri.getScheme() + "://" + repoUri.getHost() + ":" + repoUri.getPort();
+	}
+
+	/**
+	 * Returns the key of the given repository in the pool maps: the URL, the username and a
+	 * SHA-256 hash of the password. The password itself is never kept in the maps, so that
+	 * it cannot end up in logs or heap dumps.
+	 */
+	private static String getPoolKey(WebdavTransferSettings settings) {
+		return settings.getUsername() + ":" + getPasswordHash(settings.getPassword()) + "@" + settings.getUrl();
+	}
+
+	private static String getPasswordHash(String password) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return StringUtil.toHex(digest.digest(String.valueOf(password).getBytes("UTF-8")));
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Cannot hash password", e);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.webdav;
+
+import java.io.InputStream;
+import java.net.URLDecoder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming parser for WebDAV <tt>multistatus</tt> responses, as returned by a
+ * <tt>PROPFIND</tt> request. Unlike Sardine's JAXB-based parser, this parser does not
+ * build an in-memory object tree of the entire response. Instead, it reads the response
+ * with a StAX reader and reports each <tt>response</tt> element to a {@link ResourceListener}
+ * as soon as it has been read.
+ *
+ * <p>Only the <tt>href</tt> and the <tt>resourcetype</tt> of each resource are evaluated.
+ * All other properties are skipped. In addition, {@link #parseChangeToken(InputStream)}
+ * extracts the <tt>getetag</tt> property of a single resource.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc4918#section-14.16">RFC 4918, Section 14.16: multistatus XML element</a>
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class WebdavMultistatusParser {
+	private static final String DAV_NAMESPACE = "DAV:";
+
+	private static final String ELEMENT_RESPONSE = "response";
+	private static final String ELEMENT_HREF = "href";
+	private static final String ELEMENT_COLLECTION = "collection";
+	private static final String ELEMENT_GETETAG = "getetag";
+
+	private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+
+	/**
+	 * Listener called by the {@link WebdavMultistatusParser} for every
+	 * resource in a <tt>multistatus</tt> response.
+	 */
+	public interface ResourceListener {
+		/**
+		 * Called for every resource in the response, including the
+		 * requested collection itself.
+		 *
+		 * @param href Raw (URL-encoded) path or URL of the resource, as sent by the server
+		 * @param collection True if the resource is a collection (folder), false otherwise
+		 */
+		public void onResource(String href, boolean collection);
+	}
+
+	/**
+	 * Parses the given <tt>multistatus</tt> response and calls the listener for
+	 * every resource in it. The input stream is not closed by this method.
+	 */
+	public static void parse(InputStream multistatusInputStream, ResourceListener resourceListener) throws XMLStreamException {
+		XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(multistatusInputStream);
+
+		try {
+			String href = null;
+			boolean collection = false;
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT && DAV_NAMESPACE.equals(reader.getNamespaceURI())) {
+					String elementName = reader.getLocalName();
+
+					if (ELEMENT_RESPONSE.equals(elementName)) {
+						href = null;
+						collection = false;
+					}
+					else if (ELEMENT_HREF.equals(elementName) && href == null) {
+						href = reader.getElementText().trim();
+					}
+					else if (ELEMENT_COLLECTION.equals(elementName)) {
+						collection = true;
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && DAV_NAMESPACE.equals(reader.getNamespaceURI())
+						&& ELEMENT_RESPONSE.equals(reader.getLocalName())) {
+
+					if (href != null) {
+						resourceListener.onResource(href, collection);
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses the <tt>multistatus</tt> response of a <tt>Depth: 0</tt> <tt>PROPFIND</tt> request
+	 * and returns the <tt>getetag</tt> property of the first resource, or <tt>null</tt> if the server
+	 * does not send an ETag. The <tt>getlastmodified</tt> property is deliberately not used as a fallback:
+	 * its resolution is one second, so changes within the same second would go unnoticed.
+	 *
+	 * <p>Properties the server does not know are returned as empty elements (in a propstat with
+	 * status 404), so empty values are treated like missing ones. The input stream is not closed
+	 * by this method.
+	 */
+	public static String parseChangeToken(InputStream multistatusInputStream) throws XMLStreamException {
+		XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(multistatusInputStream);
+
+		try {
+			String etag = null;
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT && DAV_NAMESPACE.equals(reader.getNamespaceURI())) {
+					String elementName = reader.getLocalName();
+
+					if (ELEMENT_GETETAG.equals(elementName) && etag == null) {
+						etag = emptyToNull(reader.getElementText());
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && DAV_NAMESPACE.equals(reader.getNamespaceURI())
+						&& ELEMENT_RESPONSE.equals(reader.getLocalName())) {
+
+					break; // Only the first resource is relevant
+				}
+			}
+
+			return etag;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the (URL-decoded) name of the resource, i.e. the last
+	 * path segment of the given <tt>href</tt>.
+	 */
+	public static String getResourceName(String href) {
+		int endIndex = (href.endsWith("/")) ? href.length() - 1 : href.length();
+		int startIndex = href.lastIndexOf('/', endIndex - 1) + 1;
+
+		String resourceName = href.substring(startIndex, endIndex);
+		return (resourceName.indexOf('%') >= 0) ? decodePercentEncoding(resourceName) : resourceName;
+	}
+
+	private static String emptyToNull(String value) {
+		String trimmedValue = value.trim();
+		return (trimmedValue.isEmpty()) ? null : trimmedValue;
+	}
+
+	private static String decodePercentEncoding(String encodedString) {
+		try {
+			// URLDecoder decodes '+' to ' ', which is only valid in query strings, not in paths
+			return URLDecoder.decode(encodedString.replace("+", "%2B"), "UTF-8");
+		}
+		catch (Exception e) {
+			return encodedString;
+		}
+	}
+
+	private static XMLInputFactory createXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+		return factory;
+	}
+}
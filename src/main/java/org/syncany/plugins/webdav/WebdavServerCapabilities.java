@@ -0,0 +1,104 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.plugins.webdav;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.util.StringUtil;
+
+/**
+ * Optional features of a WebDAV server that the {@link WebdavTransferManager} can use
+ * to pick a faster strategy for a request. The capabilities are detected by a probe in
+ * <tt>init()</tt> (or on first use, if the repository has never been probed), and stored with the {@link WebdavTransferSettings}
+ * as a comma-separated list (see {@link #toString()} and {@link #parse(String)}).
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class WebdavServerCapabilities {
+	private static final Logger logger = Logger.getLogger(WebdavServerCapabilities.class.getSimpleName());
+
+	public enum Capability {
+		/**
+		 * The server answers <tt>Range</tt> requests with <tt>206 Partial Content</tt>.
+		 */
+		RANGE,
+
+		/**
+		 * The server accepts request bodies with <tt>Content-Encoding: gzip</tt>.
+		 */
+		GZIP_REQUEST,
+
+		/**
+		 * The server answers <tt>PROPFIND</tt> requests with <tt>Depth: infinity</tt>.
+		 */
+		DEPTH_INFINITY,
+
+		/**
+		 * The server changes the <tt>getetag</tt> property of a collection when a member is added.
+		 */
+		CHANGE_TOKEN
+	}
+
+	private Set<Capability> capabilities;
+
+	public WebdavServerCapabilities() {
+		this.capabilities = EnumSet.noneOf(Capability.class);
+	}
+
+	/**
+	 * Parses the capabilities stored in the settings. Returns <tt>null</tt> if the
+	 * capabilities have never been probed, i.e. if the given string is <tt>null</tt>.
+	 */
+	public static WebdavServerCapabilities parse(String capabilitiesStr) {
+		if (capabilitiesStr == null) {
+			return null;
+		}
+
+		WebdavServerCapabilities serverCapabilities = new WebdavServerCapabilities();
+
+		for (String capabilityStr : capabilitiesStr.split(",")) {
+			if (!capabilityStr.trim().isEmpty()) {
+				try {
+					serverCapabilities.add(Capability.valueOf(capabilityStr.trim()));
+				}
+				catch (IllegalArgumentException e) {
+					logger.log(Level.INFO, "WebDAV: Ignoring unknown server capability " + capabilityStr);
+				}
+			}
+		}
+
+		return serverCapabilities;
+	}
+
+	public void add(Capability capability) {
+		capabilities.add(capability);
+	}
+
+	public boolean has(Capability capability) {
+		return capabilities.contains(capability);
+	}
+
+	@Override
+	public String toString() {
+		return StringUtil.join(new ArrayList<Capability>(capabilities), ",");
+	}
+}
@@ -17,38 +17,112 @@
  */
 package org.syncany.plugins.webdav;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProxySelector;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.KeyStoreException;
 import java.security.MessageDigest;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.syncany.config.Config;
+import org.syncany.config.ConfigException;
 import org.syncany.config.UserConfig;
+import org.syncany.config.to.ConfigTO;
 import org.syncany.crypto.CipherUtil;
 import org.syncany.plugins.UserInteractionListener;
 import org.syncany.plugins.transfer.AbstractTransferManager;
+import org.syncany.plugins.transfer.AsyncTransferManager;
+import org.syncany.plugins.transfer.AsyncTransferManagerAdapter;
+import org.syncany.plugins.transfer.ChangeTokenTransferManager;
+import org.syncany.plugins.transfer.ConcurrentTransferManager;
+import org.syncany.plugins.transfer.MigratableTransferManager;
+import org.syncany.plugins.transfer.RangeTransferManager;
 import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.StorageFatalException;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
 import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.StorageThrottledException;
+import org.syncany.plugins.transfer.TransferMetrics;
 import org.syncany.plugins.transfer.files.ActionRemoteFile;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
@@ -57,25 +131,79 @@ import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.SyncanyRemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
+import org.syncany.plugins.webdav.WebdavMultistatusParser.ResourceListener;
+import org.syncany.plugins.webdav.WebdavServerCapabilities.Capability;
 import org.syncany.util.StringUtil;
 
-import com.github.sardine.DavResource;
-import com.github.sardine.Sardine;
-import com.github.sardine.SardineFactory;
 import com.github.sardine.impl.SardineException;
 import com.github.sardine.impl.SardineImpl;
+import com.github.sardine.impl.handler.ValidatingResponseHandler;
+import com.github.sardine.impl.handler.VoidResponseHandler;
+import com.github.sardine.impl.methods.HttpPropFind;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
-public class WebdavTransferManager extends AbstractTransferManager {
+public class WebdavTransferManager extends AbstractTransferManager implements ConcurrentTransferManager, ChangeTokenTransferManager, RangeTransferManager,
+		AsyncTransferManager, MigratableTransferManager {
 	private static final Logger logger = Logger.getLogger(WebdavTransferManager.class.getSimpleName());
 
-	private static final String APPLICATION_CONTENT_TYPE = "application/octet-stream";
+	private static final ContentType APPLICATION_CONTENT_TYPE = ContentType.APPLICATION_OCTET_STREAM;
+	private static final int HTTP_PARTIAL_CONTENT = 206;
+	private static final int HTTP_UNAUTHORIZED = 401;
+	private static final int HTTP_FORBIDDEN = 403;
 	private static final int HTTP_NOT_FOUND = 404;
+	private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	private static final int HTTP_EXPECTATION_FAILED = 417;
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+	private static final String MULTICHUNK_NAME_PREFIX = "multichunk-";
+	private static final int MULTICHUNK_SHARD_LEVELS = 2;
+	private static final int MULTICHUNK_SHARD_NAME_LENGTH = 2;
+	private static final Pattern MULTICHUNK_SHARD_NAME_PATTERN = Pattern.compile("[a-f0-9]{" + MULTICHUNK_SHARD_NAME_LENGTH + "}");
+	private static final String SHARDED_LAYOUT_MARKER_NAME = "layout-sharded-multichunks";
+	private static final byte[] SHARDED_LAYOUT_MARKER_CONTENT = "multichunks/ab/cd/multichunk-abcd...\n".getBytes();
+
+	private static final String DEPTH_INFINITY = "infinity";
+	private static final String PROBE_COLLECTION_NAME_PREFIX = "syncany-capability-probe-";
+	private static final int PROBE_COLLECTION_RANDOM_ID_LENGTH = 8;
+	private static final String PROBE_FILE_NAME = "probe";
+	private static final String PROBE_CHANGE_FILE_NAME = "probe-change";
+	private static final String PROBE_GZIP_FILE_NAME = "probe-gzip";
+	private static final byte[] PROBE_FILE_CONTENT = new byte[] { 0x01, 0x02, 0x03, 0x04 };
+
+	private static final String GZIP_CONTENT_ENCODING = "gzip";
+	private static final String IDENTITY_CONTENT_ENCODING = "identity";
+	private static final byte[] GZIP_MAGIC = new byte[] { (byte) 0x1f, (byte) 0x8b };
+
+	private static final ContentType XML_CONTENT_TYPE = ContentType.create("text/xml", "UTF-8");
+	private static final String PROPFIND_LIST_REQUEST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+			+ "<D:propfind xmlns:D=\"DAV:\"><D:prop><D:displayname/><D:resourcetype/></D:prop></D:propfind>";
+	private static final String PROPFIND_CHANGE_TOKEN_REQUEST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+			+ "<D:propfind xmlns:D=\"DAV:\"><D:prop><D:getetag/></D:prop></D:propfind>";
 	
-	private static boolean hasNewCertificates;
+	private static volatile boolean hasNewCertificates;
 
-	private Sardine sardine;	
+	/**
+	 * SHA-256 fingerprints of server certificates that have been trusted in this process,
+	 * either because they (or one of their CAs) are in the user trust store, or because
+	 * the user confirmed them. New connections to the same server skip the trust store lookup.
+	 */
+	private static final Set<String> trustedCertificateFingerprints = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private HttpClientConnectionManager connectionManager;
+	private WebdavAuthCache authCache;
+	private Set<String> knownCollections;
+	private ThreadLocal<PooledSardine> sardines;
+	private Set<PooledSardine> connectedSardines;
+	private int activeRequests;
+	private boolean capabilitiesProbed;
+	private WebdavAsyncEngine asyncEngine;
+	private AsyncTransferManagerAdapter asyncAdapter;
 
 	private String repoPath;
+	private String layoutMarkerUrl;
 	private String multichunksPath;
 	private String databasesPath;
 	private String actionsPath;
@@ -85,9 +213,18 @@ public class WebdavTransferManager extends AbstractTransferManager {
 	public WebdavTransferManager(WebdavTransferSettings connection, Config config) {
 		super(connection, config);
 
-		this.sardine = null;
+		this.connectionManager = null;
+		this.authCache = null;
+		this.knownCollections = null;
+		this.sardines = null;
+		this.connectedSardines = Collections.newSetFromMap(new ConcurrentHashMap<PooledSardine, Boolean>());
+		this.activeRequests = 0;
+		this.capabilitiesProbed = false;
+		this.asyncEngine = null;
+		this.asyncAdapter = null;
 
 		this.repoPath = connection.getUrl().replaceAll("/$", "") + "/";
+		this.layoutMarkerUrl = repoPath + SHARDED_LAYOUT_MARKER_NAME;
 		this.multichunksPath = repoPath + "multichunks/";
 		this.databasesPath = repoPath + "databases/";
 		this.actionsPath = repoPath + "actions/";
@@ -99,273 +236,1532 @@ public class WebdavTransferManager extends AbstractTransferManager {
 		return (WebdavTransferSettings) settings;
 	}
 
+	/**
+	 * Connects this transfer manager to the shared {@link WebdavConnectionPool} of this
+	 * repository. Subsequent operations reuse already established TCP/TLS connections.
+	 *
+	 * <p>Since Sardine clients are not thread-safe, each thread using this transfer manager
+	 * gets its own lightweight Sardine client (see {@link #getSardine()}). All of them lease
+	 * their connections from the same pool, and share the same {@link WebdavAuthCache}.
+	 *
+	 * <p>When connecting to a repository for the first time in this process, the layout of
+	 * its multichunks is read from the repository (see {@link #isShardedMultichunks()}).
+	 */
 	@Override
-	public void connect() throws StorageException {
-		if (sardine == null) {
-			if (getSettings().isSecure()) {
-				logger.log(Level.INFO, "WebDAV: Connect called. Creating Sardine (SSL!) ...");
+	public synchronized void connect() throws StorageException {
+		if (connectionManager == null) {
+			logger.log(Level.INFO, "WebDAV: Connect called. Using pooled connections (" + (getSettings().isSecure() ? "SSL!" : "non-SSL") + ") ...");
 
-				try {									
-					final ConnectionSocketFactory sslSocketFactory = initSsl();
-	
-					sardine = new SardineImpl() {
-						@Override
-						protected ConnectionSocketFactory createDefaultSecureSocketFactory() {
-							return sslSocketFactory;
-						}
-					};
-	
-					sardine.setCredentials(getSettings().getUsername(), getSettings().getPassword());
-				}
-				catch (Exception e) {
-					throw new StorageException(e);
-				}
+			try {
+				WebdavConnectionPool.setUserInteractionListener(getSettings(), getSettings().getUserInteractionListener());
+
+				connectionManager = WebdavConnectionPool.getConnectionManager(getSettings(), new Callable<ConnectionSocketFactory>() {
+					@Override
+					public ConnectionSocketFactory call() throws Exception {
+						return initSsl();
+					}
+				});
+
+				authCache = WebdavConnectionPool.getAuthCache(getSettings());
+				knownCollections = WebdavConnectionPool.getKnownCollections(getSettings());
+
+				sardines = new ThreadLocal<PooledSardine>() {
+					@Override
+					protected PooledSardine initialValue() {
+						PooledSardine sardine = new PooledSardine();
+						connectedSardines.add(sardine);
+
+						return sardine;
+					}
+				};
+
+				readMultichunkLayout();
 			}
-			else {
-				logger.log(Level.INFO, "WebDAV: Connect called. Creating Sardine (non-SSL) ...");
-				sardine = SardineFactory.begin(getSettings().getUsername(), getSettings().getPassword());
+			catch (Exception e) {
+				throw new StorageException(e);
+			}
+		}
+	}
+
+	/**
+	 * Reads whether the repository stores its multichunks in sub-folders, i.e. whether the
+	 * layout marker file exists, unless the layout is known in this process already. If the
+	 * marker cannot be read, the flat layout is assumed for now, and it is read again on the next connect.
+	 */
+	private void readMultichunkLayout() throws IOException {
+		if (WebdavConnectionPool.isShardedMultichunks(getSettings()) == null) {
+			try {
+				boolean shardedMultichunks = getSardine().exists(layoutMarkerUrl);
+
+				logger.log(Level.INFO, "WebDAV: Repository stores multichunks in " + (shardedMultichunks ? "sub-folders." : "one folder."));
+				WebdavConnectionPool.setShardedMultichunks(getSettings(), shardedMultichunks);
+			}
+			catch (ThrottledSardineException e) {
+				throw e;
+			}
+			catch (SardineException e) {
+				logger.log(Level.WARNING, "WebDAV: Cannot read layout marker " + layoutMarkerUrl + "; assuming flat multichunks folder.", e);
 			}
 		}
 	}
 
+	/**
+	 * Returns whether the repository stores multichunks in two levels of sub-folders named
+	 * after the first characters of their checksum, e.g. <tt>multichunks/ab/cd/multichunk-abcd...</tt>,
+	 * instead of in one flat folder. The layout is stored in the repository as a marker file,
+	 * which is written when a new repository is created with {@link WebdavTransferSettings#isShardedMultichunks()}
+	 * enabled, or by {@link #migrateLayout()}. The setting itself does not affect existing repositories.
+	 */
+	private boolean isShardedMultichunks() {
+		return Boolean.TRUE.equals(WebdavConnectionPool.isShardedMultichunks(getSettings()));
+	}
+
+	/**
+	 * Waits for all requests in flight (see {@link #beginRequest()}), and then closes the
+	 * Sardine clients of all threads of this transfer manager. The underlying connections
+	 * stay open in the shared {@link WebdavConnectionPool}. Requests started after this
+	 * method returns connect again.
+	 *
+	 * <p>Requests sent through the {@link WebdavAsyncEngine} are not waited for, since
+	 * they only use the shared non-blocking client of the pool.
+	 */
 	@Override
-	public void disconnect() {
+	public synchronized void disconnect() {
 		storeTrustStore();
-		sardine = null;
+
+		try {
+			while (activeRequests > 0) {
+				logger.log(Level.INFO, "WebDAV: Waiting for " + activeRequests + " request(s) in flight before disconnecting ...");
+				wait();
+			}
+		}
+		catch (InterruptedException e) {
+			logger.log(Level.WARNING, "WebDAV: Interrupted while waiting for requests in flight; not disconnecting.");
+			Thread.currentThread().interrupt();
+
+			return;
+		}
+
+		for (PooledSardine sardine : connectedSardines) {
+			try {
+				sardine.shutdown();
+			}
+			catch (IOException e) {
+				logger.log(Level.FINE, "WebDAV: Cannot close Sardine client.", e);
+			}
+		}
+
+		connectedSardines.clear();
+
+		connectionManager = null;
+		authCache = null;
+		knownCollections = null;
+		sardines = null;
+		asyncEngine = null;
+	}
+
+	/**
+	 * Connects this transfer manager (if necessary), and counts a request as in flight, so that
+	 * {@link #disconnect()} does not release the Sardine clients while they are in use. Each
+	 * call must be followed by {@link #endRequest()} in a <tt>finally</tt> block.
+	 */
+	private synchronized void beginRequest() throws StorageException {
+		connect();
+		activeRequests++;
+	}
+
+	private synchronized void endRequest() {
+		activeRequests--;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the number of parallel transfers, as configured in the settings.
+	 * Each parallel transfer uses its own connection from the pool.
+	 */
+	@Override
+	public int getMaxConcurrentTransfers() {
+		return getSettings().getParallelTransfers();
 	}
 
 	@Override
 	public void init(boolean createIfRequired) throws StorageException {
-		connect();
+		beginRequest();
 
 		try {
 			logger.log(Level.INFO, "WebDAV: Init called; creating repo directories ... ");				
 
 			if (!testTargetExists() && createIfRequired) {
-				sardine.createDirectory(repoPath);
+				getSardine().createDirectory(repoPath);
 			}
 			
-			sardine.createDirectory(multichunksPath);
-			sardine.createDirectory(databasesPath);
-			sardine.createDirectory(actionsPath);
-			sardine.createDirectory(transactionsPath);
-			sardine.createDirectory(tempPath);
+			getSardine().createDirectory(multichunksPath);
+			getSardine().createDirectory(databasesPath);
+			getSardine().createDirectory(actionsPath);
+			getSardine().createDirectory(transactionsPath);
+			getSardine().createDirectory(tempPath);
+
+			if (createIfRequired && getSettings().isShardedMultichunks() && !isShardedMultichunks() && !testRepoFileExists()) {
+				writeShardedLayoutMarker();
+			}
+
+			probeCapabilities();
+			capabilitiesProbed = true;
 		}
 		catch (Exception e) {
 			logger.log(Level.SEVERE, "Cannot initialize WebDAV folder.", e);
 			throw new StorageException(e);
 		}
+		finally {
+			endRequest();
+		}
 	}
 
-	@Override
-	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
-		connect();
-		String remoteURL = getRemoteFileUrl(remoteFile);
+	/**
+	 * Probes optional features of the server in a temporary folder, and stores them in the
+	 * settings (see {@link WebdavServerCapabilities}). The transfer manager uses them to choose
+	 * the fastest strategy for listing, uploading and partial downloads. Features that cannot
+	 * be probed are assumed to be missing, so that the strategy that works with every server is used.
+	 *
+	 * <p>The folder has a random name, so that clients probing the same repository at the
+	 * same time do not delete each other's probe files.
+	 *
+	 * @return <tt>true</tt> if the server could be probed, <tt>false</tt> if the conservative strategies are used because it failed
+	 */
+	private boolean probeCapabilities() {
+		String probeCollectionName = PROBE_COLLECTION_NAME_PREFIX + StringUtil.toHex(CipherUtil.createRandomArray(PROBE_COLLECTION_RANDOM_ID_LENGTH));
+		String probePath = repoPath + probeCollectionName + "/";
+		String probeSubPath = probePath + "depth/";
+		String probeFileUrl = probeSubPath + PROBE_FILE_NAME;
+
+		WebdavServerCapabilities capabilities = new WebdavServerCapabilities();
+		boolean probed = false;
 
 		try {
-			logger.log(Level.INFO, "WebDAV: Downloading " + remoteURL + " to temp file " + localFile + " ...");
-			
-			InputStream webdavFileInputStream = sardine.get(remoteURL);
-			FileOutputStream localFileOutputStream = new FileOutputStream(localFile);
+			logger.log(Level.INFO, "WebDAV: Probing server capabilities in " + probePath + " ...");
+
+			getSardine().createDirectory(probePath);
+			getSardine().createDirectory(probeSubPath);
+			getSardine().put(probeFileUrl, PROBE_FILE_CONTENT);
+
+			if (probeGzipRequests(probePath)) {
+				capabilities.add(Capability.GZIP_REQUEST);
+			}
+
+			if (probeRange(probeFileUrl)) {
+				capabilities.add(Capability.RANGE);
+			}
 
-			IOUtils.copy(webdavFileInputStream, localFileOutputStream);
+			if (probeDepthInfinity(probePath)) {
+				capabilities.add(Capability.DEPTH_INFINITY);
+			}
+
+			if (probeChangeToken(probePath)) {
+				capabilities.add(Capability.CHANGE_TOKEN);
+			}
 
-			localFileOutputStream.close();
-			webdavFileInputStream.close();
+			probed = true;
 		}
-		catch (IOException ex) {
-			logger.log(Level.SEVERE, "Error while downloading file from WebDAV: " + remoteURL, ex);
-			throw new StorageException(ex);
+		catch (IOException e) {
+			logger.log(Level.WARNING, "WebDAV: Probing server capabilities failed; using the conservative strategies.", e);
 		}
+		finally {
+			deleteProbeCollection(probePath);
+		}
+
+		logger.log(Level.INFO, "WebDAV: Server capabilities: [" + capabilities + "]");
+
+		getSettings().setCapabilities(capabilities.toString());
+		WebdavConnectionPool.setGzipRequestSupported(getSettings(), capabilities.has(Capability.GZIP_REQUEST));
+
+		return probed;
 	}
 
-	@Override
-	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
-		connect();
-		String remoteURL = getRemoteFileUrl(remoteFile);
+	/**
+	 * Returns whether the server accepts gzip-encoded request bodies, and stores them decoded.
+	 * Advertising gzip in the <tt>Accept-Encoding</tt> header of an <tt>OPTIONS</tt> response
+	 * (RFC 7694) is required, but not sufficient: some servers accept such a body, but store it
+	 * as it is. The probe therefore uploads a gzip-encoded file, and downloads it again without
+	 * accepting gzip. Only if the decoded bytes come back, uploads are compressed.
+	 */
+	private boolean probeGzipRequests(String probePath) throws IOException {
+		String probeGzipFileUrl = probePath + PROBE_GZIP_FILE_NAME;
 
 		try {
-			logger.log(Level.INFO, "WebDAV: Uploading local file " + localFile + " to " + remoteURL + " ...");
+			if (!getSardine().execute(new HttpOptions(repoPath), new AcceptEncodingResponseHandler())) {
+				return false;
+			}
 
-			InputStream localFileInputStream = new FileInputStream(localFile);
-			sardine.put(remoteURL, localFileInputStream, APPLICATION_CONTENT_TYPE, true, localFile.length());
-			
-			localFileInputStream.close();
+			ByteArrayOutputStream gzipByteOutputStream = new ByteArrayOutputStream();
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipByteOutputStream);
+
+			gzipOutputStream.write(PROBE_FILE_CONTENT);
+			gzipOutputStream.close();
+
+			ByteArrayEntity gzipEntity = new ByteArrayEntity(gzipByteOutputStream.toByteArray(), APPLICATION_CONTENT_TYPE);
+			gzipEntity.setContentEncoding(GZIP_CONTENT_ENCODING);
+
+			HttpPut putRequest = new HttpPut(probeGzipFileUrl);
+			putRequest.setEntity(gzipEntity);
+
+			getSardine().execute(putRequest, new VoidResponseHandler());
+
+			HttpGet getRequest = new HttpGet(probeGzipFileUrl);
+			getRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, IDENTITY_CONTENT_ENCODING);
+
+			return Arrays.equals(PROBE_FILE_CONTENT, getSardine().execute(getRequest, new ByteArrayResponseHandler()));
 		}
-		catch (Exception ex) {
-			logger.log(Level.SEVERE, "Error while uploading file to WebDAV: " + remoteURL, ex);
-			throw new StorageException(ex);
+		catch (SardineException e) {
+			return false;
 		}
 	}
 
-	@Override
-	public <T extends RemoteFile> Map<String, T> list(Class<T> remoteFileClass) throws StorageException {
-		connect();
-
-		try {
-			// List folder
-			String remoteFileUrl = getRemoteFilePath(remoteFileClass);			
-			logger.log(Level.INFO, "WebDAV: Listing objects in " + remoteFileUrl + " ...");
-			
-			List<DavResource> resources = sardine.list(remoteFileUrl);
+	private boolean probeRange(String probeFileUrl) throws IOException {
+		HttpGet getRequest = new HttpGet(probeFileUrl);
+		getRequest.setHeader("Range", "bytes=0-0");
 
-			// Create RemoteFile objects
-			String rootPath = repoPath.substring(0, repoPath.length() - new URI(repoPath).getRawPath().length());
-			Map<String, T> remoteFiles = new HashMap<String, T>();
+		return getSardine().execute(getRequest, new StatusCodeResponseHandler()) == HTTP_PARTIAL_CONTENT;
+	}
 
-			for (DavResource res : resources) {
-				// WebDAV returns the parent resource itself; ignore it
-				String fullResourceUrl = rootPath + res.getPath().replaceAll("/$", "") + "/";				
-				boolean isParentResource = remoteFileUrl.equals(fullResourceUrl.toString());
+	/**
+	 * Returns whether a <tt>Depth: infinity</tt> <tt>PROPFIND</tt> on the probe folder returns
+	 * the probe file in its sub-folder. Some servers reject these requests, others silently
+	 * answer them like <tt>Depth: 1</tt>.
+	 */
+	private boolean probeDepthInfinity(String probePath) throws IOException {
+		final AtomicBoolean probeFileFound = new AtomicBoolean(false);
 
-				if (!isParentResource) {
-					try {
-						T remoteFile = RemoteFile.createRemoteFile(res.getName(), remoteFileClass);
-						remoteFiles.put(res.getName(), remoteFile);
+		HttpPropFind propFindRequest = new HttpPropFind(probePath);
+		propFindRequest.setDepth(DEPTH_INFINITY);
+		propFindRequest.setEntity(new StringEntity(PROPFIND_LIST_REQUEST, XML_CONTENT_TYPE));
 
-						logger.log(Level.FINE, "WebDAV: Matching WebDAV resource: " + res);
-					}
-					catch (Exception e) {
-						logger.log(Level.FINEST, "Cannot create instance of " + remoteFileClass.getSimpleName() + " for object " + res.getName()
-								+ "; maybe invalid file name pattern. Ignoring file.");
+		try {
+			getSardine().execute(propFindRequest, new MultistatusResponseHandler(new ResourceListener() {
+				@Override
+				public void onResource(String href, boolean collection) {
+					if (!collection && PROBE_FILE_NAME.equals(WebdavMultistatusParser.getResourceName(href))) {
+						probeFileFound.set(true);
 					}
 				}
-			}
+			}));
 
-			return remoteFiles;
+			return probeFileFound.get();
 		}
-		catch (Exception ex) {
-			logger.log(Level.SEVERE, "WebDAV: Unable to list WebDAV directory.", ex);
-			throw new StorageException(ex);
+		catch (SardineException e) {
+			return false;
 		}
 	}
 
-	@Override
-	public boolean delete(RemoteFile remoteFile) throws StorageException {
-		connect();
-		String remoteURL = getRemoteFileUrl(remoteFile);
-
+	/**
+	 * Returns whether the ETag of the probe folder changes when a file is added to it. Some
+	 * servers return a collection ETag that never changes, others none at all. Only if the
+	 * server is proven to update it, {@link #getChangeToken(Class)} may be used to skip listings.
+	 */
+	private boolean probeChangeToken(String probePath) throws IOException {
 		try {
-			logger.log(Level.FINE, "WebDAV: Deleting " + remoteURL);
-			sardine.delete(remoteURL);
-			
-			return true;
+			String changeTokenBefore = retrieveChangeToken(probePath);
+			getSardine().put(probePath + PROBE_CHANGE_FILE_NAME, PROBE_FILE_CONTENT);
+			String changeTokenAfter = retrieveChangeToken(probePath);
+
+			return changeTokenBefore != null && changeTokenAfter != null && !changeTokenBefore.equals(changeTokenAfter);
 		}
 		catch (SardineException e) {
-			if (e.getStatusCode() == HTTP_NOT_FOUND) {
-				return true;
-			}
-			else {
-				return false;
-			}
-		}
-		catch (IOException ex) {
-			logger.log(Level.SEVERE, "Error while deleting file from WebDAV: " + remoteURL, ex);
-			throw new StorageException(ex);
+			return false;
 		}
 	}
-	
-	@Override
-	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
-		connect();
-		
-		String sourceURL = getRemoteFileUrl(sourceFile);
-		String targetURL = getRemoteFileUrl(targetFile);
 
-		try {		
-			sardine.move(sourceURL, targetURL);
+	private void deleteProbeCollection(String probePath) {
+		try {
+			getSardine().delete(probePath);
 		}
 		catch (IOException e) {
-			throw new StorageMoveException("Unable to move " + sourceURL + " to " + targetURL, e);
+			logger.log(Level.FINEST, "WebDAV: Cannot delete probe folder " + probePath + "; probably does not exist.");
 		}
 	}
 
-	private String getRemoteFileUrl(RemoteFile remoteFile) {
-		return getRemoteFilePath(remoteFile.getClass()) + remoteFile.getName();
+	/**
+	 * Returns the server capabilities stored in the settings. If the server has never been
+	 * probed (e.g. for repositories created with older versions), it is probed once on first
+	 * use, and the result is stored in the config file of the local folder (see {@link #storeCapabilities()}).
+	 * Returns <tt>null</tt> only if the server cannot be reached for the probe.
+	 */
+	private WebdavServerCapabilities getCapabilities() {
+		if (getSettings().getCapabilities() == null) {
+			probeCapabilitiesOnce();
+		}
+
+		return WebdavServerCapabilities.parse(getSettings().getCapabilities());
 	}
 
-	private String getRemoteFilePath(Class<? extends RemoteFile> remoteFile) {
-		if (remoteFile.equals(MultichunkRemoteFile.class)) {
-			return multichunksPath;
-		}
-		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)) {
-			return databasesPath;
+	private synchronized void probeCapabilitiesOnce() {
+		if (capabilitiesProbed) {
+			return;
 		}
-		else if (remoteFile.equals(ActionRemoteFile.class)) {
-			return actionsPath;
+
+		capabilitiesProbed = true;
+
+		try {
+			beginRequest();
+
+			try {
+				if (probeCapabilities()) {
+					storeCapabilities();
+				}
+			}
+			finally {
+				endRequest();
+			}
 		}
-		else if (remoteFile.equals(TransactionRemoteFile.class)) {
-			return transactionsPath;
+		catch (StorageException e) {
+			logger.log(Level.WARNING, "WebDAV: Cannot probe server capabilities.", e);
 		}
-		else if (remoteFile.equals(TempRemoteFile.class)) {
-			return tempPath;
+	}
+
+	/**
+	 * Re-saves the config file of the local folder with the probed capabilities, like the
+	 * init operation does after {@link #init(boolean)}, so that later operations do not
+	 * probe the server again. Only the capabilities of the stored settings are changed.
+	 */
+	private void storeCapabilities() {
+		if (config == null) {
+			return;
 		}
-		else {
-			return repoPath;
+
+		synchronized (WebdavTransferManager.class) {
+			try {
+				File configFile = new File(config.getAppDir(), Config.FILE_CONFIG);
+				ConfigTO configTO = ConfigTO.load(configFile);
+
+				if (configTO.getTransferSettings() instanceof WebdavTransferSettings) {
+					((WebdavTransferSettings) configTO.getTransferSettings()).setCapabilities(getSettings().getCapabilities());
+					configTO.save(configFile);
+
+					logger.log(Level.INFO, "WebDAV: Stored server capabilities in " + configFile);
+				}
+			}
+			catch (ConfigException e) {
+				logger.log(Level.WARNING, "WebDAV: Cannot store server capabilities in config file; probing again next time.", e);
+			}
 		}
 	}
 
+	/**
+	 * Downloads a remote file using a HTTP <tt>GET</tt> request, and writes the response
+	 * body to the local file through a {@link FileChannel} in large blocks (see
+	 * {@link FileResponseHandler}).
+	 *
+	 * <p>For all files except multichunks, the request accepts a gzip-encoded response
+	 * (see {@link #isGzipEncodingAllowed(RemoteFile)}); the response is decoded on the fly.
+	 * Sharded multichunks that are not found are looked up at their unsharded location
+	 * (see {@link #getRemoteFileUrls(RemoteFile)}).
+	 *
+	 * <p>If the non-blocking engine is selected, the file is downloaded using
+	 * {@link #downloadAsync(RemoteFile, File)} instead.
+	 */
 	@Override
-	public boolean testTargetCanWrite() throws StorageException {
-		try {
-			String testFileUrl = repoPath + "syncany-write-test";
-			
-			sardine.put(testFileUrl, new byte[] { 0x01 });
-			sardine.delete(testFileUrl);
-			
-			logger.log(Level.INFO, "testTargetCanWrite: Can write, test file created/deleted successfully.");
-			return true;			
+	public void download(RemoteFile remoteFile, File localFile) throws StorageException {
+		if (getSettings().isAsyncEngine()) {
+			waitFor(downloadAsync(remoteFile, localFile));
+			return;
 		}
-		catch (SSLPeerUnverifiedException e) {
-			logger.log(Level.SEVERE, "testTargetCanWrite: SSL handshake failed; peer not authenticated.", e);
-			throw new StorageException("SSL handshake failed; peer not authenticated.", e);
+
+		beginRequest();
+
+		try {
+			List<String> remoteURLs = getRemoteFileUrls(remoteFile);
+
+			for (int i = 0;; i++) {
+				String remoteURL = remoteURLs.get(i);
+
+				try {
+					logger.log(Level.INFO, "WebDAV: Downloading " + remoteURL + " to temp file " + localFile + " ...");
+
+					HttpGet getRequest = new HttpGet(remoteURL);
+
+					if (isGzipEncodingAllowed(remoteFile)) {
+						getRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP_CONTENT_ENCODING);
+					}
+
+					getSardine().execute(getRequest, new FileResponseHandler(localFile));
+					return;
+				}
+				catch (SardineException e) {
+					if (e.getStatusCode() == HTTP_NOT_FOUND && i + 1 < remoteURLs.size()) {
+						logger.log(Level.FINE, "WebDAV: " + remoteURL + " not found; trying " + remoteURLs.get(i + 1) + " ...");
+					}
+					else if (e.getStatusCode() == HTTP_NOT_FOUND) {
+						throw new StorageFileNotFoundException("File not found: " + remoteURL, e);
+					}
+					else {
+						logger.log(Level.SEVERE, "Error while downloading file from WebDAV: " + remoteURL, e);
+						throw toStorageException(e);
+					}
+				}
+				catch (IOException ex) {
+					logger.log(Level.SEVERE, "Error while downloading file from WebDAV: " + remoteURL, ex);
+					throw new StorageException(ex);
+				}
+			}
 		}
-		catch (Exception e) {
-			logger.log(Level.INFO, "testTargetCanWrite: Can NOT write to target.", e);
-			return false;
+		finally {
+			endRequest();
 		}
 	}
 
 	/**
-	 * Checks if the repo exists at the repo URL.
-	 * 
-	 * <p><b>Note:</b> This uses list() instead of exists() because Sardine implements
-	 * the exists() method with a HTTP HEAD only. Some WebDAV servers respond with "Forbidden" 
-	 * if for directories.
+	 * Returns whether the server answers range requests, as detected by the capability probe.
+	 * If the probe is not possible, the server is asked anyway; if it ignores the range, the
+	 * {@link RangeResponseHandler} extracts it from the full response.
 	 */
 	@Override
-	public boolean testTargetExists() throws StorageException {
-		try {
-			sardine.list(repoPath);
-			
-			logger.log(Level.INFO, "testTargetExists: Target exists.");
-			return true;					
-		}
-		catch (SSLPeerUnverifiedException e) {
-			logger.log(Level.SEVERE, "testTargetCanWrite: SSL handshake failed; peer not authenticated.", e);
-			throw new StorageException("SSL handshake failed; peer not authenticated.", e);
-		}
-		catch (Exception e) {
-			logger.log(Level.WARNING, "testTargetExists: Exception thrown while testing if folder exists.", e);
-			return false;
-		}
+	public boolean isRangeDownloadSupported() {
+		WebdavServerCapabilities capabilities = getCapabilities();
+		return capabilities == null || capabilities.has(Capability.RANGE);
 	}
 
+	/**
+	 * Downloads a byte range of a remote file using a HTTP <tt>GET</tt> request with a <tt>Range</tt>
+	 * header. Negative offsets are sent as suffix ranges (e.g. <tt>bytes=-100</tt>).
+	 *
+	 * <p>If the server ignores the <tt>Range</tt> header and sends the whole file, the requested
+	 * range is extracted from the full response; the result is the same, but nothing is saved.
+	 */
 	@Override
-	public boolean testTargetCanCreate() throws StorageException {
+	public void download(RemoteFile remoteFile, long offset, long length, OutputStream outputStream) throws StorageException {
+		beginRequest();
+
 		try {
-			if (testTargetExists()) {
-				logger.log(Level.INFO, "testTargetCanCreate: Target already exists, so 'can create' test successful.");
-				return true;
-			}
-			else {
-				sardine.createDirectory(repoPath);
-				sardine.delete(repoPath);
+			List<String> remoteURLs = getRemoteFileUrls(remoteFile);
+			String range = (offset >= 0) ? offset + "-" + (offset + length - 1) : "-" + (-offset);
 
-				logger.log(Level.INFO, "testTargetCanCreate: Target can be created (test-created successfully).");
-				return true;
-			}			
-		}
+			for (int i = 0;; i++) {
+				String remoteURL = remoteURLs.get(i);
+
+				try {
+					logger.log(Level.INFO, "WebDAV: Downloading range " + range + " of " + remoteURL + " ...");
+
+					HttpGet getRequest = new HttpGet(remoteURL);
+					getRequest.setHeader("Range", "bytes=" + range);
+
+					getSardine().execute(getRequest, new RangeResponseHandler(offset, length, outputStream));
+					return;
+				}
+				catch (SardineException e) {
+					if (e.getStatusCode() == HTTP_NOT_FOUND && i + 1 < remoteURLs.size()) {
+						logger.log(Level.FINE, "WebDAV: " + remoteURL + " not found; trying " + remoteURLs.get(i + 1) + " ...");
+					}
+					else if (e.getStatusCode() == HTTP_NOT_FOUND) {
+						throw new StorageFileNotFoundException("File not found: " + remoteURL, e);
+					}
+					else {
+						logger.log(Level.SEVERE, "Error while downloading range from WebDAV: " + remoteURL, e);
+						throw toStorageException(e);
+					}
+				}
+				catch (IOException ex) {
+					logger.log(Level.SEVERE, "Error while downloading range from WebDAV: " + remoteURL, ex);
+					throw new StorageException(ex);
+				}
+			}
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Uploads a local file using a HTTP <tt>PUT</tt> request with a {@link FileChannelEntity}.
+	 * The content length is always sent, so servers never have to deal with chunked
+	 * transfer encoding. Like Sardine, the request is sent with <tt>Expect: 100-continue</tt>,
+	 * so that the body is not sent if the server rejects the request.
+	 *
+	 * <p>If the server accepts gzip-encoded request bodies (see {@link #isGzipUploadSupported()}),
+	 * and gzip uploads are not disabled in the settings, compressible files are compressed
+	 * to a temporary file first, and sent with <tt>Content-Encoding: gzip</tt>.
+	 *
+	 * <p>If the non-blocking engine is selected, the file is uploaded using
+	 * {@link #uploadAsync(File, RemoteFile)} instead.
+	 */
+	@Override
+	public void upload(File localFile, RemoteFile remoteFile) throws StorageException {
+		if (getSettings().isAsyncEngine()) {
+			waitFor(uploadAsync(localFile, remoteFile));
+			return;
+		}
+
+		String remoteURL = getRemoteFileUrl(remoteFile);
+		File gzipFile = null;
+
+		beginRequest();
+
+		try {
+			logger.log(Level.INFO, "WebDAV: Uploading local file " + localFile + " to " + remoteURL + " ...");
+			createShardCollections(remoteFile);
+
+			HttpPut putRequest = new HttpPut(remoteURL);
+
+			if (getSettings().isGzipEncoding() && isGzipEncodingAllowed(remoteFile) && !isCompressedOrEncrypted(localFile) && isGzipUploadSupported()) {
+				gzipFile = createGzipFile(localFile);
+
+				FileChannelEntity gzipEntity = new FileChannelEntity(gzipFile, APPLICATION_CONTENT_TYPE);
+				gzipEntity.setContentEncoding(GZIP_CONTENT_ENCODING);
+
+				logger.log(Level.FINE, "WebDAV: Sending gzip-encoded body (" + localFile.length() + " bytes compressed to " + gzipFile.length() + " bytes).");
+				putRequest.setEntity(gzipEntity);
+			}
+			else {
+				putRequest.setEntity(new FileChannelEntity(localFile, APPLICATION_CONTENT_TYPE));
+			}
+
+			putRequest.addHeader(HTTP.EXPECT_DIRECTIVE, HTTP.EXPECT_CONTINUE);
+
+			try {
+				getSardine().execute(putRequest, new VoidResponseHandler());
+			}
+			catch (SardineException e) {
+				if (e.getStatusCode() == HTTP_EXPECTATION_FAILED) {
+					logger.log(Level.INFO, "WebDAV: Server rejected 'Expect: 100-continue'; retrying upload without it ...");
+					TransferMetrics.getInstance().recordRetry(putRequest.getMethod());
+
+					putRequest.removeHeaders(HTTP.EXPECT_DIRECTIVE);
+					getSardine().execute(putRequest, new VoidResponseHandler());
+				}
+				else {
+					throw e;
+				}
+			}
+		}
+		catch (Exception ex) {
+			logger.log(Level.SEVERE, "Error while uploading file to WebDAV: " + remoteURL, ex);
+			throw toStorageException(ex);
+		}
+		finally {
+			if (gzipFile != null) {
+				gzipFile.delete();
+			}
+
+			endRequest();
+		}
+	}
+
+	/**
+	 * Lists the remote folder using a minimal <tt>PROPFIND</tt> request (asking only for the
+	 * <tt>displayname</tt> and <tt>resourcetype</tt> properties) and parses the response with
+	 * the streaming {@link WebdavMultistatusParser}. For folders with many thousand files,
+	 * this is much faster and uses much less memory than Sardine's list() method.
+	 */
+	@Override
+	public <T extends RemoteFile> Map<String, T> list(final Class<T> remoteFileClass) throws StorageException {
+		beginRequest();
+
+		try {
+			String remoteFileUrl = getRemoteFilePath(remoteFileClass);
+
+			if (isShardedMultichunks() && remoteFileClass.equals(MultichunkRemoteFile.class)) {
+				return listShardedMultichunks(remoteFileClass);
+			}
+
+			try {
+				logger.log(Level.INFO, "WebDAV: Listing objects in " + remoteFileUrl + " ...");
+
+				final Map<String, T> remoteFiles = new HashMap<String, T>();
+
+				HttpPropFind propFindRequest = new HttpPropFind(remoteFileUrl);
+				propFindRequest.setDepth("1");
+				propFindRequest.setEntity(new StringEntity(PROPFIND_LIST_REQUEST, XML_CONTENT_TYPE));
+
+				propFindRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP_CONTENT_ENCODING);
+
+				getSardine().execute(propFindRequest, new MultistatusResponseHandler(new ResourceListener() {
+					@Override
+					public void onResource(String href, boolean collection) {
+						// WebDAV returns the parent resource itself; ignore it (and all other folders)
+						if (!collection) {
+							String resourceName = WebdavMultistatusParser.getResourceName(href);
+
+							try {
+								remoteFiles.put(resourceName, RemoteFile.createRemoteFile(resourceName, remoteFileClass));
+							}
+							catch (Exception e) {
+								logger.log(Level.FINEST, "Cannot create instance of " + remoteFileClass.getSimpleName() + " for object " + resourceName
+										+ "; maybe invalid file name pattern. Ignoring file.");
+							}
+						}
+					}
+				}));
+
+				logger.log(Level.FINE, "WebDAV: Listing found " + remoteFiles.size() + " matching resource(s) in " + remoteFileUrl);
+				return remoteFiles;
+			}
+			catch (Exception ex) {
+				logger.log(Level.SEVERE, "WebDAV: Unable to list WebDAV directory " + remoteFileUrl, ex);
+				throw toStorageException(ex);
+			}
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Retrieves the ETag of the remote folder using a <tt>Depth: 0</tt> <tt>PROPFIND</tt> request.
+	 * Unlike a listing, the response size does not depend on the number of files in the folder.
+	 *
+	 * <p>Not all WebDAV servers update the ETag of a collection when its members change. The
+	 * token is therefore only returned if the probe has shown that the server does (see
+	 * {@link Capability#CHANGE_TOKEN}). Otherwise, or if the server rejects the request or
+	 * does not return an ETag, <tt>null</tt> is returned.
+	 */
+	@Override
+	public String getChangeToken(Class<? extends RemoteFile> remoteFileClass) throws StorageException {
+		WebdavServerCapabilities capabilities = getCapabilities();
+
+		if (capabilities == null || !capabilities.has(Capability.CHANGE_TOKEN)) {
+			logger.log(Level.FINE, "WebDAV: Server is not known to update collection ETags; no change token.");
+			return null;
+		}
+
+		String remoteFileUrl = getRemoteFilePath(remoteFileClass);
+
+		beginRequest();
+
+		try {
+			logger.log(Level.FINE, "WebDAV: Retrieving change token of " + remoteFileUrl + " ...");
+
+			String changeToken = retrieveChangeToken(remoteFileUrl);
+
+			logger.log(Level.FINE, "WebDAV: Change token of " + remoteFileUrl + " is " + changeToken);
+			return changeToken;
+		}
+		catch (ThrottledSardineException e) {
+			throw toStorageException(e);
+		}
+		catch (SardineException e) {
+			logger.log(Level.INFO, "WebDAV: Server does not support change token for " + remoteFileUrl + " (status " + e.getStatusCode() + ").");
+			return null;
+		}
+		catch (IOException ex) {
+			logger.log(Level.SEVERE, "WebDAV: Unable to retrieve change token of WebDAV directory " + remoteFileUrl, ex);
+			throw new StorageException(ex);
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	private String retrieveChangeToken(String remoteFolderUrl) throws IOException {
+		HttpPropFind propFindRequest = new HttpPropFind(remoteFolderUrl);
+		propFindRequest.setDepth("0");
+		propFindRequest.setEntity(new StringEntity(PROPFIND_CHANGE_TOKEN_REQUEST, XML_CONTENT_TYPE));
+
+		return getSardine().execute(propFindRequest, new ChangeTokenResponseHandler());
+	}
+
+	@Override
+	public boolean delete(RemoteFile remoteFile) throws StorageException {
+		if (getSettings().isAsyncEngine()) {
+			return waitFor(deleteAsync(remoteFile));
+		}
+
+		beginRequest();
+
+		try {
+			List<String> remoteURLs = getRemoteFileUrls(remoteFile);
+
+			for (int i = 0;; i++) {
+				String remoteURL = remoteURLs.get(i);
+
+				try {
+					logger.log(Level.FINE, "WebDAV: Deleting " + remoteURL);
+					getSardine().delete(remoteURL);
+
+					return true;
+				}
+				catch (SardineException e) {
+					if (e.getStatusCode() == HTTP_NOT_FOUND && i + 1 < remoteURLs.size()) {
+						logger.log(Level.FINE, "WebDAV: " + remoteURL + " not found; trying " + remoteURLs.get(i + 1) + " ...");
+					}
+					else if (e.getStatusCode() == HTTP_NOT_FOUND) {
+						return true;
+					}
+					else if (e instanceof ThrottledSardineException) {
+						throw toStorageException(e);
+					}
+					else {
+						return false;
+					}
+				}
+				catch (IOException ex) {
+					logger.log(Level.SEVERE, "Error while deleting file from WebDAV: " + remoteURL, ex);
+					throw new StorageException(ex);
+				}
+			}
+		}
+		finally {
+			endRequest();
+		}
+	}
+	
+	@Override
+	public void move(RemoteFile sourceFile, RemoteFile targetFile) throws StorageException {
+		if (getSettings().isAsyncEngine()) {
+			waitFor(moveAsync(sourceFile, targetFile));
+			return;
+		}
+
+		beginRequest();
+
+		try {
+			List<String> sourceURLs = getRemoteFileUrls(sourceFile);
+			String targetURL = getRemoteFileUrl(targetFile);
+
+			try {
+				createShardCollections(targetFile);
+			}
+			catch (IOException e) {
+				throw toStorageException(e);
+			}
+
+			for (int i = 0;; i++) {
+				String sourceURL = sourceURLs.get(i);
+
+				try {
+					getSardine().move(sourceURL, targetURL);
+					return;
+				}
+				catch (ThrottledSardineException e) {
+					throw toStorageException(e);
+				}
+				catch (SardineException e) {
+					if (e.getStatusCode() != HTTP_NOT_FOUND || i + 1 == sourceURLs.size()) {
+						throw new StorageMoveException("Unable to move " + sourceURL + " to " + targetURL, e);
+					}
+				}
+				catch (IOException e) {
+					throw new StorageMoveException("Unable to move " + sourceURL + " to " + targetURL, e);
+				}
+			}
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Uploads a local file and returns without waiting for the upload to finish. If the
+	 * non-blocking engine is enabled (see {@link WebdavTransferSettings#isAsyncEngine()}), the
+	 * request is sent via the {@link WebdavAsyncEngine}, and missing shard folders are created
+	 * before the method returns. Unlike {@link #upload(File, RemoteFile)}, the body is then neither
+	 * gzip-encoded nor sent with <tt>Expect: 100-continue</tt>. Otherwise, {@link #upload(File, RemoteFile) upload()}
+	 * is called in a thread pool.
+	 */
+	@Override
+	public ListenableFuture<Void> uploadAsync(File localFile, RemoteFile remoteFile) {
+		if (!getSettings().isAsyncEngine()) {
+			return getAsyncAdapter().uploadAsync(localFile, remoteFile);
+		}
+
+		try {
+			beginRequest();
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+
+		try {
+			createShardCollections(remoteFile);
+			return getAsyncEngine().upload(localFile, getRemoteFileUrl(remoteFile));
+		}
+		catch (IOException e) {
+			return Futures.immediateFailedFuture(toStorageException(e));
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Downloads a remote file and returns without waiting for the download to finish. If the
+	 * non-blocking engine is enabled, the request is sent via the {@link WebdavAsyncEngine}, and
+	 * unlike {@link #download(RemoteFile, File)}, the response is never gzip-encoded. Otherwise,
+	 * {@link #download(RemoteFile, File) download()} is called in a thread pool.
+	 */
+	@Override
+	public ListenableFuture<Void> downloadAsync(RemoteFile remoteFile, File localFile) {
+		if (!getSettings().isAsyncEngine()) {
+			return getAsyncAdapter().downloadAsync(remoteFile, localFile);
+		}
+
+		try {
+			beginRequest();
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+
+		try {
+			return getAsyncEngine().download(getRemoteFileUrls(remoteFile), localFile);
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Moves a remote file and returns without waiting for the move to finish. If the non-blocking
+	 * engine is enabled, the request is sent via the {@link WebdavAsyncEngine}. Otherwise,
+	 * {@link #move(RemoteFile, RemoteFile) move()} is called in a thread pool.
+	 */
+	@Override
+	public ListenableFuture<Void> moveAsync(RemoteFile sourceFile, RemoteFile targetFile) {
+		if (!getSettings().isAsyncEngine()) {
+			return getAsyncAdapter().moveAsync(sourceFile, targetFile);
+		}
+
+		try {
+			beginRequest();
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+
+		try {
+			createShardCollections(targetFile);
+			return getAsyncEngine().move(getRemoteFileUrls(sourceFile), getRemoteFileUrl(targetFile));
+		}
+		catch (IOException e) {
+			return Futures.immediateFailedFuture(toStorageException(e));
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Deletes a remote file and returns without waiting for the request to finish. If the non-blocking
+	 * engine is enabled, the request is sent via the {@link WebdavAsyncEngine}. Otherwise,
+	 * {@link #delete(RemoteFile) delete()} is called in a thread pool.
+	 */
+	@Override
+	public ListenableFuture<Boolean> deleteAsync(RemoteFile remoteFile) {
+		if (!getSettings().isAsyncEngine()) {
+			return getAsyncAdapter().deleteAsync(remoteFile);
+		}
+
+		try {
+			beginRequest();
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+
+		try {
+			return getAsyncEngine().delete(getRemoteFileUrls(remoteFile));
+		}
+		catch (StorageException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Lists the remote files of the given type in a thread pool. The non-blocking engine does
+	 * not send <tt>PROPFIND</tt> requests, so {@link #list(Class) list()} is always used.
+	 */
+	@Override
+	public <T extends RemoteFile> ListenableFuture<Map<String, T>> listAsync(Class<T> remoteFileClass) {
+		return getAsyncAdapter().listAsync(remoteFileClass);
+	}
+
+	/**
+	 * Switches an existing repository to the sharded multichunk layout (see {@link #isShardedMultichunks()}),
+	 * and moves all multichunks from the flat <tt>multichunks/</tt> folder into their sub-folders.
+	 *
+	 * <p>The layout marker is written before any multichunk is moved, so that all clients
+	 * look up multichunks in their sub-folders first. Multichunks that are not found there
+	 * are also looked up in the flat folder, and vice versa, so clients that have not read the
+	 * new layout yet keep working. The migration can be interrupted and resumed at any time.
+	 *
+	 * @return The number of migrated multichunks
+	 */
+	@Override
+	public int migrateLayout() throws StorageException {
+		beginRequest();
+
+		try {
+			if (!isShardedMultichunks()) {
+				writeShardedLayoutMarker();
+			}
+
+			Map<String, MultichunkRemoteFile> flatMultichunks = listFlatMultichunks();
+			logger.log(Level.INFO, "WebDAV: Migrating " + flatMultichunks.size() + " multichunk(s) to sharded layout ...");
+
+			for (MultichunkRemoteFile multichunkRemoteFile : flatMultichunks.values()) {
+				String sourceURL = getUnshardedRemoteFileUrl(multichunkRemoteFile);
+				String targetURL = getRemoteFileUrl(multichunkRemoteFile);
+
+				try {
+					createShardCollections(multichunkRemoteFile);
+					getSardine().move(sourceURL, targetURL);
+				}
+				catch (ThrottledSardineException e) {
+					throw toStorageException(e);
+				}
+				catch (IOException e) {
+					throw new StorageMoveException("Unable to move " + sourceURL + " to " + targetURL, e);
+				}
+			}
+
+			return flatMultichunks.size();
+		}
+		catch (IOException e) {
+			throw toStorageException(e);
+		}
+		finally {
+			endRequest();
+		}
+	}
+
+	/**
+	 * Writes the marker file that tells all clients that this repository stores
+	 * multichunks in sub-folders (see {@link #isShardedMultichunks()}).
+	 */
+	private void writeShardedLayoutMarker() throws IOException {
+		logger.log(Level.INFO, "WebDAV: Switching repository to multichunk sub-folders; writing " + layoutMarkerUrl + " ...");
+
+		getSardine().put(layoutMarkerUrl, SHARDED_LAYOUT_MARKER_CONTENT);
+		WebdavConnectionPool.setShardedMultichunks(getSettings(), true);
+	}
+
+	/**
+	 * Returns the URL of the given remote file. If the repository has sharded multichunks,
+	 * multichunks are stored in two levels of sub-folders named after the first four
+	 * characters of their checksum, e.g. <tt>multichunks/ab/cd/multichunk-abcd...</tt>.
+	 */
+	private String getRemoteFileUrl(RemoteFile remoteFile) {
+		if (isShardedMultichunk(remoteFile)) {
+			return getMultichunkShardPath(remoteFile.getName()) + remoteFile.getName();
+		}
+		else {
+			return getUnshardedRemoteFileUrl(remoteFile);
+		}
+	}
+
+	/**
+	 * Returns the possible URLs of an existing remote file: For multichunks, these are the URL
+	 * in the layout of the repository (see {@link #getRemoteFileUrl(RemoteFile)}), and the URL in
+	 * the other layout, for multichunks that have not been migrated yet, or for repositories that have
+	 * been migrated by another client in the meantime. For all other files, this is only {@link #getRemoteFileUrl(RemoteFile)}.
+	 */
+	private List<String> getRemoteFileUrls(RemoteFile remoteFile) {
+		if (isShardableMultichunk(remoteFile)) {
+			String shardedUrl = getMultichunkShardPath(remoteFile.getName()) + remoteFile.getName();
+			String unshardedUrl = getUnshardedRemoteFileUrl(remoteFile);
+
+			if (isShardedMultichunks()) {
+				return Arrays.asList(shardedUrl, unshardedUrl);
+			}
+			else {
+				return Arrays.asList(unshardedUrl, shardedUrl);
+			}
+		}
+		else {
+			return Arrays.asList(getRemoteFileUrl(remoteFile));
+		}
+	}
+
+	private String getUnshardedRemoteFileUrl(RemoteFile remoteFile) {
+		return getRemoteFilePath(remoteFile.getClass()) + remoteFile.getName();
+	}
+
+	private boolean isShardedMultichunk(RemoteFile remoteFile) {
+		return isShardedMultichunks() && isShardableMultichunk(remoteFile);
+	}
+
+	private boolean isShardableMultichunk(RemoteFile remoteFile) {
+		return remoteFile instanceof MultichunkRemoteFile && remoteFile.getName().length() >= MULTICHUNK_NAME_PREFIX.length() + 2 * MULTICHUNK_SHARD_NAME_LENGTH;
+	}
+
+	private String getMultichunkShardPath(String multichunkName) {
+		String checksum = multichunkName.substring(MULTICHUNK_NAME_PREFIX.length());
+
+		return multichunksPath + checksum.substring(0, MULTICHUNK_SHARD_NAME_LENGTH) + "/"
+				+ checksum.substring(MULTICHUNK_SHARD_NAME_LENGTH, 2 * MULTICHUNK_SHARD_NAME_LENGTH) + "/";
+	}
+
+	/**
+	 * Creates the shard folders of the given remote file if it is a sharded multichunk.
+	 * Folders that are known to exist (see {@link WebdavConnectionPool#getKnownCollections(WebdavTransferSettings)})
+	 * are skipped, so a <tt>MKCOL</tt> request is only sent for the first file in each shard.
+	 */
+	private void createShardCollections(RemoteFile remoteFile) throws IOException {
+		if (isShardedMultichunk(remoteFile)) {
+			String shardPath = getMultichunkShardPath(remoteFile.getName());
+			String parentShardPath = shardPath.substring(0, shardPath.lastIndexOf('/', shardPath.length() - 2) + 1);
+
+			createCollection(parentShardPath);
+			createCollection(shardPath);
+		}
+	}
+
+	private void createCollection(String collectionUrl) throws IOException {
+		if (!knownCollections.contains(collectionUrl)) {
+			try {
+				getSardine().createDirectory(collectionUrl);
+			}
+			catch (SardineException e) {
+				if (e.getStatusCode() != HTTP_METHOD_NOT_ALLOWED) { // 405 = collection already exists
+					throw e;
+				}
+			}
+
+			knownCollections.add(collectionUrl);
+		}
+	}
+
+	/**
+	 * Lists all multichunks of a repository with sharded multichunks: the multichunks in the
+	 * shard folders, and the multichunks that are still in the flat <tt>multichunks/</tt> folder.
+	 * If the server supports <tt>Depth: infinity</tt>, a single <tt>PROPFIND</tt> request is used.
+	 * Otherwise, each shard folder needs its own request.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends RemoteFile> Map<String, T> listShardedMultichunks(Class<T> remoteFileClass) throws StorageException {
+		try {
+			logger.log(Level.INFO, "WebDAV: Listing sharded multichunks in " + multichunksPath + " ...");
+
+			Map<String, MultichunkRemoteFile> multichunks = new HashMap<String, MultichunkRemoteFile>();
+			WebdavServerCapabilities capabilities = getCapabilities();
+
+			if (capabilities != null && capabilities.has(Capability.DEPTH_INFINITY)) {
+				listMultichunkCollection(multichunksPath, DEPTH_INFINITY, multichunks, null);
+			}
+			else {
+				listMultichunkCollection(multichunksPath, 0, multichunks);
+			}
+
+			return (Map<String, T>) multichunks;
+		}
+		catch (Exception ex) {
+			logger.log(Level.SEVERE, "WebDAV: Unable to list WebDAV directory " + multichunksPath, ex);
+			throw toStorageException(ex);
+		}
+	}
+
+	private Map<String, MultichunkRemoteFile> listFlatMultichunks() throws StorageException {
+		try {
+			Map<String, MultichunkRemoteFile> multichunks = new HashMap<String, MultichunkRemoteFile>();
+			listMultichunkCollection(multichunksPath, MULTICHUNK_SHARD_LEVELS, multichunks);
+
+			return multichunks;
+		}
+		catch (Exception ex) {
+			logger.log(Level.SEVERE, "WebDAV: Unable to list WebDAV directory " + multichunksPath, ex);
+			throw toStorageException(ex);
+		}
+	}
+
+	/**
+	 * Adds the multichunks in the given folder to the given map, and descends into its
+	 * shard folders (named like the first characters of a checksum) up to the maximum shard level.
+	 */
+	private void listMultichunkCollection(final String collectionUrl, int level, final Map<String, MultichunkRemoteFile> multichunks) throws IOException {
+		final String collectionPath = URI.create(collectionUrl).getPath().replaceAll("/$", "");
+		final List<String> shardCollectionUrls = new ArrayList<String>();
+		final boolean descend = level < MULTICHUNK_SHARD_LEVELS;
+
+		listMultichunkCollection(collectionUrl, "1", multichunks, new ResourceListener() {
+			@Override
+			public void onResource(String href, boolean collection) {
+				String resourceName = WebdavMultistatusParser.getResourceName(href);
+				boolean self = URI.create(href).getPath().replaceAll("/$", "").equals(collectionPath);
+
+				if (descend && !self && MULTICHUNK_SHARD_NAME_PATTERN.matcher(resourceName).matches()) {
+					shardCollectionUrls.add(collectionUrl + resourceName + "/");
+				}
+			}
+		});
+
+		for (String shardCollectionUrl : shardCollectionUrls) {
+			knownCollections.add(shardCollectionUrl);
+			listMultichunkCollection(shardCollectionUrl, level + 1, multichunks);
+		}
+	}
+
+	/**
+	 * Adds the multichunks in the given folder (and its sub-folders, depending on the given
+	 * <tt>Depth</tt> header) to the given map. Collections are passed to the given listener.
+	 */
+	private void listMultichunkCollection(String collectionUrl, String depth, final Map<String, MultichunkRemoteFile> multichunks,
+			final ResourceListener collectionListener) throws IOException {
+
+		HttpPropFind propFindRequest = new HttpPropFind(collectionUrl);
+		propFindRequest.setDepth(depth);
+		propFindRequest.setEntity(new StringEntity(PROPFIND_LIST_REQUEST, XML_CONTENT_TYPE));
+
+		propFindRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP_CONTENT_ENCODING);
+
+		getSardine().execute(propFindRequest, new MultistatusResponseHandler(new ResourceListener() {
+			@Override
+			public void onResource(String href, boolean collection) {
+				String resourceName = WebdavMultistatusParser.getResourceName(href);
+
+				if (collection) {
+					if (collectionListener != null) {
+						collectionListener.onResource(href, collection);
+					}
+				}
+				else {
+					try {
+						multichunks.put(resourceName, RemoteFile.createRemoteFile(resourceName, MultichunkRemoteFile.class));
+					}
+					catch (Exception e) {
+						logger.log(Level.FINEST, "Cannot create instance of MultichunkRemoteFile for object " + resourceName
+								+ "; maybe invalid file name pattern. Ignoring file.");
+					}
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Returns whether the given remote file may be transferred with gzip content encoding.
+	 * Multichunks (including temporary files of multichunks) are excluded, because they
+	 * are compressed and/or encrypted already, and because they are downloaded in ranges.
+	 *
+	 * <p>Downloads of all other files always accept a gzip-encoded response; servers that
+	 * do not support it simply ignore the header. Uploads are only compressed if the server
+	 * accepts gzip-encoded request bodies (see {@link #isGzipUploadSupported()}).
+	 */
+	private boolean isGzipEncodingAllowed(RemoteFile remoteFile) {
+		RemoteFile targetRemoteFile = (remoteFile instanceof TempRemoteFile) ? ((TempRemoteFile) remoteFile).getTargetRemoteFile() : remoteFile;
+		return !(targetRemoteFile instanceof MultichunkRemoteFile);
+	}
+
+	/**
+	 * Returns whether the server accepts gzip-encoded request bodies, as detected by the
+	 * capability probe (see {@link #probeGzipRequests(String)}). The result is cached in the
+	 * {@link WebdavConnectionPool}, so it is shared by all transfer managers of this repository.
+	 * If the server has never been probed, uploads are not compressed.
+	 */
+	private boolean isGzipUploadSupported() {
+		Boolean gzipUploadSupported = WebdavConnectionPool.isGzipRequestSupported(getSettings());
+
+		if (gzipUploadSupported == null) {
+			WebdavServerCapabilities capabilities = getCapabilities();
+			gzipUploadSupported = capabilities != null && capabilities.has(Capability.GZIP_REQUEST);
+
+			logger.log(Level.INFO, "WebDAV: Server " + (gzipUploadSupported ? "accepts" : "is not known to accept") + " gzip-encoded uploads.");
+			WebdavConnectionPool.setGzipRequestSupported(getSettings(), gzipUploadSupported);
+		}
+
+		return gzipUploadSupported;
+	}
+
+	/**
+	 * Returns whether the given file starts with the gzip or the Syncany cipher magic bytes,
+	 * i.e. whether compressing it again would be a waste of time.
+	 */
+	private boolean isCompressedOrEncrypted(File localFile) throws IOException {
+		byte[] magic = new byte[GZIP_MAGIC.length];
+		FileInputStream localFileInputStream = new FileInputStream(localFile);
+
+		try {
+			boolean gzipped = localFileInputStream.read(magic) == magic.length && Arrays.equals(GZIP_MAGIC, magic);
+			return gzipped || CipherUtil.isEncrypted(localFile);
+		}
+		finally {
+			localFileInputStream.close();
+		}
+	}
+
+	private File createGzipFile(File localFile) throws IOException {
+		File gzipFile = createTempFile("gzip");
+
+		FileInputStream localFileInputStream = new FileInputStream(localFile);
+		GZIPOutputStream gzipOutputStream = new GZIPOutputStream(new FileOutputStream(gzipFile), FileChannelEntity.BUFFER_SIZE);
+
+		try {
+			IOUtils.copyLarge(localFileInputStream, gzipOutputStream);
+		}
+		finally {
+			gzipOutputStream.close();
+			localFileInputStream.close();
+		}
+
+		return gzipFile;
+	}
+
+	/**
+	 * Returns the content of the given response entity, and decodes it
+	 * on the fly if it is sent with <tt>Content-Encoding: gzip</tt>.
+	 */
+	private static InputStream getDecodedContent(HttpEntity entity) throws IOException {
+		Header contentEncodingHeader = entity.getContentEncoding();
+
+		if (contentEncodingHeader != null && GZIP_CONTENT_ENCODING.equalsIgnoreCase(contentEncodingHeader.getValue().trim())) {
+			return new GZIPInputStream(entity.getContent(), FileChannelEntity.BUFFER_SIZE);
+		}
+		else {
+			return entity.getContent();
+		}
+	}
+
+	/**
+	 * Wraps the given exception in a {@link StorageException}. If the server throttled the
+	 * request (<tt>429 Too Many Requests</tt> or <tt>503 Service Unavailable</tt>), a
+	 * {@link StorageThrottledException} is returned, so that the transfer layer can back off.
+	 * If the credentials were rejected (<tt>401 Unauthorized</tt> or <tt>403 Forbidden</tt>), a
+	 * {@link StorageFatalException} is returned, so that the request is not retried.
+	 */
+	private StorageException toStorageException(Exception e) {
+		if (e instanceof ThrottledSardineException) {
+			ThrottledSardineException throttledException = (ThrottledSardineException) e;
+			return new StorageThrottledException("WebDAV: Server throttled request (status " + throttledException.getStatusCode() + ")",
+					throttledException.getRetryAfterMillis(), e);
+		}
+		else if (e instanceof SardineException && isAccessDenied(((SardineException) e).getStatusCode())) {
+			return new StorageFatalException("WebDAV: Access denied (status " + ((SardineException) e).getStatusCode() + ")", e);
+		}
+		else {
+			return new StorageException(e);
+		}
+	}
+
+	/**
+	 * Returns whether the given status code means that the server rejected the credentials.
+	 */
+	static boolean isAccessDenied(int statusCode) {
+		return statusCode == HTTP_UNAUTHORIZED || statusCode == HTTP_FORBIDDEN;
+	}
+
+	/**
+	 * Parses a <tt>Retry-After</tt> header, which is either a number of seconds or
+	 * a HTTP date. Returns -1 if the header is missing or invalid.
+	 */
+	static long parseRetryAfter(Header retryAfterHeader) {
+		if (retryAfterHeader == null) {
+			return -1;
+		}
+
+		String retryAfterValue = retryAfterHeader.getValue().trim();
+
+		if (retryAfterValue.matches("\\d+")) {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfterValue));
+		}
+		else {
+			Date retryAfterDate = DateUtils.parseDate(retryAfterValue);
+			return (retryAfterDate != null) ? Math.max(0, retryAfterDate.getTime() - System.currentTimeMillis()) : -1;
+		}
+	}
+
+	/**
+	 * Returns the Sardine client of the current thread. Must only be called
+	 * after {@link #connect()}, usually within {@link #beginRequest()}.
+	 */
+	private synchronized PooledSardine getSardine() {
+		return sardines.get();
+	}
+
+	/**
+	 * Returns the non-blocking engine of this transfer manager, and creates it on first use.
+	 * All engines of a repository share the same HTTP client from the {@link WebdavConnectionPool}.
+	 * Must only be called after {@link #connect()}.
+	 */
+	private synchronized WebdavAsyncEngine getAsyncEngine() throws StorageException {
+		if (asyncEngine == null) {
+			try {
+				asyncEngine = new WebdavAsyncEngine(WebdavConnectionPool.getAsyncClient(getSettings(), new Callable<CloseableHttpAsyncClient>() {
+					@Override
+					public CloseableHttpAsyncClient call() throws Exception {
+						return createAsyncClient();
+					}
+				}));
+			}
+			catch (Exception e) {
+				throw new StorageException(e);
+			}
+		}
+
+		return asyncEngine;
+	}
+
+	/**
+	 * Returns the adapter that runs the blocking methods of this transfer manager in a
+	 * thread pool, if the non-blocking engine is disabled.
+	 */
+	private synchronized AsyncTransferManagerAdapter getAsyncAdapter() {
+		if (asyncAdapter == null) {
+			asyncAdapter = new AsyncTransferManagerAdapter(this);
+		}
+
+		return asyncAdapter;
+	}
+
+	/**
+	 * Creates a non-blocking HTTP client with the same configuration as the {@link PooledSardine}
+	 * clients: credentials, shared auth state, keep-alive strategy, trust decisions and
+	 * connection limits.
+	 */
+	private CloseableHttpAsyncClient createAsyncClient() throws Exception {
+		CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+		credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(getSettings().getUsername(), getSettings().getPassword()));
+
+		int maxConnections = Math.max(getSettings().getMaxConnections(), getSettings().getParallelTransfers());
+
+		HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom()
+				.setDefaultCredentialsProvider(credentialsProvider)
+				.setKeepAliveStrategy(createKeepAliveStrategy())
+				.setMaxConnTotal(maxConnections)
+				.setMaxConnPerRoute(maxConnections);
+
+		if (getSettings().isSecure()) {
+			clientBuilder.setSSLStrategy(new SSLIOSessionStrategy(createSslContext(), new AllowAllHostnameVerifier()));
+		}
+
+		if (authCache != null) {
+			clientBuilder.addInterceptorFirst(new AuthCacheRequestInterceptor(authCache));
+		}
+
+		clientBuilder.addInterceptorLast(new AuthChallengeResponseInterceptor());
+
+		return clientBuilder.build();
+	}
+
+	/**
+	 * Waits for the given request of the non-blocking engine to finish, and re-throws
+	 * its {@link StorageException} if it failed.
+	 */
+	private <T> T waitFor(Future<T> future) throws StorageException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+
+			throw new StorageException("Interrupted while waiting for WebDAV request", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof StorageException) {
+				throw (StorageException) e.getCause();
+			}
+			else {
+				throw new StorageException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Keeps idle connections alive as long as the server allows it (via the
+	 * <tt>Keep-Alive</tt> header), or for the configured keep-alive time if the
+	 * server does not specify a timeout.
+	 */
+	private ConnectionKeepAliveStrategy createKeepAliveStrategy() {
+		final long defaultKeepAliveMillis = TimeUnit.SECONDS.toMillis(getSettings().getKeepAlive());
+
+		return new ConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long serverKeepAliveMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+				return (serverKeepAliveMillis > 0) ? Math.min(serverKeepAliveMillis, defaultKeepAliveMillis) : defaultKeepAliveMillis;
+			}
+		};
+	}
+
+	private String getRemoteFilePath(Class<? extends RemoteFile> remoteFile) {
+		if (remoteFile.equals(MultichunkRemoteFile.class)) {
+			return multichunksPath;
+		}
+		else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)) {
+			return databasesPath;
+		}
+		else if (remoteFile.equals(ActionRemoteFile.class)) {
+			return actionsPath;
+		}
+		else if (remoteFile.equals(TransactionRemoteFile.class)) {
+			return transactionsPath;
+		}
+		else if (remoteFile.equals(TempRemoteFile.class)) {
+			return tempPath;
+		}
+		else {
+			return repoPath;
+		}
+	}
+
+	@Override
+	public boolean testTargetCanWrite() throws StorageException {
+		try {
+			String testFileUrl = repoPath + "syncany-write-test";
+			
+			getSardine().put(testFileUrl, new byte[] { 0x01 });
+			getSardine().delete(testFileUrl);
+			
+			logger.log(Level.INFO, "testTargetCanWrite: Can write, test file created/deleted successfully.");
+			return true;			
+		}
+		catch (SSLPeerUnverifiedException e) {
+			logger.log(Level.SEVERE, "testTargetCanWrite: SSL handshake failed; peer not authenticated.", e);
+			throw new StorageException("SSL handshake failed; peer not authenticated.", e);
+		}
+		catch (Exception e) {
+			logger.log(Level.INFO, "testTargetCanWrite: Can NOT write to target.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if the repo exists at the repo URL.
+	 * 
+	 * <p><b>Note:</b> This uses list() instead of exists() because Sardine implements
+	 * the exists() method with a HTTP HEAD only. Some WebDAV servers respond with "Forbidden" 
+	 * if for directories.
+	 */
+	@Override
+	public boolean testTargetExists() throws StorageException {
+		try {
+			getSardine().list(repoPath);
+			
+			logger.log(Level.INFO, "testTargetExists: Target exists.");
+			return true;					
+		}
+		catch (SSLPeerUnverifiedException e) {
+			logger.log(Level.SEVERE, "testTargetCanWrite: SSL handshake failed; peer not authenticated.", e);
+			throw new StorageException("SSL handshake failed; peer not authenticated.", e);
+		}
+		catch (Exception e) {
+			logger.log(Level.WARNING, "testTargetExists: Exception thrown while testing if folder exists.", e);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean testTargetCanCreate() throws StorageException {
+		try {
+			if (testTargetExists()) {
+				logger.log(Level.INFO, "testTargetCanCreate: Target already exists, so 'can create' test successful.");
+				return true;
+			}
+			else {
+				getSardine().createDirectory(repoPath);
+				getSardine().delete(repoPath);
+
+				logger.log(Level.INFO, "testTargetCanCreate: Target can be created (test-created successfully).");
+				return true;
+			}			
+		}
 		catch (SSLPeerUnverifiedException e) {
 			logger.log(Level.SEVERE, "testTargetCanWrite: SSL handshake failed; peer not authenticated.", e);
 			throw new StorageException("SSL handshake failed; peer not authenticated.", e);
@@ -381,7 +1777,7 @@ public class WebdavTransferManager extends AbstractTransferManager {
 		try {
 			String repoFileUrl = getRemoteFileUrl(new SyncanyRemoteFile());
 			
-			if (sardine.exists(repoFileUrl)) {
+			if (getSardine().exists(repoFileUrl)) {
 				logger.log(Level.INFO, "testRepoFileExists: Repo file exists.");
 				return true;
 			} 
@@ -397,109 +1793,38 @@ public class WebdavTransferManager extends AbstractTransferManager {
 		catch (Exception e) {
 			logger.log(Level.WARNING, "testRepoFileExists: Exception thrown while testing if repo file exists.", e);
 			return false;
-		}
-	}
-	
-	private void storeTrustStore() {
-		if (!hasNewCertificates) {
-			logger.log(Level.INFO, "WebDAV: No new certificates. Nothing to store.");
-		}
-		else {
-			logger.log(Level.INFO, "WebDAV: New certificates. Storing trust store on disk.");
-
-			UserConfig.storeTrustStore();
-			hasNewCertificates = false;
-		}
-	}
-
-	private ConnectionSocketFactory initSsl() throws Exception {
-		TrustStrategy trustStrategy = new TrustStrategy() {
-			@Override
-			public boolean isTrusted(X509Certificate[] certificateChain, String authType) throws CertificateException {
-				logger.log(Level.INFO, "WebDAV: isTrusted("+certificateChain.toString()+", "+authType+")");
-								
-				try {
-					// First check if already in trust store, if so; okay!
-					X509Certificate serverCertificate = certificateChain[0];
-					
-					for (int i = 0; i < certificateChain.length; i++) {
-						X509Certificate certificate = certificateChain[i];
-
-						logger.log(Level.FINE, "WebDAV: Checking certificate validity: " + certificate.getSubjectDN().toString());
-						logger.log(Level.FINEST, "WebDAV:              Full certificate: " + certificate);
-						
-						// Check validity
-						try {
-							certificate.checkValidity();	
-						}
-						catch (CertificateException e) {
-							logger.log(Level.FINE, "WebDAV: Certificate is NOT valid.", e);
-							return false;
-						}
-						
-						logger.log(Level.FINE, "WebDAV: Checking is VALID.");
-						
-						// Certificate found; we trust this, okay!
-						if (inTrustStore(certificate)) {
-							logger.log(Level.FINE, "WebDAV: Certificate found in trust store.");
-							return true;
-						}
-						
-						// Certificate is new; continue ...
-						else {
-							logger.log(Level.FINE, "WebDAV: Certificate NOT found in trust store.");
-						}
-					}
-						
-					// We we reach this code, none of the CAs are known in the trust store
-					// So we ask the user if he/she wants to add the server certificate to the trust store  
-					UserInteractionListener userInteractionListener = getSettings().getUserInteractionListener();
-					
-					if (userInteractionListener == null) {
-						throw new RuntimeException("pluginListener cannot be null!");
-					}
-					
-					boolean userTrustsCertificate = userInteractionListener.onUserConfirm("Unknown SSL/TLS certificate", formatCertificate(serverCertificate), "Do you want to trust this certificate?");
-					
-					if (!userTrustsCertificate) {
-						logger.log(Level.INFO, "WebDAV: User does not trust certificate. ABORTING.");
-						throw new RuntimeException("User does not trust certificate. ABORTING.");
-					}
-					
-					logger.log(Level.INFO, "WebDAV: User trusts certificate. Adding to trust store.");
-					addToTrustStore(serverCertificate);
-	
-					return true;
-				}
-				catch (KeyStoreException e) {
-					logger.log(Level.SEVERE, "WebDAV: Key store exception.", e);
-					return false;
-				}
-			}		
-			
-			private boolean inTrustStore(X509Certificate certificate) throws KeyStoreException {
-				String certAlias = getCertificateAlias(certificate);		
-				return UserConfig.getUserTrustStore().containsAlias(certAlias);
-			}
-			
-			private void addToTrustStore(X509Certificate certificate) throws KeyStoreException {
-				String certAlias = getCertificateAlias(certificate);
-				UserConfig.getUserTrustStore().setCertificateEntry(certAlias, certificate);
-				
-				hasNewCertificates = true;				
-			}
-			
-			private String getCertificateAlias(X509Certificate certificate) {
-				return StringUtil.toHex(certificate.getSignature());
-			}
-		};
+		}
+	}
+	
+	private void storeTrustStore() {
+		if (!hasNewCertificates) {
+			logger.log(Level.INFO, "WebDAV: No new certificates. Nothing to store.");
+		}
+		else {
+			logger.log(Level.INFO, "WebDAV: New certificates. Storing trust store on disk.");
 
-		SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, trustStrategy).useTLS().build();
-				
-		return new SSLConnectionSocketFactory(sslContext, new AllowAllHostnameVerifier());
+			UserConfig.storeTrustStore();
+			hasNewCertificates = false;
+		}
+	}
+
+	private ConnectionSocketFactory initSsl() throws Exception {
+		return new SSLConnectionSocketFactory(createSslContext(), new AllowAllHostnameVerifier());
+	}
+
+	/**
+	 * Creates an SSL context that trusts certificates in the user trust store, certificates
+	 * trusted before in this process, and certificates the user confirms.
+	 *
+	 * <p>The context is cached by the {@link WebdavConnectionPool} beyond the lifetime of this
+	 * transfer manager, so its {@link CertificateTrustStrategy} must not reference it (or its settings).
+	 */
+	private SSLContext createSslContext() throws Exception {
+		TrustStrategy trustStrategy = new CertificateTrustStrategy(WebdavConnectionPool.getServerKey(getSettings()));
+		return SSLContexts.custom().loadTrustMaterial(null, trustStrategy).useTLS().build();
 	}
 	
-	private String formatCertificate(X509Certificate cert) {
+	private static String formatCertificate(X509Certificate cert) {
 		try {			
 			CipherUtil.enableUnlimitedStrength(); // Dirty!
 			
@@ -525,7 +1850,7 @@ public class WebdavTransferManager extends AbstractTransferManager {
 		}		
 	}
 	
-	private String formatChecksum(byte[] checksum) {
+	private static String formatChecksum(byte[] checksum) {
 		StringBuilder sb = new StringBuilder();
 		
 		for (int i=0; i<checksum.length; i++) {
@@ -539,7 +1864,7 @@ public class WebdavTransferManager extends AbstractTransferManager {
 		return sb.toString();
 	}
 
-	private byte[] createChecksum(byte[] data, String digestAlgorithm) {
+	private static byte[] createChecksum(byte[] data, String digestAlgorithm) {
 		try {
 			MessageDigest digest = MessageDigest.getInstance(digestAlgorithm);
 			digest.update(data, 0, data.length);
@@ -550,4 +1875,565 @@ public class WebdavTransferManager extends AbstractTransferManager {
 			throw new RuntimeException(e);
 		}
 	}
+
+	/**
+	 * Sardine client that leases its connections from the shared {@link WebdavConnectionPool},
+	 * and that allows executing custom requests.
+	 *
+	 * <p><b>Note:</b> This must be an inner class (not a static one), because the overridden methods
+	 * are called by the super constructor, i.e. before any fields of this class are initialized.
+	 */
+	private class PooledSardine extends SardineImpl {
+		public PooledSardine() {
+			super(getSettings().getUsername(), getSettings().getPassword());
+		}
+
+		@Override
+		protected HttpClientBuilder configure(ProxySelector selector, CredentialsProvider credentials) {
+			HttpClientBuilder clientBuilder = super.configure(selector, credentials).setKeepAliveStrategy(createKeepAliveStrategy());
+
+			// Content encoding is negotiated per request (never for multichunks and ranges),
+			// so HttpClient must not add 'Accept-Encoding' to every request on its own
+			clientBuilder.disableContentCompression();
+
+			if (authCache != null) {
+				clientBuilder.addInterceptorFirst(new AuthCacheRequestInterceptor(authCache));
+			}
+
+			clientBuilder.addInterceptorLast(new AuthChallengeResponseInterceptor());
+
+			return clientBuilder;
+		}
+
+		/**
+		 * Returns the shared connection manager, wrapped so that closing this client
+		 * (see {@link WebdavTransferManager#disconnect()}) does not shut down the pool.
+		 */
+		@Override
+		protected HttpClientConnectionManager createDefaultConnectionManager(Registry<ConnectionSocketFactory> schemeRegistry) {
+			return new SharedConnectionManager(connectionManager);
+		}
+
+		/**
+		 * Executes the request and records its duration, the bytes sent and received, and
+		 * its status code in the {@link TransferMetrics}. Sardine's own methods (e.g. move()
+		 * and delete()) use this method as well, so all requests are recorded.
+		 *
+		 * <p>If the server throttles the request, a {@link ThrottledSardineException} is thrown
+		 * instead of a plain {@link SardineException}.
+		 */
+		@Override
+		public <T> T execute(HttpRequestBase request, ResponseHandler<T> responseHandler) throws IOException {
+			MetricsResponseHandler<T> metricsResponseHandler = new MetricsResponseHandler<T>(responseHandler);
+			long startTime = System.currentTimeMillis();
+
+			try {
+				return super.execute(request, metricsResponseHandler);
+			}
+			catch (SardineException e) {
+				if (e.getStatusCode() == HTTP_TOO_MANY_REQUESTS || e.getStatusCode() == HTTP_SERVICE_UNAVAILABLE) {
+					throw new ThrottledSardineException(e, metricsResponseHandler.getRetryAfterMillis());
+				}
+				else {
+					throw e;
+				}
+			}
+			finally {
+				long duration = System.currentTimeMillis() - startTime;
+				long bytesOut = getRequestContentLength(request);
+
+				TransferMetrics.getInstance().recordRequest(request.getMethod(), metricsResponseHandler.getStatusCode(), duration,
+						metricsResponseHandler.getBytesIn(), bytesOut);
+			}
+		}
+
+		private long getRequestContentLength(HttpRequestBase request) {
+			if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+				return ((HttpEntityEnclosingRequest) request).getEntity().getContentLength();
+			}
+			else {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Trust strategy of the shared SSL contexts (see {@link #createSslContext()}). Since a context
+	 * outlives the transfer manager that created it, the strategy only keeps the server key, and
+	 * asks the {@link WebdavConnectionPool} for the current {@link UserInteractionListener} of this
+	 * server whenever the user has to confirm an unknown certificate.
+	 */
+	private static class CertificateTrustStrategy implements TrustStrategy {
+		private final String serverKey;
+
+		public CertificateTrustStrategy(String serverKey) {
+			this.serverKey = serverKey;
+		}
+
+		@Override
+		public boolean isTrusted(X509Certificate[] certificateChain, String authType) throws CertificateException {
+			logger.log(Level.INFO, "WebDAV: isTrusted("+certificateChain.toString()+", "+authType+")");
+							
+			try {
+				X509Certificate serverCertificate = certificateChain[0];
+				String serverCertificateFingerprint = getCertificateFingerprint(serverCertificate);
+
+				// Trusted before (by another connection); no need to check the trust store again
+				if (isTrustedBefore(serverCertificate, serverCertificateFingerprint)) {
+					logger.log(Level.FINE, "WebDAV: Certificate trusted before, skipping trust store lookup.");
+					return true;
+				}
+
+				// First check if already in trust store, if so; okay!
+				
+				for (int i = 0; i < certificateChain.length; i++) {
+					X509Certificate certificate = certificateChain[i];
+
+					logger.log(Level.FINE, "WebDAV: Checking certificate validity: " + certificate.getSubjectDN().toString());
+					logger.log(Level.FINEST, "WebDAV:              Full certificate: " + certificate);
+					
+					// Check validity
+					try {
+						certificate.checkValidity();	
+					}
+					catch (CertificateException e) {
+						logger.log(Level.FINE, "WebDAV: Certificate is NOT valid.", e);
+						return false;
+					}
+					
+					logger.log(Level.FINE, "WebDAV: Checking is VALID.");
+					
+					// Certificate found; we trust this, okay!
+					if (inTrustStore(certificate)) {
+						logger.log(Level.FINE, "WebDAV: Certificate found in trust store.");
+						trustedCertificateFingerprints.add(serverCertificateFingerprint);
+
+						return true;
+					}
+					
+					// Certificate is new; continue ...
+					else {
+						logger.log(Level.FINE, "WebDAV: Certificate NOT found in trust store.");
+					}
+				}
+					
+				// We we reach this code, none of the CAs are known in the trust store
+				// So we ask the user if he/she wants to add the server certificate to the trust store  
+				UserInteractionListener userInteractionListener = WebdavConnectionPool.getUserInteractionListener(serverKey);
+				
+				if (userInteractionListener == null) {
+					throw new RuntimeException("pluginListener cannot be null!");
+				}
+				
+				boolean userTrustsCertificate = userInteractionListener.onUserConfirm("Unknown SSL/TLS certificate", formatCertificate(serverCertificate), "Do you want to trust this certificate?");
+				
+				if (!userTrustsCertificate) {
+					logger.log(Level.INFO, "WebDAV: User does not trust certificate. ABORTING.");
+					throw new RuntimeException("User does not trust certificate. ABORTING.");
+				}
+				
+				logger.log(Level.INFO, "WebDAV: User trusts certificate. Adding to trust store.");
+				addToTrustStore(serverCertificate);
+				trustedCertificateFingerprints.add(serverCertificateFingerprint);
+
+				return true;
+			}
+			catch (KeyStoreException e) {
+				logger.log(Level.SEVERE, "WebDAV: Key store exception.", e);
+				return false;
+			}
+		}		
+		
+		private boolean isTrustedBefore(X509Certificate serverCertificate, String serverCertificateFingerprint) {
+			if (!trustedCertificateFingerprints.contains(serverCertificateFingerprint)) {
+				return false;
+			}
+
+			try {
+				serverCertificate.checkValidity();
+				return true;
+			}
+			catch (CertificateException e) {
+				logger.log(Level.FINE, "WebDAV: Certificate trusted before is NOT valid anymore.", e);
+				trustedCertificateFingerprints.remove(serverCertificateFingerprint);
+
+				return false;
+			}
+		}
+
+		private boolean inTrustStore(X509Certificate certificate) throws KeyStoreException {
+			String certAlias = getCertificateAlias(certificate);		
+			return UserConfig.getUserTrustStore().containsAlias(certAlias);
+		}
+		
+		private void addToTrustStore(X509Certificate certificate) throws KeyStoreException {
+			String certAlias = getCertificateAlias(certificate);
+			UserConfig.getUserTrustStore().setCertificateEntry(certAlias, certificate);
+			
+			hasNewCertificates = true;				
+		}
+		
+		private String getCertificateAlias(X509Certificate certificate) {
+			return StringUtil.toHex(certificate.getSignature());
+		}
+
+		private String getCertificateFingerprint(X509Certificate certificate) throws CertificateException {
+			return StringUtil.toHex(createChecksum(certificate.getEncoded(), "SHA-256"));
+		}
+	}
+
+	/**
+	 * Delegates to the shared connection manager of the {@link WebdavConnectionPool}, but
+	 * ignores {@link #shutdown()}. HttpClient shuts down its connection manager when the
+	 * client is closed, which must not close the connections of other transfer managers.
+	 */
+	private static class SharedConnectionManager implements HttpClientConnectionManager {
+		private HttpClientConnectionManager connectionManager;
+
+		public SharedConnectionManager(HttpClientConnectionManager connectionManager) {
+			this.connectionManager = connectionManager;
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			return connectionManager.requestConnection(route, state);
+		}
+
+		@Override
+		public void releaseConnection(HttpClientConnection connection, Object newState, long validDuration, TimeUnit timeUnit) {
+			connectionManager.releaseConnection(connection, newState, validDuration, timeUnit);
+		}
+
+		@Override
+		public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+			connectionManager.connect(connection, route, connectTimeout, context);
+		}
+
+		@Override
+		public void upgrade(HttpClientConnection connection, HttpRoute route, HttpContext context) throws IOException {
+			connectionManager.upgrade(connection, route, context);
+		}
+
+		@Override
+		public void routeComplete(HttpClientConnection connection, HttpRoute route, HttpContext context) throws IOException {
+			connectionManager.routeComplete(connection, route, context);
+		}
+
+		@Override
+		public void closeIdleConnections(long idleTime, TimeUnit timeUnit) {
+			connectionManager.closeIdleConnections(idleTime, timeUnit);
+		}
+
+		@Override
+		public void closeExpiredConnections() {
+			connectionManager.closeExpiredConnections();
+		}
+
+		@Override
+		public void shutdown() {
+			// Shared by all transfer managers; closed by WebdavConnectionPool.shutdown()
+		}
+	}
+
+	/**
+	 * Remembers the status code and the <tt>Retry-After</tt> header of the response, and
+	 * counts the bytes of the response body read by the actual response handler.
+	 */
+	private static class MetricsResponseHandler<T> implements ResponseHandler<T> {
+		private ResponseHandler<T> responseHandler;
+		private int statusCode;
+		private long retryAfterMillis;
+		private CountingInputStream responseInputStream;
+
+		public MetricsResponseHandler(ResponseHandler<T> responseHandler) {
+			this.responseHandler = responseHandler;
+			this.statusCode = 0;
+			this.retryAfterMillis = -1;
+			this.responseInputStream = null;
+		}
+
+		@Override
+		public T handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+			statusCode = response.getStatusLine().getStatusCode();
+			retryAfterMillis = parseRetryAfter(response.getFirstHeader("Retry-After"));
+
+			if (response.getEntity() != null) {
+				response.setEntity(new HttpEntityWrapper(response.getEntity()) {
+					@Override
+					public InputStream getContent() throws IOException {
+						if (responseInputStream == null) {
+							responseInputStream = new CountingInputStream(super.getContent());
+						}
+
+						return responseInputStream;
+					}
+				});
+			}
+
+			return responseHandler.handleResponse(response);
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		public long getBytesIn() {
+			return (responseInputStream != null) ? responseInputStream.getByteCount() : 0;
+		}
+
+		public long getRetryAfterMillis() {
+			return retryAfterMillis;
+		}
+	}
+
+	/**
+	 * Thrown by {@link PooledSardine#execute(HttpRequestBase, ResponseHandler)} if the server
+	 * throttled the request, i.e. responded with <tt>429 Too Many Requests</tt> or
+	 * <tt>503 Service Unavailable</tt>. Carries the time the server asked the client to wait.
+	 */
+	private static class ThrottledSardineException extends SardineException {
+		private static final long serialVersionUID = 7152849612834508163L;
+
+		private long retryAfterMillis;
+
+		public ThrottledSardineException(SardineException cause, long retryAfterMillis) {
+			super(cause.getMessage(), cause.getStatusCode(), cause.getResponsePhrase());
+
+			this.retryAfterMillis = retryAfterMillis;
+			initCause(cause);
+		}
+
+		public long getRetryAfterMillis() {
+			return retryAfterMillis;
+		}
+	}
+
+	/**
+	 * Records a retry in the {@link TransferMetrics} whenever HttpClient receives a
+	 * <tt>401 Unauthorized</tt> challenge; HttpClient answers it by sending the request again.
+	 */
+	private static class AuthChallengeResponseInterceptor implements HttpResponseInterceptor {
+		@Override
+		public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+			if (response.getStatusLine().getStatusCode() == HTTP_UNAUTHORIZED) {
+				HttpRequest request = HttpClientContext.adapt(context).getRequest();
+				TransferMetrics.getInstance().recordRetry(request.getRequestLine().getMethod());
+			}
+		}
+	}
+
+	/**
+	 * Validates the response status and feeds the <tt>multistatus</tt>
+	 * response body to the {@link WebdavMultistatusParser}.
+	 */
+	private static class MultistatusResponseHandler extends ValidatingResponseHandler<Void> {
+		private ResourceListener resourceListener;
+
+		public MultistatusResponseHandler(ResourceListener resourceListener) {
+			this.resourceListener = resourceListener;
+		}
+
+		@Override
+		public Void handleResponse(HttpResponse response) throws IOException {
+			validateResponse(response);
+
+			InputStream multistatusInputStream = getDecodedContent(response.getEntity());
+
+			try {
+				WebdavMultistatusParser.parse(multistatusInputStream, resourceListener);
+				return null;
+			}
+			catch (XMLStreamException e) {
+				throw new IOException("Cannot parse multistatus response", e);
+			}
+			finally {
+				multistatusInputStream.close();
+			}
+		}
+	}
+
+	/**
+	 * Validates the response status and extracts the change token from
+	 * the <tt>multistatus</tt> response body using the {@link WebdavMultistatusParser}.
+	 */
+	private static class ChangeTokenResponseHandler extends ValidatingResponseHandler<String> {
+		@Override
+		public String handleResponse(HttpResponse response) throws IOException {
+			validateResponse(response);
+
+			InputStream multistatusInputStream = response.getEntity().getContent();
+
+			try {
+				return WebdavMultistatusParser.parseChangeToken(multistatusInputStream);
+			}
+			catch (XMLStreamException e) {
+				throw new IOException("Cannot parse multistatus response", e);
+			}
+			finally {
+				multistatusInputStream.close();
+			}
+		}
+	}
+
+	/**
+	 * Validates the response status of a range request, and writes the requested
+	 * range to the output stream. A <tt>416 Range Not Satisfiable</tt> response means that
+	 * the range is beyond the end of the file, so nothing is written.
+	 */
+	private static class RangeResponseHandler extends ValidatingResponseHandler<Void> {
+		private long offset;
+		private long length;
+		private OutputStream outputStream;
+
+		public RangeResponseHandler(long offset, long length, OutputStream outputStream) {
+			this.offset = offset;
+			this.length = length;
+			this.outputStream = outputStream;
+		}
+
+		@Override
+		public Void handleResponse(HttpResponse response) throws IOException {
+			if (response.getStatusLine().getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+				return null;
+			}
+
+			validateResponse(response);
+
+			HttpEntity entity = response.getEntity();
+			InputStream rangeInputStream = entity.getContent();
+
+			try {
+				if (response.getStatusLine().getStatusCode() == HTTP_PARTIAL_CONTENT) {
+					IOUtils.copyLarge(rangeInputStream, outputStream, 0, length);
+				}
+				else {
+					logger.log(Level.WARNING, "WebDAV: Server ignored range request; extracting range from full response.");
+					IOUtils.copyLarge(rangeInputStream, outputStream, getOffsetInFullResponse(entity), length);
+				}
+
+				return null;
+			}
+			finally {
+				rangeInputStream.close();
+			}
+		}
+
+		private long getOffsetInFullResponse(HttpEntity entity) throws IOException {
+			if (offset >= 0) {
+				return offset;
+			}
+			else if (entity.getContentLength() >= 0) {
+				return Math.max(0, entity.getContentLength() + offset);
+			}
+			else {
+				throw new IOException("Server ignored range request and sent no content length; cannot determine suffix range.");
+			}
+		}
+	}
+
+	/**
+	 * Returns the status code of the response, and discards the response body.
+	 */
+	private static class StatusCodeResponseHandler implements ResponseHandler<Integer> {
+		@Override
+		public Integer handleResponse(HttpResponse response) throws IOException {
+			EntityUtils.consume(response.getEntity());
+			return response.getStatusLine().getStatusCode();
+		}
+	}
+
+	/**
+	 * Validates the response status, and returns the response body as a byte array.
+	 */
+	private static class ByteArrayResponseHandler extends ValidatingResponseHandler<byte[]> {
+		@Override
+		public byte[] handleResponse(HttpResponse response) throws IOException {
+			validateResponse(response);
+			return EntityUtils.toByteArray(response.getEntity());
+		}
+	}
+
+	/**
+	 * Validates the response status of an <tt>OPTIONS</tt> request, and returns whether
+	 * the <tt>Accept-Encoding</tt> response header lists <tt>gzip</tt>.
+	 */
+	private static class AcceptEncodingResponseHandler extends ValidatingResponseHandler<Boolean> {
+		@Override
+		public Boolean handleResponse(HttpResponse response) throws IOException {
+			validateResponse(response);
+
+			for (Header acceptEncodingHeader : response.getHeaders(HttpHeaders.ACCEPT_ENCODING)) {
+				for (HeaderElement acceptEncoding : acceptEncodingHeader.getElements()) {
+					if (GZIP_CONTENT_ENCODING.equalsIgnoreCase(acceptEncoding.getName())) {
+						return true;
+					}
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Validates the response status and writes the response body to a local file
+	 * through a {@link FileChannel}. The body is read in blocks of
+	 * {@link FileChannelEntity#BUFFER_SIZE} bytes; HttpClient serves reads of this size
+	 * directly from the socket instead of copying them through its own input buffer.
+	 */
+	private static class FileResponseHandler extends ValidatingResponseHandler<Void> {
+		private File localFile;
+
+		public FileResponseHandler(File localFile) {
+			this.localFile = localFile;
+		}
+
+		@Override
+		public Void handleResponse(HttpResponse response) throws IOException {
+			validateResponse(response);
+
+			InputStream remoteFileInputStream = getDecodedContent(response.getEntity());
+			FileOutputStream localFileOutputStream = new FileOutputStream(localFile);
+
+			try {
+				FileChannel localFileChannel = localFileOutputStream.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocate(FileChannelEntity.BUFFER_SIZE);
+				int read;
+
+				while ((read = remoteFileInputStream.read(buffer.array(), 0, buffer.capacity())) != -1) {
+					buffer.limit(read);
+
+					while (buffer.hasRemaining()) {
+						localFileChannel.write(buffer);
+					}
+
+					buffer.clear();
+				}
+
+				return null;
+			}
+			finally {
+				localFileOutputStream.close();
+				remoteFileInputStream.close();
+			}
+		}
+	}
+
+	/**
+	 * Puts the shared {@link WebdavAuthCache} into the context of each request before
+	 * HttpClient's own <tt>RequestAuthCache</tt> interceptor runs. HttpClient then
+	 * authenticates the request pre-emptively if the cache knows the target host, and
+	 * stores newly negotiated Basic/Digest auth schemes in the shared cache.
+	 */
+	private static class AuthCacheRequestInterceptor implements HttpRequestInterceptor {
+		private WebdavAuthCache authCache;
+
+		public AuthCacheRequestInterceptor(WebdavAuthCache authCache) {
+			this.authCache = authCache;
+		}
+
+		@Override
+		public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+			HttpClientContext.adapt(context).setAuthCache(authCache);
+		}
+	}
 }
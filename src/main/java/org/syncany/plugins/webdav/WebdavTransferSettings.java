@@ -23,6 +23,15 @@ import org.syncany.plugins.transfer.Setup;
 import org.syncany.plugins.transfer.TransferSettings;
 
 public class WebdavTransferSettings extends TransferSettings {
+	public static final int DEFAULT_MAX_CONNECTIONS = 8;
+	public static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+	public static final int DEFAULT_PARALLEL_TRANSFERS = 4;
+	public static final boolean DEFAULT_PREEMPTIVE_AUTH = false;
+	public static final boolean DEFAULT_REUSE_AUTH_STATE = true;
+	public static final boolean DEFAULT_GZIP_ENCODING = true;
+	public static final boolean DEFAULT_SHARDED_MULTICHUNKS = false;
+	public static final boolean DEFAULT_ASYNC_ENGINE = false;
+
 	@Element(name = "url", required = true)
 	@Setup(order = 1, description = "URL")
 	private String url;
@@ -36,6 +45,42 @@ public class WebdavTransferSettings extends TransferSettings {
 	@Encrypted
 	private String password;
 
+	@Element(name = "maxConnections", required = false)
+	@Setup(order = 4, visible = false, description = "Max. HTTP connections")
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	@Element(name = "keepAlive", required = false)
+	@Setup(order = 5, visible = false, description = "Idle connection keep-alive (seconds)")
+	private int keepAlive = DEFAULT_KEEP_ALIVE_SECONDS;
+
+	@Element(name = "parallelTransfers", required = false)
+	@Setup(order = 6, visible = false, description = "Parallel uploads/downloads")
+	private int parallelTransfers = DEFAULT_PARALLEL_TRANSFERS;
+
+	@Element(name = "preemptiveAuth", required = false)
+	@Setup(order = 7, visible = false, description = "Send Basic credentials without waiting for a challenge")
+	private boolean preemptiveAuth = DEFAULT_PREEMPTIVE_AUTH;
+
+	@Element(name = "reuseAuthState", required = false)
+	@Setup(order = 8, visible = false, description = "Reuse Basic/Digest auth state across requests")
+	private boolean reuseAuthState = DEFAULT_REUSE_AUTH_STATE;
+
+	@Element(name = "gzipEncoding", required = false)
+	@Setup(order = 9, visible = false, description = "Compress uploaded metadata files if the server accepts gzip")
+	private boolean gzipEncoding = DEFAULT_GZIP_ENCODING;
+
+	@Element(name = "shardedMultichunks", required = false)
+	@Setup(order = 10, visible = false, description = "Store multichunks of new repositories in sub-folders (multichunks/ab/cd/...)")
+	private boolean shardedMultichunks = DEFAULT_SHARDED_MULTICHUNKS;
+
+	@Element(name = "capabilities", required = false)
+	@Setup(order = 11, visible = false, description = "Detected server capabilities")
+	private String capabilities;
+
+	@Element(name = "asyncEngine", required = false)
+	@Setup(order = 12, visible = false, description = "Use non-blocking HTTP engine")
+	private boolean asyncEngine = DEFAULT_ASYNC_ENGINE;
+
 	public String getUrl() {
 		return url;
 	}
@@ -60,6 +105,101 @@ public class WebdavTransferSettings extends TransferSettings {
 		this.password = password;
 	}
 
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(int keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public int getParallelTransfers() {
+		return parallelTransfers;
+	}
+
+	public void setParallelTransfers(int parallelTransfers) {
+		this.parallelTransfers = parallelTransfers;
+	}
+
+	public boolean isPreemptiveAuth() {
+		return preemptiveAuth;
+	}
+
+	public void setPreemptiveAuth(boolean preemptiveAuth) {
+		this.preemptiveAuth = preemptiveAuth;
+	}
+
+	public boolean isReuseAuthState() {
+		return reuseAuthState;
+	}
+
+	public void setReuseAuthState(boolean reuseAuthState) {
+		this.reuseAuthState = reuseAuthState;
+	}
+
+	/**
+	 * Returns whether metadata files are uploaded with gzip content encoding, if the server
+	 * accepts gzip-encoded request bodies. Downloads always accept gzip-encoded responses.
+	 */
+	public boolean isGzipEncoding() {
+		return gzipEncoding;
+	}
+
+	public void setGzipEncoding(boolean gzipEncoding) {
+		this.gzipEncoding = gzipEncoding;
+	}
+
+	/**
+	 * Returns whether new repositories store multichunks in two levels of sub-folders named
+	 * after the first characters of their checksum, instead of in one flat folder. Many WebDAV
+	 * servers get slower as the number of files in a folder grows.
+	 *
+	 * <p>The layout is stored in the repository when it is created, so that all clients use it.
+	 * This setting does not change the layout of existing repositories; these can be migrated with
+	 * <tt>sy cleanup --migrate-layout</tt> (see {@link WebdavTransferManager#migrateLayout()}).
+	 */
+	public boolean isShardedMultichunks() {
+		return shardedMultichunks;
+	}
+
+	public void setShardedMultichunks(boolean shardedMultichunks) {
+		this.shardedMultichunks = shardedMultichunks;
+	}
+
+	/**
+	 * Returns the server capabilities detected by the {@link WebdavTransferManager}'s
+	 * probe (see {@link WebdavServerCapabilities}), or <tt>null</tt> if the server has
+	 * not been probed yet.
+	 */
+	public String getCapabilities() {
+		return capabilities;
+	}
+
+	public void setCapabilities(String capabilities) {
+		this.capabilities = capabilities;
+	}
+
+	/**
+	 * Returns whether uploads, downloads, moves and deletes are sent through the non-blocking
+	 * {@link WebdavAsyncEngine} instead of the blocking Sardine client. With the non-blocking
+	 * engine, a handful of I/O threads can serve hundreds of requests in flight.
+	 */
+	public boolean isAsyncEngine() {
+		return asyncEngine;
+	}
+
+	public void setAsyncEngine(boolean asyncEngine) {
+		this.asyncEngine = asyncEngine;
+	}
+
 	public String getURL(String filename) {
 		return (url.endsWith("/") ? "" : "/") + filename;
 	}
@@ -20,11 +20,23 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.connection.plugins.webdav.WebdavAsyncEngineBenchmarkTest;
+import org.syncany.tests.connection.plugins.webdav.WebdavAuthenticationTest;
+import org.syncany.tests.connection.plugins.webdav.WebdavConnectionPoolTest;
+import org.syncany.tests.connection.plugins.webdav.WebdavMultistatusParserTest;
+import org.syncany.tests.connection.plugins.webdav.WebdavShardingBenchmarkTest;
+import org.syncany.tests.connection.plugins.webdav.WebdavTransferBenchmarkTest;
 import org.syncany.tests.connection.plugins.webdav.WebdavTransferManagerTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
-	WebdavTransferManagerTest.class
+	WebdavTransferManagerTest.class,
+	WebdavConnectionPoolTest.class,
+	WebdavMultistatusParserTest.class,
+	WebdavTransferBenchmarkTest.class,
+	WebdavAuthenticationTest.class,
+	WebdavShardingBenchmarkTest.class,
+	WebdavAsyncEngineBenchmarkTest.class
 })
 public class WebdavTestSuite {
 	// This class executes all tests
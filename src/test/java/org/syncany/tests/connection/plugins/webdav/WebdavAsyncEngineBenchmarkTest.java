@@ -0,0 +1,214 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.plugins.transfer.ParallelTransferExecutor;
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferTask;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.webdav.WebdavConnectionPool;
+import org.syncany.plugins.webdav.WebdavTransferManager;
+import org.syncany.plugins.webdav.WebdavTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+/**
+ * Compares the blocking engine (one thread per request in flight, see {@link ParallelTransferExecutor})
+ * with the non-blocking engine (all requests sent from one thread, see {@link WebdavTransferManager#uploadAsync(File, org.syncany.plugins.transfer.files.RemoteFile) uploadAsync()})
+ * for many small uploads and downloads against the embedded {@link WebdavTestServer} with injected latency.
+ * Both engines may open the same number of connections.
+ *
+ * <p>The number of requests, the latency and the number of connections can be changed
+ * with the system properties <tt>webdav.benchmark.requests</tt>, <tt>webdav.benchmark.latency</tt>
+ * (milliseconds) and <tt>webdav.benchmark.connections</tt>.
+ *
+ * <p>Since the benchmark takes long, it only runs if the system property
+ * <tt>webdav.benchmark</tt> is set to <tt>true</tt>.
+ */
+public class WebdavAsyncEngineBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(WebdavAsyncEngineBenchmarkTest.class.getSimpleName());
+
+	private static final int MULTICHUNK_SIZE = 16 * 1024;
+
+	private File tempDir;
+	private File serverRootDir;
+	private WebdavTestServer server;
+	private File localMultichunk;
+
+	private int requestCount;
+	private int connectionCount;
+
+	@BeforeClass
+	public static void assumeBenchmarkEnabled() {
+		assumeTrue(Boolean.getBoolean("webdav.benchmark"));
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		serverRootDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		localMultichunk = TestFileUtil.createRandomFileInDirectory(tempDir, MULTICHUNK_SIZE);
+
+		requestCount = Integer.getInteger("webdav.benchmark.requests", 500);
+		connectionCount = Integer.getInteger("webdav.benchmark.connections", 64);
+
+		server = new WebdavTestServer(serverRootDir);
+		server.setLatency(Integer.getInteger("webdav.benchmark.latency", 50));
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		WebdavConnectionPool.shutdown();
+		server.stop();
+
+		TestFileUtil.deleteDirectory(serverRootDir);
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testBenchmarkBlockingVersusAsyncEngine() throws Exception {
+		long[] blockingResult = measureBlocking(createTransferManager("blocking", false));
+		long[] asyncResult = measureAsync(createTransferManager("async", true));
+
+		logger.log(Level.INFO, requestCount + " uploads and " + requestCount + " downloads (" + MULTICHUNK_SIZE / 1024 + " KB), "
+				+ connectionCount + " connections:");
+		logger.log(Level.INFO, String.format("- Blocking engine:     upload %5d ms, download %5d ms, peak JVM threads %d", blockingResult[0],
+				blockingResult[1], blockingResult[2]));
+		logger.log(Level.INFO, String.format("- Non-blocking engine: upload %5d ms, download %5d ms, peak JVM threads %d", asyncResult[0],
+				asyncResult[1], asyncResult[2]));
+	}
+
+	private WebdavTransferManager createTransferManager(String repoName, boolean asyncEngine) throws StorageException {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/" + repoName);
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+		settings.setMaxConnections(connectionCount);
+		settings.setParallelTransfers(connectionCount);
+		settings.setAsyncEngine(asyncEngine);
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+		transferManager.init(true);
+
+		return transferManager;
+	}
+
+	private long[] measureBlocking(final WebdavTransferManager transferManager) throws Exception {
+		final File downloadDir = new File(tempDir, "blocking");
+		downloadDir.mkdirs();
+
+		List<TransferTask> uploadTasks = new ArrayList<TransferTask>();
+		List<TransferTask> downloadTasks = new ArrayList<TransferTask>();
+
+		for (int i = 0; i < requestCount; i++) {
+			final MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(getMultichunkName(i));
+
+			uploadTasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException {
+					transferManager.upload(localMultichunk, remoteFile);
+				}
+			});
+
+			downloadTasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException {
+					transferManager.download(remoteFile, new File(downloadDir, remoteFile.getName()));
+				}
+			});
+		}
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		threadBean.resetPeakThreadCount();
+
+		long uploadStartTime = System.currentTimeMillis();
+		new ParallelTransferExecutor("Benchmark", transferManager).execute(uploadTasks);
+
+		long downloadStartTime = System.currentTimeMillis();
+		new ParallelTransferExecutor("Benchmark", transferManager).execute(downloadTasks);
+
+		long endTime = System.currentTimeMillis();
+
+		assertEquals(requestCount, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(requestCount, downloadDir.listFiles().length);
+		transferManager.disconnect();
+
+		return new long[] { downloadStartTime - uploadStartTime, endTime - downloadStartTime, threadBean.getPeakThreadCount() };
+	}
+
+	private long[] measureAsync(WebdavTransferManager transferManager) throws Exception {
+		File downloadDir = new File(tempDir, "async");
+		downloadDir.mkdirs();
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		threadBean.resetPeakThreadCount();
+
+		long uploadStartTime = System.currentTimeMillis();
+		List<Future<Void>> uploadFutures = new ArrayList<Future<Void>>();
+
+		for (int i = 0; i < requestCount; i++) {
+			uploadFutures.add(transferManager.uploadAsync(localMultichunk, new MultichunkRemoteFile(getMultichunkName(i))));
+		}
+
+		waitForAll(uploadFutures);
+
+		long downloadStartTime = System.currentTimeMillis();
+		List<Future<Void>> downloadFutures = new ArrayList<Future<Void>>();
+
+		for (int i = 0; i < requestCount; i++) {
+			MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(getMultichunkName(i));
+			downloadFutures.add(transferManager.downloadAsync(remoteFile, new File(downloadDir, remoteFile.getName())));
+		}
+
+		waitForAll(downloadFutures);
+
+		long endTime = System.currentTimeMillis();
+
+		assertEquals(requestCount, transferManager.list(MultichunkRemoteFile.class).size());
+		assertEquals(requestCount, downloadDir.listFiles().length);
+		transferManager.disconnect();
+
+		return new long[] { downloadStartTime - uploadStartTime, endTime - downloadStartTime, threadBean.getPeakThreadCount() };
+	}
+
+	private void waitForAll(List<Future<Void>> futures) throws Exception {
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+	}
+
+	private String getMultichunkName(int i) {
+		return String.format("multichunk-%040x", i);
+	}
+}
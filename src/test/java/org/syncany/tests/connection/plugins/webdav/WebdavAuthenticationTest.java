@@ -0,0 +1,122 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.webdav.WebdavConnectionPool;
+import org.syncany.plugins.webdav.WebdavTransferManager;
+import org.syncany.plugins.webdav.WebdavTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class WebdavAuthenticationTest {
+	private static final Logger logger = Logger.getLogger(WebdavAuthenticationTest.class.getSimpleName());
+
+	private static final int UPLOAD_COUNT = 5;
+
+	private File tempDir;
+	private File serverRootDir;
+	private WebdavTestServer server;
+	private WebdavTransferSettings settings;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		serverRootDir = TestFileUtil.createTempDirectoryInSystemTemp();
+
+		new File(serverRootDir, "syncany/multichunks").mkdirs();
+
+		server = new WebdavTestServer(serverRootDir);
+		server.setBasicAuth("webdav", "webdav");
+		server.start();
+
+		settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/syncany");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+	}
+
+	@After
+	public void tearDown() {
+		WebdavConnectionPool.shutdown();
+		server.stop();
+
+		TestFileUtil.deleteDirectory(serverRootDir);
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testUploadWithoutAuthCache() throws Exception {
+		settings.setPreemptiveAuth(false);
+		settings.setReuseAuthState(false);
+
+		uploadWithNewTransferManagers();
+
+		// Every request (reading the repository layout, and each upload) is challenged, and then sent again
+		assertEquals(2 * (UPLOAD_COUNT + 1), server.getRequestCount());
+		assertEquals(UPLOAD_COUNT + 1, server.getChallengeCount());
+	}
+
+	@Test
+	public void testUploadWithReusedAuthState() throws Exception {
+		settings.setPreemptiveAuth(false);
+		settings.setReuseAuthState(true);
+
+		uploadWithNewTransferManagers();
+
+		// Only the very first request (reading the repository layout) is challenged
+		assertEquals(UPLOAD_COUNT + 2, server.getRequestCount());
+		assertEquals(1, server.getChallengeCount());
+	}
+
+	@Test
+	public void testUploadWithPreemptiveAuth() throws Exception {
+		settings.setPreemptiveAuth(true);
+		settings.setReuseAuthState(true);
+
+		uploadWithNewTransferManagers();
+
+		// One round trip per upload, and one for reading the repository layout
+		assertEquals(UPLOAD_COUNT + 1, server.getRequestCount());
+		assertEquals(0, server.getChallengeCount());
+	}
+
+	private void uploadWithNewTransferManagers() throws Exception {
+		File localFile = TestFileUtil.createRandomFileInDirectory(tempDir, 50 * 1024);
+
+		// Each operation creates its own transfer manager
+		for (int i = 0; i < UPLOAD_COUNT; i++) {
+			WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+
+			transferManager.connect();
+			transferManager.upload(localFile, new MultichunkRemoteFile(String.format("multichunk-%040x", i)));
+			transferManager.disconnect();
+		}
+
+		logger.log(Level.INFO, UPLOAD_COUNT + " uploads (preemptive " + settings.isPreemptiveAuth() + ", reuse " + settings.isReuseAuthState()
+				+ "): " + server.getRequestCount() + " requests, " + server.getChallengeCount() + " challenges");
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.ParallelTransferExecutor;
+import org.syncany.plugins.transfer.ParallelTransferExecutor.TransferTask;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.webdav.WebdavConnectionPool;
+import org.syncany.plugins.webdav.WebdavTransferManager;
+import org.syncany.plugins.webdav.WebdavTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class WebdavConnectionPoolTest {
+	private static final Logger logger = Logger.getLogger(WebdavConnectionPoolTest.class.getSimpleName());
+
+	private File tempDir;
+	private File serverRootDir;
+	private WebdavTestServer server;
+	private WebdavTransferSettings settings;
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		serverRootDir = TestFileUtil.createTempDirectoryInSystemTemp();
+
+		new File(serverRootDir, "syncany/multichunks").mkdirs();
+
+		server = new WebdavTestServer(serverRootDir);
+		server.start();
+
+		settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/syncany");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+	}
+
+	@After
+	public void tearDown() {
+		WebdavConnectionPool.shutdown();
+		server.stop();
+
+		TestFileUtil.deleteDirectory(serverRootDir);
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testConnectionsReusedAcrossTransferManagers() throws Exception {
+		File localFile = TestFileUtil.createRandomFileInDirectory(tempDir, 50 * 1024);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile("multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1");
+
+		int operationCount = 5;
+
+		// Simulate five consecutive operations, each with its own transfer manager
+		for (int i = 0; i < operationCount; i++) {
+			WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+
+			transferManager.connect();
+			transferManager.upload(localFile, remoteFile);
+			transferManager.download(remoteFile, new File(tempDir, "downloaded-" + i));
+			transferManager.delete(remoteFile);
+			transferManager.disconnect();
+		}
+
+		logger.log(Level.INFO, "Pooled: " + server.getRequestCount() + " requests over " + server.getConnectionCount()
+				+ " connection(s); without pooling, at least " + operationCount + " connections would have been opened.");
+
+		// The repository layout is only read by the first transfer manager
+		assertEquals(3 * operationCount + 1, server.getRequestCount());
+		assertEquals(1, server.getConnectionCount());
+	}
+
+	@Test
+	public void testParallelTransfersScaleWithLatency() throws Exception {
+		int latencyMillis = 200;
+		int uploadCount = 8;
+		int parallelTransfers = 4;
+
+		server.setLatency(latencyMillis);
+		settings.setParallelTransfers(parallelTransfers);
+
+		final File localFile = TestFileUtil.createRandomFileInDirectory(tempDir, 50 * 1024);
+		final WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+		List<TransferTask> uploadTasks = new ArrayList<TransferTask>();
+
+		for (int i = 0; i < uploadCount; i++) {
+			final MultichunkRemoteFile remoteFile = new MultichunkRemoteFile(String.format("multichunk-%040x", i));
+
+			uploadTasks.add(new TransferTask() {
+				@Override
+				public void execute() throws StorageException {
+					transferManager.upload(localFile, remoteFile);
+				}
+			});
+		}
+
+		transferManager.connect();
+
+		long startTime = System.currentTimeMillis();
+		new ParallelTransferExecutor("Test", transferManager).execute(uploadTasks);
+		long duration = System.currentTimeMillis() - startTime;
+
+		transferManager.disconnect();
+
+		logger.log(Level.INFO, uploadCount + " uploads with " + latencyMillis + "ms latency took " + duration + "ms with " + parallelTransfers
+				+ " parallel transfers (sequential: at least " + uploadCount * latencyMillis + "ms).");
+
+		assertEquals(uploadCount + 1, server.getRequestCount()); // + reading the repository layout
+		assertEquals(parallelTransfers, server.getConnectionCount());
+		assertTrue("Parallel uploads should be at least twice as fast as sequential uploads", duration < uploadCount * latencyMillis / 2);
+	}
+}
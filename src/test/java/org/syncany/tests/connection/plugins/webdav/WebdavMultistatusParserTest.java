@@ -0,0 +1,231 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.webdav.WebdavMultistatusParser;
+import org.syncany.plugins.webdav.WebdavMultistatusParser.ResourceListener;
+
+import com.github.sardine.DavResource;
+import com.github.sardine.model.Multistatus;
+import com.github.sardine.model.Response;
+import com.github.sardine.util.SardineUtil;
+
+public class WebdavMultistatusParserTest {
+	private static final Logger logger = Logger.getLogger(WebdavMultistatusParserTest.class.getSimpleName());
+
+	@Test
+	public void testParseMultistatus() throws Exception {
+		String multistatus = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+				+ "<D:multistatus xmlns:D=\"DAV:\" xmlns:ns0=\"http://example.com/ns\">"
+				+ " <D:response><D:href>/syncany/multichunks/</D:href>"
+				+ "  <D:propstat><D:prop><D:displayname>multichunks</D:displayname><D:resourcetype><D:collection/></D:resourcetype></D:prop>"
+				+ "  <D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>"
+				+ " <D:response><D:href>http://localhost/syncany/multichunks/multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1</D:href>"
+				+ "  <D:propstat><D:prop><D:resourcetype/><ns0:href>/not/this/one</ns0:href></D:prop>"
+				+ "  <D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>"
+				+ " <D:response><D:href>/syncany/multichunks/some%20file+name</D:href>"
+				+ "  <D:propstat><D:prop><D:resourcetype/></D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>"
+				+ "</D:multistatus>";
+
+		final List<String> hrefs = new ArrayList<String>();
+		final List<Boolean> collections = new ArrayList<Boolean>();
+
+		WebdavMultistatusParser.parse(new ByteArrayInputStream(multistatus.getBytes("UTF-8")), new ResourceListener() {
+			@Override
+			public void onResource(String href, boolean collection) {
+				hrefs.add(href);
+				collections.add(collection);
+			}
+		});
+
+		assertEquals(3, hrefs.size());
+
+		assertEquals("/syncany/multichunks/", hrefs.get(0));
+		assertTrue(collections.get(0));
+		assertEquals("multichunks", WebdavMultistatusParser.getResourceName(hrefs.get(0)));
+
+		assertEquals("http://localhost/syncany/multichunks/multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1", hrefs.get(1));
+		assertFalse(collections.get(1));
+		assertEquals("multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1", WebdavMultistatusParser.getResourceName(hrefs.get(1)));
+
+		assertFalse(collections.get(2));
+		assertEquals("some file+name", WebdavMultistatusParser.getResourceName(hrefs.get(2)));
+	}
+
+	@Test
+	public void testParseChangeToken() throws Exception {
+		String multistatusWithEtag = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+				+ "<D:multistatus xmlns:D=\"DAV:\">"
+				+ " <D:response><D:href>/syncany/databases/</D:href>"
+				+ "  <D:propstat><D:prop><D:getetag>\"1f-50c1f6b9e2c40\"</D:getetag>"
+				+ "  <D:getlastmodified>Mon, 12 Jan 2015 10:00:00 GMT</D:getlastmodified></D:prop>"
+				+ "  <D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>"
+				+ "</D:multistatus>";
+
+		String multistatusWithoutEtag = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+				+ "<D:multistatus xmlns:D=\"DAV:\">"
+				+ " <D:response><D:href>/syncany/databases/</D:href>"
+				+ "  <D:propstat><D:prop><D:getlastmodified>Mon, 12 Jan 2015 10:00:00 GMT</D:getlastmodified></D:prop>"
+				+ "  <D:status>HTTP/1.1 200 OK</D:status></D:propstat>"
+				+ "  <D:propstat><D:prop><D:getetag/></D:prop><D:status>HTTP/1.1 404 Not Found</D:status></D:propstat></D:response>"
+				+ "</D:multistatus>";
+
+		String multistatusWithoutProperties = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+				+ "<D:multistatus xmlns:D=\"DAV:\">"
+				+ " <D:response><D:href>/syncany/databases/</D:href>"
+				+ "  <D:propstat><D:prop><D:getetag/><D:getlastmodified/></D:prop>"
+				+ "  <D:status>HTTP/1.1 404 Not Found</D:status></D:propstat></D:response>"
+				+ "</D:multistatus>";
+
+		assertEquals("\"1f-50c1f6b9e2c40\"", WebdavMultistatusParser.parseChangeToken(new ByteArrayInputStream(multistatusWithEtag.getBytes("UTF-8"))));
+		assertNull(WebdavMultistatusParser.parseChangeToken(new ByteArrayInputStream(multistatusWithoutEtag.getBytes("UTF-8"))));
+		assertNull(WebdavMultistatusParser.parseChangeToken(new ByteArrayInputStream(multistatusWithoutProperties.getBytes("UTF-8"))));
+	}
+
+	/**
+	 * Compares the streaming parser with Sardine's JAXB-based parser
+	 * for a large, generated multistatus response. The streaming parser
+	 * should be faster and must produce the same result.
+	 */
+	@Test
+	public void testBenchmarkLargeMultistatus() throws Exception {
+		int resourceCount = 100000;
+		File multistatusFile = createLargeMultistatusFile(resourceCount);
+
+		try {
+			// Warm up (JIT, JAXB context)
+			parseWithStreamingParser(multistatusFile);
+			parseWithSardine(multistatusFile);
+
+			long streamingStartTime = System.currentTimeMillis();
+			Map<String, MultichunkRemoteFile> streamingResult = parseWithStreamingParser(multistatusFile);
+			long streamingDuration = System.currentTimeMillis() - streamingStartTime;
+
+			long sardineStartTime = System.currentTimeMillis();
+			Map<String, MultichunkRemoteFile> sardineResult = parseWithSardine(multistatusFile);
+			long sardineDuration = System.currentTimeMillis() - sardineStartTime;
+
+			logger.log(Level.INFO, "Parsing " + resourceCount + " resources (" + multistatusFile.length() / 1024 + " KB): streaming parser "
+					+ streamingDuration + "ms, Sardine " + sardineDuration + "ms");
+
+			assertEquals(resourceCount, streamingResult.size());
+			assertEquals(sardineResult.keySet(), streamingResult.keySet());
+		}
+		finally {
+			multistatusFile.delete();
+		}
+	}
+
+	private Map<String, MultichunkRemoteFile> parseWithStreamingParser(File multistatusFile) throws Exception {
+		final Map<String, MultichunkRemoteFile> remoteFiles = new HashMap<String, MultichunkRemoteFile>();
+		InputStream multistatusInputStream = new BufferedInputStream(new FileInputStream(multistatusFile));
+
+		try {
+			WebdavMultistatusParser.parse(multistatusInputStream, new ResourceListener() {
+				@Override
+				public void onResource(String href, boolean collection) {
+					if (!collection) {
+						String resourceName = WebdavMultistatusParser.getResourceName(href);
+						addRemoteFile(remoteFiles, resourceName);
+					}
+				}
+			});
+		}
+		finally {
+			multistatusInputStream.close();
+		}
+
+		return remoteFiles;
+	}
+
+	private Map<String, MultichunkRemoteFile> parseWithSardine(File multistatusFile) throws Exception {
+		Map<String, MultichunkRemoteFile> remoteFiles = new HashMap<String, MultichunkRemoteFile>();
+		InputStream multistatusInputStream = new BufferedInputStream(new FileInputStream(multistatusFile));
+
+		try {
+			Multistatus multistatus = SardineUtil.unmarshal(multistatusInputStream);
+
+			for (Response response : multistatus.getResponse()) {
+				DavResource resource = new DavResource(response);
+
+				if (!resource.isDirectory()) {
+					addRemoteFile(remoteFiles, resource.getName());
+				}
+			}
+		}
+		finally {
+			multistatusInputStream.close();
+		}
+
+		return remoteFiles;
+	}
+
+	private void addRemoteFile(Map<String, MultichunkRemoteFile> remoteFiles, String resourceName) {
+		try {
+			remoteFiles.put(resourceName, RemoteFile.createRemoteFile(resourceName, MultichunkRemoteFile.class));
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private File createLargeMultistatusFile(int resourceCount) throws Exception {
+		File multistatusFile = File.createTempFile("multistatus-", ".xml");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(multistatusFile), "UTF-8"));
+
+		writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<D:multistatus xmlns:D=\"DAV:\">\n");
+		writer.write("<D:response><D:href>/syncany/multichunks/</D:href><D:propstat><D:prop><D:displayname>multichunks</D:displayname>"
+				+ "<D:resourcetype><D:collection/></D:resourcetype></D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+
+		for (int i = 0; i < resourceCount; i++) {
+			String resourceName = String.format("multichunk-%040x", i);
+
+			writer.write("<D:response><D:href>/syncany/multichunks/" + resourceName + "</D:href><D:propstat><D:prop><D:displayname>"
+					+ resourceName + "</D:displayname><D:resourcetype/></D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+		}
+
+		writer.write("</D:multistatus>\n");
+		writer.close();
+
+		return multistatusFile;
+	}
+}
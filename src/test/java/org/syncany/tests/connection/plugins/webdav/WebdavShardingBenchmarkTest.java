@@ -0,0 +1,146 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.webdav.WebdavConnectionPool;
+import org.syncany.plugins.webdav.WebdavTransferManager;
+import org.syncany.plugins.webdav.WebdavTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+/**
+ * Measures the <tt>PUT</tt> latency of multichunk uploads depending on the number of
+ * multichunks already in the repository, for the flat and for the sharded multichunk
+ * layout, against the embedded {@link WebdavTestServer}.
+ *
+ * <p>The directory sizes can be changed with the system property
+ * <tt>webdav.benchmark.directorysizes</tt> (comma-separated), and the number of
+ * measured uploads per size with <tt>webdav.benchmark.uploads</tt>.
+ *
+ * <p>Since the benchmark takes long, it only runs if the system property
+ * <tt>webdav.benchmark</tt> is set to <tt>true</tt>.
+ */
+public class WebdavShardingBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(WebdavShardingBenchmarkTest.class.getSimpleName());
+
+	private static final int MULTICHUNK_SIZE = 64 * 1024;
+
+	private File tempDir;
+	private File serverRootDir;
+	private WebdavTestServer server;
+	private File localMultichunk;
+
+	@BeforeClass
+	public static void assumeBenchmarkEnabled() {
+		assumeTrue(Boolean.getBoolean("webdav.benchmark"));
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		serverRootDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		localMultichunk = TestFileUtil.createRandomFileInDirectory(tempDir, MULTICHUNK_SIZE);
+
+		server = new WebdavTestServer(serverRootDir);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		WebdavConnectionPool.shutdown();
+		server.stop();
+
+		TestFileUtil.deleteDirectory(serverRootDir);
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testBenchmarkPutLatencyByDirectorySize() throws Exception {
+		String[] directorySizes = System.getProperty("webdav.benchmark.directorysizes", "100,1000,10000").split(",");
+		int uploadCount = Integer.getInteger("webdav.benchmark.uploads", 200);
+
+		logger.log(Level.INFO, "PUT latency of " + uploadCount + " multichunk uploads (" + MULTICHUNK_SIZE / 1024 + " KB) by existing multichunks:");
+
+		for (String directorySizeStr : directorySizes) {
+			int directorySize = Integer.parseInt(directorySizeStr.trim());
+
+			double flatLatency = measurePutLatency("flat-" + directorySize, false, directorySize, uploadCount);
+			double shardedLatency = measurePutLatency("sharded-" + directorySize, true, directorySize, uploadCount);
+
+			logger.log(Level.INFO, String.format("- %8d multichunks: flat %.2f ms/PUT, sharded %.2f ms/PUT", directorySize, flatLatency, shardedLatency));
+		}
+	}
+
+	private double measurePutLatency(String repoName, boolean sharded, int directorySize, int uploadCount) throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/" + repoName);
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+		settings.setShardedMultichunks(sharded);
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+		transferManager.init(true);
+
+		// Existing multichunks are created directly on disk, in the layout the transfer manager uses
+		for (int i = 0; i < directorySize; i++) {
+			File existingMultichunk = new File(serverRootDir, repoName + "/multichunks/" + getMultichunkPath(uploadCount + i, sharded));
+
+			existingMultichunk.getParentFile().mkdirs();
+			existingMultichunk.createNewFile();
+		}
+
+		// Warm up (JIT, connections, shard folders)
+		transferManager.upload(localMultichunk, new MultichunkRemoteFile(getMultichunkName(0)));
+
+		long startTime = System.nanoTime();
+
+		for (int i = 0; i < uploadCount; i++) {
+			transferManager.upload(localMultichunk, new MultichunkRemoteFile(getMultichunkName(i)));
+		}
+
+		long durationNanos = System.nanoTime() - startTime;
+
+		assertEquals(directorySize + uploadCount, transferManager.list(MultichunkRemoteFile.class).size());
+		transferManager.disconnect();
+
+		return durationNanos / 1000000.0 / uploadCount;
+	}
+
+	private String getMultichunkName(int i) {
+		// Spread the checksums over all shards, like real (random) checksums
+		return String.format("multichunk-%04x%036x", (i * 40503) & 0xffff, i);
+	}
+
+	private String getMultichunkPath(int i, boolean sharded) {
+		String multichunkName = getMultichunkName(i);
+		String checksum = multichunkName.substring("multichunk-".length());
+
+		return (sharded) ? checksum.substring(0, 2) + "/" + checksum.substring(2, 4) + "/" + multichunkName : multichunkName;
+	}
+}
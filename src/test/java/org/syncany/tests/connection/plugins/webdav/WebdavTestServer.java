@@ -0,0 +1,703 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import io.undertow.server.handlers.HttpContinueReadHandler;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * In-process WebDAV server for tests and benchmarks, backed by a local directory.
+ *
+ * <p>The server implements the subset of WebDAV that Syncany (and Sardine) use:
+ * <tt>PROPFIND</tt> (depth 0, 1 and optionally infinity), <tt>PUT</tt>, <tt>GET</tt> and <tt>HEAD</tt>
+ * (including single byte ranges), <tt>MOVE</tt>, <tt>DELETE</tt>, <tt>MKCOL</tt> and <tt>OPTIONS</tt>.
+ * If enabled, <tt>GET</tt> responses and <tt>PUT</tt> bodies may be gzip-encoded, and requests
+ * may require Basic authentication. Locking and properties other than the live properties are not supported.
+ *
+ * <p>To simulate real-world servers, a fixed latency can be added to every request, the
+ * bandwidth of each request body and response body can be capped, and a fraction of all
+ * requests can be answered with an error status (e.g. <tt>503 Service Unavailable</tt>).
+ *
+ * <p>The server counts all requests (in total and per method), authentication challenges,
+ * and the connections the requests were received on, so that tests can check how many round
+ * trips and connections a client needs.
+ */
+public class WebdavTestServer {
+	private static final Logger logger = Logger.getLogger(WebdavTestServer.class.getSimpleName());
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int WORKER_THREADS = 256; // Latency is simulated by blocking a worker thread
+	private static final HttpString DEPTH = new HttpString("Depth");
+	private static final HttpString DESTINATION = new HttpString("Destination");
+	private static final HttpString OVERWRITE = new HttpString("Overwrite");
+
+	private final File rootDir;
+	private final Random random;
+
+	private Undertow server;
+	private int port;
+
+	private volatile int latencyMillis;
+	private volatile long bandwidthLimit;
+	private volatile double errorRate;
+	private volatile int errorStatusCode;
+	private volatile int retryAfterSeconds;
+	private volatile boolean gzipEnabled;
+	private volatile boolean depthInfinityEnabled;
+	private volatile String expectedAuthorization;
+
+	private final AtomicInteger requestCount;
+	private final ConcurrentMap<String, AtomicInteger> methodRequestCounts;
+	private final AtomicInteger gzipRequestCount;
+	private final AtomicInteger gzipResponseCount;
+	private final AtomicInteger challengeCount;
+	private final Set<ServerConnection> connections;
+
+	public WebdavTestServer(File rootDir) {
+		this.rootDir = rootDir;
+		this.random = new Random();
+
+		this.latencyMillis = 0;
+		this.bandwidthLimit = 0;
+		this.errorRate = 0;
+		this.errorStatusCode = 503;
+		this.retryAfterSeconds = -1;
+		this.gzipEnabled = false;
+		this.depthInfinityEnabled = false;
+		this.expectedAuthorization = null;
+
+		this.requestCount = new AtomicInteger(0);
+		this.methodRequestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+		this.gzipRequestCount = new AtomicInteger(0);
+		this.gzipResponseCount = new AtomicInteger(0);
+		this.challengeCount = new AtomicInteger(0);
+		this.connections = Collections.newSetFromMap(new ConcurrentHashMap<ServerConnection, Boolean>());
+	}
+
+	public void start() throws Exception {
+		port = findFreePort();
+		server = Undertow.builder().addHttpListener(port, "127.0.0.1").setWorkerThreads(WORKER_THREADS)
+				.setHandler(new HttpContinueReadHandler(new WebdavHandler())).build();
+		server.start();
+
+		logger.log(Level.INFO, "WebDAV test server started at " + getUrl() + ", serving " + rootDir);
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+
+	/**
+	 * Returns the base URL of the server, e.g. <tt>http://127.0.0.1:12345</tt>.
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + port;
+	}
+
+	public File getRootDir() {
+		return rootDir;
+	}
+
+	/**
+	 * Delays every request by the given time, before it is processed.
+	 */
+	public void setLatency(int latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * Limits the transfer rate of each request and response body to the
+	 * given number of bytes per second; 0 means unlimited.
+	 */
+	public void setBandwidthLimit(long bytesPerSecond) {
+		this.bandwidthLimit = bytesPerSecond;
+	}
+
+	/**
+	 * Answers the given fraction of requests (0.0 to 1.0) with
+	 * the given error status instead of processing them.
+	 */
+	public void setErrorRate(double errorRate, int errorStatusCode) {
+		this.errorRate = errorRate;
+		this.errorStatusCode = errorStatusCode;
+	}
+
+	/**
+	 * Sends a <tt>Retry-After</tt> header with the given number of seconds
+	 * with every injected error; -1 means no header.
+	 */
+	public void setRetryAfter(int retryAfterSeconds) {
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Accepts gzip-encoded <tt>PUT</tt> bodies (and advertises this in the <tt>Accept-Encoding</tt>
+	 * header of <tt>OPTIONS</tt> responses), and gzip-encodes full <tt>GET</tt> responses if the
+	 * client accepts it.
+	 */
+	public void setGzipEnabled(boolean gzipEnabled) {
+		this.gzipEnabled = gzipEnabled;
+	}
+
+	/**
+	 * Answers <tt>PROPFIND</tt> requests with <tt>Depth: infinity</tt> (or without a
+	 * <tt>Depth</tt> header) recursively. If disabled (the default, like in Apache
+	 * mod_dav), such requests are rejected with <tt>403 Forbidden</tt>.
+	 */
+	public void setDepthInfinityEnabled(boolean depthInfinityEnabled) {
+		this.depthInfinityEnabled = depthInfinityEnabled;
+	}
+
+	/**
+	 * Requires Basic authentication with the given credentials for all requests. Requests
+	 * without (or with wrong) credentials are answered with <tt>401 Unauthorized</tt> and
+	 * counted as challenges (see {@link #getChallengeCount()}).
+	 */
+	public void setBasicAuth(String username, String password) {
+		try {
+			this.expectedAuthorization = "Basic " + Base64.encodeBase64String((username + ":" + password).getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public int getGzipRequestCount() {
+		return gzipRequestCount.get();
+	}
+
+	public int getGzipResponseCount() {
+		return gzipResponseCount.get();
+	}
+
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	public int getRequestCount(String method) {
+		AtomicInteger methodRequestCount = methodRequestCounts.get(method);
+		return (methodRequestCount != null) ? methodRequestCount.get() : 0;
+	}
+
+	public int getChallengeCount() {
+		return challengeCount.get();
+	}
+
+	/**
+	 * Returns the number of different connections the counted requests were received on.
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	public void resetRequestCounts() {
+		requestCount.set(0);
+		methodRequestCounts.clear();
+		gzipRequestCount.set(0);
+		gzipResponseCount.set(0);
+		challengeCount.set(0);
+		connections.clear();
+	}
+
+	/**
+	 * Returns a port that is currently not in use, for this server or other
+	 * stand-in servers in tests.
+	 */
+	public static int findFreePort() throws IOException {
+		ServerSocket serverSocket = new ServerSocket(0);
+		int freePort = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		return freePort;
+	}
+
+	private class WebdavHandler implements HttpHandler {
+		@Override
+		public void handleRequest(HttpServerExchange exchange) throws Exception {
+			if (exchange.isInIoThread()) {
+				exchange.dispatch(this);
+				return;
+			}
+
+			String method = exchange.getRequestMethod().toString();
+
+			countRequest(method);
+			connections.add(exchange.getConnection());
+
+			try {
+				exchange.startBlocking();
+
+				if (latencyMillis > 0) {
+					Thread.sleep(latencyMillis);
+				}
+
+				if (expectedAuthorization != null && !expectedAuthorization.equals(exchange.getRequestHeaders().getFirst(Headers.AUTHORIZATION))) {
+					challengeCount.incrementAndGet();
+
+					exchange.getResponseHeaders().put(Headers.WWW_AUTHENTICATE, "Basic realm=\"syncany\"");
+					exchange.setResponseCode(401);
+				}
+				else if (errorRate > 0 && random.nextDouble() < errorRate) {
+					logger.log(Level.FINE, "WebDAV test server: Injecting error " + errorStatusCode + " for " + method + " " + exchange.getRequestPath());
+					exchange.setResponseCode(errorStatusCode);
+
+					if (retryAfterSeconds >= 0) {
+						exchange.getResponseHeaders().put(new HttpString("Retry-After"), retryAfterSeconds);
+					}
+				}
+				else {
+					handleMethod(exchange, method, getFile(exchange.getRequestPath()));
+				}
+			}
+			catch (Exception e) {
+				logger.log(Level.WARNING, "WebDAV test server: Error handling " + method + " " + exchange.getRequestPath(), e);
+
+				if (!exchange.isResponseStarted()) {
+					exchange.setResponseCode(500);
+				}
+			}
+			finally {
+				exchange.endExchange();
+			}
+		}
+
+		private void countRequest(String method) {
+			requestCount.incrementAndGet();
+
+			methodRequestCounts.putIfAbsent(method, new AtomicInteger(0));
+			methodRequestCounts.get(method).incrementAndGet();
+		}
+
+		private void handleMethod(HttpServerExchange exchange, String method, File file) throws Exception {
+			if (file == null) {
+				exchange.setResponseCode(403);
+			}
+			else if ("PROPFIND".equals(method)) {
+				handlePropfind(exchange, file);
+			}
+			else if ("GET".equals(method) || "HEAD".equals(method)) {
+				handleGet(exchange, file, "HEAD".equals(method));
+			}
+			else if ("PUT".equals(method)) {
+				handlePut(exchange, file);
+			}
+			else if ("MKCOL".equals(method)) {
+				handleMkcol(exchange, file);
+			}
+			else if ("DELETE".equals(method)) {
+				handleDelete(exchange, file);
+			}
+			else if ("MOVE".equals(method)) {
+				handleMove(exchange, file);
+			}
+			else if ("OPTIONS".equals(method)) {
+				handleOptions(exchange);
+			}
+			else {
+				exchange.setResponseCode(405);
+			}
+		}
+
+		private void handlePropfind(HttpServerExchange exchange, File file) throws IOException {
+			copy(exchange.getInputStream(), new NullOutputStream(), 0); // Request body is ignored
+
+			if (!file.exists()) {
+				exchange.setResponseCode(404);
+				return;
+			}
+
+			String depth = exchange.getRequestHeaders().getFirst(DEPTH);
+			boolean depthInfinity = depth == null || "infinity".equalsIgnoreCase(depth);
+
+			if (depthInfinity && !depthInfinityEnabled) {
+				exchange.setResponseCode(403); // Like Apache's 'DavDepthInfinity Off' (propfind-finite-depth)
+				return;
+			}
+
+			List<File> resources = new ArrayList<File>();
+			resources.add(file);
+
+			if (file.isDirectory() && !"0".equals(depth)) {
+				addChildren(resources, file, depthInfinity);
+			}
+
+			StringBuilder multistatus = new StringBuilder();
+			multistatus.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<D:multistatus xmlns:D=\"DAV:\">\n");
+
+			for (File resource : resources) {
+				appendResponse(multistatus, resource);
+			}
+
+			multistatus.append("</D:multistatus>\n");
+
+			byte[] multistatusBytes = multistatus.toString().getBytes("UTF-8");
+
+			exchange.setResponseCode(207);
+			exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/xml; charset=utf-8");
+			exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, multistatusBytes.length);
+			exchange.getOutputStream().write(multistatusBytes);
+		}
+
+		private void addChildren(List<File> resources, File folder, boolean recursive) {
+			File[] children = folder.listFiles();
+
+			if (children != null) {
+				for (File child : children) {
+					if (!child.getName().startsWith(".")) {
+						resources.add(child);
+
+						if (recursive && child.isDirectory()) {
+							addChildren(resources, child, true);
+						}
+					}
+				}
+			}
+		}
+
+		private void appendResponse(StringBuilder multistatus, File resource) {
+			boolean collection = resource.isDirectory();
+
+			multistatus.append("<D:response><D:href>").append(escapeXml(getHref(resource))).append("</D:href>");
+			multistatus.append("<D:propstat><D:prop>");
+			multistatus.append("<D:displayname>").append(escapeXml(resource.getName())).append("</D:displayname>");
+			multistatus.append(collection ? "<D:resourcetype><D:collection/></D:resourcetype>" : "<D:resourcetype/>");
+
+			if (!collection) {
+				multistatus.append("<D:getcontentlength>").append(resource.length()).append("</D:getcontentlength>");
+				multistatus.append("<D:getcontenttype>application/octet-stream</D:getcontenttype>");
+			}
+
+			multistatus.append("<D:getlastmodified>").append(formatDate(resource.lastModified())).append("</D:getlastmodified>");
+			multistatus.append("<D:getetag>").append(escapeXml(getEtag(resource))).append("</D:getetag>");
+			multistatus.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+		}
+
+		private void handleGet(HttpServerExchange exchange, File file, boolean headOnly) throws IOException {
+			if (!file.isFile()) {
+				exchange.setResponseCode(file.exists() ? 405 : 404);
+				return;
+			}
+
+			long fileLength = file.length();
+			long start = 0;
+			long end = fileLength - 1;
+
+			String range = exchange.getRequestHeaders().getFirst(Headers.RANGE);
+
+			if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+				String[] rangeParts = range.substring("bytes=".length()).split("-", -1);
+
+				if (rangeParts[0].isEmpty()) {
+					start = Math.max(0, fileLength - Long.parseLong(rangeParts[1]));
+				}
+				else {
+					start = Long.parseLong(rangeParts[0]);
+					end = rangeParts[1].isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(rangeParts[1]), fileLength - 1);
+				}
+
+				if (start >= fileLength || start > end) {
+					exchange.setResponseCode(416);
+					exchange.getResponseHeaders().put(Headers.CONTENT_RANGE, "bytes */" + fileLength);
+					return;
+				}
+
+				exchange.setResponseCode(206);
+				exchange.getResponseHeaders().put(Headers.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+			}
+
+			long length = end - start + 1;
+			String acceptEncoding = exchange.getRequestHeaders().getFirst(Headers.ACCEPT_ENCODING);
+
+			if (gzipEnabled && !headOnly && range == null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+				handleGzipGet(exchange, file);
+				return;
+			}
+
+			exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/octet-stream");
+			exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, length);
+			exchange.getResponseHeaders().put(Headers.ETAG, getEtag(file));
+			exchange.getResponseHeaders().put(Headers.LAST_MODIFIED, formatDate(file.lastModified()));
+			exchange.getResponseHeaders().put(Headers.ACCEPT_RANGES, "bytes");
+
+			if (!headOnly) {
+				InputStream fileInputStream = new FileInputStream(file);
+
+				try {
+					fileInputStream.skip(start);
+					copy(fileInputStream, exchange.getOutputStream(), length);
+				}
+				finally {
+					fileInputStream.close();
+				}
+			}
+		}
+
+		private void handleGzipGet(HttpServerExchange exchange, File file) throws IOException {
+			ByteArrayOutputStream gzipByteOutputStream = new ByteArrayOutputStream();
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipByteOutputStream);
+
+			FileUtils.copyFile(file, gzipOutputStream);
+			gzipOutputStream.close();
+
+			byte[] gzipBytes = gzipByteOutputStream.toByteArray();
+			gzipResponseCount.incrementAndGet();
+
+			exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/octet-stream");
+			exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, "gzip");
+			exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, gzipBytes.length);
+			exchange.getResponseHeaders().put(Headers.ETAG, getEtag(file));
+
+			copy(new ByteArrayInputStream(gzipBytes), exchange.getOutputStream(), gzipBytes.length);
+		}
+
+		private void handleOptions(HttpServerExchange exchange) {
+			exchange.getResponseHeaders().put(new HttpString("DAV"), "1");
+			exchange.getResponseHeaders().put(Headers.ALLOW, "OPTIONS, GET, HEAD, PUT, DELETE, MKCOL, MOVE, PROPFIND");
+
+			if (gzipEnabled) {
+				exchange.getResponseHeaders().put(Headers.ACCEPT_ENCODING, "gzip");
+			}
+
+			exchange.setResponseCode(200);
+		}
+
+		private void handlePut(HttpServerExchange exchange, File file) throws IOException {
+			if (file.isDirectory()) {
+				exchange.setResponseCode(405);
+				return;
+			}
+			else if (!file.getParentFile().isDirectory()) {
+				exchange.setResponseCode(409);
+				return;
+			}
+
+			InputStream requestInputStream = exchange.getInputStream();
+			String contentEncoding = exchange.getRequestHeaders().getFirst(Headers.CONTENT_ENCODING);
+
+			if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding)) {
+				if (!gzipEnabled || !"gzip".equalsIgnoreCase(contentEncoding)) {
+					exchange.setResponseCode(415);
+					return;
+				}
+
+				requestInputStream = new GZIPInputStream(requestInputStream);
+				gzipRequestCount.incrementAndGet();
+			}
+
+			boolean existed = file.exists();
+			File tempFile = new File(file.getParentFile(), "." + file.getName() + ".upload-" + Thread.currentThread().getId());
+			OutputStream tempFileOutputStream = new FileOutputStream(tempFile);
+
+			try {
+				copy(requestInputStream, tempFileOutputStream, 0);
+			}
+			finally {
+				tempFileOutputStream.close();
+			}
+
+			if (existed) {
+				file.delete();
+			}
+
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+				throw new IOException("Cannot rename " + tempFile + " to " + file);
+			}
+
+			exchange.setResponseCode(existed ? 204 : 201);
+		}
+
+		private void handleMkcol(HttpServerExchange exchange, File file) {
+			if (file.exists()) {
+				exchange.setResponseCode(405);
+			}
+			else if (!file.getParentFile().isDirectory()) {
+				exchange.setResponseCode(409);
+			}
+			else {
+				exchange.setResponseCode(file.mkdir() ? 201 : 500);
+			}
+		}
+
+		private void handleDelete(HttpServerExchange exchange, File file) throws IOException {
+			if (!file.exists()) {
+				exchange.setResponseCode(404);
+			}
+			else if (file.equals(rootDir)) {
+				exchange.setResponseCode(403);
+			}
+			else {
+				FileUtils.forceDelete(file);
+				exchange.setResponseCode(204);
+			}
+		}
+
+		private void handleMove(HttpServerExchange exchange, File file) throws IOException {
+			String destination = exchange.getRequestHeaders().getFirst(DESTINATION);
+			File targetFile = (destination != null) ? getFile(URI.create(destination).getPath()) : null;
+			boolean overwrite = !"F".equalsIgnoreCase(exchange.getRequestHeaders().getFirst(OVERWRITE));
+
+			if (targetFile == null) {
+				exchange.setResponseCode(400);
+			}
+			else if (!file.exists()) {
+				exchange.setResponseCode(404);
+			}
+			else if (!targetFile.getParentFile().isDirectory()) {
+				exchange.setResponseCode(409);
+			}
+			else if (targetFile.exists() && !overwrite) {
+				exchange.setResponseCode(412);
+			}
+			else {
+				boolean existed = targetFile.exists();
+
+				if (existed) {
+					FileUtils.forceDelete(targetFile);
+				}
+
+				if (!file.renameTo(targetFile)) {
+					throw new IOException("Cannot move " + file + " to " + targetFile);
+				}
+
+				exchange.setResponseCode(existed ? 204 : 201);
+			}
+		}
+
+		/**
+		 * Copies the given number of bytes (or everything, if <tt>length</tt> is 0),
+		 * and sleeps whenever the transfer is ahead of the bandwidth limit.
+		 */
+		private void copy(InputStream inputStream, OutputStream outputStream, long length) throws IOException {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long startTime = System.currentTimeMillis();
+			long transferred = 0;
+			int read;
+
+			while ((length == 0 || transferred < length)
+					&& (read = inputStream.read(buffer, 0, (int) ((length == 0) ? buffer.length : Math.min(buffer.length, length - transferred)))) != -1) {
+
+				outputStream.write(buffer, 0, read);
+				transferred += read;
+
+				long limit = bandwidthLimit;
+
+				if (limit > 0) {
+					long expectedMillis = transferred * 1000 / limit;
+					long elapsedMillis = System.currentTimeMillis() - startTime;
+
+					if (expectedMillis > elapsedMillis) {
+						try {
+							Thread.sleep(expectedMillis - elapsedMillis);
+						}
+						catch (InterruptedException e) {
+							throw new IOException(e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps a request path to a file below the root directory, or
+	 * returns <tt>null</tt> if the path tries to escape from it.
+	 */
+	private File getFile(String requestPath) {
+		String relativePath = requestPath.replaceAll("^/+", "").replaceAll("/+$", "");
+
+		for (String pathSegment : relativePath.split("/")) {
+			if ("..".equals(pathSegment)) {
+				return null;
+			}
+		}
+
+		return relativePath.isEmpty() ? rootDir : new File(rootDir, relativePath);
+	}
+
+	private String getHref(File resource) {
+		String relativePath = rootDir.toURI().relativize(resource.toURI()).getPath();
+
+		try {
+			return new URI(null, null, "/" + relativePath, null).toASCIIString();
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private String getEtag(File resource) {
+		return "\"" + Long.toHexString(resource.lastModified()) + "-" + Long.toHexString(resource.isDirectory() ? countChildren(resource) : resource.length()) + "\"";
+	}
+
+	private int countChildren(File directory) {
+		String[] children = directory.list();
+		return (children != null) ? children.length : 0;
+	}
+
+	private String formatDate(long time) {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+		return dateFormat.format(new Date(time));
+	}
+
+	private String escapeXml(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
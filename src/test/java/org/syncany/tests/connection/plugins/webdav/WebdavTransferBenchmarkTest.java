@@ -0,0 +1,270 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2014 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.connection.plugins.webdav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.HttpContinueReadHandler;
+import io.undertow.util.Headers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.webdav.WebdavConnectionPool;
+import org.syncany.plugins.webdav.WebdavTransferManager;
+import org.syncany.plugins.webdav.WebdavTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+import com.github.sardine.Sardine;
+import com.github.sardine.SardineFactory;
+
+/**
+ * Measures the upload and download throughput of the {@link WebdavTransferManager} for
+ * 1 GB of multichunks against a local stand-in server, and compares it with the previous
+ * stream-based implementation (Sardine's <tt>put()</tt> with an input stream, and
+ * <tt>get()</tt> with {@link IOUtils#copy(InputStream, OutputStream)}).
+ *
+ * <p>The amount of data can be changed with the system property
+ * <tt>webdav.benchmark.megabytes</tt>.
+ *
+ * <p>Since the benchmark takes long, it only runs if the system property
+ * <tt>webdav.benchmark</tt> is set to <tt>true</tt>.
+ */
+public class WebdavTransferBenchmarkTest {
+	private static final Logger logger = Logger.getLogger(WebdavTransferBenchmarkTest.class.getSimpleName());
+
+	private static final int MULTICHUNK_SIZE = 4 * 1024 * 1024;
+	private static final int LOCAL_MULTICHUNK_COUNT = 4;
+
+	private File tempDir;
+	private Undertow server;
+	private MultichunkStandInHandler standInHandler;
+	private WebdavTransferSettings settings;
+
+	private List<File> localMultichunks;
+	private int transferCount;
+
+	@BeforeClass
+	public static void assumeBenchmarkEnabled() {
+		assumeTrue(Boolean.getBoolean("webdav.benchmark"));
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		localMultichunks = new ArrayList<File>();
+
+		for (int i = 0; i < LOCAL_MULTICHUNK_COUNT; i++) {
+			localMultichunks.add(TestFileUtil.createRandomFileInDirectory(tempDir, MULTICHUNK_SIZE));
+		}
+
+		long benchmarkBytes = Long.getLong("webdav.benchmark.megabytes", 1024) * 1024 * 1024;
+		transferCount = (int) Math.max(1, benchmarkBytes / MULTICHUNK_SIZE);
+
+		standInHandler = new MultichunkStandInHandler(localMultichunks.get(0));
+
+		int port = WebdavTestServer.findFreePort();
+
+		server = Undertow.builder().addHttpListener(port, "127.0.0.1").setHandler(new HttpContinueReadHandler(standInHandler)).build();
+		server.start();
+
+		settings = new WebdavTransferSettings();
+		settings.setUrl("http://127.0.0.1:" + port + "/syncany");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+	}
+
+	@After
+	public void tearDown() {
+		WebdavConnectionPool.shutdown();
+		server.stop();
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testBenchmarkMultichunkThroughput() throws Exception {
+		File downloadedFile = new File(tempDir, "downloaded");
+		long totalBytes = (long) transferCount * MULTICHUNK_SIZE;
+
+		// Warm up (JIT, connections)
+		uploadAndDownloadWithStreams(downloadedFile, LOCAL_MULTICHUNK_COUNT);
+		uploadAndDownloadWithTransferManager(downloadedFile, LOCAL_MULTICHUNK_COUNT);
+
+		standInHandler.reset();
+		long[] streamDurations = uploadAndDownloadWithStreams(downloadedFile, transferCount);
+
+		assertEquals(totalBytes, standInHandler.uploadedBytes.get());
+		assertEquals(totalBytes, standInHandler.downloadedBytes.get());
+
+		standInHandler.reset();
+		long[] transferManagerDurations = uploadAndDownloadWithTransferManager(downloadedFile, transferCount);
+
+		assertEquals(totalBytes, standInHandler.uploadedBytes.get());
+		assertEquals(totalBytes, standInHandler.downloadedBytes.get());
+		assertEquals("Uploads must not use chunked transfer encoding", 0, standInHandler.chunkedUploads.get());
+		assertEquals(MULTICHUNK_SIZE, downloadedFile.length());
+
+		logger.log(Level.INFO, "Transferred " + totalBytes / 1024 / 1024 + " MB of multichunks (" + transferCount + " x " + MULTICHUNK_SIZE / 1024
+				+ " KB) in each direction:");
+		logger.log(Level.INFO, "- Before (streams):      upload " + formatThroughput(totalBytes, streamDurations[0]) + ", download "
+				+ formatThroughput(totalBytes, streamDurations[1]));
+		logger.log(Level.INFO, "- After (file channels): upload " + formatThroughput(totalBytes, transferManagerDurations[0]) + ", download "
+				+ formatThroughput(totalBytes, transferManagerDurations[1]));
+	}
+
+	private long[] uploadAndDownloadWithStreams(File downloadedFile, int count) throws Exception {
+		Sardine sardine = SardineFactory.begin(settings.getUsername(), settings.getPassword());
+		String multichunksUrl = settings.getUrl() + "/multichunks/";
+
+		long uploadStartTime = System.currentTimeMillis();
+
+		for (int i = 0; i < count; i++) {
+			File localFile = localMultichunks.get(i % LOCAL_MULTICHUNK_COUNT);
+			InputStream localFileInputStream = new FileInputStream(localFile);
+
+			sardine.put(multichunksUrl + getMultichunkName(i), localFileInputStream, "application/octet-stream", true, localFile.length());
+			localFileInputStream.close();
+		}
+
+		long downloadStartTime = System.currentTimeMillis();
+
+		for (int i = 0; i < count; i++) {
+			InputStream remoteFileInputStream = sardine.get(multichunksUrl + getMultichunkName(i));
+			OutputStream localFileOutputStream = new FileOutputStream(downloadedFile);
+
+			IOUtils.copy(remoteFileInputStream, localFileOutputStream);
+
+			localFileOutputStream.close();
+			remoteFileInputStream.close();
+		}
+
+		long endTime = System.currentTimeMillis();
+		sardine.shutdown();
+
+		return new long[] { downloadStartTime - uploadStartTime, endTime - downloadStartTime };
+	}
+
+	private long[] uploadAndDownloadWithTransferManager(File downloadedFile, int count) throws Exception {
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+		transferManager.connect();
+
+		long uploadStartTime = System.currentTimeMillis();
+
+		for (int i = 0; i < count; i++) {
+			transferManager.upload(localMultichunks.get(i % LOCAL_MULTICHUNK_COUNT), new MultichunkRemoteFile(getMultichunkName(i)));
+		}
+
+		long downloadStartTime = System.currentTimeMillis();
+
+		for (int i = 0; i < count; i++) {
+			transferManager.download(new MultichunkRemoteFile(getMultichunkName(i)), downloadedFile);
+		}
+
+		long endTime = System.currentTimeMillis();
+		transferManager.disconnect();
+
+		return new long[] { downloadStartTime - uploadStartTime, endTime - downloadStartTime };
+	}
+
+	private String getMultichunkName(int i) {
+		return String.format("multichunk-%040x", i);
+	}
+
+	private String formatThroughput(long bytes, long durationMillis) {
+		return String.format("%.1f MB/s (%d ms)", (bytes / 1024.0 / 1024.0) / (Math.max(1, durationMillis) / 1000.0), durationMillis);
+	}
+
+	/**
+	 * Minimal WebDAV stand-in: discards uploaded multichunks (counting their bytes), and
+	 * answers every download with the same multichunk file. This keeps the disk usage low
+	 * and makes the client the bottleneck of the benchmark.
+	 */
+	private static class MultichunkStandInHandler implements HttpHandler {
+		private File multichunkFile;
+
+		private AtomicLong uploadedBytes = new AtomicLong(0);
+		private AtomicLong downloadedBytes = new AtomicLong(0);
+		private AtomicInteger chunkedUploads = new AtomicInteger(0);
+
+		public MultichunkStandInHandler(File multichunkFile) {
+			this.multichunkFile = multichunkFile;
+		}
+
+		public void reset() {
+			uploadedBytes.set(0);
+			downloadedBytes.set(0);
+			chunkedUploads.set(0);
+		}
+
+		@Override
+		public void handleRequest(HttpServerExchange exchange) throws Exception {
+			if (exchange.isInIoThread()) {
+				exchange.dispatch(this);
+				return;
+			}
+
+			exchange.startBlocking();
+			String method = exchange.getRequestMethod().toString();
+
+			if ("PUT".equals(method)) {
+				if (!exchange.getRequestHeaders().contains(Headers.CONTENT_LENGTH)) {
+					chunkedUploads.incrementAndGet();
+				}
+
+				uploadedBytes.addAndGet(IOUtils.copyLarge(exchange.getInputStream(), new NullOutputStream()));
+				exchange.setResponseCode(201);
+			}
+			else if ("GET".equals(method)) {
+				exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, multichunkFile.length());
+				InputStream multichunkInputStream = new FileInputStream(multichunkFile);
+
+				try {
+					downloadedBytes.addAndGet(IOUtils.copyLarge(multichunkInputStream, exchange.getOutputStream()));
+				}
+				finally {
+					multichunkInputStream.close();
+				}
+			}
+			else {
+				exchange.setResponseCode(405);
+			}
+
+			exchange.endExchange();
+		}
+	}
+}
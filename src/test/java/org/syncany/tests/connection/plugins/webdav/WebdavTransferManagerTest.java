@@ -17,19 +17,80 @@
  */
 package org.syncany.tests.connection.plugins.webdav;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.syncany.config.Config;
 import org.syncany.config.Logging;
-import org.syncany.tests.plugins.AbstractTransferManagerTest;
+import org.syncany.config.to.ConfigTO;
+import org.syncany.plugins.transfer.BulkTransferManager;
+import org.syncany.plugins.transfer.BulkTransferManagerAdapter;
+import org.syncany.plugins.transfer.StorageFileNotFoundException;
+import org.syncany.plugins.transfer.StorageMoveException;
+import org.syncany.plugins.transfer.StorageThrottledException;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.plugins.webdav.WebdavConnectionPool;
+import org.syncany.plugins.webdav.WebdavServerCapabilities;
+import org.syncany.plugins.webdav.WebdavServerCapabilities.Capability;
+import org.syncany.plugins.webdav.WebdavTransferManager;
+import org.syncany.plugins.webdav.WebdavTransferSettings;
+import org.syncany.tests.integration.plugins.AbstractTransferManagerTest;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.unit.util.TestFileUtil;
 
+/**
+ * Runs the transfer manager tests against the embedded {@link WebdavTestServer}, so that
+ * they can run offline. To test against a real WebDAV server instead, set the system
+ * property <tt>webdav.test.url</tt> (and <tt>webdav.test.username</tt>/<tt>webdav.test.password</tt>).
+ */
 public class WebdavTransferManagerTest extends AbstractTransferManagerTest {
 	static {
 		Logging.init();
 		Logging.setGlobalLogLevel(Level.FINEST);
 	}
-	
+
+	private static File serverRootDir;
+	private static WebdavTestServer server;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		serverRootDir = TestFileUtil.createTempDirectoryInSystemTemp();
+
+		server = new WebdavTestServer(serverRootDir);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		WebdavConnectionPool.shutdown();
+		server.stop();
+
+		TestFileUtil.deleteDirectory(serverRootDir);
+	}
+
 	@Override
 	public String getPluginId() {
 		return "webdav";
@@ -39,10 +100,489 @@ public class WebdavTransferManagerTest extends AbstractTransferManagerTest {
 	public Map<String, String> createPluginSettings() {
 		Map<String, String> pluginSettings = new HashMap<String, String>();
 		
-		pluginSettings.put("url", "http://dav.boonfaya.com/syncany");
-		pluginSettings.put("username", "webdav");
-		pluginSettings.put("password", "webdav");
+		pluginSettings.put("url", System.getProperty("webdav.test.url", server.getUrl() + "/syncany"));
+		pluginSettings.put("username", System.getProperty("webdav.test.username", "webdav"));
+		pluginSettings.put("password", System.getProperty("webdav.test.password", "webdav"));
 		
 		return pluginSettings;
-	}	
+	}
+
+	@Test
+	public void testDownloadRange() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/range");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = new File(localDir, "local-file");
+		TestFileUtil.createNonRandomFile(localFile, 10 * 1024);
+		byte[] localFileBytes = FileUtils.readFileToByteArray(localFile);
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+		MultichunkRemoteFile remoteFile = new MultichunkRemoteFile("multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1");
+
+		transferManager.init(true);
+		transferManager.upload(localFile, remoteFile);
+
+		ByteArrayOutputStream middleRange = new ByteArrayOutputStream();
+		transferManager.download(remoteFile, 1000, 500, middleRange);
+		assertArrayEquals(Arrays.copyOfRange(localFileBytes, 1000, 1500), middleRange.toByteArray());
+
+		ByteArrayOutputStream suffixRange = new ByteArrayOutputStream();
+		transferManager.download(remoteFile, -100, 100, suffixRange);
+		assertArrayEquals(Arrays.copyOfRange(localFileBytes, localFileBytes.length - 100, localFileBytes.length), suffixRange.toByteArray());
+
+		ByteArrayOutputStream beyondEndRange = new ByteArrayOutputStream();
+		transferManager.download(remoteFile, localFileBytes.length + 10, 100, beyondEndRange);
+		assertEquals(0, beyondEndRange.size());
+
+		transferManager.disconnect();
+		TestFileUtil.deleteDirectory(localDir);
+	}
+
+	@Test
+	public void testGzipContentEncoding() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/gzip");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localDatabaseFile = new File(localDir, "local-database");
+		File localMultichunkFile = TestFileUtil.createRandomFileInDirectory(localDir, 10 * 1024);
+
+		StringBuilder databaseXml = new StringBuilder("<database>");
+
+		for (int i = 0; i < 1000; i++) {
+			databaseXml.append("<fileVersion path=\"folder/file-" + i + "\" version=\"1\" type=\"FILE\" status=\"NEW\"/>");
+		}
+
+		FileUtils.writeStringToFile(localDatabaseFile, databaseXml.append("</database>").toString());
+
+		DatabaseRemoteFile databaseRemoteFile = new DatabaseRemoteFile("database-A-0000000001");
+		MultichunkRemoteFile multichunkRemoteFile = new MultichunkRemoteFile("multichunk-84f7e2b31440aaef9b73de3cadcf4e449aeb55a1");
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+
+		try {
+			server.setGzipEnabled(true);
+
+			transferManager.init(true);
+			server.resetRequestCounts();
+
+			transferManager.upload(localDatabaseFile, databaseRemoteFile);
+			transferManager.upload(localMultichunkFile, multichunkRemoteFile);
+
+			// Only the database file is compressed; the server stores it decoded. Gzip support is known from the probe.
+			assertEquals(1, server.getGzipRequestCount());
+			assertEquals(0, server.getRequestCount("OPTIONS"));
+			assertArrayEquals(FileUtils.readFileToByteArray(localDatabaseFile),
+					FileUtils.readFileToByteArray(new File(serverRootDir, "gzip/databases/" + databaseRemoteFile.getName())));
+
+			File downloadedDatabaseFile = new File(localDir, "downloaded-database");
+			File downloadedMultichunkFile = new File(localDir, "downloaded-multichunk");
+
+			transferManager.download(databaseRemoteFile, downloadedDatabaseFile);
+			transferManager.download(multichunkRemoteFile, downloadedMultichunkFile);
+
+			assertEquals(1, server.getGzipResponseCount());
+			assertArrayEquals(FileUtils.readFileToByteArray(localDatabaseFile), FileUtils.readFileToByteArray(downloadedDatabaseFile));
+			assertArrayEquals(FileUtils.readFileToByteArray(localMultichunkFile), FileUtils.readFileToByteArray(downloadedMultichunkFile));
+		}
+		finally {
+			server.setGzipEnabled(false);
+			transferManager.disconnect();
+
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testCapabilityProbe() throws Exception {
+		WebdavTransferSettings conservativeSettings = new WebdavTransferSettings();
+		conservativeSettings.setUrl(server.getUrl() + "/probe-conservative");
+		conservativeSettings.setUsername("webdav");
+		conservativeSettings.setPassword("webdav");
+
+		WebdavTransferSettings capableSettings = new WebdavTransferSettings();
+		capableSettings.setUrl(server.getUrl() + "/probe-capable");
+		capableSettings.setUsername("webdav");
+		capableSettings.setPassword("webdav");
+		capableSettings.setShardedMultichunks(true);
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = TestFileUtil.createRandomFileInDirectory(localDir, 1024);
+
+		try {
+			// Testing the storage has no side effects; the server is probed once in init()
+			WebdavTransferManager conservativeTransferManager = new WebdavTransferManager(conservativeSettings, null);
+			conservativeTransferManager.test(true);
+
+			assertNull(conservativeSettings.getCapabilities());
+
+			conservativeTransferManager.init(true);
+			conservativeTransferManager.disconnect();
+
+			WebdavServerCapabilities conservativeCapabilities = WebdavServerCapabilities.parse(conservativeSettings.getCapabilities());
+
+			assertTrue(conservativeCapabilities.has(Capability.RANGE));
+			assertFalse(conservativeCapabilities.has(Capability.GZIP_REQUEST));
+			assertFalse(conservativeCapabilities.has(Capability.DEPTH_INFINITY));
+			assertTrue(conservativeCapabilities.has(Capability.CHANGE_TOKEN));
+			assertNoProbeFolders("probe-conservative");
+
+			server.setGzipEnabled(true);
+			server.setDepthInfinityEnabled(true);
+
+			WebdavTransferManager capableTransferManager = new WebdavTransferManager(capableSettings, null);
+			capableTransferManager.init(true);
+
+			WebdavServerCapabilities capableCapabilities = WebdavServerCapabilities.parse(capableSettings.getCapabilities());
+
+			assertTrue(capableCapabilities.has(Capability.RANGE));
+			assertTrue(capableCapabilities.has(Capability.GZIP_REQUEST));
+			assertTrue(capableCapabilities.has(Capability.DEPTH_INFINITY));
+			assertNoProbeFolders("probe-capable");
+
+			capableTransferManager.upload(localFile, new MultichunkRemoteFile("multichunk-abcd000000000000000000000000000000000001"));
+			capableTransferManager.upload(localFile, new MultichunkRemoteFile("multichunk-ef01000000000000000000000000000000000002"));
+
+			// All shard folders are listed with a single 'Depth: infinity' request
+			server.resetRequestCounts();
+
+			assertEquals(2, capableTransferManager.list(MultichunkRemoteFile.class).size());
+			assertEquals(1, server.getRequestCount("PROPFIND"));
+
+			capableTransferManager.disconnect();
+		}
+		finally {
+			server.setGzipEnabled(false);
+			server.setDepthInfinityEnabled(false);
+
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testChangeTokenOnlyIfProbed() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/change-token");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = TestFileUtil.createRandomFileInDirectory(localDir, 1024);
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+
+		try {
+			transferManager.init(true);
+
+			String changeTokenBefore = transferManager.getChangeToken(DatabaseRemoteFile.class);
+			transferManager.upload(localFile, new DatabaseRemoteFile("database-A-0000000001"));
+			String changeTokenAfter = transferManager.getChangeToken(DatabaseRemoteFile.class);
+
+			assertNotNull(changeTokenBefore);
+			assertNotNull(changeTokenAfter);
+			assertFalse(changeTokenBefore.equals(changeTokenAfter));
+
+			// Without a successful probe, the server's ETags are not trusted
+			settings.setCapabilities("");
+			assertNull(transferManager.getChangeToken(DatabaseRemoteFile.class));
+		}
+		finally {
+			transferManager.disconnect();
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testLazyCapabilityProbeIsStoredInConfig() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/probe-lazy");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+
+		ConfigTO configTO = new ConfigTO();
+		configTO.setMachineName("lazy");
+		configTO.setTransferSettings(settings);
+
+		Config config = new Config(localDir, configTO, TestConfigUtil.createRepoTO());
+		File configFile = new File(config.getAppDir(), Config.FILE_CONFIG);
+
+		config.getAppDir().mkdirs();
+		configTO.save(configFile);
+
+		// Repository created by an older version, i.e. the server has never been probed
+		new File(serverRootDir, "probe-lazy").mkdirs();
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, config);
+
+		try {
+			assertTrue(transferManager.isRangeDownloadSupported());
+			assertNotNull(settings.getCapabilities());
+
+			WebdavTransferSettings storedSettings = (WebdavTransferSettings) ConfigTO.load(configFile).getTransferSettings();
+
+			assertEquals(settings.getCapabilities(), storedSettings.getCapabilities());
+			assertNoProbeFolders("probe-lazy");
+		}
+		finally {
+			transferManager.disconnect();
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testShardedMultichunksAndMigration() throws Exception {
+		WebdavTransferSettings flatSettings = new WebdavTransferSettings();
+		flatSettings.setUrl(server.getUrl() + "/sharded");
+		flatSettings.setUsername("webdav");
+		flatSettings.setPassword("webdav");
+
+		WebdavTransferSettings shardedSettings = new WebdavTransferSettings();
+		shardedSettings.setUrl(flatSettings.getUrl());
+		shardedSettings.setUsername(flatSettings.getUsername());
+		shardedSettings.setPassword(flatSettings.getPassword());
+		shardedSettings.setShardedMultichunks(true);
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = TestFileUtil.createRandomFileInDirectory(localDir, 1024);
+		File downloadedFile = new File(localDir, "downloaded");
+
+		MultichunkRemoteFile flatMultichunk = new MultichunkRemoteFile("multichunk-abcd000000000000000000000000000000000001");
+		MultichunkRemoteFile shardedMultichunk1 = new MultichunkRemoteFile("multichunk-abcd000000000000000000000000000000000002");
+		MultichunkRemoteFile shardedMultichunk2 = new MultichunkRemoteFile("multichunk-abce000000000000000000000000000000000003");
+
+		File multichunksDir = new File(serverRootDir, "sharded/multichunks");
+		File layoutMarkerFile = new File(serverRootDir, "sharded/layout-sharded-multichunks");
+
+		// Existing repository with flat multichunks folder
+		WebdavTransferManager flatTransferManager = new WebdavTransferManager(flatSettings, null);
+		flatTransferManager.init(true);
+		flatTransferManager.upload(localFile, flatMultichunk);
+		flatTransferManager.disconnect();
+
+		assertTrue(new File(multichunksDir, flatMultichunk.getName()).exists());
+
+		WebdavTransferManager shardedTransferManager = new WebdavTransferManager(shardedSettings, null);
+		WebdavTransferManager migratedTransferManager = new WebdavTransferManager(flatSettings, null);
+
+		try {
+			// The layout is stored in the repository; the setting only applies to new repositories
+			shardedTransferManager.upload(localFile, shardedMultichunk1);
+
+			assertFalse(layoutMarkerFile.exists());
+			assertTrue(new File(multichunksDir, shardedMultichunk1.getName()).exists());
+
+			server.resetRequestCounts();
+
+			// The marker is written first, then shard folders 'ab' and 'ab/cd' are created once
+			assertEquals(2, shardedTransferManager.migrateLayout());
+			assertEquals(2, server.getRequestCount("MKCOL"));
+
+			assertTrue(layoutMarkerFile.exists());
+			assertFalse(new File(multichunksDir, flatMultichunk.getName()).exists());
+			assertTrue(new File(multichunksDir, "ab/cd/" + flatMultichunk.getName()).exists());
+			assertTrue(new File(multichunksDir, "ab/cd/" + shardedMultichunk1.getName()).exists());
+
+			// Clients that still assume the flat layout find migrated multichunks
+			WebdavConnectionPool.setShardedMultichunks(flatSettings, false);
+
+			shardedTransferManager.download(flatMultichunk, downloadedFile);
+			assertArrayEquals(FileUtils.readFileToByteArray(localFile), FileUtils.readFileToByteArray(downloadedFile));
+
+			shardedTransferManager.disconnect();
+
+			// New clients read the layout from the repository, regardless of their setting
+			WebdavConnectionPool.shutdown();
+
+			migratedTransferManager.upload(localFile, shardedMultichunk2);
+			assertTrue(new File(multichunksDir, "ab/ce/" + shardedMultichunk2.getName()).exists());
+
+			Map<String, MultichunkRemoteFile> multichunks = migratedTransferManager.list(MultichunkRemoteFile.class);
+			assertEquals(3, multichunks.size());
+			assertTrue(multichunks.containsKey(flatMultichunk.getName()));
+
+			assertEquals(0, migratedTransferManager.migrateLayout());
+
+			assertTrue(migratedTransferManager.delete(flatMultichunk));
+			assertFalse(new File(multichunksDir, "ab/cd/" + flatMultichunk.getName()).exists());
+		}
+		finally {
+			shardedTransferManager.disconnect();
+			migratedTransferManager.disconnect();
+
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testAsyncEngine() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/async");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+		settings.setShardedMultichunks(true);
+		settings.setAsyncEngine(true);
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = TestFileUtil.createRandomFileInDirectory(localDir, 10 * 1024);
+		File downloadedFile = new File(localDir, "downloaded");
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+
+		try {
+			transferManager.init(true);
+
+			List<Future<Void>> uploadFutures = new ArrayList<Future<Void>>();
+
+			for (int i = 0; i < 20; i++) {
+				uploadFutures.add(transferManager.uploadAsync(localFile, new MultichunkRemoteFile(String.format("multichunk-%040x", i))));
+			}
+
+			for (Future<Void> uploadFuture : uploadFutures) {
+				uploadFuture.get();
+			}
+
+			assertEquals(20, transferManager.list(MultichunkRemoteFile.class).size());
+
+			MultichunkRemoteFile multichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", 1));
+			TempRemoteFile tempMultichunk = new TempRemoteFile(multichunk);
+
+			transferManager.downloadAsync(multichunk, downloadedFile).get();
+			assertArrayEquals(FileUtils.readFileToByteArray(localFile), FileUtils.readFileToByteArray(downloadedFile));
+
+			// Blocking methods use the non-blocking engine as well
+			transferManager.move(multichunk, tempMultichunk);
+			assertTrue(transferManager.deleteAsync(tempMultichunk).get());
+			assertTrue(transferManager.delete(multichunk));
+			assertEquals(19, transferManager.list(MultichunkRemoteFile.class).size());
+
+			try {
+				transferManager.downloadAsync(multichunk, downloadedFile).get();
+				fail("Download of a non-existing file should fail.");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof StorageFileNotFoundException);
+			}
+
+			try {
+				server.setErrorRate(1.0, 429);
+				server.setRetryAfter(3);
+
+				transferManager.upload(localFile, multichunk);
+				fail("Throttled request should throw a StorageThrottledException.");
+			}
+			catch (StorageThrottledException e) {
+				assertEquals(3000, e.getRetryAfterMillis());
+			}
+			finally {
+				server.setErrorRate(0, 503);
+				server.setRetryAfter(-1);
+			}
+		}
+		finally {
+			transferManager.disconnect();
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testBulkMoveAndDeleteUseSingleRequests() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/bulk");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+
+		File localDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File localFile = TestFileUtil.createRandomFileInDirectory(localDir, 1024);
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+
+		try {
+			transferManager.init(true);
+
+			// WebDAV has no batch requests; each file is sent through the decorators on its own
+			BulkTransferManager bulkTransferManager = BulkTransferManagerAdapter.adapt(transferManager);
+			assertTrue(bulkTransferManager instanceof BulkTransferManagerAdapter);
+
+			Map<TempRemoteFile, MultichunkRemoteFile> tempFinalFiles = new LinkedHashMap<TempRemoteFile, MultichunkRemoteFile>();
+
+			for (int i = 0; i < 10; i++) {
+				MultichunkRemoteFile multichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", i));
+				TempRemoteFile tempFile = new TempRemoteFile(multichunk);
+
+				transferManager.upload(localFile, tempFile);
+				tempFinalFiles.put(tempFile, multichunk);
+			}
+
+			bulkTransferManager.move(tempFinalFiles);
+
+			assertEquals(10, transferManager.list(MultichunkRemoteFile.class).size());
+			assertEquals(0, transferManager.list(TempRemoteFile.class).size());
+
+			// A missing source file fails only its own move
+			Map<MultichunkRemoteFile, TempRemoteFile> finalTempFiles = new LinkedHashMap<MultichunkRemoteFile, TempRemoteFile>();
+
+			for (Map.Entry<TempRemoteFile, MultichunkRemoteFile> tempFinalFile : tempFinalFiles.entrySet()) {
+				finalTempFiles.put(tempFinalFile.getValue(), tempFinalFile.getKey());
+			}
+
+			MultichunkRemoteFile missingMultichunk = new MultichunkRemoteFile(String.format("multichunk-%040x", 99));
+			finalTempFiles.put(missingMultichunk, new TempRemoteFile(missingMultichunk));
+
+			try {
+				bulkTransferManager.move(finalTempFiles);
+				fail("Move of a non-existing file should fail.");
+			}
+			catch (StorageMoveException e) {
+				// Expected
+			}
+
+			assertEquals(0, transferManager.list(MultichunkRemoteFile.class).size());
+			assertEquals(10, transferManager.list(TempRemoteFile.class).size());
+
+			bulkTransferManager.delete(tempFinalFiles.keySet());
+			assertEquals(0, transferManager.list(TempRemoteFile.class).size());
+		}
+		finally {
+			transferManager.disconnect();
+			TestFileUtil.deleteDirectory(localDir);
+		}
+	}
+
+	@Test
+	public void testThrottledRequestReportsRetryAfter() throws Exception {
+		WebdavTransferSettings settings = new WebdavTransferSettings();
+		settings.setUrl(server.getUrl() + "/throttled");
+		settings.setUsername("webdav");
+		settings.setPassword("webdav");
+
+		WebdavTransferManager transferManager = new WebdavTransferManager(settings, null);
+		transferManager.init(true);
+
+		try {
+			server.setErrorRate(1.0, 429);
+			server.setRetryAfter(7);
+
+			transferManager.list(MultichunkRemoteFile.class);
+			fail("Throttled request should throw a StorageThrottledException.");
+		}
+		catch (StorageThrottledException e) {
+			assertEquals(7000, e.getRetryAfterMillis());
+		}
+		finally {
+			server.setErrorRate(0, 503);
+			server.setRetryAfter(-1);
+			transferManager.disconnect();
+		}
+	}
+
+	private void assertNoProbeFolders(String repoName) {
+		for (String fileName : new File(serverRootDir, repoName).list()) {
+			assertFalse("Probe folder left over: " + fileName, fileName.startsWith("syncany-capability-probe"));
+		}
+	}
 }